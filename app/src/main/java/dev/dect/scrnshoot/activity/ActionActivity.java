@@ -161,6 +161,11 @@ public class ActionActivity extends AppCompatActivity {
                 finish();
                 break;
 
+            case Constants.Widget.Action.SAVE_REPLAY:
+                CapturingService.requestSaveReplay();
+                finish();
+                break;
+
             case Constants.Widget.Action.WIFI_SHARE:
                 new WifiShare(this).setListener(this::finish).start();
                 break;
@@ -54,6 +54,8 @@ import dev.dect.scrnshoot.model.Scrnshoot;
 import dev.dect.scrnshoot.notification.ReceivingNotification;
 import dev.dect.scrnshoot.popup.DialogPopup;
 import dev.dect.scrnshoot.popup.PermissionPopup;
+import dev.dect.scrnshoot.processing.ProcessingQueue;
+import dev.dect.scrnshoot.utils.KEncoders;
 import dev.dect.scrnshoot.utils.Utils;
 
 @SuppressLint({"ApplySharedPref", "UnsafeIntentLaunch"})
@@ -317,6 +319,10 @@ public class MainActivity extends AppCompatActivity {
 
         SP_APP = KSharedPreferences.getAppSp(this);
 
+        KEncoders.probeInBackground(this);
+
+        ProcessingQueue.resumePending(this);
+
         IS_TABLET_UI = getResources().getBoolean(R.bool.is_tablet);
 
         if(!IS_TABLET_UI) {
@@ -39,6 +39,7 @@ import dev.dect.scrnshoot.model.Scrnshoot;
 import dev.dect.scrnshoot.popup.ExtraPopup;
 import dev.dect.scrnshoot.popup.ScreenshotPopup;
 import dev.dect.scrnshoot.utils.KFile;
+import dev.dect.scrnshoot.utils.ThumbnailLoader;
 
 @SuppressLint({"NotifyDataSetChanged", "SetTextI18n"})
 public class ScrnshootAdapter extends RecyclerView.Adapter<ScrnshootAdapter.MyViewHolder> implements Filterable {
@@ -252,18 +253,16 @@ public class ScrnshootAdapter extends RecyclerView.Adapter<ScrnshootAdapter.MyVi
             holder.EL_SCREENSHOT.setVisibility(View.GONE);
         }
 
-        if(holder.STYLE != ScrnshootsFragment.STYLE_LIST) {
-            scrnshoot.retrieveAllMediaData(() -> {
-                if(scrnshoot.getThumbnail() != null) {
-                    holder.EL_THUMBNAIL.setImageBitmap(scrnshoot.getThumbnail());
-                } else {
-                    holder.EL_THUMBNAIL.setImageResource(R.drawable.icon_scrnshoot_image_error_helper);
-                }
+        final ThumbnailLoader thumbnailLoader = ThumbnailLoader.getInstance(ctx);
+
+        final int thumbnailWidth = holder.EL_THUMBNAIL.getWidth() > 0 ? holder.EL_THUMBNAIL.getWidth() : ctx.getResources().getDisplayMetrics().widthPixels / 2;
 
-                try {
+        if(holder.STYLE != ScrnshootsFragment.STYLE_LIST) {
+            thumbnailLoader.load(scrnshoot, holder.EL_THUMBNAIL, thumbnailWidth, (thumbnail) -> {
+                if(scrnshoot.hasMetadata()) {
                     holder.EL_DURATION.setText(KFile.formatFileDuration(scrnshoot.getDuration()));
                     holder.EL_DURATION.setVisibility(View.VISIBLE);
-                } catch (Exception ignore) {}
+                }
             });
 
             holder.EL_SELECTOR.setImageResource(TRACKER.isSelected((long) position) ? R.drawable.checkbox_on : R.drawable.checkbox_off);
@@ -274,14 +273,8 @@ public class ScrnshootAdapter extends RecyclerView.Adapter<ScrnshootAdapter.MyVi
             holder.EL_DATE.setText(KFile.formatFileDate(scrnshoot.getCreationTime()));
             holder.EL_DATE.setVisibility(View.VISIBLE);
 
-            scrnshoot.retrieveAllMediaData(() -> {
-                try {
-                    if(scrnshoot.getThumbnail() != null) {
-                        holder.EL_THUMBNAIL.setImageBitmap(scrnshoot.getThumbnail());
-                    } else {
-                        holder.EL_THUMBNAIL.setImageResource(R.drawable.icon_scrnshoot_image_error_helper);
-                    }
-
+            thumbnailLoader.load(scrnshoot, holder.EL_THUMBNAIL, thumbnailWidth, (thumbnail) -> {
+                if(scrnshoot.hasMetadata()) {
                     final int[] size = scrnshoot.getVideoSize();
 
                     holder.EL_RESOLUTION.setText(size[0] + "x" + size[1]);
@@ -289,7 +282,7 @@ public class ScrnshootAdapter extends RecyclerView.Adapter<ScrnshootAdapter.MyVi
 
                     holder.EL_DURATION.setText(KFile.formatFileDuration(scrnshoot.getDuration()));
                     holder.EL_DURATION.setVisibility(View.VISIBLE);
-                } catch (Exception ignore) {}
+                }
             });
 
             try {
@@ -377,6 +370,13 @@ public class ScrnshootAdapter extends RecyclerView.Adapter<ScrnshootAdapter.MyVi
         });
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ScrnshootAdapter.MyViewHolder holder) {
+        ThumbnailLoader.getInstance(holder.EL_THUMBNAIL.getContext()).cancel(holder.EL_THUMBNAIL);
+
+        super.onViewRecycled(holder);
+    }
+
     @Override
     public int getItemCount() {
         return LIST_KAPTURES.size();
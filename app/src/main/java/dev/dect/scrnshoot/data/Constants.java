@@ -39,7 +39,9 @@ public class Constants {
                 ACTIVE_PROFILE_NAME = "k86",
                 PROFILE_NAMES = "k87",
                 IS_TO_SHOW_NOTIFICATION_WIFI_SHARE = "k88",
-                INSTALLER_IS_TO_WRAP_TEXT = "p89";
+                INSTALLER_IS_TO_WRAP_TEXT = "p89",
+                ENCODER_CAPABILITIES = "k111",
+                PROCESSING_QUEUE = "k116";
         }
 
         public static class Profile {
@@ -134,7 +136,20 @@ public class Constants {
                 CUSTOM_WATERMARK_POSITION = "k102",
                 CUSTOM_WATERMARK_OPACITY = "k103",
                 CUSTOM_WATERMARK_SIZE = "k104",
-                IS_TO_USE_CUSTOM_WATERMARK = "k105";
+                IS_TO_USE_CUSTOM_WATERMARK = "k105",
+                IS_TO_USE_CODEC_RECORDER = "k106",
+                INTERNAL_AUDIO_ENCODING = "k107",
+                IS_TO_RECORD_IN_SEGMENTS = "k108",
+                IS_TO_USE_REPLAY_BUFFER = "k109",
+                REPLAY_BUFFER_SECONDS = "k110",
+                VIDEO_ENCODER = "k112",
+                IS_TO_USE_ADAPTIVE_QUALITY = "k113",
+                ADAPTIVE_MIN_VIDEO_QUALITY_bitRate = "k114",
+                ADAPTIVE_MIN_VIDEO_FRAME_RATE = "k115",
+                IS_TO_SHOW_STATS_ON_MENU = "k117",
+                IS_TO_USE_VARIABLE_FRAME_RATE = "k118",
+                VARIABLE_FRAME_RATE_MIN_FRAME_RATE = "k119",
+                IS_TO_COMPOSITE_OVERLAYS = "k120";
         }
     }
 
@@ -149,7 +164,8 @@ public class Constants {
             EXTRA = "ACTION.EXTRA",
             WIFI_SHARE = "ACTION.WIFI_SHARE",
             UPDATE = "ACTION.UPDATE",
-            SET_PROFILE = "ACTION.SET_PROFILE";
+            SET_PROFILE = "ACTION.SET_PROFILE",
+            SAVE_REPLAY = "ACTION.SAVE_REPLAY";
     }
 
     public static class Widget {
@@ -160,7 +176,8 @@ public class Constants {
                 PAUSE = Constants.Action.PAUSE,
                 RESUME = Constants.Action.RESUME,
                 WIFI_SHARE = Constants.Action.WIFI_SHARE,
-                SET_PROFILE = Constants.Action.SET_PROFILE;
+                SET_PROFILE = Constants.Action.SET_PROFILE,
+                SAVE_REPLAY = Constants.Action.SAVE_REPLAY;
         }
     }
 
@@ -4,10 +4,13 @@ import android.app.NotificationManager;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.util.Log;
+import android.util.LongSparseArray;
 
+import java.io.File;
 import java.util.ArrayList;
 
 import dev.dect.scrnshoot.model.Scrnshoot;
@@ -17,13 +20,21 @@ public class DB extends SQLiteOpenHelper {
 
     private static final String DB_NAME = "scrnshoot.db";
 
-    private static final int DB_VERSION = 4;
+    private static final int DB_VERSION = 10;
 
     private static final String TABLE_KAPTURE = "scrnshoot",
                                 KAPTURE_COL_ID = "k_id",
                                 KAPTURE_COL_LOCATION = "k_location",
+                                KAPTURE_COL_NAME = "k_name",
                                 KAPTURE_COL_PROFILE_ID = "k_profile_id",
                                 KAPTURE_COL_FROM = "k_from",
+                                KAPTURE_COL_DURATION = "k_duration",
+                                KAPTURE_COL_WIDTH = "k_width",
+                                KAPTURE_COL_HEIGHT = "k_height",
+                                KAPTURE_COL_SIZE = "k_size",
+                                KAPTURE_COL_CREATION_TIME = "k_creation_time",
+                                KAPTURE_COL_CODEC = "k_codec",
+                                KAPTURE_COL_BIT_RATE = "k_bit_rate",
 
                                 TABLE_EXTRAS = "extras",
                                 EXTRAS_COL_ID = "e_id",
@@ -34,7 +45,25 @@ public class DB extends SQLiteOpenHelper {
                                 TABLE_SCREENSHOTS = "screenshots",
                                 SCREENSHOTS_COL_ID = "s_id",
                                 SCREENSHOTS_COL_ID_KAPTURE = "s_id_scrnshoot",
-                                SCREENSHOTS_COL_LOCATION = "s_location";
+                                SCREENSHOTS_COL_LOCATION = "s_location",
+
+                                TABLE_MARKERS = "markers",
+                                MARKERS_COL_ID = "m_id",
+                                MARKERS_COL_ID_KAPTURE = "m_id_scrnshoot",
+                                MARKERS_COL_TIME = "m_time",
+                                MARKERS_COL_BIT_RATE = "m_bit_rate",
+                                MARKERS_COL_FRAME_RATE = "m_frame_rate",
+                                MARKERS_COL_REASON = "m_reason",
+
+                                TABLE_STATS = "stats",
+                                STATS_COL_ID_KAPTURE = "st_id_scrnshoot",
+                                STATS_COL_DURATION = "st_duration",
+                                STATS_COL_FRAME_RATE = "st_frame_rate",
+                                STATS_COL_DROPPED_FRAMES = "st_dropped_frames",
+                                STATS_COL_BIT_RATE = "st_bit_rate",
+                                STATS_COL_WRITE_RATE = "st_write_rate",
+                                STATS_COL_AUDIO_LOSSES = "st_audio_losses",
+                                STATS_COL_AUDIO_FRAMES_LOST = "st_audio_frames_lost";
 
     private final Context CONTEXT;
 
@@ -64,6 +93,18 @@ public class DB extends SQLiteOpenHelper {
         db.execSQL(q1);
 
         Update.createScreenshotsTableHelper(db);
+
+        Update.createMarkersTableHelper(db);
+
+        Update.createStatsTableHelper(db);
+
+        Update.updateScrnshootTableAddMetadataCols(db);
+
+        Update.updateScrnshootTableAddNameCol(db);
+
+        Update.createIdScrnshootIndexes(db);
+
+        Update.createSortIndexes(db);
     }
 
     @Override
@@ -77,6 +118,24 @@ public class DB extends SQLiteOpenHelper {
 
             case 3:
                 Update.updateScrnshootTableAddFromCol(db);
+
+            case 4:
+                Update.createMarkersTableHelper(db);
+
+            case 5:
+                Update.createStatsTableHelper(db);
+
+            case 6:
+                Update.updateScrnshootTableAddMetadataCols(db);
+
+            case 7:
+                Update.createIdScrnshootIndexes(db);
+
+            case 8:
+            case 9:
+                Update.updateScrnshootTableAddNameCol(db);
+
+                Update.createSortIndexes(db);
                 break;
         }
     }
@@ -92,6 +151,34 @@ public class DB extends SQLiteOpenHelper {
             db.execSQL(q);
         }
 
+        public static void createMarkersTableHelper(SQLiteDatabase db) {
+            final String q = "CREATE TABLE "
+                + TABLE_MARKERS + " ("
+                + MARKERS_COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + MARKERS_COL_ID_KAPTURE + " INTEGER, "
+                + MARKERS_COL_TIME + " INTEGER, "
+                + MARKERS_COL_BIT_RATE + " INTEGER, "
+                + MARKERS_COL_FRAME_RATE + " INTEGER, "
+                + MARKERS_COL_REASON + " TEXT);";
+
+            db.execSQL(q);
+        }
+
+        public static void createStatsTableHelper(SQLiteDatabase db) {
+            final String q = "CREATE TABLE "
+                + TABLE_STATS + " ("
+                + STATS_COL_ID_KAPTURE + " INTEGER PRIMARY KEY, "
+                + STATS_COL_DURATION + " INTEGER, "
+                + STATS_COL_FRAME_RATE + " REAL, "
+                + STATS_COL_DROPPED_FRAMES + " INTEGER, "
+                + STATS_COL_BIT_RATE + " INTEGER, "
+                + STATS_COL_WRITE_RATE + " INTEGER, "
+                + STATS_COL_AUDIO_LOSSES + " INTEGER, "
+                + STATS_COL_AUDIO_FRAMES_LOST + " INTEGER);";
+
+            db.execSQL(q);
+        }
+
         public static void updateScrnshootTableAddProfileCol(SQLiteDatabase db) {
             final String q = "ALTER TABLE "
                 + TABLE_KAPTURE
@@ -113,17 +200,68 @@ public class DB extends SQLiteOpenHelper {
 
             db.execSQL(q);
         }
+
+        public static void updateScrnshootTableAddMetadataCols(SQLiteDatabase db) {
+            final String[] cols = new String[]{
+                KAPTURE_COL_DURATION + " INTEGER DEFAULT -1",
+                KAPTURE_COL_WIDTH + " INTEGER DEFAULT -1",
+                KAPTURE_COL_HEIGHT + " INTEGER DEFAULT -1",
+                KAPTURE_COL_SIZE + " INTEGER DEFAULT -1",
+                KAPTURE_COL_CREATION_TIME + " INTEGER DEFAULT -1",
+                KAPTURE_COL_CODEC + " TEXT",
+                KAPTURE_COL_BIT_RATE + " INTEGER DEFAULT -1"
+            };
+
+            for(String col : cols) {
+                db.execSQL("ALTER TABLE " + TABLE_KAPTURE + " ADD COLUMN " + col);
+            }
+        }
+
+        /** The file name on its own, to sort by it wherever the recordings were saved. */
+        public static void updateScrnshootTableAddNameCol(SQLiteDatabase db) {
+            db.execSQL("ALTER TABLE " + TABLE_KAPTURE + " ADD COLUMN " + KAPTURE_COL_NAME + " TEXT");
+
+            final Cursor cursor = db.rawQuery("SELECT " + KAPTURE_COL_ID + ", " + KAPTURE_COL_LOCATION + " FROM " + TABLE_KAPTURE, null);
+
+            while(cursor.moveToNext()) {
+                final ContentValues values = new ContentValues();
+
+                values.put(KAPTURE_COL_NAME, new File(cursor.getString(1)).getName());
+
+                db.update(TABLE_KAPTURE, values, KAPTURE_COL_ID + " = " + cursor.getLong(0), null);
+            }
+
+            cursor.close();
+        }
+
+        public static void createIdScrnshootIndexes(SQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_" + EXTRAS_COL_ID_KAPTURE + " ON " + TABLE_EXTRAS + " (" + EXTRAS_COL_ID_KAPTURE + ")");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_" + SCREENSHOTS_COL_ID_KAPTURE + " ON " + TABLE_SCREENSHOTS + " (" + SCREENSHOTS_COL_ID_KAPTURE + ")");
+            db.execSQL("CREATE INDEX IF NOT EXISTS idx_" + MARKERS_COL_ID_KAPTURE + " ON " + TABLE_MARKERS + " (" + MARKERS_COL_ID_KAPTURE + ")");
+        }
+
+        public static void createSortIndexes(SQLiteDatabase db) {
+            for(String col : new String[]{KAPTURE_COL_NAME, KAPTURE_COL_CREATION_TIME, KAPTURE_COL_SIZE, KAPTURE_COL_DURATION}) {
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_" + col + " ON " + TABLE_KAPTURE + " (" + col + ", " + KAPTURE_COL_ID + ")");
+            }
+        }
     }
 
+    /** Recordings are inserted once they are written, off the UI thread, so the file is read here if needed. */
     public void insertScrnshoot(Scrnshoot scrnshoot) {
         final SQLiteDatabase db = this.getWritableDatabase();
 
         final ContentValues valuesScrnshoot = new ContentValues();
 
         valuesScrnshoot.put(KAPTURE_COL_LOCATION, scrnshoot.getLocation());
+        valuesScrnshoot.put(KAPTURE_COL_NAME, scrnshoot.getName());
         valuesScrnshoot.put(KAPTURE_COL_PROFILE_ID, scrnshoot.getProfileId());
         valuesScrnshoot.put(KAPTURE_COL_FROM, scrnshoot.getFrom());
 
+        scrnshoot.retrieveMetadata();
+
+        putMetadata(valuesScrnshoot, scrnshoot);
+
         final long idScrnshoot = db.insert(TABLE_KAPTURE, null, valuesScrnshoot);
 
         scrnshoot.setId(idScrnshoot);
@@ -150,35 +288,286 @@ public class DB extends SQLiteOpenHelper {
 
             screenshot.setId(idScreenshot);
         }
+
+        for(Scrnshoot.Marker marker : scrnshoot.getMarkers()) {
+            final ContentValues valuesMarker = new ContentValues();
+
+            valuesMarker.put(MARKERS_COL_ID_KAPTURE, idScrnshoot);
+            valuesMarker.put(MARKERS_COL_TIME, marker.getTime());
+            valuesMarker.put(MARKERS_COL_BIT_RATE, marker.getBitRate());
+            valuesMarker.put(MARKERS_COL_FRAME_RATE, marker.getFrameRate());
+            valuesMarker.put(MARKERS_COL_REASON, marker.getReason());
+
+            final long idMarker = db.insert(TABLE_MARKERS, null, valuesMarker);
+
+            marker.setId(idMarker);
+        }
+
+        final Scrnshoot.Stats stats = scrnshoot.getStats();
+
+        if(stats != null) {
+            final ContentValues valuesStats = new ContentValues();
+
+            valuesStats.put(STATS_COL_ID_KAPTURE, idScrnshoot);
+            valuesStats.put(STATS_COL_DURATION, stats.getDuration());
+            valuesStats.put(STATS_COL_FRAME_RATE, stats.getFrameRate());
+            valuesStats.put(STATS_COL_DROPPED_FRAMES, stats.getDroppedFrames());
+            valuesStats.put(STATS_COL_BIT_RATE, stats.getBitRate());
+            valuesStats.put(STATS_COL_WRITE_RATE, stats.getWriteRate());
+            valuesStats.put(STATS_COL_AUDIO_LOSSES, stats.getAudioLosses());
+            valuesStats.put(STATS_COL_AUDIO_FRAMES_LOST, stats.getAudioFramesLost());
+
+            db.insert(TABLE_STATS, null, valuesStats);
+        }
     }
 
     public ArrayList<Scrnshoot> selectAllScrnshoots(boolean desc) {
+        return selectScrnshoots(null, null, KAPTURE_COL_ID + (desc ? " DESC" : " ASC"), false);
+    }
+
+    /**
+     * The recordings after the ones already in {@code page}, at most {@code limit}, in the order of the page.
+     * Keyset pagination: continues from the sort key of the last row returned, so it costs the same on every page.
+     */
+    public ArrayList<Scrnshoot> selectNextPage(Page page, int limit) {
+        if(!page.HAS_MORE) {
+            return new ArrayList<>();
+        }
+
+        final String col = page.getColumn(),
+                     comparison = page.ASC ? " > ?" : " < ?",
+                     direction = page.ASC ? " ASC" : " DESC";
+
+        String where = null;
+
+        String[] args = null;
+
+        if(page.LAST_KEY != null) {
+            where = col + comparison + " OR (" + col + " = ? AND " + KAPTURE_COL_ID + comparison + ")";
+
+            args = new String[]{page.LAST_KEY, page.LAST_KEY, String.valueOf(page.LAST_ID)};
+        }
+
+        final ArrayList<Scrnshoot> scrnshoots = selectScrnshoots(
+            where,
+            args,
+            col + direction + ", " + KAPTURE_COL_ID + direction + " LIMIT " + limit,
+            true
+        );
+
+        if(scrnshoots.size() < limit) {
+            page.HAS_MORE = false;
+        }
+
+        if(!scrnshoots.isEmpty()) {
+            final Scrnshoot last = scrnshoots.get(scrnshoots.size() - 1);
+
+            page.LAST_KEY = page.getKey(last);
+            page.LAST_ID = last.getId();
+        }
+
+        return scrnshoots;
+    }
+
+    public long countScrnshoots() {
+        return DatabaseUtils.queryNumEntries(this.getReadableDatabase(), TABLE_KAPTURE);
+    }
+
+    /** Only id and location, for the {@link MetadataIndexer}. */
+    public ArrayList<Scrnshoot> selectScrnshootsWithoutMetadata() {
         final ArrayList<Scrnshoot> scrnshoots = new ArrayList<>();
 
         final SQLiteDatabase db = this.getReadableDatabase();
 
-        final Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_KAPTURE + " ORDER BY " + KAPTURE_COL_ID + (desc ? " DESC" : " ASC"), null);
+        final Cursor cursor = db.rawQuery("SELECT " + KAPTURE_COL_ID + ", " + KAPTURE_COL_LOCATION + " FROM " + TABLE_KAPTURE + " WHERE " + KAPTURE_COL_DURATION + " = -1", null);
 
-        while(true) {
-            assert cursor != null;
-            if(!cursor.moveToNext()) {
-                break;
-            }
+        while(cursor.moveToNext()) {
+            final Scrnshoot scrnshoot = new Scrnshoot(CONTEXT);
+
+            scrnshoot.setId(cursor.getLong(0));
+            scrnshoot.setLocation(cursor.getString(1));
 
+            scrnshoots.add(scrnshoot);
+        }
+
+        cursor.close();
+
+        return scrnshoots;
+    }
+
+    /**
+     * Recordings with their extras, screenshots, markers and stats, in four queries whatever the number of recordings:
+     * the recordings joined with their stats, then each child table once.
+     * @param onlyTheseChildren whether to only read the children of the recordings selected, for partial loads
+     */
+    private ArrayList<Scrnshoot> selectScrnshoots(String where, String[] args, String orderBy, boolean onlyTheseChildren) {
+        final ArrayList<Scrnshoot> scrnshoots = new ArrayList<>();
+
+        final LongSparseArray<Scrnshoot> scrnshootsById = new LongSparseArray<>();
+
+        final SQLiteDatabase db = this.getReadableDatabase();
+
+        final Cursor cursor = db.rawQuery(
+            "SELECT * FROM " + TABLE_KAPTURE
+            + " LEFT JOIN " + TABLE_STATS + " ON " + STATS_COL_ID_KAPTURE + " = " + KAPTURE_COL_ID
+            + (where == null ? "" : " WHERE " + where)
+            + " ORDER BY " + orderBy,
+            args
+        );
+
+        final int colId = cursor.getColumnIndexOrThrow(KAPTURE_COL_ID),
+                  colLocation = cursor.getColumnIndexOrThrow(KAPTURE_COL_LOCATION),
+                  colProfileId = cursor.getColumnIndexOrThrow(KAPTURE_COL_PROFILE_ID),
+                  colFrom = cursor.getColumnIndexOrThrow(KAPTURE_COL_FROM),
+                  colDuration = cursor.getColumnIndexOrThrow(KAPTURE_COL_DURATION),
+                  colWidth = cursor.getColumnIndexOrThrow(KAPTURE_COL_WIDTH),
+                  colHeight = cursor.getColumnIndexOrThrow(KAPTURE_COL_HEIGHT),
+                  colSize = cursor.getColumnIndexOrThrow(KAPTURE_COL_SIZE),
+                  colCreationTime = cursor.getColumnIndexOrThrow(KAPTURE_COL_CREATION_TIME),
+                  colCodec = cursor.getColumnIndexOrThrow(KAPTURE_COL_CODEC),
+                  colBitRate = cursor.getColumnIndexOrThrow(KAPTURE_COL_BIT_RATE),
+                  colStatsId = cursor.getColumnIndexOrThrow(STATS_COL_ID_KAPTURE),
+                  colStatsDuration = cursor.getColumnIndexOrThrow(STATS_COL_DURATION),
+                  colStatsFrameRate = cursor.getColumnIndexOrThrow(STATS_COL_FRAME_RATE),
+                  colStatsDroppedFrames = cursor.getColumnIndexOrThrow(STATS_COL_DROPPED_FRAMES),
+                  colStatsBitRate = cursor.getColumnIndexOrThrow(STATS_COL_BIT_RATE),
+                  colStatsWriteRate = cursor.getColumnIndexOrThrow(STATS_COL_WRITE_RATE),
+                  colStatsAudioLosses = cursor.getColumnIndexOrThrow(STATS_COL_AUDIO_LOSSES),
+                  colStatsAudioFramesLost = cursor.getColumnIndexOrThrow(STATS_COL_AUDIO_FRAMES_LOST);
+
+        while(cursor.moveToNext()) {
             final Scrnshoot scrnshoot = new Scrnshoot(CONTEXT);
 
-            scrnshoot.setId(cursor.getLong(cursor.getColumnIndexOrThrow(KAPTURE_COL_ID)));
-            scrnshoot.setLocation(cursor.getString(cursor.getColumnIndexOrThrow(KAPTURE_COL_LOCATION)));
-            scrnshoot.setProfileId(cursor.getString(cursor.getColumnIndexOrThrow(KAPTURE_COL_PROFILE_ID)));
-            scrnshoot.setFrom(cursor.getString(cursor.getColumnIndexOrThrow(KAPTURE_COL_FROM)));
-            scrnshoot.setExtras(selectExtras(scrnshoot));
-            scrnshoot.setScreenshots(selectScreenshots(scrnshoot));
+            scrnshoot.setId(cursor.getLong(colId));
+            scrnshoot.setLocation(cursor.getString(colLocation));
+            scrnshoot.setProfileId(cursor.getString(colProfileId));
+            scrnshoot.setFrom(cursor.getString(colFrom));
+
+            if(cursor.getLong(colDuration) != -1) {
+                scrnshoot.setMetadata(
+                    cursor.getLong(colDuration),
+                    cursor.getInt(colWidth),
+                    cursor.getInt(colHeight),
+                    cursor.getLong(colSize),
+                    cursor.getLong(colCreationTime),
+                    cursor.getString(colCodec),
+                    cursor.getInt(colBitRate)
+                );
+            }
+
+            if(!cursor.isNull(colStatsId)) {
+                scrnshoot.setStats(new Scrnshoot.Stats(
+                    cursor.getLong(colStatsDuration),
+                    cursor.getFloat(colStatsFrameRate),
+                    cursor.getLong(colStatsDroppedFrames),
+                    cursor.getInt(colStatsBitRate),
+                    cursor.getLong(colStatsWriteRate),
+                    cursor.getLong(colStatsAudioLosses),
+                    cursor.getLong(colStatsAudioFramesLost)
+                ));
+            }
 
             scrnshoots.add(scrnshoot);
+
+            scrnshootsById.put(scrnshoot.getId(), scrnshoot);
         }
 
         cursor.close();
 
+        if(scrnshoots.isEmpty()) {
+            return scrnshoots;
+        }
+
+        String ids = "";
+
+        if(onlyTheseChildren) {
+            final StringBuilder stringBuilder = new StringBuilder();
+
+            for(Scrnshoot scrnshoot : scrnshoots) {
+                stringBuilder.append(stringBuilder.length() == 0 ? "" : ",").append(scrnshoot.getId());
+            }
+
+            ids = " IN (" + stringBuilder + ")";
+        }
+
+        final Cursor cursorExtras = db.rawQuery("SELECT * FROM " + TABLE_EXTRAS + (onlyTheseChildren ? " WHERE " + EXTRAS_COL_ID_KAPTURE + ids : "") + " ORDER BY " + EXTRAS_COL_ID, null);
+
+        final int colExtraId = cursorExtras.getColumnIndexOrThrow(EXTRAS_COL_ID),
+                  colExtraIdScrnshoot = cursorExtras.getColumnIndexOrThrow(EXTRAS_COL_ID_KAPTURE),
+                  colExtraLocation = cursorExtras.getColumnIndexOrThrow(EXTRAS_COL_LOCATION),
+                  colExtraType = cursorExtras.getColumnIndexOrThrow(EXTRAS_COL_TYPE);
+
+        while(cursorExtras.moveToNext()) {
+            final Scrnshoot scrnshoot = scrnshootsById.get(cursorExtras.getLong(colExtraIdScrnshoot));
+
+            if(scrnshoot == null) {
+                continue;
+            }
+
+            scrnshoot.getExtras().add(new Scrnshoot.Extra(
+                cursorExtras.getLong(colExtraId),
+                cursorExtras.getInt(colExtraType),
+                cursorExtras.getString(colExtraLocation),
+                scrnshoot.getId()
+            ));
+        }
+
+        cursorExtras.close();
+
+        final Cursor cursorScreenshots = db.rawQuery("SELECT * FROM " + TABLE_SCREENSHOTS + (onlyTheseChildren ? " WHERE " + SCREENSHOTS_COL_ID_KAPTURE + ids : "") + " ORDER BY " + SCREENSHOTS_COL_ID, null);
+
+        final int colScreenshotId = cursorScreenshots.getColumnIndexOrThrow(SCREENSHOTS_COL_ID),
+                  colScreenshotIdScrnshoot = cursorScreenshots.getColumnIndexOrThrow(SCREENSHOTS_COL_ID_KAPTURE),
+                  colScreenshotLocation = cursorScreenshots.getColumnIndexOrThrow(SCREENSHOTS_COL_LOCATION);
+
+        while(cursorScreenshots.moveToNext()) {
+            final Scrnshoot scrnshoot = scrnshootsById.get(cursorScreenshots.getLong(colScreenshotIdScrnshoot));
+
+            if(scrnshoot == null) {
+                continue;
+            }
+
+            final Scrnshoot.Screenshot screenshot = new Scrnshoot.Screenshot();
+
+            screenshot.setId(cursorScreenshots.getLong(colScreenshotId));
+            screenshot.setLocation(cursorScreenshots.getString(colScreenshotLocation));
+            screenshot.setIdScrnshoot(scrnshoot.getId());
+
+            scrnshoot.getScreenshots().add(screenshot);
+        }
+
+        cursorScreenshots.close();
+
+        final Cursor cursorMarkers = db.rawQuery("SELECT * FROM " + TABLE_MARKERS + (onlyTheseChildren ? " WHERE " + MARKERS_COL_ID_KAPTURE + ids : "") + " ORDER BY " + MARKERS_COL_ID_KAPTURE + ", " + MARKERS_COL_TIME, null);
+
+        final int colMarkerId = cursorMarkers.getColumnIndexOrThrow(MARKERS_COL_ID),
+                  colMarkerIdScrnshoot = cursorMarkers.getColumnIndexOrThrow(MARKERS_COL_ID_KAPTURE),
+                  colMarkerTime = cursorMarkers.getColumnIndexOrThrow(MARKERS_COL_TIME),
+                  colMarkerBitRate = cursorMarkers.getColumnIndexOrThrow(MARKERS_COL_BIT_RATE),
+                  colMarkerFrameRate = cursorMarkers.getColumnIndexOrThrow(MARKERS_COL_FRAME_RATE),
+                  colMarkerReason = cursorMarkers.getColumnIndexOrThrow(MARKERS_COL_REASON);
+
+        while(cursorMarkers.moveToNext()) {
+            final Scrnshoot scrnshoot = scrnshootsById.get(cursorMarkers.getLong(colMarkerIdScrnshoot));
+
+            if(scrnshoot == null) {
+                continue;
+            }
+
+            final Scrnshoot.Marker marker = new Scrnshoot.Marker();
+
+            marker.setId(cursorMarkers.getLong(colMarkerId));
+            marker.setIdScrnshoot(scrnshoot.getId());
+            marker.setTime(cursorMarkers.getLong(colMarkerTime));
+            marker.setBitRate(cursorMarkers.getInt(colMarkerBitRate));
+            marker.setFrameRate(cursorMarkers.getInt(colMarkerFrameRate));
+            marker.setReason(cursorMarkers.getString(colMarkerReason));
+
+            scrnshoot.getMarkers().add(marker);
+        }
+
+        cursorMarkers.close();
+
         return scrnshoots;
     }
 
@@ -198,8 +587,11 @@ public class DB extends SQLiteOpenHelper {
             scrnshoot.setLocation(cursor.getString(cursor.getColumnIndexOrThrow(KAPTURE_COL_LOCATION)));
             scrnshoot.setProfileId(cursor.getString(cursor.getColumnIndexOrThrow(KAPTURE_COL_PROFILE_ID)));
             scrnshoot.setFrom(cursor.getString(cursor.getColumnIndexOrThrow(KAPTURE_COL_FROM)));
+            setMetadata(cursor, scrnshoot);
             scrnshoot.setExtras(selectExtras(scrnshoot));
             scrnshoot.setScreenshots(selectScreenshots(scrnshoot));
+            scrnshoot.setMarkers(selectMarkers(scrnshoot));
+            scrnshoot.setStats(selectStats(scrnshoot));
 
             cursor.close();
 
@@ -211,6 +603,38 @@ public class DB extends SQLiteOpenHelper {
         return null;
     }
 
+    private void setMetadata(Cursor cursor, Scrnshoot scrnshoot) {
+        final long duration = cursor.getLong(cursor.getColumnIndexOrThrow(KAPTURE_COL_DURATION));
+
+        if(duration == -1) {
+            return;
+        }
+
+        scrnshoot.setMetadata(
+            duration,
+            cursor.getInt(cursor.getColumnIndexOrThrow(KAPTURE_COL_WIDTH)),
+            cursor.getInt(cursor.getColumnIndexOrThrow(KAPTURE_COL_HEIGHT)),
+            cursor.getLong(cursor.getColumnIndexOrThrow(KAPTURE_COL_SIZE)),
+            cursor.getLong(cursor.getColumnIndexOrThrow(KAPTURE_COL_CREATION_TIME)),
+            cursor.getString(cursor.getColumnIndexOrThrow(KAPTURE_COL_CODEC)),
+            cursor.getInt(cursor.getColumnIndexOrThrow(KAPTURE_COL_BIT_RATE))
+        );
+    }
+
+    private void putMetadata(ContentValues values, Scrnshoot scrnshoot) {
+        if(!scrnshoot.hasMetadata()) {
+            return;
+        }
+
+        values.put(KAPTURE_COL_DURATION, scrnshoot.getDuration());
+        values.put(KAPTURE_COL_WIDTH, scrnshoot.getVideoSize()[0]);
+        values.put(KAPTURE_COL_HEIGHT, scrnshoot.getVideoSize()[1]);
+        values.put(KAPTURE_COL_SIZE, scrnshoot.getSize());
+        values.put(KAPTURE_COL_CREATION_TIME, scrnshoot.getCreationTime());
+        values.put(KAPTURE_COL_CODEC, scrnshoot.getCodec());
+        values.put(KAPTURE_COL_BIT_RATE, scrnshoot.getBitRate());
+    }
+
     public ArrayList<Scrnshoot.Extra> selectExtras(Scrnshoot scrnshoot) {
         final ArrayList<Scrnshoot.Extra> extras = new ArrayList<>();
 
@@ -266,6 +690,60 @@ public class DB extends SQLiteOpenHelper {
         return screenshots;
     }
 
+    public ArrayList<Scrnshoot.Marker> selectMarkers(Scrnshoot scrnshoot) {
+        final ArrayList<Scrnshoot.Marker> markers = new ArrayList<>();
+
+        final SQLiteDatabase db = this.getReadableDatabase();
+
+        final Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_MARKERS + " WHERE " + MARKERS_COL_ID_KAPTURE + " = " + scrnshoot.getId() + " ORDER BY " + MARKERS_COL_TIME, null);
+
+        while(true) {
+            assert cursor != null;
+            if(!cursor.moveToNext()) {
+                break;
+            }
+
+            final Scrnshoot.Marker marker = new Scrnshoot.Marker();
+
+            marker.setId(cursor.getLong(cursor.getColumnIndexOrThrow(MARKERS_COL_ID)));
+            marker.setIdScrnshoot(cursor.getLong(cursor.getColumnIndexOrThrow(MARKERS_COL_ID_KAPTURE)));
+            marker.setTime(cursor.getLong(cursor.getColumnIndexOrThrow(MARKERS_COL_TIME)));
+            marker.setBitRate(cursor.getInt(cursor.getColumnIndexOrThrow(MARKERS_COL_BIT_RATE)));
+            marker.setFrameRate(cursor.getInt(cursor.getColumnIndexOrThrow(MARKERS_COL_FRAME_RATE)));
+            marker.setReason(cursor.getString(cursor.getColumnIndexOrThrow(MARKERS_COL_REASON)));
+
+            markers.add(marker);
+        }
+
+        cursor.close();
+
+        return markers;
+    }
+
+    public Scrnshoot.Stats selectStats(Scrnshoot scrnshoot) {
+        final SQLiteDatabase db = this.getReadableDatabase();
+
+        final Cursor cursor = db.rawQuery("SELECT * FROM " + TABLE_STATS + " WHERE " + STATS_COL_ID_KAPTURE + " = " + scrnshoot.getId(), null);
+
+        Scrnshoot.Stats stats = null;
+
+        if(cursor.moveToFirst()) {
+            stats = new Scrnshoot.Stats(
+                cursor.getLong(cursor.getColumnIndexOrThrow(STATS_COL_DURATION)),
+                cursor.getFloat(cursor.getColumnIndexOrThrow(STATS_COL_FRAME_RATE)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(STATS_COL_DROPPED_FRAMES)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(STATS_COL_BIT_RATE)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(STATS_COL_WRITE_RATE)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(STATS_COL_AUDIO_LOSSES)),
+                cursor.getLong(cursor.getColumnIndexOrThrow(STATS_COL_AUDIO_FRAMES_LOST))
+            );
+        }
+
+        cursor.close();
+
+        return stats;
+    }
+
     public void deleteScrnshoot(Scrnshoot scrnshoot) {
         final SQLiteDatabase db = this.getWritableDatabase();
 
@@ -275,6 +753,8 @@ public class DB extends SQLiteOpenHelper {
             db.execSQL("DELETE FROM " + TABLE_KAPTURE + " WHERE " + KAPTURE_COL_ID + " = " + scrnshoot.getId());
             db.execSQL("DELETE FROM " + TABLE_EXTRAS + " WHERE " + EXTRAS_COL_ID_KAPTURE + " = " + scrnshoot.getId());
             db.execSQL("DELETE FROM " + TABLE_SCREENSHOTS + " WHERE " + SCREENSHOTS_COL_ID_KAPTURE + " = " + scrnshoot.getId());
+            db.execSQL("DELETE FROM " + TABLE_MARKERS + " WHERE " + MARKERS_COL_ID_KAPTURE + " = " + scrnshoot.getId());
+            db.execSQL("DELETE FROM " + TABLE_STATS + " WHERE " + STATS_COL_ID_KAPTURE + " = " + scrnshoot.getId());
 
             db.setTransactionSuccessful();
         } catch (Exception e) {
@@ -320,9 +800,12 @@ public class DB extends SQLiteOpenHelper {
         ContentValues valuesScrnshoot = new ContentValues();
 
         valuesScrnshoot.put(KAPTURE_COL_LOCATION, scrnshoot.getLocation());
+        valuesScrnshoot.put(KAPTURE_COL_NAME, scrnshoot.getName());
         valuesScrnshoot.put(KAPTURE_COL_PROFILE_ID, scrnshoot.getProfileId());
         valuesScrnshoot.put(KAPTURE_COL_FROM, scrnshoot.getFrom());
 
+        putMetadata(valuesScrnshoot, scrnshoot);
+
         for(Scrnshoot.Extra extra : scrnshoot.getExtras()) {
             updateExtra(extra);
         }
@@ -334,6 +817,19 @@ public class DB extends SQLiteOpenHelper {
         db.update(TABLE_KAPTURE, valuesScrnshoot, KAPTURE_COL_ID + " = " + scrnshoot.getId(), null);
     }
 
+    /** For the recordings the {@link MetadataIndexer} filled in. */
+    public void updateMetadata(Scrnshoot scrnshoot) {
+        final SQLiteDatabase db = this.getWritableDatabase();
+
+        final ContentValues valuesScrnshoot = new ContentValues();
+
+        putMetadata(valuesScrnshoot, scrnshoot);
+
+        if(valuesScrnshoot.size() > 0) {
+            db.update(TABLE_KAPTURE, valuesScrnshoot, KAPTURE_COL_ID + " = " + scrnshoot.getId(), null);
+        }
+    }
+
     public void updateExtra(Scrnshoot.Extra extra) {
         final SQLiteDatabase db = this.getWritableDatabase();
 
@@ -353,4 +849,64 @@ public class DB extends SQLiteOpenHelper {
 
         db.update(TABLE_SCREENSHOTS, valuesScreenshot, SCREENSHOTS_COL_ID + " = " + screenshot.getId(), null);
     }
+
+    /** Where {@link #selectNextPage(Page, int)} is in the recordings, for one order. */
+    public static class Page {
+        public static final int ORDER_CREATION_TIME = 0,
+                                ORDER_NAME = 1,
+                                ORDER_SIZE = 2,
+                                ORDER_DURATION = 3;
+
+        private final int ORDER;
+
+        private final boolean ASC;
+
+        private String LAST_KEY = null;
+
+        private long LAST_ID = -1;
+
+        private boolean HAS_MORE = true;
+
+        public Page(int order, boolean asc) {
+            this.ORDER = order;
+            this.ASC = asc;
+        }
+
+        public boolean hasMore() {
+            return HAS_MORE;
+        }
+
+        private String getColumn() {
+            switch(ORDER) {
+                case ORDER_NAME:
+                    return KAPTURE_COL_NAME;
+
+                case ORDER_SIZE:
+                    return KAPTURE_COL_SIZE;
+
+                case ORDER_DURATION:
+                    return KAPTURE_COL_DURATION;
+
+                default:
+                    return KAPTURE_COL_CREATION_TIME;
+            }
+        }
+
+        /** The value of the column as stored, -1 for metadata not indexed yet. */
+        private String getKey(Scrnshoot scrnshoot) {
+            switch(ORDER) {
+                case ORDER_NAME:
+                    return scrnshoot.getName();
+
+                case ORDER_SIZE:
+                    return String.valueOf(scrnshoot.hasMetadata() ? scrnshoot.getSize() : -1);
+
+                case ORDER_DURATION:
+                    return String.valueOf(scrnshoot.getKnownDuration());
+
+                default:
+                    return String.valueOf(scrnshoot.hasMetadata() ? scrnshoot.getCreationTime() : -1);
+            }
+        }
+    }
 }
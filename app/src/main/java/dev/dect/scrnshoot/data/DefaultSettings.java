@@ -34,6 +34,7 @@ public class DefaultSettings {
         IS_TO_SHOW_TEXT = false,
         IS_TO_SHOW_TIME_ON_MENU = true,
         IS_TO_SHOW_TIME_LIMIT_ON_MENU = false,
+        IS_TO_SHOW_STATS_ON_MENU = false,
         IS_TO_SHOW_CLOSE_BUTTON_ON_MENU = false,
         IS_TO_SHOW_MINIMIZE_BUTTON_ON_MENU = true,
         IS_TO_SHOW_CAMERA_BUTTON_ON_MENU = true,
@@ -57,7 +58,13 @@ public class DefaultSettings {
         INSTALLER_IS_TO_WRAP_TEXT = true,
         IS_TO_MERGE_INTERNAL_AUDIO = true,
         IS_TO_USE_TAP_TO_ZOOM = false,
-        IS_TO_USE_CUSTOM_WATERMARK = false;
+        IS_TO_USE_CUSTOM_WATERMARK = false,
+        IS_TO_USE_CODEC_RECORDER = false,
+        IS_TO_RECORD_IN_SEGMENTS = false,
+        IS_TO_USE_REPLAY_BUFFER = false,
+        IS_TO_USE_ADAPTIVE_QUALITY = false,
+        IS_TO_USE_VARIABLE_FRAME_RATE = false,
+        IS_TO_COMPOSITE_OVERLAYS = false;
 
     public static final int
         VIDEO_RESOLUTION = -1,
@@ -80,9 +87,15 @@ public class DefaultSettings {
         BEFORE_START_MEDIA_VOLUME_PERCENTAGE = 50,
         AUDIO_SAMPLE_RATE = 44100,
         AUDIO_QUALITY_bitRate = 96000,
+        INTERNAL_AUDIO_ENCODING = KSettings.INTERNAL_AUDIO_ENCODINGS[0],
         TAP_TO_ZOOM_FACTOR = 2,
         CUSTOM_WATERMARK_OPACITY = 80,
-        CUSTOM_WATERMARK_SIZE = 24;
+        CUSTOM_WATERMARK_SIZE = 24,
+        REPLAY_BUFFER_SECONDS = 30,
+        VIDEO_ENCODER = KSettings.VIDEO_ENCODERS[0],
+        ADAPTIVE_MIN_VIDEO_QUALITY_bitRate = 2000000,
+        ADAPTIVE_MIN_VIDEO_FRAME_RATE = 30,
+        VARIABLE_FRAME_RATE_MIN_FRAME_RATE = 2;
 
     public static final String
         TEXT_FONT_PATH = KSettings.INTERNAL_FONTS_PATHS[0],
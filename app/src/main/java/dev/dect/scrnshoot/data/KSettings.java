@@ -21,6 +21,7 @@ import java.util.Locale;
 import java.util.stream.Stream;
 
 import dev.dect.scrnshoot.R;
+import dev.dect.scrnshoot.utils.KEncoders;
 import dev.dect.scrnshoot.utils.KFile;
 import dev.dect.scrnshoot.utils.Utils;
 
@@ -31,12 +32,16 @@ public class KSettings {
     public static final int[] VIDEO_RESOLUTIONS = new int[]{-1, 1440, 1080, 720, 640, 540, 480, 360, 240},
                               VIDEO_QUALITIES = new int[]{16000000, 14000000, 12000000, 10000000, 8000000, 6000000, 4000000, 2000000, 1000000},
                               VIDEO_FRAME_RATES = new int[]{144, 120, 90, 60, 50, 40, 30, 25, 20, 15, 10},
+                              VARIABLE_FRAME_RATE_MIN_FRAME_RATES = new int[]{10, 5, 2, 1},
                               CAMERA_FACING_LENSES = new int[]{CameraCharacteristics.LENS_FACING_FRONT, CameraCharacteristics.LENS_FACING_BACK},
                               CAMERA_SHAPES = new int[]{0, 1, 2}, //circle, square, square corners
                               TEXT_ALIGNMENTS = new int[]{Gravity.START, Gravity.CENTER, Gravity.END},
                               MINIMIZE_SIDES = new int[]{0, 1}, //right, left
                               MENU_STYLES = new int[]{0, 1}, //horizontal, vertical
-                              VIDEO_ORIENTATIONS = new int[]{Configuration.ORIENTATION_UNDEFINED, Configuration.ORIENTATION_LANDSCAPE, Configuration.ORIENTATION_PORTRAIT};
+                              VIDEO_ORIENTATIONS = new int[]{Configuration.ORIENTATION_UNDEFINED, Configuration.ORIENTATION_LANDSCAPE, Configuration.ORIENTATION_PORTRAIT},
+                              INTERNAL_AUDIO_ENCODINGS = new int[]{0, 1, 2}, //wav, aac, opus
+                              REPLAY_BUFFER_DURATIONS = new int[]{15, 30, 60, 120, 300},
+                              VIDEO_ENCODERS = new int[]{0, 1, 2}; //h264, hevc, av1
 
     public static final String[] INTERNAL_FONTS_PATHS = new String[]{"font/roboto.ttf", "font/roboto_mono.ttf", "font/bebas_neue.ttf", "font/oswald.ttf", "font/pacifico.ttf", "font/permanent_marker.ttf", "font/silkscreen.ttf", "font/monoton.ttf", "font/orbitron.ttf"};
 
@@ -63,6 +68,7 @@ public class KSettings {
                           IS_TO_SHOW_TEXT,
                           IS_TO_SHOW_TIME_ON_MENU,
                           IS_TO_SHOW_TIME_LIMIT_ON_MENU,
+                          IS_TO_SHOW_STATS_ON_MENU,
                           IS_TO_SHOW_CLOSE_BUTTON_ON_MENU,
                           IS_TO_SHOW_MINIMIZE_BUTTON_ON_MENU,
                           IS_TO_SHOW_CAMERA_BUTTON_ON_MENU,
@@ -82,7 +88,13 @@ public class KSettings {
                           IS_TO_OPEN_SHORTCUTS_ON_POPUP,
                           IS_TO_MERGE_INTERNAL_AUDIO,
                           IS_TO_USE_TAP_TO_ZOOM,
-                          IS_TO_USE_CUSTOM_WATERMARK;
+                          IS_TO_USE_CUSTOM_WATERMARK,
+                          IS_TO_USE_CODEC_RECORDER,
+                          IS_TO_RECORD_IN_SEGMENTS,
+                          IS_TO_USE_REPLAY_BUFFER,
+                          IS_TO_USE_ADAPTIVE_QUALITY,
+                          IS_TO_USE_VARIABLE_FRAME_RATE,
+                          IS_TO_COMPOSITE_OVERLAYS;
 
     private final int VIDEO_RESOLUTION,
                       VIDEO_QUALITY,
@@ -106,7 +118,13 @@ public class KSettings {
                       AUDIO_QUALITY,
                       CUSTOM_WATERMARK_POSITION,
                       CUSTOM_WATERMARK_OPACITY,
-                      CUSTOM_WATERMARK_SIZE;
+                      CUSTOM_WATERMARK_SIZE,
+                      INTERNAL_AUDIO_ENCODING,
+                      REPLAY_BUFFER_SECONDS,
+                      VIDEO_ENCODER,
+                      ADAPTIVE_MIN_VIDEO_QUALITY,
+                      ADAPTIVE_MIN_VIDEO_FRAME_RATE,
+                      VARIABLE_FRAME_RATE_MIN_FRAME_RATE;
 
     private final File SAVE_LOCATION,
                        SAVE_SCREENSHOT_LOCATION;
@@ -176,6 +194,7 @@ public class KSettings {
 
         this.IS_TO_SHOW_TIME_ON_MENU = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_SHOW_TIME_ON_MENU, DefaultSettings.IS_TO_SHOW_TIME_ON_MENU);
         this.IS_TO_SHOW_TIME_LIMIT_ON_MENU = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_SHOW_TIME_LIMIT_ON_MENU, DefaultSettings.IS_TO_SHOW_TIME_LIMIT_ON_MENU);
+        this.IS_TO_SHOW_STATS_ON_MENU = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_SHOW_STATS_ON_MENU, DefaultSettings.IS_TO_SHOW_STATS_ON_MENU);
         this.IS_TO_SHOW_CLOSE_BUTTON_ON_MENU = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_SHOW_CLOSE_BUTTON_ON_MENU, DefaultSettings.IS_TO_SHOW_CLOSE_BUTTON_ON_MENU);
         this.IS_TO_SHOW_CAMERA_BUTTON_ON_MENU = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_SHOW_CAMERA_BUTTON_ON_MENU, DefaultSettings.IS_TO_SHOW_CAMERA_BUTTON_ON_MENU);
         this.IS_TO_SHOW_DRAW_BUTTON_ON_MENU = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_SHOW_DRAW_BUTTON_ON_MENU, DefaultSettings.IS_TO_SHOW_DRAW_BUTTON_ON_MENU);
@@ -222,6 +241,17 @@ public class KSettings {
         this.VIDEO_QUALITY = spProfile.getInt(Constants.Sp.Profile.VIDEO_QUALITY_bitRate, DefaultSettings.VIDEO_QUALITY_bitRate);
         this.VIDEO_FRAME_RATE = spProfile.getInt(Constants.Sp.Profile.VIDEO_FRAME_RATE, DefaultSettings.VIDEO_FRAME_RATE);
         this.VIDEO_ORIENTATION = spProfile.getInt(Constants.Sp.Profile.VIDEO_ORIENTATION, DefaultSettings.VIDEO_ORIENTATION);
+        this.VIDEO_ENCODER = spProfile.getInt(Constants.Sp.Profile.VIDEO_ENCODER, DefaultSettings.VIDEO_ENCODER);
+        this.IS_TO_USE_ADAPTIVE_QUALITY = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_USE_ADAPTIVE_QUALITY, DefaultSettings.IS_TO_USE_ADAPTIVE_QUALITY);
+        this.ADAPTIVE_MIN_VIDEO_QUALITY = spProfile.getInt(Constants.Sp.Profile.ADAPTIVE_MIN_VIDEO_QUALITY_bitRate, DefaultSettings.ADAPTIVE_MIN_VIDEO_QUALITY_bitRate);
+        this.ADAPTIVE_MIN_VIDEO_FRAME_RATE = spProfile.getInt(Constants.Sp.Profile.ADAPTIVE_MIN_VIDEO_FRAME_RATE, DefaultSettings.ADAPTIVE_MIN_VIDEO_FRAME_RATE);
+        this.IS_TO_USE_VARIABLE_FRAME_RATE = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_USE_VARIABLE_FRAME_RATE, DefaultSettings.IS_TO_USE_VARIABLE_FRAME_RATE);
+        this.VARIABLE_FRAME_RATE_MIN_FRAME_RATE = spProfile.getInt(Constants.Sp.Profile.VARIABLE_FRAME_RATE_MIN_FRAME_RATE, DefaultSettings.VARIABLE_FRAME_RATE_MIN_FRAME_RATE);
+        this.IS_TO_COMPOSITE_OVERLAYS = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_COMPOSITE_OVERLAYS, DefaultSettings.IS_TO_COMPOSITE_OVERLAYS);
+        this.IS_TO_USE_CODEC_RECORDER = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_USE_CODEC_RECORDER, DefaultSettings.IS_TO_USE_CODEC_RECORDER);
+        this.IS_TO_RECORD_IN_SEGMENTS = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_RECORD_IN_SEGMENTS, DefaultSettings.IS_TO_RECORD_IN_SEGMENTS);
+        this.IS_TO_USE_REPLAY_BUFFER = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_USE_REPLAY_BUFFER, DefaultSettings.IS_TO_USE_REPLAY_BUFFER);
+        this.REPLAY_BUFFER_SECONDS = spProfile.getInt(Constants.Sp.Profile.REPLAY_BUFFER_SECONDS, DefaultSettings.REPLAY_BUFFER_SECONDS);
 
         this.IS_TO_GENERATE_AUDIO_AUDIO = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_GENERATE_AUDIO_AUDIO, DefaultSettings.IS_TO_GENERATE_AUDIO_AUDIO);
         this.IS_TO_GENERATE_AUDIO_ONLY_INTERNAL = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_GENERATE_AUDIO_ONLY_INTERNAL, DefaultSettings.IS_TO_GENERATE_AUDIO_ONLY_INTERNAL);
@@ -233,6 +263,7 @@ public class KSettings {
 
         this.AUDIO_SAMPLE_RATE = spProfile.getInt(Constants.Sp.Profile.AUDIO_SAMPLE_RATE, DefaultSettings.AUDIO_SAMPLE_RATE);
         this.AUDIO_QUALITY = spProfile.getInt(Constants.Sp.Profile.AUDIO_QUALITY_bitRate, DefaultSettings.AUDIO_QUALITY_bitRate);
+        this.INTERNAL_AUDIO_ENCODING = spProfile.getInt(Constants.Sp.Profile.INTERNAL_AUDIO_ENCODING, DefaultSettings.INTERNAL_AUDIO_ENCODING);
 
         this.IS_TO_USE_TAP_TO_ZOOM = spProfile.getBoolean(Constants.Sp.Profile.IS_TO_USE_TAP_TO_ZOOM, DefaultSettings.IS_TO_USE_TAP_TO_ZOOM);
         this.TAP_TO_ZOOM_FACTOR = spProfile.getFloat(Constants.Sp.Profile.TAP_TO_ZOOM_FACTOR, (float) DefaultSettings.TAP_TO_ZOOM_FACTOR);
@@ -317,6 +348,22 @@ public class KSettings {
         return IS_TO_MERGE_INTERNAL_AUDIO;
     }
 
+    public boolean isToUseCodecRecorder() {
+        return IS_TO_USE_CODEC_RECORDER;
+    }
+
+    public boolean isToRecordInSegments() {
+        return IS_TO_RECORD_IN_SEGMENTS;
+    }
+
+    public boolean isToUseReplayBuffer() {
+        return IS_TO_USE_REPLAY_BUFFER;
+    }
+
+    public int getReplayBufferSeconds() {
+        return REPLAY_BUFFER_SECONDS;
+    }
+
     public boolean isToShowFloatingMenu() {
         return IS_TO_SHOW_FLOATING_MENU;
     }
@@ -333,6 +380,10 @@ public class KSettings {
         return IS_TO_RECORD_INTERNAL_SOUND_IN_STEREO ? 2 : 1;
     }
 
+    public int getInternalAudioEncoding() {
+        return INTERNAL_AUDIO_ENCODING;
+    }
+
     public boolean isToToggleCameraOrientation() {
         return IS_TO_TOGGLE_CAMERA_ORIENTATION;
     }
@@ -345,6 +396,39 @@ public class KSettings {
         return VIDEO_RESOLUTION;
     }
 
+    public int getVideoEncoder() {
+        return VIDEO_ENCODER;
+    }
+
+    /** The mime type picked for the profile. It may still fall back to H.264, see {@link KEncoders#pickMimeType}. */
+    public String getVideoMimeType() {
+        return KEncoders.MIME_TYPES[VIDEO_ENCODER];
+    }
+
+    public boolean isToUseAdaptiveQuality() {
+        return IS_TO_USE_ADAPTIVE_QUALITY;
+    }
+
+    public int getAdaptiveMinVideoBitRate() {
+        return ADAPTIVE_MIN_VIDEO_QUALITY;
+    }
+
+    public int getAdaptiveMinVideoFrameRate() {
+        return ADAPTIVE_MIN_VIDEO_FRAME_RATE;
+    }
+
+    public boolean isToUseVariableFrameRate() {
+        return IS_TO_USE_VARIABLE_FRAME_RATE;
+    }
+
+    public int getVariableFrameRateMinFrameRate() {
+        return VARIABLE_FRAME_RATE_MIN_FRAME_RATE;
+    }
+
+    public boolean isToCompositeOverlays() {
+        return IS_TO_COMPOSITE_OVERLAYS;
+    }
+
     public int getVideoFrameRate() {
         return VIDEO_FRAME_RATE;
     }
@@ -561,6 +645,10 @@ public class KSettings {
         return isToShowTimeLimitOnMenuEnabled() && isToUseTimeLimit();
     }
 
+    public boolean isToShowStatsOnMenu() {
+        return IS_TO_SHOW_STATS_ON_MENU;
+    }
+
     public boolean isToShowCloseButtonOnMenu() {
         return IS_TO_SHOW_CLOSE_BUTTON_ON_MENU;
     }
@@ -930,6 +1018,32 @@ public class KSettings {
         return s;
     }
 
+    public static String[] getVideoEncodersFormatted(Context ctx) {
+        final String[] names = new String[]{
+            ctx.getString(R.string.setting_video_encoder_h264),
+            ctx.getString(R.string.setting_video_encoder_hevc),
+            ctx.getString(R.string.setting_video_encoder_av1)
+        };
+
+        for(int i = 0; i < names.length; i++) {
+            if(!KEncoders.isSupported(ctx, KEncoders.MIME_TYPES[i])) {
+                names[i] += " " + ctx.getString(R.string.setting_video_encoder_not_supported);
+            } else if(!KEncoders.isHardwareAccelerated(ctx, KEncoders.MIME_TYPES[i])) {
+                names[i] += " " + ctx.getString(R.string.setting_video_encoder_software);
+            }
+        }
+
+        return names;
+    }
+
+    public static String[] getInternalAudioEncodingsFormatted(Context ctx) {
+        return new String[]{
+            ctx.getString(R.string.setting_internal_encoding_wav),
+            ctx.getString(R.string.setting_internal_encoding_aac),
+            ctx.getString(R.string.setting_internal_encoding_opus)
+        };
+    }
+
     public static String[] getVideoOrientationsFormated(Context ctx) {
         final String[] s = new String[VIDEO_ORIENTATIONS.length];
 
@@ -0,0 +1,63 @@
+package dev.dect.scrnshoot.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dev.dect.scrnshoot.model.Scrnshoot;
+import dev.dect.scrnshoot.utils.ThumbnailLoader;
+
+/**
+ * Removes from the database the recordings, extras and screenshots whose files are gone (deleted from another app,
+ * moved, sd card removed), in the background so the gallery does not check every file before showing.
+ */
+public class LibraryReconciler {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** {@code onChanged} runs on the main thread, only if something was removed. */
+    public static void reconcile(Context ctx, Runnable onChanged) {
+        final Context context = ctx.getApplicationContext();
+
+        EXECUTOR.execute(() -> {
+            final DB db = new DB(context);
+
+            boolean changed = false;
+
+            for(Scrnshoot scrnshoot : db.selectAllScrnshoots(true)) {
+                if(!new File(scrnshoot.getLocation()).exists()) {
+                    ThumbnailLoader.delete(context, scrnshoot);
+
+                    db.deleteScrnshoot(scrnshoot);
+
+                    changed = true;
+
+                    continue;
+                }
+
+                for(Scrnshoot.Extra extra : scrnshoot.getExtras()) {
+                    if(!new File(extra.getLocation()).exists()) {
+                        db.deleteExtra(extra);
+
+                        changed = true;
+                    }
+                }
+
+                for(Scrnshoot.Screenshot screenshot : scrnshoot.getScreenshots()) {
+                    if(!new File(screenshot.getLocation()).exists()) {
+                        db.deleteScreenshot(screenshot);
+
+                        changed = true;
+                    }
+                }
+            }
+
+            if(changed && onChanged != null) {
+                new Handler(Looper.getMainLooper()).post(onChanged);
+            }
+        });
+    }
+}
@@ -0,0 +1,43 @@
+package dev.dect.scrnshoot.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dev.dect.scrnshoot.model.Scrnshoot;
+
+/**
+ * Fills in the metadata columns of recordings saved before they existed, one file at a time in the background,
+ * so listing and sorting never have to open the videos.
+ */
+public class MetadataIndexer {
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    /** {@code onIndexed} runs on the main thread, only if something was filled in. */
+    public static void index(Context ctx, Runnable onIndexed) {
+        final Context context = ctx.getApplicationContext();
+
+        EXECUTOR.execute(() -> {
+            final DB db = new DB(context);
+
+            boolean indexed = false;
+
+            for(Scrnshoot scrnshoot : db.selectScrnshootsWithoutMetadata()) {
+                scrnshoot.retrieveMetadata();
+
+                if(scrnshoot.hasMetadata()) {
+                    db.updateMetadata(scrnshoot);
+
+                    indexed = true;
+                }
+            }
+
+            if(indexed && onIndexed != null) {
+                new Handler(Looper.getMainLooper()).post(onIndexed);
+            }
+        });
+    }
+}
@@ -49,7 +49,6 @@ import com.google.android.material.appbar.AppBarLayout;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.Locale;
 import java.util.Objects;
 
@@ -60,6 +59,8 @@ import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.DB;
 import dev.dect.scrnshoot.data.DefaultSettings;
 import dev.dect.scrnshoot.data.KSharedPreferences;
+import dev.dect.scrnshoot.data.LibraryReconciler;
+import dev.dect.scrnshoot.data.MetadataIndexer;
 import dev.dect.scrnshoot.model.Scrnshoot;
 import dev.dect.scrnshoot.popup.DialogPopup;
 import dev.dect.scrnshoot.popup.ExtraPopup;
@@ -71,6 +72,7 @@ import dev.dect.scrnshoot.service.CapturingService;
 import dev.dect.scrnshoot.service.ShortcutOverlayService;
 import dev.dect.scrnshoot.utils.KFile;
 import dev.dect.scrnshoot.utils.KProfile;
+import dev.dect.scrnshoot.utils.ThumbnailLoader;
 import dev.dect.scrnshoot.utils.Utils;
 
 /** @noinspection ResultOfMethodCallIgnored*/
@@ -84,6 +86,9 @@ public class ScrnshootsFragment extends Fragment {
                             STYLE_GRID_BIG = 1,
                             STYLE_GRID_SMALL = 2;
 
+    private static final int PAGE_SIZE = 30,
+                             PAGE_LOAD_THRESHOLD = 2000;
+
     private Context CONTEXT;
 
     private View VIEW;
@@ -106,6 +111,8 @@ public class ScrnshootsFragment extends Fragment {
 
     private DB DATABASE;
 
+    private DB.Page PAGE;
+
     private SwipeRefreshLayout SWIPE_REFRESH;
 
     private int SORT_BY;
@@ -231,7 +238,7 @@ public class ScrnshootsFragment extends Fragment {
 
         DATABASE = new DB(CONTEXT);
 
-        getAndValidateScrnshoots();
+        loadScrnshoots();
 
         IS_TABLET_UI = CONTEXT.getResources().getBoolean(R.bool.is_tablet);
 
@@ -254,10 +261,12 @@ public class ScrnshootsFragment extends Fragment {
 
             popupMenu.getMenuInflater().inflate(R.menu.capture_more, menu);
 
-            if(KAPTURES.size() < 2) {
+            final long total = DATABASE.countScrnshoots();
+
+            if(total < 2) {
                 menu.findItem(R.id.menuSort).setEnabled(false);
 
-                if(KAPTURES.isEmpty()) {
+                if(total == 0) {
                     menu.findItem(R.id.menuSelectAll).setEnabled(false);
                     menu.findItem(R.id.wifiShare).setEnabled(false);
                 }
@@ -273,7 +282,7 @@ public class ScrnshootsFragment extends Fragment {
                 } else if(id == R.id.menuSort) {
                     new SortPopup(CONTEXT, SORT_BY, SORT_ASC, this::sortBy).show();
                 } else if(id == R.id.wifiShare) {
-                    new WifiShare(CONTEXT, KAPTURES).start();
+                    new WifiShare(CONTEXT).start();
                 } else if(id == R.id.menuOpenAccessibility) {
                     Utils.ExternalActivity.requestAccessibility(CONTEXT);
                 } else if(id == R.id.menuShowCommand) {
@@ -362,6 +371,10 @@ public class ScrnshootsFragment extends Fragment {
                     SEARCH_BTN_MIC_OR_CLEAR.setImageResource(R.drawable.icon_tool_bar_clear);
                 }
 
+                if(!s.toString().trim().isEmpty()) {
+                    loadAllPages();
+                }
+
                 ADAPTER.getFilter().filter(s, (i) -> VIEW.findViewById(R.id.noCapture).setVisibility(ADAPTER.getItemCount() == 0 ? View.VISIBLE : View.GONE));
             }
 
@@ -391,6 +404,10 @@ public class ScrnshootsFragment extends Fragment {
         NESTED_SCROLL_VIEW.setOnScrollChangeListener((NestedScrollView.OnScrollChangeListener) (v, x, y, oldX, oldY) -> {
             SCROLL_HANDLER.removeCallbacksAndMessages(null);
 
+            if(y + v.getHeight() >= v.getChildAt(0).getHeight() - PAGE_LOAD_THRESHOLD) {
+                loadNextPage();
+            }
+
             if(y <= 5) {
                 BTN_BACK_TO_TOP.setVisibility(View.GONE);
                 BTNS_FLOATING_CONTAINER.setVisibility(View.VISIBLE);
@@ -508,54 +525,82 @@ public class ScrnshootsFragment extends Fragment {
         }
     }
 
-    private void getAndValidateScrnshoots() {
+    private void loadScrnshoots() {
         KAPTURES = new ArrayList<>();
 
-        for(Scrnshoot scrnshoot : DATABASE.selectAllScrnshoots(true)) {
-            if(new File(scrnshoot.getLocation()).exists()) {
-                if(scrnshoot.hasExtras()) {
-                    final ArrayList<Scrnshoot.Extra> extras = new ArrayList<>();
+        sortAdapter(false);
 
-                    for(Scrnshoot.Extra extra : scrnshoot.getExtras()) {
-                        if(new File(extra.getLocation()).exists()) {
-                            extras.add(extra);
-                        } else {
-                            DATABASE.deleteExtra(extra);
-                        }
-                    }
+        MetadataIndexer.index(CONTEXT, () -> {
+            if(SORT_BY == SortPopup.SORT_SIZE || SORT_BY == SortPopup.SORT_DURATION) {
+                onLibraryChanged();
+            }
+        });
+    }
 
-                    if(extras.size() != scrnshoot.getExtras().size()) {
-                        scrnshoot.setExtras(extras);
-                    }
-                }
+    /** Starts over from the first page, loading as many recordings as were shown. */
+    private void reloadPages() {
+        final int amount = Math.max(PAGE_SIZE, KAPTURES.size());
 
-                if(scrnshoot.hasScreenshots()) {
-                    final ArrayList<Scrnshoot.Screenshot> screenshots = new ArrayList<>();
+        final int order;
 
-                    for(Scrnshoot.Screenshot screenshot : scrnshoot.getScreenshots()) {
-                        if(new File(screenshot.getLocation()).exists()) {
-                            screenshots.add(screenshot);
-                        } else {
-                            DATABASE.deleteScreenshot(screenshot);
-                        }
-                    }
+        switch(SORT_BY) {
+            case SortPopup.SORT_NAME:
+                order = DB.Page.ORDER_NAME;
+                break;
 
-                    if(screenshots.size() != scrnshoot.getExtras().size()) {
-                        scrnshoot.setScreenshots(screenshots);
-                    }
-                }
+            case SortPopup.SORT_SIZE:
+                order = DB.Page.ORDER_SIZE;
+                break;
 
-                KAPTURES.add(scrnshoot);
-            } else {
-                if(scrnshoot.getThumbnailCachedFile().exists()) {
-                    scrnshoot.getThumbnailCachedFile().delete();
-                }
+            case SortPopup.SORT_DURATION:
+                order = DB.Page.ORDER_DURATION;
+                break;
 
-                DATABASE.deleteScrnshoot(scrnshoot);
-            }
+            default:
+                order = DB.Page.ORDER_CREATION_TIME;
+                break;
         }
 
-        sortAdapter(false);
+        PAGE = new DB.Page(order, SORT_ASC);
+
+        KAPTURES.clear();
+        KAPTURES.addAll(DATABASE.selectNextPage(PAGE, amount));
+    }
+
+    private void loadNextPage() {
+        if(PAGE == null || !PAGE.hasMore() || ADAPTER == null) {
+            return;
+        }
+
+        KAPTURES.addAll(DATABASE.selectNextPage(PAGE, PAGE_SIZE));
+
+        ADAPTER.getFilter().filter(SEARCH_INPUT.getText());
+    }
+
+    /** Search and select all work on every recording, not only the ones scrolled to. */
+    private void loadAllPages() {
+        if(PAGE == null || !PAGE.hasMore()) {
+            return;
+        }
+
+        KAPTURES.addAll(DATABASE.selectNextPage(PAGE, Integer.MAX_VALUE));
+    }
+
+    /** After recordings were removed or indexed in the background. */
+    private void onLibraryChanged() {
+        if(ADAPTER == null || !isAdded()) {
+            return;
+        }
+
+        unselectAll();
+
+        reloadPages();
+
+        ADAPTER.getFilter().filter(SEARCH_INPUT.getText());
+
+        setEmptyAdapterIfEmpty();
+
+        updateSubtitle();
     }
 
     private void buildRecyclerView() {
@@ -702,82 +747,7 @@ public class ScrnshootsFragment extends Fragment {
     }
 
     private void refreshAll() {
-        final ArrayList<Integer> indexesHelper = new ArrayList<>();
-
-        for(int i = 0; i < KAPTURES.size(); i++) {
-            if(!new File(KAPTURES.get(i).getLocation()).exists()) {
-                final Scrnshoot scrnshoot = KAPTURES.get(i);
-
-                if(scrnshoot.getThumbnailCachedFile().exists()) {
-                    scrnshoot.getThumbnailCachedFile().delete();
-                }
-
-                DATABASE.deleteScrnshoot(scrnshoot);
-
-                indexesHelper.add(i);
-            }
-        }
-
-        for(int i = indexesHelper.size() - 1; i >= 0; i--) {
-            final int indexToRemove = indexesHelper.get(i);
-
-            KAPTURES.remove(indexToRemove);
-            ADAPTER.notifyItemRemoved(indexToRemove);
-        }
-
-        indexesHelper.clear();
-
-        for(int i = 0; i < KAPTURES.size(); i++) {
-            final Scrnshoot scrnshoot = KAPTURES.get(i);
-
-            if(scrnshoot.hasExtras()) {
-                final ArrayList<Scrnshoot.Extra> extras = new ArrayList<>();
-
-                for(Scrnshoot.Extra extra : scrnshoot.getExtras()) {
-
-                    if(new File(extra.getLocation()).exists()) {
-                        extras.add(extra);
-                    } else {
-
-                        DATABASE.deleteExtra(extra);
-                    }
-                }
-
-                if(extras.size() != scrnshoot.getExtras().size()) {
-                    scrnshoot.setExtras(extras);
-
-                    indexesHelper.add(i);
-                }
-            }
-
-            if(scrnshoot.hasScreenshots()) {
-                final ArrayList<Scrnshoot.Screenshot> screenshots = new ArrayList<>();
-
-                for(Scrnshoot.Screenshot screenshot : scrnshoot.getScreenshots()) {
-
-                    if(new File(screenshot.getLocation()).exists()) {
-                        screenshots.add(screenshot);
-                    } else {
-
-                        DATABASE.deleteScreenshot(screenshot);
-                    }
-                }
-
-                if(screenshots.size() != scrnshoot.getScreenshots().size()) {
-                    scrnshoot.setScreenshots(screenshots);
-
-                    indexesHelper.add(i);
-                }
-            }
-        }
-
-        for(int i = 0; i < indexesHelper.size(); i++) {
-            final int indexToUpdate = indexesHelper.get(i);
-
-            ADAPTER.notifyItemChanged(indexToUpdate);
-        }
-
-        setEmptyAdapterIfEmpty();
+        LibraryReconciler.reconcile(CONTEXT, this::onLibraryChanged);
 
         updateSubtitle();
     }
@@ -795,7 +765,7 @@ public class ScrnshootsFragment extends Fragment {
     }
 
     private void sortAdapter(boolean notify) {
-        sortList(KAPTURES);
+        reloadPages();
 
         if(notify) {
             clearSearch();
@@ -804,51 +774,14 @@ public class ScrnshootsFragment extends Fragment {
         }
     }
 
-    private void sortList(ArrayList<Scrnshoot> list) {
-        if(SORT_ASC) {
-            switch(SORT_BY) {
-                case SortPopup.SORT_NAME:
-                    list.sort(Comparator.comparing(Scrnshoot::getName));
-                    break;
-
-                case SortPopup.SORT_DATE_CAPTURING:
-                    list.sort(Comparator.comparing(Scrnshoot::getCreationTime));
-                    break;
-
-                case SortPopup.SORT_SIZE:
-                    list.sort(Comparator.comparing(Scrnshoot::getSize));
-                    break;
-
-                case SortPopup.SORT_DURATION:
-                    list.sort(Comparator.comparing(Scrnshoot::getDuration));
-                    break;
-
-            }
-        } else {
-            switch(SORT_BY) {
-                case SortPopup.SORT_NAME:
-                    list.sort(Comparator.comparing(Scrnshoot::getName).reversed());
-                    break;
-
-                case SortPopup.SORT_DATE_CAPTURING:
-                    list.sort(Comparator.comparing(Scrnshoot::getCreationTime).reversed());
-                    break;
-
-                case SortPopup.SORT_SIZE:
-                    list.sort(Comparator.comparing(Scrnshoot::getSize).reversed());
-                    break;
+    private void selectAll() {
+        loadAllPages();
 
-                case SortPopup.SORT_DURATION:
-                    list.sort(Comparator.comparing(Scrnshoot::getDuration).reversed());
-                    break;
+        ADAPTER.getFilter().filter(SEARCH_INPUT.getText(), (c) -> {
+            for(int i = 0; i < ADAPTER.getItemCount(); i++) {
+                TRACKER.select((long) i);
             }
-        }
-    }
-
-    private void selectAll() {
-        for(int i = 0; i < ADAPTER.getItemCount(); i++) {
-            TRACKER.select((long) i);
-        }
+        });
     }
 
     public void unselectAll() {
@@ -909,9 +842,7 @@ public class ScrnshootsFragment extends Fragment {
                         }
                     }
 
-                    if(scrnshoot.getThumbnailCachedFile().exists()) {
-                        scrnshoot.getThumbnailCachedFile().delete();
-                    }
+                    ThumbnailLoader.delete(CONTEXT, scrnshoot);
 
                     DATABASE.deleteScrnshoot(scrnshoot);
                 }
@@ -1014,9 +945,7 @@ public class ScrnshootsFragment extends Fragment {
                 for(Scrnshoot scrnshoot : toRemove) {
                     DATABASE.deleteScrnshoot(scrnshoot);
 
-                    if(scrnshoot.getThumbnailCachedFile().exists()) {
-                        scrnshoot.getThumbnailCachedFile().delete();
-                    }
+                    ThumbnailLoader.delete(CONTEXT, scrnshoot);
                 }
 
                 unselectAll();
@@ -1204,7 +1133,9 @@ public class ScrnshootsFragment extends Fragment {
     }
 
     private void updateSubtitle() {
-        SUBTITLE.setText(KAPTURES.size() + " " + CONTEXT.getString(KAPTURES.size() == 1 ? R.string.scrnshoot : R.string.scrnshoot_plural));
+        final long total = DATABASE.countScrnshoots();
+
+        SUBTITLE.setText(total + " " + CONTEXT.getString(total == 1 ? R.string.scrnshoot : R.string.scrnshoot_plural));
     }
 
     public void openSettings_tabletUi() {
@@ -456,12 +456,37 @@ public class SettingsFragment extends Fragment {
 
         listPickers0.add(new ListPicker.NumberInteger(R.string.setting_video_quality, settings.getVideoBitRate(), KSettings.VIDEO_QUALITIES, KSettings.getVideoQualitiesFormatted(), Constants.Sp.Profile.VIDEO_QUALITY_bitRate, false));
 
+        listPickers0.add(new ListPicker.NumberInteger(R.string.setting_video_encoder, settings.getVideoEncoder(), KSettings.VIDEO_ENCODERS, KSettings.getVideoEncodersFormatted(CONTEXT), Constants.Sp.Profile.VIDEO_ENCODER, false));
+
         listPickers0.add(new ListPicker.NumberInteger(R.string.setting_video_fps, settings.getVideoFrameRate(), KSettings.VIDEO_FRAME_RATES, null, Constants.Sp.Profile.VIDEO_FRAME_RATE, false));
 
-        listPickers0.add(new ListPicker.NumberInteger(R.string.setting_video_orientation, settings.getVideoOrientation(), KSettings.VIDEO_ORIENTATIONS, KSettings.getVideoOrientationsFormated(CONTEXT), Constants.Sp.Profile.VIDEO_ORIENTATION, true));
+        listPickers0.add(new ListPicker.NumberInteger(R.string.setting_video_orientation, settings.getVideoOrientation(), KSettings.VIDEO_ORIENTATIONS, KSettings.getVideoOrientationsFormated(CONTEXT), Constants.Sp.Profile.VIDEO_ORIENTATION, false));
 
         concatAdapter.addAdapter(new ListPicker.Adapter(listPickers0, false));
 
+        final ArrayList<ListSwitch> listSwitches0 = new ArrayList<>();
+
+        listSwitches0.add(new ListSwitch(R.string.setting_video_codec_recorder, R.string.setting_video_codec_recorder_description, Constants.Sp.Profile.IS_TO_USE_CODEC_RECORDER, settings.isToUseCodecRecorder(), false));
+        listSwitches0.add(new ListSwitch(R.string.setting_video_segments, R.string.setting_video_segments_description, Constants.Sp.Profile.IS_TO_RECORD_IN_SEGMENTS, settings.isToRecordInSegments(), false));
+        listSwitches0.add(new ListSwitch(R.string.setting_video_replay_buffer, R.string.setting_video_replay_buffer_description, Constants.Sp.Profile.IS_TO_USE_REPLAY_BUFFER, settings.isToUseReplayBuffer(), false));
+        listSwitches0.add(new ListSwitch(R.string.setting_video_adaptive_quality, R.string.setting_video_adaptive_quality_description, Constants.Sp.Profile.IS_TO_USE_ADAPTIVE_QUALITY, settings.isToUseAdaptiveQuality(), false));
+        listSwitches0.add(new ListSwitch(R.string.setting_video_variable_frame_rate, R.string.setting_video_variable_frame_rate_description, Constants.Sp.Profile.IS_TO_USE_VARIABLE_FRAME_RATE, settings.isToUseVariableFrameRate(), false));
+        listSwitches0.add(new ListSwitch(R.string.setting_video_composite_overlays, R.string.setting_video_composite_overlays_description, Constants.Sp.Profile.IS_TO_COMPOSITE_OVERLAYS, settings.isToCompositeOverlays(), false));
+
+        concatAdapter.addAdapter(new ListSwitch.Adapter(listSwitches0, false));
+
+        final ArrayList<ListPicker> listPickers1 = new ArrayList<>();
+
+        listPickers1.add(new ListPicker.NumberInteger(R.string.setting_video_replay_buffer_seconds, settings.getReplayBufferSeconds(), KSettings.REPLAY_BUFFER_DURATIONS, null, Constants.Sp.Profile.REPLAY_BUFFER_SECONDS, false));
+
+        listPickers1.add(new ListPicker.NumberInteger(R.string.setting_video_adaptive_min_quality, settings.getAdaptiveMinVideoBitRate(), KSettings.VIDEO_QUALITIES, KSettings.getVideoQualitiesFormatted(), Constants.Sp.Profile.ADAPTIVE_MIN_VIDEO_QUALITY_bitRate, false));
+
+        listPickers1.add(new ListPicker.NumberInteger(R.string.setting_video_adaptive_min_fps, settings.getAdaptiveMinVideoFrameRate(), KSettings.VIDEO_FRAME_RATES, null, Constants.Sp.Profile.ADAPTIVE_MIN_VIDEO_FRAME_RATE, false));
+
+        listPickers1.add(new ListPicker.NumberInteger(R.string.setting_video_variable_frame_rate_min_fps, settings.getVariableFrameRateMinFrameRate(), KSettings.VARIABLE_FRAME_RATE_MIN_FRAME_RATES, null, Constants.Sp.Profile.VARIABLE_FRAME_RATE_MIN_FRAME_RATE, true));
+
+        concatAdapter.addAdapter(new ListPicker.Adapter(listPickers1, false));
+
         return new ListGroup.Adapter(new ListGroup(R.string.setting_group_video, concatAdapter));
     }
 
@@ -484,10 +509,16 @@ public class SettingsFragment extends Fragment {
 
         listSwitches0.add(new ListSwitch(R.string.setting_internal_capture, R.string.setting_internal_capture_description, Constants.Sp.Profile.IS_TO_RECORD_INTERNAL_AUDIO, settings.isToRecordInternalAudio(), false));
         listSwitches0.add(new ListSwitch(R.string.setting_internal_stereo, ListSwitch.NO_TEXT, Constants.Sp.Profile.IS_TO_RECORD_SOUND_IN_STEREO, settings.isToRecordInternalAudioInStereo(), false));
-        listSwitches0.add(new ListSwitch(R.string.setting_internal_merge, R.string.setting_internal_merge_description, Constants.Sp.Profile.IS_TO_MERGE_INTERNAL_AUDIO, settings.isToMergeInternalAudio(), true));
+        listSwitches0.add(new ListSwitch(R.string.setting_internal_merge, R.string.setting_internal_merge_description, Constants.Sp.Profile.IS_TO_MERGE_INTERNAL_AUDIO, settings.isToMergeInternalAudio(), false));
 
         concatAdapter.addAdapter(new ListSwitch.Adapter(listSwitches0, false));
 
+        final ArrayList<ListPicker> listPickers0 = new ArrayList<>();
+
+        listPickers0.add(new ListPicker.NumberInteger(R.string.setting_internal_encoding, settings.getInternalAudioEncoding(), KSettings.INTERNAL_AUDIO_ENCODINGS, KSettings.getInternalAudioEncodingsFormatted(CONTEXT), Constants.Sp.Profile.INTERNAL_AUDIO_ENCODING, true));
+
+        concatAdapter.addAdapter(new ListPicker.Adapter(listPickers0, false));
+
         return new ListGroup.Adapter(new ListGroup(R.string.setting_group_internal, concatAdapter));
     }
 
@@ -790,6 +821,7 @@ public class SettingsFragment extends Fragment {
 
         listSwitches0.add(new ListSwitch(R.string.setting_menu_show_time, ListSwitch.NO_TEXT, Constants.Sp.Profile.IS_TO_SHOW_TIME_ON_MENU, settings.isToShowTimeOnMenu(), false));
         listSwitches0.add(new ListSwitch(R.string.setting_menu_show_time_limit, R.string.setting_menu_show_time_limit_description, Constants.Sp.Profile.IS_TO_SHOW_TIME_LIMIT_ON_MENU, settings.isToShowTimeLimitOnMenuEnabled(), false));
+        listSwitches0.add(new ListSwitch(R.string.setting_menu_show_stats, R.string.setting_menu_show_stats_description, Constants.Sp.Profile.IS_TO_SHOW_STATS_ON_MENU, settings.isToShowStatsOnMenu(), false));
         listSwitches0.add(new ListSwitch(R.string.setting_menu_show_pause_resume, ListSwitch.NO_TEXT, Constants.Sp.Profile.IS_TO_SHOW_PAUSE_RESUME_BUTTON_ON_MENU, settings.isToShowPauseResumeButtonOnMenu(), false));
         listSwitches0.add(new ListSwitch(R.string.setting_menu_show_close, R.string.setting_menu_show_close_description, Constants.Sp.Profile.IS_TO_SHOW_CLOSE_BUTTON_ON_MENU, settings.isToShowCloseButtonOnMenu(), false));
         listSwitches0.add(new ListSwitch(R.string.setting_menu_show_screenshot, ListSwitch.NO_TEXT, Constants.Sp.Profile.IS_TO_SHOW_SCREENSHOT_BUTTON_ON_MENU, settings.isToShowScreenshotButtonOnMenu(), false));
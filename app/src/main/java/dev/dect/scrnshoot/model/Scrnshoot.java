@@ -1,26 +1,17 @@
 package dev.dect.scrnshoot.model;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
 import android.media.MediaMetadataRetriever;
-import android.media.ThumbnailUtils;
-import android.os.CancellationSignal;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
 import android.util.Log;
-import android.util.Size;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Objects;
 
 import dev.dect.scrnshoot.R;
 import dev.dect.scrnshoot.utils.KFile;
-import dev.dect.scrnshoot.utils.Utils;
 
 /** @noinspection ResultOfMethodCallIgnored*/
 public class Scrnshoot {
@@ -39,15 +30,21 @@ public class Scrnshoot {
 
     private ArrayList<Screenshot> SCREENSHOTS;
 
+    private ArrayList<Marker> MARKERS = new ArrayList<>();
+
+    private Stats STATS = null;
+
     private File FILE;
 
-    private long DURATION = -1;
+    private long DURATION = -1,
+                 SIZE = -1,
+                 CREATION_TIME = -1;
 
-    private Bitmap THUMBNAIL = null;
+    private int BIT_RATE = -1;
 
-    private int[] VIDEO_SIZE;
+    private String CODEC;
 
-    private boolean HAS_MEDIA_DATA = false;
+    private int[] VIDEO_SIZE;
 
     private String PROFILE_ID,
                    FROM;
@@ -77,32 +74,44 @@ public class Scrnshoot {
     }
 
     public long getCreationTime() {
-        return FILE.lastModified();
+        return CREATION_TIME == -1 ? FILE.lastModified() : CREATION_TIME;
     }
 
     public long getSize() {
-        return FILE.length();
+        return SIZE == -1 ? FILE.length() : SIZE;
     }
 
     public long getDuration() {
         if(DURATION == -1) {
-            retrieveAllMediaData();
+            retrieveMetadata();
         }
 
         return DURATION;
     }
 
-    public Bitmap getThumbnail() {
-        if(THUMBNAIL == null) {
-            retrieveAllMediaData();
-        }
+    /** Without opening the file, -1 until the metadata is known. For sorting on the UI thread. */
+    public long getKnownDuration() {
+        return DURATION;
+    }
 
-        return THUMBNAIL;
+    /** Mime type of the video track, null if unknown. */
+    public String getCodec() {
+        return CODEC;
+    }
+
+    /** -1 if unknown. */
+    public int getBitRate() {
+        return BIT_RATE;
+    }
+
+    /** Whether duration, size, dates, codec and bit rate are known, from the database or {@link #retrieveMetadata()}. */
+    public boolean hasMetadata() {
+        return DURATION != -1 && VIDEO_SIZE != null;
     }
 
     public int[] getVideoSize() {
         if(VIDEO_SIZE == null) {
-            retrieveAllMediaData();
+            retrieveMetadata();
         }
 
         return VIDEO_SIZE;
@@ -124,6 +133,15 @@ public class Scrnshoot {
         return SCREENSHOTS;
     }
 
+    public ArrayList<Marker> getMarkers() {
+        return MARKERS;
+    }
+
+    /** Null for recordings made before stats were kept and for the ones not recorded on the phone. */
+    public Stats getStats() {
+        return STATS;
+    }
+
     public File getFile() {
         return FILE;
     }
@@ -176,10 +194,27 @@ public class Scrnshoot {
         this.SCREENSHOTS = screenshots == null ? new ArrayList<>() : screenshots;
     }
 
+    public void setMarkers(ArrayList<Marker> markers) {
+        this.MARKERS = markers == null ? new ArrayList<>() : markers;
+    }
+
+    public void setStats(Stats stats) {
+        this.STATS = stats;
+    }
+
     public void setProfileId(String profileId) {
         this.PROFILE_ID = profileId;
     }
 
+    public void setMetadata(long duration, int width, int height, long size, long creationTime, String codec, int bitRate) {
+        this.DURATION = duration;
+        this.VIDEO_SIZE = new int[]{width, height};
+        this.SIZE = size;
+        this.CREATION_TIME = creationTime;
+        this.CODEC = codec;
+        this.BIT_RATE = bitRate;
+    }
+
     public void addExtra(Extra extra) {
         if(extra.getIdScrnshoot() == -1) {
             extra.setIdScrnshoot(this.ID);
@@ -196,8 +231,17 @@ public class Scrnshoot {
         this.SCREENSHOTS.add(screenshot);
     }
 
-    public void retrieveAllMediaData() {
-        if(HAS_MEDIA_DATA) {
+    public void addMarker(Marker marker) {
+        if(marker.getIdScrnshoot() == -1) {
+            marker.setIdScrnshoot(this.ID);
+        }
+
+        this.MARKERS.add(marker);
+    }
+
+    /** Reads what is kept in the database from the file itself, does nothing if already known. Opens the file, not for the UI thread. */
+    public void retrieveMetadata() {
+        if(hasMetadata()) {
             return;
         }
 
@@ -206,76 +250,44 @@ public class Scrnshoot {
 
             mediaMetadataRetriever.setDataSource(LOCATION);
 
-            DURATION = Long.parseLong(Objects.requireNonNull(mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION)));
+            final String bitRate = mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_BITRATE);
 
-            VIDEO_SIZE = new int[] {
+            setMetadata(
+                Long.parseLong(Objects.requireNonNull(mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION))),
                 Integer.parseInt(Objects.requireNonNull(mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH))),
-                Integer.parseInt(Objects.requireNonNull(mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT)))
-            };
-
-            if(ID == -1) {
-                THUMBNAIL = generateThumbnail();
-            } else {
-                final File cachedThumbnail = getThumbnailCachedFile();
-
-                if(cachedThumbnail.exists()) {
-                    THUMBNAIL = BitmapFactory.decodeFile(cachedThumbnail.getPath());
-                } else {
-                    THUMBNAIL = generateThumbnail();
-
-                    cachedThumbnail.createNewFile();
-
-                    final FileOutputStream fos = new FileOutputStream(cachedThumbnail);
-
-                    THUMBNAIL.compress(Bitmap.CompressFormat.JPEG, 100, fos);
-
-                    fos.flush();
-                    fos.close();
-                }
-            }
+                Integer.parseInt(Objects.requireNonNull(mediaMetadataRetriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT))),
+                FILE.length(),
+                FILE.lastModified(),
+                retrieveVideoCodec(),
+                bitRate == null ? -1 : Integer.parseInt(bitRate)
+            );
 
             mediaMetadataRetriever.close();
-
-            HAS_MEDIA_DATA = true;
         } catch (Exception e) {
-            Log.e(TAG, "retrieveAllMediaData: " + e.getMessage());
+            Log.e(TAG, "retrieveMetadata: " + e.getMessage());
         }
     }
 
-    public void retrieveAllMediaData(Runnable runnable) {
-        final HandlerThread handlerThread = new HandlerThread("RMD");
-
-        handlerThread.start();
+    private String retrieveVideoCodec() {
+        final MediaExtractor extractor = new MediaExtractor();
 
-        Handler handler = new Handler(handlerThread.getLooper());
-
-        handler.post(() -> {
-            retrieveAllMediaData();
-
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                runnable.run();
-
-                handlerThread.quit();
-            }, 0);
-        });
-    }
+        try {
+            extractor.setDataSource(LOCATION);
 
-    private Bitmap generateThumbnail() throws IOException {
-        final Bitmap thumbnail = ThumbnailUtils.createVideoThumbnail(
-            new File(LOCATION),
-            new Size(Math.min(1080, VIDEO_SIZE[0]), Math.min(1080, VIDEO_SIZE[1])),
-            new CancellationSignal()
-        );
+            for(int i = 0; i < extractor.getTrackCount(); i++) {
+                final String mime = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
 
-        if(isFromWatch()) {
-            return Utils.cropWatchThumbnail(thumbnail);
+                if(mime != null && mime.startsWith("video/")) {
+                    return mime;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "retrieveVideoCodec: " + e.getMessage());
+        } finally {
+            extractor.release();
         }
 
-        return thumbnail;
-    }
-
-    public File getThumbnailCachedFile() {
-        return new File(CONTEXT.getCacheDir(), "thumbnail_" + ID + ".jpeg");
+        return null;
     }
 
     public void notifyAllMediaScanner() {
@@ -466,4 +478,132 @@ public class Scrnshoot {
             this.LOCATION = l;
         }
     }
+
+    /** Something that changed while recording, e.g. the quality being adjusted, at {@code time} ms into the video. */
+    public static class Marker {
+        private long ID,
+                     ID_KAPTURE,
+                     TIME;
+
+        private int BIT_RATE,
+                    FRAME_RATE;
+
+        private String REASON;
+
+        public Marker() {
+            this(-1, -1, 0, 0, 0, "");
+        }
+
+        public Marker(long time, int bitRate, int frameRate, String reason) {
+            this(-1, -1, time, bitRate, frameRate, reason);
+        }
+
+        public Marker(long id, long idScrnshoot, long time, int bitRate, int frameRate, String reason) {
+            this.ID = id;
+            this.ID_KAPTURE = idScrnshoot;
+            this.TIME = time;
+            this.BIT_RATE = bitRate;
+            this.FRAME_RATE = frameRate;
+            this.REASON = reason;
+        }
+
+        public long getId() {
+            return ID;
+        }
+
+        public long getIdScrnshoot() {
+            return ID_KAPTURE;
+        }
+
+        public long getTime() {
+            return TIME;
+        }
+
+        public int getBitRate() {
+            return BIT_RATE;
+        }
+
+        public int getFrameRate() {
+            return FRAME_RATE;
+        }
+
+        public String getReason() {
+            return REASON;
+        }
+
+        public void setId(long id) {
+            this.ID = id;
+        }
+
+        public void setIdScrnshoot(long idScrnshoot) {
+            this.ID_KAPTURE = idScrnshoot;
+        }
+
+        public void setTime(long time) {
+            this.TIME = time;
+        }
+
+        public void setBitRate(int bitRate) {
+            this.BIT_RATE = bitRate;
+        }
+
+        public void setFrameRate(int frameRate) {
+            this.FRAME_RATE = frameRate;
+        }
+
+        public void setReason(String reason) {
+            this.REASON = reason;
+        }
+    }
+
+    /** How a recording went, summed up when it stopped. The rates are averages over the time not paused, -1 when unknown. */
+    public static class Stats {
+        private final long DURATION,
+                           DROPPED_FRAMES,
+                           WRITE_RATE,
+                           AUDIO_LOSSES,
+                           AUDIO_FRAMES_LOST;
+
+        private final float FRAME_RATE;
+
+        private final int BIT_RATE;
+
+        public Stats(long duration, float frameRate, long droppedFrames, int bitRate, long writeRate, long audioLosses, long audioFramesLost) {
+            this.DURATION = duration;
+            this.FRAME_RATE = frameRate;
+            this.DROPPED_FRAMES = droppedFrames;
+            this.BIT_RATE = bitRate;
+            this.WRITE_RATE = writeRate;
+            this.AUDIO_LOSSES = audioLosses;
+            this.AUDIO_FRAMES_LOST = audioFramesLost;
+        }
+
+        public long getDuration() {
+            return DURATION;
+        }
+
+        public float getFrameRate() {
+            return FRAME_RATE;
+        }
+
+        public long getDroppedFrames() {
+            return DROPPED_FRAMES;
+        }
+
+        public int getBitRate() {
+            return BIT_RATE;
+        }
+
+        public long getWriteRate() {
+            return WRITE_RATE;
+        }
+
+        public long getAudioLosses() {
+            return AUDIO_LOSSES;
+        }
+
+        public long getAudioFramesLost() {
+            return AUDIO_FRAMES_LOST;
+        }
+    }
 }
@@ -9,6 +9,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.text.format.Formatter;
 
 import androidx.core.app.NotificationCompat;
 
@@ -16,6 +17,7 @@ import java.util.Objects;
 
 import dev.dect.scrnshoot.R;
 import dev.dect.scrnshoot.data.Constants;
+import dev.dect.scrnshoot.recorder.utils.RecordingStats;
 import dev.dect.scrnshoot.service.CapturingService;
 import dev.dect.scrnshoot.utils.Utils;
 
@@ -129,6 +131,29 @@ public class CapturingNotification {
         NOTIFICATION_MANAGER.notify(Constants.Notification.Id.CAPTURING, NOTIFICATION_BUILDER.build());
     }
 
+    /** The stats go in the expanded notification, collapsed it stays as it was. */
+    public void refreshStats(RecordingStats stats) {
+        if(NOTIFICATION_BUILDER == null || CapturingService.isPaused()) {
+            return;
+        }
+
+        final StringBuilder text = new StringBuilder(CTX.getString(R.string.notification_recording_action)).append("\n");
+
+        if(stats.hasFrames()) {
+            text.append(CTX.getString(R.string.notification_recording_stats_video, stats.getFrameRate(), stats.getBitRate() / 1000000f, stats.getDroppedFrames())).append("\n");
+        }
+
+        text.append(CTX.getString(R.string.notification_recording_stats_written, Formatter.formatShortFileSize(CTX, stats.getWriteRate())));
+
+        if(stats.hasAudio()) {
+            text.append("\n").append(stats.getAudioLosses() == 0 ? CTX.getString(R.string.notification_recording_stats_audio_ok) : CTX.getString(R.string.notification_recording_stats_audio_lost, stats.getAudioLosses()));
+        }
+
+        NOTIFICATION_BUILDER.setStyle(new NotificationCompat.BigTextStyle().bigText(text));
+
+        NOTIFICATION_MANAGER.notify(Constants.Notification.Id.CAPTURING, NOTIFICATION_BUILDER.build());
+    }
+
     private void addActions() {
         NOTIFICATION_BUILDER.clearActions();
 
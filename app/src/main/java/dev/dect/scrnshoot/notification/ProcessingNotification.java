@@ -8,8 +8,6 @@ import android.content.Context;
 
 import androidx.core.app.NotificationCompat;
 
-import java.util.Date;
-
 import dev.dect.scrnshoot.R;
 import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.DefaultSettings;
@@ -28,9 +26,8 @@ public class ProcessingNotification {
         NOTIFICATION_MANAGER.createNotificationChannel(new NotificationChannel(Constants.Notification.Channel.PROCESSING, CTX.getString(R.string.notification_channel_name_processing), NotificationManager.IMPORTANCE_LOW));
     }
 
-    public void createAndShow() {
-        NOTIFICATION_MANAGER.cancel(Constants.Notification.Id.PROCESSING);
-
+    /** One notification per job, {@code progress} from 0 to 100 or -1 while unknown. */
+    public void createAndShow(long jobId, String fileName, int progress) {
         if(!KSharedPreferences.getAppSp(CTX).getBoolean(Constants.Sp.App.IS_TO_SHOW_NOTIFICATION_PROCESSING, DefaultSettings.IS_TO_SHOW_NOTIFICATION_PROCESSING)) {
             return;
         }
@@ -42,19 +39,19 @@ public class ProcessingNotification {
         notificationCompact.setColorized(true);
         notificationCompact.setColor(CTX.getColor(R.color.notification_background));
         notificationCompact.setShowWhen(true);
-        notificationCompact.setWhen(new Date().getTime());
+        notificationCompact.setWhen(jobId);
         notificationCompact.setOngoing(true);
         notificationCompact.setSilent(true);
+        notificationCompact.setOnlyAlertOnce(true);
         notificationCompact.setSubText(CTX.getString(R.string.notification_processing));
-        notificationCompact.setContentText(CTX.getString(R.string.notification_processing_message));
+        notificationCompact.setContentText(fileName == null ? CTX.getString(R.string.notification_processing_message) : fileName);
         notificationCompact.setLights(CTX.getColor(R.color.notification_background), 1000, 1000);
-        notificationCompact.setProgress(0, 0, true);
+        notificationCompact.setProgress(100, Math.max(progress, 0), progress < 0);
 
-        NOTIFICATION_MANAGER.notify(Constants.Notification.Id.PROCESSING, notificationCompact.build());
+        NOTIFICATION_MANAGER.notify(String.valueOf(jobId), Constants.Notification.Id.PROCESSING, notificationCompact.build());
     }
 
-    public void destroy() {
-        NOTIFICATION_MANAGER.cancel(Constants.Notification.Id.PROCESSING);
+    public void destroy(long jobId) {
+        NOTIFICATION_MANAGER.cancel(String.valueOf(jobId), Constants.Notification.Id.PROCESSING);
     }
 }
-
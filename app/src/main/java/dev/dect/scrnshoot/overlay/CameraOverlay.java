@@ -3,7 +3,6 @@ package dev.dect.scrnshoot.overlay;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.graphics.SurfaceTexture;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
 import android.hardware.camera2.CameraCharacteristics;
@@ -34,6 +33,7 @@ import dev.dect.scrnshoot.R;
 import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.KSettings;
 import dev.dect.scrnshoot.data.KSharedPreferences;
+import dev.dect.scrnshoot.recorder.gl.CameraLayer;
 import dev.dect.scrnshoot.utils.Utils;
 
 @SuppressLint("InflateParams")
@@ -59,6 +59,10 @@ public class CameraOverlay {
 
     private CameraCaptureSession CAMERA_CAPTURE_SESSION;
 
+    private CameraLayer LAYER;
+
+    private boolean IS_RENDERING_INTO_LAYER = false;
+
     private String CAMERA_ID_FRONT = null,
                    CAMERA_ID_BACK = null;
 
@@ -99,6 +103,12 @@ public class CameraOverlay {
     }
 
     public void forceRender() {
+        if(LAYER != null) {
+            renderIntoLayer();
+
+            return;
+        }
+
         VIEW = LayoutInflater.from(CONTEXT).inflate(R.layout.overlay_recording_camera, null, false);
 
         if(KSETTINGS.isToToggleCameraOrientation()) {
@@ -190,8 +200,21 @@ public class CameraOverlay {
         }, 300);
     }
 
+    /** From now on the camera is drawn into the video by this layer instead of shown in a window. */
+    void setLayer(CameraLayer layer) {
+        this.LAYER = layer;
+    }
+
+    int getSize() {
+        return SIZE;
+    }
+
     public void destroy() {
-        if(isRendering()) {
+        if(IS_RENDERING_INTO_LAYER) {
+            stopCamera();
+
+            IS_RENDERING_INTO_LAYER = false;
+        } else if(isRendering()) {
             WINDOW_MANAGER.removeViewImmediate(VIEW);
 
             stopCamera();
@@ -199,10 +222,16 @@ public class CameraOverlay {
     }
 
     public boolean isRendering() {
-        return VIEW != null && VIEW.isAttachedToWindow();
+        return IS_RENDERING_INTO_LAYER || (VIEW != null && VIEW.isAttachedToWindow());
     }
 
     public void toggleVisibility() {
+        if(LAYER != null) {
+            LAYER.setVisible(!LAYER.isVisible());
+
+            return;
+        }
+
         VIEW.setVisibility(VIEW.getVisibility() == View.VISIBLE ? View.GONE : View.VISIBLE);
     }
 
@@ -241,6 +270,20 @@ public class CameraOverlay {
         TEXTURE_VIEW.setLayoutParams(layoutParamsTextureView);
     }
 
+    private void renderIntoLayer() {
+        if(LAYER.getSurface() == null) {
+            return;
+        }
+
+        IS_RENDERING_INTO_LAYER = true;
+
+        LAYER.setVisible(true);
+
+        initCamerasIds();
+
+        startCamera();
+    }
+
     @SuppressLint("MissingPermission")
     private void startCamera() {
         try {
@@ -249,7 +292,7 @@ public class CameraOverlay {
                 new CameraDevice.StateCallback() {
                     @Override
                     public void onOpened(@NonNull CameraDevice cameraDevice) {
-                        new Handler(Looper.getMainLooper()).post(() -> onCameraOpened(TEXTURE_VIEW, cameraDevice));
+                        new Handler(Looper.getMainLooper()).post(() -> onCameraOpened(LAYER == null ? new Surface(TEXTURE_VIEW.getSurfaceTexture()) : LAYER.getSurface(), cameraDevice));
                     }
 
                     @Override
@@ -287,11 +330,7 @@ public class CameraOverlay {
         new Handler(Looper.getMainLooper()).postDelayed(this::startCamera, 300);
     }
 
-    private void onCameraOpened(TextureView textureView, CameraDevice cameraDevice) {
-        final SurfaceTexture surfaceTexture = textureView.getSurfaceTexture();
-
-        final Surface surface = new Surface(surfaceTexture);
-
+    private void onCameraOpened(Surface surface, CameraDevice cameraDevice) {
         try {
             final CaptureRequest.Builder captureRequest = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
 
@@ -36,11 +36,7 @@ public class ImageOverlay {
             return;
         }
 
-        VIEW = LayoutInflater.from(CONTEXT).inflate(R.layout.overlay_recording_image, null, false);
-
-        final ImageView imageView = VIEW.findViewById(R.id.image);
-
-        imageView.setImageBitmap(BitmapFactory.decodeFile(KSETTINGS.getImagePath(false)));
+        VIEW = createView();
 
         final WindowManager.LayoutParams layoutParams = new WindowManager.LayoutParams();
 
@@ -66,6 +62,21 @@ public class ImageOverlay {
         new Handler(Looper.getMainLooper()).postDelayed(() -> WINDOW_MANAGER.addView(VIEW, layoutParams), 300);
     }
 
+    /** The image as it is shown on screen, also drawn into the video by {@link Overlay#createLayers(int, int)}. */
+    View createView() {
+        final View view = LayoutInflater.from(CONTEXT).inflate(R.layout.overlay_recording_image, null, false);
+
+        final ImageView imageView = view.findViewById(R.id.image);
+
+        imageView.setImageBitmap(BitmapFactory.decodeFile(KSETTINGS.getImagePath(false)));
+
+        return view;
+    }
+
+    int getSize() {
+        return Utils.Converter.dpToPx(CONTEXT, KSETTINGS.getImageSize());
+    }
+
     public void destroy() {
         if(VIEW != null && VIEW.isAttachedToWindow()) {
             WINDOW_MANAGER.removeViewImmediate(VIEW);
@@ -73,7 +84,7 @@ public class ImageOverlay {
     }
 
     private void setLayoutParametersSize(WindowManager.LayoutParams layoutParams) {
-        final int size = Utils.Converter.dpToPx(CONTEXT, KSETTINGS.getImageSize());
+        final int size = getSize();
 
         layoutParams.height = size;
         layoutParams.width = size;
@@ -11,6 +11,7 @@ import android.graphics.Color;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.text.format.Formatter;
 import android.util.Log;
 import android.view.Gravity;
 import android.view.LayoutInflater;
@@ -30,12 +31,14 @@ import org.json.JSONArray;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.util.Date;
+import java.util.Locale;
 
 import dev.dect.scrnshoot.R;
 import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.KSettings;
 import dev.dect.scrnshoot.data.KSharedPreferences;
 import dev.dect.scrnshoot.model.Scrnshoot;
+import dev.dect.scrnshoot.recorder.utils.RecordingStats;
 import dev.dect.scrnshoot.service.CapturingService;
 import dev.dect.scrnshoot.utils.KFile;
 import dev.dect.scrnshoot.utils.Utils;
@@ -67,6 +70,8 @@ public class MenuOverlay {
 
     private KChronometer CHRONOMETER;
 
+    private TextView STATS;
+
     private LinearLayout LINEAR_LAYOUT,
                          SHORTCUTS_MENU;
 
@@ -152,6 +157,16 @@ public class MenuOverlay {
             VIEW.findViewById(R.id.btnScreenshot).setVisibility(View.GONE);
         }
 
+        if(KSETTINGS.isToUseCodecRecorder() && KSETTINGS.isToUseReplayBuffer()) {
+            VIEW.findViewById(R.id.btnReplay).setOnClickListener((v) -> CapturingService.requestSaveReplay());
+
+            setDraggableHelper(VIEW.findViewById(R.id.btnReplay));
+
+            allOptionalIsHidden = false;
+        } else {
+            VIEW.findViewById(R.id.btnReplay).setVisibility(View.GONE);
+        }
+
         if(KSETTINGS.isToShowDrawButtonOnMenu()) {
             VIEW.findViewById(R.id.btnDraw).setOnClickListener((v) -> {
                 minimize();
@@ -174,6 +189,14 @@ public class MenuOverlay {
             VIEW.findViewById(R.id.timeLimit).setVisibility(View.GONE);
         }
 
+        if(KSETTINGS.isToShowStatsOnMenu()) {
+            STATS = VIEW.findViewById(R.id.stats);
+
+            allOptionalIsHidden = false;
+        } else {
+            VIEW.findViewById(R.id.stats).setVisibility(View.GONE);
+        }
+
         if(KSETTINGS.isToShowMinimizeButtonOnMenu()) {
             final ImageButton btnMinimize = VIEW.findViewById(R.id.btnMinimize);
 
@@ -243,6 +266,21 @@ public class MenuOverlay {
         DRAW_OVERLAY.destroy();
     }
 
+    /** Frames per second, or the write rate when the recorder does not tell frames apart. */
+    public void refreshStats(RecordingStats stats) {
+        if(STATS == null) {
+            return;
+        }
+
+        final boolean isHorizontal = KSETTINGS.getMenuStyle() == 0;
+
+        if(stats.hasFrames()) {
+            STATS.setText(String.format(Locale.getDefault(), "%.0f", stats.getFrameRate()) + (isHorizontal ? " fps" : ""));
+        } else {
+            STATS.setText(Formatter.formatShortFileSize(CONTEXT, stats.getWriteRate()) + (isHorizontal ? "/s" : ""));
+        }
+    }
+
     public void setMediaRecorderSurface(Surface s) {
         MEDIA_RECORDER_SURFACE = s;
     }
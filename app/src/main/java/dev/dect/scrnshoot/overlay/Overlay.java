@@ -2,13 +2,35 @@ package dev.dect.scrnshoot.overlay;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.view.Surface;
+import android.view.View;
 import android.view.WindowManager;
 
+import java.util.ArrayList;
+
+import dev.dect.scrnshoot.R;
+import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.KSettings;
+import dev.dect.scrnshoot.recorder.gl.BitmapLayer;
+import dev.dect.scrnshoot.recorder.gl.CameraLayer;
+import dev.dect.scrnshoot.recorder.gl.FramePipeline;
+import dev.dect.scrnshoot.recorder.gl.Layer;
+import dev.dect.scrnshoot.recorder.gl.LayerRenderer;
+import dev.dect.scrnshoot.recorder.utils.RecordingStats;
+import dev.dect.scrnshoot.utils.Utils;
+import dev.dect.scrnshoot.utils.WatermarkProcessor;
 
 @SuppressLint("InflateParams")
 public class Overlay {
+    private final Context CONTEXT;
+
+    private final KSettings KSETTINGS;
+
+    private final WindowManager WINDOW_MANAGER;
+
     private final MenuOverlay MENU_OVERLAY;
 
     private final CameraOverlay CAMERA_OVERLAY;
@@ -19,9 +41,15 @@ public class Overlay {
 
     private final TapToZoomOverlay TAP_TO_ZOOM_OVERLAY;
 
+    private boolean IS_COMPOSITED = false;
+
     public Overlay(Context ctx, KSettings ks) {
         final WindowManager windowManager = (WindowManager) ctx.getSystemService(Context.WINDOW_SERVICE);
 
+        this.CONTEXT = ctx;
+        this.KSETTINGS = ks;
+        this.WINDOW_MANAGER = windowManager;
+
         this.CAMERA_OVERLAY = new CameraOverlay(ctx, ks, windowManager);
 
         this.MENU_OVERLAY = new MenuOverlay(ctx, ks, windowManager, CAMERA_OVERLAY);
@@ -35,9 +63,11 @@ public class Overlay {
 
         CAMERA_OVERLAY.render();
 
-        TEXT_OVERLAY.render();
+        if(!IS_COMPOSITED) {
+            TEXT_OVERLAY.render();
 
-        IMAGE_OVERLAY.render();
+            IMAGE_OVERLAY.render();
+        }
 
         TAP_TO_ZOOM_OVERLAY.render();
     }
@@ -59,7 +89,107 @@ public class Overlay {
         TAP_TO_ZOOM_OVERLAY.setMediaRecorderSurface(s);
     }
 
+    /**
+     * Text, image, camera and watermark as layers drawn into the video, placed where their windows would be.
+     * The text and image windows are not shown anymore and the camera goes to its layer. Before {@link #render()}.
+     */
+    public ArrayList<Layer> createLayers(int videoWidth, int videoHeight) {
+        IS_COMPOSITED = true;
+
+        final Rect screen = WINDOW_MANAGER.getCurrentWindowMetrics().getBounds();
+
+        final float scaleX = (float) videoWidth / screen.width(),
+                    scaleY = (float) videoHeight / screen.height();
+
+        final ArrayList<Layer> layers = new ArrayList<>();
+
+        if(KSETTINGS.isToShowText()) {
+            layers.add(createBitmapLayer(TEXT_OVERLAY.createView(), -1, Constants.Sp.Profile.OVERLAY_TEXT_X_POS, Constants.Sp.Profile.OVERLAY_TEXT_Y_POS, screen, scaleX, scaleY));
+        }
+
+        if(KSETTINGS.isToShowImage()) {
+            layers.add(createBitmapLayer(IMAGE_OVERLAY.createView(), IMAGE_OVERLAY.getSize(), Constants.Sp.Profile.OVERLAY_IMAGE_X_POS, Constants.Sp.Profile.OVERLAY_IMAGE_Y_POS, screen, scaleX, scaleY));
+        }
+
+        if(KSETTINGS.isToShowFloatingCamera() || KSETTINGS.isToShowCameraButtonOnMenu()) {
+            final int size = CAMERA_OVERLAY.getSize();
+
+            final Rect bounds = Utils.Overlay.getWindowBounds(CONTEXT, Constants.Sp.Profile.OVERLAY_CAMERA_X_POS, Constants.Sp.Profile.OVERLAY_CAMERA_Y_POS, size, size, screen.width(), screen.height());
+
+            final CameraLayer cameraLayer = new CameraLayer(
+                Math.round(bounds.left * scaleX),
+                Math.round(bounds.top * scaleY),
+                Math.round(size * scaleX),
+                Math.round(size * scaleY),
+                getCameraLayerShape(),
+                CONTEXT.getResources().getDimension(R.dimen.frame_square_corner) * scaleX
+            );
+
+            CAMERA_OVERLAY.setLayer(cameraLayer);
+
+            layers.add(cameraLayer);
+        }
+
+        final BitmapLayer watermarkLayer = WatermarkProcessor.createLayer(KSETTINGS, CONTEXT, videoWidth, videoHeight);
+
+        if(watermarkLayer != null) {
+            layers.add(watermarkLayer);
+        }
+
+        return layers;
+    }
+
+    /** Tap to zoom crops the video once it goes through a pipeline. */
+    public void setFramePipeline(FramePipeline framePipeline) {
+        TAP_TO_ZOOM_OVERLAY.setOnZoom(framePipeline == null ? null : framePipeline::setZoom);
+    }
+
     public void refreshRecordingState() {
         MENU_OVERLAY.refreshRecordingState();
     }
-}
\ No newline at end of file
+
+    public void refreshStats(RecordingStats stats) {
+        MENU_OVERLAY.refreshStats(stats);
+    }
+
+    /** @param size of the window, -1 to wrap its content */
+    private BitmapLayer createBitmapLayer(View view, int size, String keyX, String keyY, Rect screen, float scaleX, float scaleY) {
+        view.measure(
+            size < 0 ? View.MeasureSpec.makeMeasureSpec(screen.width(), View.MeasureSpec.AT_MOST) : View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY),
+            size < 0 ? View.MeasureSpec.makeMeasureSpec(screen.height(), View.MeasureSpec.AT_MOST) : View.MeasureSpec.makeMeasureSpec(size, View.MeasureSpec.EXACTLY)
+        );
+
+        final int width = Math.max(1, view.getMeasuredWidth()),
+                  height = Math.max(1, view.getMeasuredHeight());
+
+        view.layout(0, 0, width, height);
+
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+        view.draw(new Canvas(bitmap));
+
+        final Rect bounds = Utils.Overlay.getWindowBounds(CONTEXT, keyX, keyY, width, height, screen.width(), screen.height());
+
+        return new BitmapLayer(
+            bitmap,
+            Math.round(bounds.left * scaleX),
+            Math.round(bounds.top * scaleY),
+            Math.round(width * scaleX),
+            Math.round(height * scaleY),
+            1f
+        );
+    }
+
+    private int getCameraLayerShape() {
+        switch(KSETTINGS.getCameraShape()) {
+            case 0:
+                return LayerRenderer.SHAPE_OVAL;
+
+            case 2:
+                return LayerRenderer.SHAPE_ROUNDED_RECTANGLE;
+
+            default:
+                return LayerRenderer.SHAPE_RECTANGLE;
+        }
+    }
+}
@@ -47,6 +47,15 @@ public class TapToZoomOverlay extends FrameLayout {
 
     private boolean IS_ENABLED = false;
 
+    private OnZoom ZOOM_LISTENER;
+
+    /**
+     * Zoom as it changes, center in fractions of the screen from its top left corner.
+     */
+    public interface OnZoom {
+        void onZoom(float zoom, float centerX, float centerY);
+    }
+
     public TapToZoomOverlay(Context ctx, KSettings ks, WindowManager wm) {
         super(ctx);
         this.CONTEXT = ctx;
@@ -211,6 +220,12 @@ public class TapToZoomOverlay extends FrameLayout {
      * Update the MediaRecorder surface with zoom transformation.
      */
     private void updateSurface() {
+        if (ZOOM_LISTENER != null) {
+            final int[] screenSize = getScreenSize();
+
+            ZOOM_LISTENER.onZoom(CURRENT_ZOOM, ZOOM_CENTER_X / screenSize[0], ZOOM_CENTER_Y / screenSize[1]);
+        }
+
         if (MEDIA_RECORDER_SURFACE == null || !MEDIA_RECORDER_SURFACE.isValid()) {
             return;
         }
@@ -244,6 +259,13 @@ public class TapToZoomOverlay extends FrameLayout {
         }
     }
 
+    /**
+     * Set who applies the zoom to the recording, when it can be applied (drawn into the video).
+     */
+    public void setOnZoom(OnZoom onZoom) {
+        this.ZOOM_LISTENER = onZoom;
+    }
+
     /**
      * Handle touch events for tap-to-zoom.
      */
@@ -35,16 +35,7 @@ public class TextOverlay {
             return;
         }
 
-        VIEW = LayoutInflater.from(CONTEXT).inflate(R.layout.overlay_recording_text, null, false);
-
-        final TextView textView = VIEW.findViewById(R.id.text);
-
-        textView.setText(KSETTINGS.getTextText());
-        textView.setTextSize(KSETTINGS.getTextSize());
-        textView.setTextColor(Utils.Converter.hexColorToInt(KSETTINGS.getTextColor()));
-        textView.setBackgroundColor(Utils.Converter.hexColorToInt(KSETTINGS.getTextBackground()));
-        textView.setTypeface(KSETTINGS.getTextFontTypeface());
-        textView.setGravity(KSETTINGS.getTextAlignment());
+        VIEW = createView();
 
         final WindowManager.LayoutParams layoutParams = new WindowManager.LayoutParams();
 
@@ -70,6 +61,22 @@ public class TextOverlay {
         }, 300);
     }
 
+    /** The text as it is shown on screen, also drawn into the video by {@link Overlay#createLayers(int, int)}. */
+    View createView() {
+        final View view = LayoutInflater.from(CONTEXT).inflate(R.layout.overlay_recording_text, null, false);
+
+        final TextView textView = view.findViewById(R.id.text);
+
+        textView.setText(KSETTINGS.getTextText());
+        textView.setTextSize(KSETTINGS.getTextSize());
+        textView.setTextColor(Utils.Converter.hexColorToInt(KSETTINGS.getTextColor()));
+        textView.setBackgroundColor(Utils.Converter.hexColorToInt(KSETTINGS.getTextBackground()));
+        textView.setTypeface(KSETTINGS.getTextFontTypeface());
+        textView.setGravity(KSETTINGS.getTextAlignment());
+
+        return view;
+    }
+
     public void destroy() {
         if(VIEW != null && VIEW.isAttachedToWindow()) {
             WINDOW_MANAGER.removeViewImmediate(VIEW);
@@ -0,0 +1,842 @@
+package dev.dect.scrnshoot.processing;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.annotation.OptIn;
+import androidx.media3.common.util.UnstableApi;
+import androidx.media3.transformer.ProgressHolder;
+import androidx.media3.transformer.Transformer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import dev.dect.scrnshoot.R;
+import dev.dect.scrnshoot.data.Constants;
+import dev.dect.scrnshoot.data.KSettings;
+import dev.dect.scrnshoot.model.Scrnshoot;
+import dev.dect.scrnshoot.recorder.CodecRecorder;
+import dev.dect.scrnshoot.utils.KFile;
+import dev.dect.scrnshoot.utils.KRemuxer;
+import dev.dect.scrnshoot.utils.WatermarkProcessor;
+
+/**
+ * Everything needed to turn what a recorder left behind into a scrnshoot: the recorded files, where the result goes
+ * and the settings it was recorded with, so changing them afterwards does not affect it.
+ * It is stored as json by {@link ProcessingQueue} (and by {@link RecordingJournal} while still recording), again after
+ * every step so it resumes from where it was, except for replay buffers, which only live in memory.
+ *
+ * @noinspection ResultOfMethodCallIgnored
+ */
+public class ProcessingJob {
+    private final String TAG = ProcessingJob.class.getSimpleName();
+
+    private static final int FLAG_CODEC_RECORDER = 1,
+                             FLAG_RECORD_MIC = 1 << 1,
+                             FLAG_RECORD_INTERNAL_AUDIO = 1 << 2,
+                             FLAG_MERGE_INTERNAL_AUDIO = 1 << 3,
+                             FLAG_GENERATE_AUDIO_AUDIO = 1 << 4,
+                             FLAG_GENERATE_AUDIO_ONLY_INTERNAL = 1 << 5,
+                             FLAG_GENERATE_AUDIO_ONLY_MIC = 1 << 6,
+                             FLAG_GENERATE_VIDEO_NO_AUDIO = 1 << 7,
+                             FLAG_GENERATE_VIDEO_ONLY_INTERNAL_AUDIO = 1 << 8,
+                             FLAG_GENERATE_VIDEO_ONLY_MIC_AUDIO = 1 << 9,
+                             FLAG_WATERMARK_BURNED_IN = 1 << 10;
+
+    private static final String KEY_ID = "id",
+                                KEY_PROFILE_ID = "profileId",
+                                KEY_FLAGS = "flags",
+                                KEY_DESTINATION = "destination",
+                                KEY_VIDEO = "video",
+                                KEY_INTERNAL_AUDIO = "internalAudio",
+                                KEY_IS_INTERNAL_AUDIO_REMUXABLE = "isInternalAudioRemuxable",
+                                KEY_SEGMENTS = "segments",
+                                KEY_SEGMENTS_DIRECTORY = "segmentsDirectory",
+                                KEY_SCREENSHOTS = "screenshots",
+                                KEY_MARKERS = "markers",
+                                KEY_TIME = "time",
+                                KEY_BIT_RATE = "bitRate",
+                                KEY_FRAME_RATE = "frameRate",
+                                KEY_REASON = "reason",
+                                KEY_STATS = "stats",
+                                KEY_DURATION = "duration",
+                                KEY_DROPPED_FRAMES = "droppedFrames",
+                                KEY_WRITE_RATE = "writeRate",
+                                KEY_AUDIO_LOSSES = "audioLosses",
+                                KEY_AUDIO_FRAMES_LOST = "audioFramesLost",
+                                KEY_THUMBNAIL = "thumbnail",
+                                KEY_CAPTURED_AT = "capturedAt";
+
+    private static final String KEY_STEP = "step",
+                                KEY_IS_VIDEO_MOVED = "isVideoMoved",
+                                KEY_IS_MERGE_FAILED = "isMergeFailed";
+
+    private static final int STEP_MAIN_FILE = 0,
+                             STEP_EXTRAS = 1;
+
+    private static final int PROGRESS_MAIN_FILE = 70;
+
+    /** A transformer whose progress has not moved for this long is taken as stuck, cancelled and the merge failed. */
+    private static final long TRANSFORMER_STALL_TIMEOUT_MS = 60000;
+
+    private final long ID,
+                       CAPTURED_AT;
+
+    private final String PROFILE_ID;
+
+    private final int FLAGS;
+
+    private final ArrayList<File> SEGMENTS = new ArrayList<>();
+
+    private final ArrayList<String> SCREENSHOTS = new ArrayList<>();
+
+    private final ArrayList<Scrnshoot.Marker> MARKERS = new ArrayList<>();
+
+    private final Scrnshoot.Stats STATS;
+
+    private File DESTINATION,
+                 VIDEO,
+                 INTERNAL_AUDIO,
+                 SEGMENTS_DIRECTORY,
+                 THUMBNAIL;
+
+    private boolean IS_INTERNAL_AUDIO_REMUXABLE = false,
+                    IS_VIDEO_MOVED = false,
+                    IS_MERGE_FAILED = false,
+                    IS_MAIN_FILE_FAILED = false;
+
+    private int STEP = STEP_MAIN_FILE;
+
+    private CodecRecorder REPLAY_SOURCE;
+
+    private volatile int PROGRESS = -1;
+
+    public interface Listener {
+        void onProgress(ProcessingJob job);
+
+        /** A step is done and the job has to be stored again, so it is resumed from the next one. */
+        void onStep(ProcessingJob job);
+    }
+
+    public ProcessingJob(KSettings ks, Scrnshoot scrnshoot, File destination) {
+        this(ks, scrnshoot, destination, System.currentTimeMillis());
+    }
+
+    /** With the id of the journal entry of the recording, so the entry is recognized once the job is queued. */
+    public ProcessingJob(KSettings ks, Scrnshoot scrnshoot, File destination, long id) {
+        this.ID = id;
+        this.CAPTURED_AT = System.currentTimeMillis();
+        this.PROFILE_ID = scrnshoot.getProfileId();
+        this.DESTINATION = destination;
+
+        int flags = 0;
+
+        flags |= ks.isToUseCodecRecorder() ? FLAG_CODEC_RECORDER : 0;
+        flags |= ks.isToRecordMic() ? FLAG_RECORD_MIC : 0;
+        flags |= ks.isToRecordInternalAudio() ? FLAG_RECORD_INTERNAL_AUDIO : 0;
+        flags |= ks.isToMergeInternalAudio() ? FLAG_MERGE_INTERNAL_AUDIO : 0;
+        flags |= ks.isToGenerateAudio_Audio() ? FLAG_GENERATE_AUDIO_AUDIO : 0;
+        flags |= ks.isToGenerateAudio_OnlyInternal() ? FLAG_GENERATE_AUDIO_ONLY_INTERNAL : 0;
+        flags |= ks.isToGenerateAudio_OnlyMic() ? FLAG_GENERATE_AUDIO_ONLY_MIC : 0;
+        flags |= ks.isToGenerateVideo_NoAudio() ? FLAG_GENERATE_VIDEO_NO_AUDIO : 0;
+        flags |= ks.isToGenerateVideo_OnlyInternalAudio() ? FLAG_GENERATE_VIDEO_ONLY_INTERNAL_AUDIO : 0;
+        flags |= ks.isToGenerateVideo_OnlyMicAudio() ? FLAG_GENERATE_VIDEO_ONLY_MIC_AUDIO : 0;
+        flags |= ks.isToUseCodecRecorder() && ks.isToCompositeOverlays() ? FLAG_WATERMARK_BURNED_IN : 0;
+
+        this.FLAGS = flags;
+
+        for(Scrnshoot.Screenshot screenshot : scrnshoot.getScreenshots()) {
+            SCREENSHOTS.add(screenshot.getLocation());
+        }
+
+        MARKERS.addAll(scrnshoot.getMarkers());
+
+        this.STATS = scrnshoot.getStats();
+    }
+
+    private ProcessingJob(JSONObject json) throws Exception {
+        this.ID = json.getLong(KEY_ID);
+        this.CAPTURED_AT = json.optLong(KEY_CAPTURED_AT, ID);
+        this.PROFILE_ID = json.optString(KEY_PROFILE_ID, null);
+        this.FLAGS = json.getInt(KEY_FLAGS);
+        this.DESTINATION = json.has(KEY_DESTINATION) ? new File(json.getString(KEY_DESTINATION)) : null;
+        this.STEP = json.optInt(KEY_STEP, STEP_MAIN_FILE);
+        this.IS_VIDEO_MOVED = json.optBoolean(KEY_IS_VIDEO_MOVED, false);
+        this.IS_MERGE_FAILED = json.optBoolean(KEY_IS_MERGE_FAILED, false);
+
+        this.VIDEO = json.has(KEY_VIDEO) ? new File(json.getString(KEY_VIDEO)) : null;
+        this.INTERNAL_AUDIO = json.has(KEY_INTERNAL_AUDIO) ? new File(json.getString(KEY_INTERNAL_AUDIO)) : null;
+        this.IS_INTERNAL_AUDIO_REMUXABLE = json.optBoolean(KEY_IS_INTERNAL_AUDIO_REMUXABLE, false);
+        this.SEGMENTS_DIRECTORY = json.has(KEY_SEGMENTS_DIRECTORY) ? new File(json.getString(KEY_SEGMENTS_DIRECTORY)) : null;
+        this.THUMBNAIL = json.has(KEY_THUMBNAIL) ? new File(json.getString(KEY_THUMBNAIL)) : null;
+
+        final JSONArray segments = json.getJSONArray(KEY_SEGMENTS),
+                        screenshots = json.getJSONArray(KEY_SCREENSHOTS),
+                        markers = json.getJSONArray(KEY_MARKERS);
+
+        for(int i = 0; i < segments.length(); i++) {
+            SEGMENTS.add(new File(segments.getString(i)));
+        }
+
+        for(int i = 0; i < screenshots.length(); i++) {
+            SCREENSHOTS.add(screenshots.getString(i));
+        }
+
+        for(int i = 0; i < markers.length(); i++) {
+            final JSONObject marker = markers.getJSONObject(i);
+
+            MARKERS.add(new Scrnshoot.Marker(marker.getLong(KEY_TIME), marker.getInt(KEY_BIT_RATE), marker.getInt(KEY_FRAME_RATE), marker.getString(KEY_REASON)));
+        }
+
+        final JSONObject stats = json.optJSONObject(KEY_STATS);
+
+        this.STATS = stats == null ? null : new Scrnshoot.Stats(
+            stats.getLong(KEY_DURATION),
+            (float) stats.getDouble(KEY_FRAME_RATE),
+            stats.getLong(KEY_DROPPED_FRAMES),
+            stats.getInt(KEY_BIT_RATE),
+            stats.getLong(KEY_WRITE_RATE),
+            stats.getLong(KEY_AUDIO_LOSSES),
+            stats.getLong(KEY_AUDIO_FRAMES_LOST)
+        );
+    }
+
+    public static ProcessingJob fromJson(JSONObject json) throws Exception {
+        return new ProcessingJob(json);
+    }
+
+    public JSONObject toJson() throws Exception {
+        final JSONObject json = new JSONObject();
+
+        json.put(KEY_ID, ID);
+        json.put(KEY_CAPTURED_AT, CAPTURED_AT);
+        json.put(KEY_PROFILE_ID, PROFILE_ID);
+        json.put(KEY_FLAGS, FLAGS);
+        json.put(KEY_STEP, STEP);
+        json.put(KEY_IS_VIDEO_MOVED, IS_VIDEO_MOVED);
+        json.put(KEY_IS_MERGE_FAILED, IS_MERGE_FAILED);
+
+        if(DESTINATION != null) {
+            json.put(KEY_DESTINATION, DESTINATION.getAbsolutePath());
+        }
+
+        if(VIDEO != null) {
+            json.put(KEY_VIDEO, VIDEO.getAbsolutePath());
+        }
+
+        if(INTERNAL_AUDIO != null) {
+            json.put(KEY_INTERNAL_AUDIO, INTERNAL_AUDIO.getAbsolutePath());
+        }
+
+        json.put(KEY_IS_INTERNAL_AUDIO_REMUXABLE, IS_INTERNAL_AUDIO_REMUXABLE);
+
+        if(SEGMENTS_DIRECTORY != null) {
+            json.put(KEY_SEGMENTS_DIRECTORY, SEGMENTS_DIRECTORY.getAbsolutePath());
+        }
+
+        if(THUMBNAIL != null) {
+            json.put(KEY_THUMBNAIL, THUMBNAIL.getAbsolutePath());
+        }
+
+        final JSONArray segments = new JSONArray(),
+                        screenshots = new JSONArray(),
+                        markers = new JSONArray();
+
+        for(File segment : SEGMENTS) {
+            segments.put(segment.getAbsolutePath());
+        }
+
+        for(String screenshot : SCREENSHOTS) {
+            screenshots.put(screenshot);
+        }
+
+        for(Scrnshoot.Marker marker : MARKERS) {
+            final JSONObject m = new JSONObject();
+
+            m.put(KEY_TIME, marker.getTime());
+            m.put(KEY_BIT_RATE, marker.getBitRate());
+            m.put(KEY_FRAME_RATE, marker.getFrameRate());
+            m.put(KEY_REASON, marker.getReason());
+
+            markers.put(m);
+        }
+
+        json.put(KEY_SEGMENTS, segments);
+        json.put(KEY_SCREENSHOTS, screenshots);
+        json.put(KEY_MARKERS, markers);
+
+        if(STATS != null) {
+            final JSONObject stats = new JSONObject();
+
+            stats.put(KEY_DURATION, STATS.getDuration());
+            stats.put(KEY_FRAME_RATE, STATS.getFrameRate());
+            stats.put(KEY_DROPPED_FRAMES, STATS.getDroppedFrames());
+            stats.put(KEY_BIT_RATE, STATS.getBitRate());
+            stats.put(KEY_WRITE_RATE, STATS.getWriteRate());
+            stats.put(KEY_AUDIO_LOSSES, STATS.getAudioLosses());
+            stats.put(KEY_AUDIO_FRAMES_LOST, STATS.getAudioFramesLost());
+
+            json.put(KEY_STATS, stats);
+        }
+
+        return json;
+    }
+
+    public long getId() {
+        return ID;
+    }
+
+    public File getDestination() {
+        return DESTINATION;
+    }
+
+    public void setDestination(File destination) {
+        this.DESTINATION = destination;
+    }
+
+    public int getProgress() {
+        return PROGRESS;
+    }
+
+    /** Replay buffers cannot outlive the process, so those jobs are never stored. */
+    public boolean isPersistable() {
+        return REPLAY_SOURCE == null;
+    }
+
+    public void addScreenshot(String location) {
+        SCREENSHOTS.add(location);
+    }
+
+    public void setVideo(File video) {
+        this.VIDEO = video;
+    }
+
+    public void setInternalAudio(File internalAudio, boolean isRemuxable) {
+        this.INTERNAL_AUDIO = internalAudio;
+        this.IS_INTERNAL_AUDIO_REMUXABLE = isRemuxable;
+    }
+
+    public void setSegments(ArrayList<File> segments, File segmentsDirectory) {
+        this.SEGMENTS.clear();
+        this.SEGMENTS.addAll(segments);
+
+        this.SEGMENTS_DIRECTORY = segmentsDirectory;
+    }
+
+    /** A frame captured while recording, null to have the thumbnail made from the video once processed. */
+    public void setThumbnail(File thumbnail) {
+        this.THUMBNAIL = thumbnail;
+    }
+
+    public File getThumbnail() {
+        return THUMBNAIL;
+    }
+
+    /** The recorder is destroyed by the job once its last replay is saved. */
+    public void setReplaySource(CodecRecorder codecRecorder) {
+        this.REPLAY_SOURCE = codecRecorder;
+    }
+
+    /** Whether the recorded files are still there (and readable, for a recording cut short), a stored job is dropped otherwise. */
+    public boolean hasInputs() {
+        if(STEP == STEP_EXTRAS) {
+            return DESTINATION != null && DESTINATION.exists();
+        }
+
+        if(has(FLAG_CODEC_RECORDER) && !SEGMENTS.isEmpty()) {
+            for(File segment : SEGMENTS) {
+                if(!segment.exists()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        return REPLAY_SOURCE != null || (VIDEO != null && VIDEO.exists() && KFile.isPlayableVideo(VIDEO));
+    }
+
+    /**
+     * For a recording the app was killed during: picks up the segments written so far, leaving out the last one if it
+     * was never finalized. A single file recording cannot be repaired, {@link #hasInputs()} tells whether it survived.
+     */
+    public void recoverInputs() {
+        if(SEGMENTS_DIRECTORY == null) {
+            return;
+        }
+
+        final File[] files = SEGMENTS_DIRECTORY.listFiles((dir, name) -> name.endsWith("." + Constants.EXT_VIDEO_FORMAT));
+
+        SEGMENTS.clear();
+
+        if(files == null) {
+            return;
+        }
+
+        Arrays.sort(files);
+
+        for(File file : files) {
+            if(KFile.isPlayableVideo(file)) {
+                SEGMENTS.add(file);
+            } else {
+                file.delete();
+            }
+        }
+    }
+
+    /** Runs on a worker thread, returns the scrnshoot to be saved or null if nothing could be made. */
+    public Scrnshoot process(Context ctx, Listener listener) {
+        final Scrnshoot scrnshoot = new Scrnshoot(ctx);
+        scrnshoot.setFrom(Scrnshoot.FROM_PHONE);
+
+        scrnshoot.setProfileId(PROFILE_ID);
+
+        scrnshoot.setFile(DESTINATION);
+
+        for(String screenshot : SCREENSHOTS) {
+            scrnshoot.addScreenshot(new Scrnshoot.Screenshot(screenshot));
+        }
+
+        for(Scrnshoot.Marker marker : MARKERS) {
+            scrnshoot.addMarker(marker);
+        }
+
+        scrnshoot.setStats(STATS);
+
+        if(STEP == STEP_MAIN_FILE) {
+            setProgress(0, listener);
+
+            if(!processMainFile(ctx, listener)) {
+                keepSegments(ctx);
+
+                return null;
+            }
+
+            STEP = STEP_EXTRAS;
+
+            listener.onStep(this);
+        }
+
+        setProgress(PROGRESS_MAIN_FILE, listener);
+
+        if(has(FLAG_CODEC_RECORDER)) {
+            processCodecExtras(ctx, scrnshoot);
+        } else {
+            if(IS_MERGE_FAILED) {
+                processMergeFailed(ctx, scrnshoot);
+            } else if(has(FLAG_RECORD_INTERNAL_AUDIO) && !has(FLAG_MERGE_INTERNAL_AUDIO)) {
+                processInternalAudio(ctx, scrnshoot);
+            }
+
+            processExtras(ctx, scrnshoot);
+        }
+
+        setProgress(100, listener);
+
+        //dated when it was recorded rather than when the queue got to it, the gallery sorts by it
+        DESTINATION.setLastModified(CAPTURED_AT);
+
+        return DESTINATION.exists() && DESTINATION.length() > 0 ? scrnshoot : null;
+    }
+
+    /** Writes the scrnshoot itself, everything after it only reads from it. False if the recording could not be written out. */
+    private boolean processMainFile(Context ctx, Listener listener) {
+        if(has(FLAG_CODEC_RECORDER)) {
+            if(REPLAY_SOURCE != null) {
+                return REPLAY_SOURCE.saveReplay(DESTINATION);
+            } else if(!SEGMENTS.isEmpty()) {
+                return KFile.concatVideos(SEGMENTS, DESTINATION);
+            } else {
+                moveOrWatermarkVideo(ctx);
+            }
+        } else if(has(FLAG_RECORD_INTERNAL_AUDIO) && has(FLAG_MERGE_INTERNAL_AUDIO) && !has(FLAG_RECORD_MIC) && IS_INTERNAL_AUDIO_REMUXABLE && KFile.muxAudioAndVideo(INTERNAL_AUDIO, VIDEO, DESTINATION)) {
+            return true;
+        } else if(has(FLAG_RECORD_INTERNAL_AUDIO) && has(FLAG_MERGE_INTERNAL_AUDIO)) {
+            if(!combineAudioAndVideo(ctx, INTERNAL_AUDIO, VIDEO, DESTINATION, false, listener)) {
+                KFile.copyFile(VIDEO, DESTINATION);
+
+                IS_MERGE_FAILED = true;
+            }
+        } else {
+            moveOrWatermarkVideo(ctx);
+        }
+
+        return true;
+    }
+
+    /**
+     * The partial scrnshoot is removed and the segments it was being joined from are moved next to it as playable
+     * parts, the ones that could not be moved are left where they are by {@link #clean()}.
+     */
+    private void keepSegments(Context ctx) {
+        IS_MAIN_FILE_FAILED = true;
+
+        DESTINATION.delete();
+
+        final String name = DESTINATION.getName().replaceAll("." + Constants.EXT_VIDEO_FORMAT, "");
+
+        for(int i = SEGMENTS.size() - 1; i >= 0; i--) {
+            final File part = new File(DESTINATION.getParentFile(), name + KFile.FILE_SEPARATOR + (i + 1) + "." + Constants.EXT_VIDEO_FORMAT);
+
+            if(KFile.moveFile(SEGMENTS.get(i), part)) {
+                KFile.notifyMediaScanner(ctx, part);
+
+                SEGMENTS.remove(i);
+            }
+        }
+
+        toast(ctx, REPLAY_SOURCE == null ? R.string.toast_error_saving_parts_kept : R.string.toast_error_generic);
+    }
+
+    private void processMergeFailed(Context ctx, Scrnshoot scrnshoot) {
+        if(has(FLAG_GENERATE_AUDIO_ONLY_INTERNAL)) {
+            toast(ctx, R.string.toast_error_merging_1);
+
+            return;
+        }
+
+        final File helper = new File(DESTINATION.getParentFile(), DESTINATION.getName().replaceAll("." + Constants.EXT_VIDEO_FORMAT, "") + "." + KFile.getFileExtension(INTERNAL_AUDIO));
+
+        try {
+            KFile.copyFile(INTERNAL_AUDIO, helper);
+
+            scrnshoot.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY, helper));
+
+            toast(ctx, R.string.toast_error_merging_2);
+        } catch (Exception e) {
+            Log.e(TAG, "processMergeFailed: " + e.getMessage());
+
+            toast(ctx, R.string.toast_error_merging_1);
+        }
+    }
+
+    private void processInternalAudio(Context ctx, Scrnshoot scrnshoot) {
+        try {
+            final String scrnshootFileName = KFile.getDefaultScrnshootFileName(ctx),
+                         audioFileName = DESTINATION.getName().replaceAll(Constants.EXT_VIDEO_FORMAT, KFile.getFileExtension(INTERNAL_AUDIO));
+
+            final File f = new File(
+                DESTINATION.getParentFile(),
+                audioFileName.replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY)))
+            );
+
+            KFile.copyFile(INTERNAL_AUDIO, f);
+
+            scrnshoot.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY, f));
+        } catch (Exception e) {
+            Log.e(TAG, "processInternalAudio: " + e.getMessage());
+        }
+    }
+
+    /** Deletes the recorded files left, once the job is done or dropped. */
+    public void clean() {
+        if(REPLAY_SOURCE != null) {
+            REPLAY_SOURCE.destroy();
+
+            REPLAY_SOURCE = null;
+        }
+
+        if(VIDEO != null && !IS_VIDEO_MOVED) {
+            VIDEO.delete();
+        }
+
+        if(INTERNAL_AUDIO != null) {
+            INTERNAL_AUDIO.delete();
+        }
+
+        if(!IS_MAIN_FILE_FAILED) {
+            for(File segment : SEGMENTS) {
+                segment.delete();
+            }
+        }
+
+        if(SEGMENTS_DIRECTORY != null) {
+            SEGMENTS_DIRECTORY.delete();
+        }
+
+        if(THUMBNAIL != null) {
+            THUMBNAIL.delete();
+        }
+    }
+
+    /** Without a watermark to burn in (or drawn in while recording), the recording is renamed into place instead of copied. */
+    private void moveOrWatermarkVideo(Context ctx) {
+        final boolean isWatermarkNeeded = !has(FLAG_WATERMARK_BURNED_IN) && WatermarkProcessor.isDefaultWatermarkNeeded(ctx);
+
+        if(!isWatermarkNeeded && KFile.moveFile(VIDEO, DESTINATION)) {
+            VIDEO = DESTINATION;
+
+            IS_VIDEO_MOVED = true;
+
+            return;
+        }
+
+        if(!isWatermarkNeeded || !WatermarkProcessor.addDefaultWatermark(VIDEO.getAbsolutePath(), DESTINATION.getAbsolutePath(), new KSettings(ctx), ctx)) {
+            KFile.copyFile(VIDEO, DESTINATION);
+        }
+    }
+
+    private void processExtras(Context ctx, Scrnshoot scrnshoot) {
+        final File folder = DESTINATION.getParentFile();
+
+        final String scrnshootFileName = KFile.getDefaultScrnshootFileName(ctx),
+                     audioFileName = DESTINATION.getName().replaceAll(Constants.EXT_VIDEO_FORMAT, Constants.EXT_AUDIO_FORMAT),
+                     internalAudioFileName = INTERNAL_AUDIO == null ? audioFileName : DESTINATION.getName().replaceAll(Constants.EXT_VIDEO_FORMAT, KFile.getFileExtension(INTERNAL_AUDIO));
+
+        final KRemuxer remuxer = new KRemuxer(VIDEO);
+
+        final HashMap<File, Integer> remuxedExtras = new HashMap<>();
+
+        if(has(FLAG_GENERATE_AUDIO_AUDIO)) {
+            final File f = new File(
+                folder,
+                (has(FLAG_RECORD_MIC) ? audioFileName : internalAudioFileName).replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_AUDIO_AUDIO)))
+            );
+
+            boolean noError = true;
+
+            if(has(FLAG_RECORD_MIC)) {
+                if(has(FLAG_RECORD_INTERNAL_AUDIO) && has(FLAG_MERGE_INTERNAL_AUDIO)) {
+                    KFile.extractAudioFromVideo(DESTINATION, f);
+                } else {
+                    remuxer.addOutput(f, KRemuxer.TRACKS_AUDIO);
+
+                    remuxedExtras.put(f, Scrnshoot.Extra.EXTRA_AUDIO_AUDIO);
+                }
+            } else if(has(FLAG_RECORD_INTERNAL_AUDIO)) {
+                try {
+                    KFile.copyFile(INTERNAL_AUDIO, f);
+                } catch (Exception e) {
+                    Log.e(TAG, "processExtras - mic: " + e.getMessage());
+
+                    noError = false;
+                }
+            }
+
+            if(noError && !remuxedExtras.containsKey(f) && (has(FLAG_RECORD_MIC) || has(FLAG_RECORD_INTERNAL_AUDIO))) {
+                scrnshoot.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_AUDIO, f));
+            }
+        }
+
+        if(has(FLAG_GENERATE_AUDIO_ONLY_INTERNAL) && has(FLAG_RECORD_INTERNAL_AUDIO) && has(FLAG_MERGE_INTERNAL_AUDIO)) {
+            final File f = new File(
+                folder,
+                internalAudioFileName.replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY)))
+            );
+
+            try {
+                KFile.copyFile(INTERNAL_AUDIO, f);
+
+                scrnshoot.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY, f));
+            } catch (Exception e) {
+                Log.e(TAG, "processExtras - int: " + e.getMessage());
+            }
+        }
+
+        if(has(FLAG_GENERATE_AUDIO_ONLY_MIC) && has(FLAG_RECORD_MIC)) {
+            final File f = new File(
+                folder,
+                audioFileName.replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_AUDIO_MIC_ONLY)))
+            );
+
+            remuxer.addOutput(f, KRemuxer.TRACKS_AUDIO);
+
+            remuxedExtras.put(f, Scrnshoot.Extra.EXTRA_AUDIO_MIC_ONLY);
+        }
+
+        if(has(FLAG_GENERATE_VIDEO_NO_AUDIO)) {
+            final File f = new File(
+                folder,
+                DESTINATION.getName().replaceAll(scrnshootFileName, scrnshootFileName + KFile.FILE_SEPARATOR + Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_VIDEO_NO_AUDIO))
+            );
+
+            remuxer.addOutput(f, KRemuxer.TRACKS_VIDEO);
+
+            remuxedExtras.put(f, Scrnshoot.Extra.EXTRA_VIDEO_NO_AUDIO);
+        }
+
+        if(has(FLAG_RECORD_MIC) && has(FLAG_RECORD_INTERNAL_AUDIO)) {
+            if(has(FLAG_GENERATE_VIDEO_ONLY_MIC_AUDIO)) {
+                final File f = new File(
+                    folder,
+                    DESTINATION.getName().replaceAll(scrnshootFileName, scrnshootFileName + KFile.FILE_SEPARATOR + Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_VIDEO_MIC_ONLY))
+                );
+
+                remuxer.addOutput(f, KRemuxer.TRACKS_ALL);
+
+                remuxedExtras.put(f, Scrnshoot.Extra.EXTRA_VIDEO_MIC_ONLY);
+            }
+
+            if(has(FLAG_GENERATE_VIDEO_ONLY_INTERNAL_AUDIO)) {
+                final File f = new File(
+                    folder,
+                    DESTINATION.getName().replaceAll(scrnshootFileName, scrnshootFileName + KFile.FILE_SEPARATOR + Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_VIDEO_INTERNAL_ONLY))
+                );
+
+                if(IS_INTERNAL_AUDIO_REMUXABLE && KFile.muxAudioAndVideo(INTERNAL_AUDIO, VIDEO, f)) {
+                    scrnshoot.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_VIDEO_INTERNAL_ONLY, f));
+                } else if(combineAudioAndVideo(ctx, INTERNAL_AUDIO, VIDEO, f, true, null)) {
+                    scrnshoot.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_VIDEO_INTERNAL_ONLY, f));
+                }
+            }
+        }
+
+        for(File f : remuxer.run()) {
+            scrnshoot.addExtra(new Scrnshoot.Extra(Objects.requireNonNull(remuxedExtras.get(f)), f));
+        }
+    }
+
+    private void processCodecExtras(Context ctx, Scrnshoot scrnshoot) {
+        final String scrnshootFileName = KFile.getDefaultScrnshootFileName(ctx),
+                     audioFileName = DESTINATION.getName().replaceAll(Constants.EXT_VIDEO_FORMAT, Constants.EXT_AUDIO_FORMAT);
+
+        final boolean hasAudio = has(FLAG_RECORD_MIC) || has(FLAG_RECORD_INTERNAL_AUDIO);
+
+        final KRemuxer remuxer = new KRemuxer(DESTINATION);
+
+        final HashMap<File, Integer> remuxedExtras = new HashMap<>();
+
+        if(has(FLAG_GENERATE_AUDIO_AUDIO) && hasAudio) {
+            final File f = new File(
+                DESTINATION.getParentFile(),
+                audioFileName.replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_AUDIO_AUDIO)))
+            );
+
+            remuxer.addOutput(f, KRemuxer.TRACKS_AUDIO);
+
+            remuxedExtras.put(f, Scrnshoot.Extra.EXTRA_AUDIO_AUDIO);
+        }
+
+        if(has(FLAG_GENERATE_VIDEO_NO_AUDIO)) {
+            final File f = new File(
+                DESTINATION.getParentFile(),
+                DESTINATION.getName().replaceAll(scrnshootFileName, scrnshootFileName + KFile.FILE_SEPARATOR + Scrnshoot.Extra.getFileNameComplementByType(ctx, Scrnshoot.Extra.EXTRA_VIDEO_NO_AUDIO))
+            );
+
+            remuxer.addOutput(f, KRemuxer.TRACKS_VIDEO);
+
+            remuxedExtras.put(f, Scrnshoot.Extra.EXTRA_VIDEO_NO_AUDIO);
+        }
+
+        for(File f : remuxer.run()) {
+            scrnshoot.addExtra(new Scrnshoot.Extra(Objects.requireNonNull(remuxedExtras.get(f)), f));
+        }
+    }
+
+    /** Media3 has to be driven from the main thread, this waits for it while reporting its progress. */
+    @OptIn(markerClass = UnstableApi.class)
+    private boolean combineAudioAndVideo(Context ctx, File audio, File video, File dest, boolean isToReplaceAudio, Listener listener) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final AtomicBoolean success = new AtomicBoolean(false);
+
+        final AtomicReference<Transformer> transformer = new AtomicReference<>();
+
+        handler.post(() -> {
+            try {
+                transformer.set(KFile.combineAudioAndVideo(
+                    ctx,
+                    audio,
+                    video,
+                    dest,
+                    isToReplaceAudio,
+                    () -> {
+                        success.set(true);
+
+                        latch.countDown();
+                    },
+                    latch::countDown
+                ));
+            } catch (Exception e) {
+                Log.e(TAG, "combineAudioAndVideo: " + e.getMessage());
+
+                latch.countDown();
+            }
+        });
+
+        final ProgressHolder progressHolder = new ProgressHolder();
+
+        final AtomicInteger progress = new AtomicInteger(-1);
+
+        int lastProgress = -1;
+
+        long lastProgressAt = System.currentTimeMillis();
+
+        try {
+            while(!latch.await(500, TimeUnit.MILLISECONDS)) {
+                if(progress.get() != lastProgress) {
+                    lastProgress = progress.get();
+                    lastProgressAt = System.currentTimeMillis();
+                } else if(lastProgress >= 0 && System.currentTimeMillis() - lastProgressAt > TRANSFORMER_STALL_TIMEOUT_MS) {
+                    //only once progress was reported, some exports never make it available and are not stuck for it
+                    Log.e(TAG, "combineAudioAndVideo: no progress for " + TRANSFORMER_STALL_TIMEOUT_MS + "ms, cancelling");
+
+                    final CountDownLatch cancelLatch = new CountDownLatch(1);
+
+                    handler.post(() -> {
+                        if(transformer.get() != null) {
+                            transformer.get().cancel();
+                        }
+
+                        cancelLatch.countDown();
+                    });
+
+                    //the transformer writes dest until cancel returns on the main thread
+                    cancelLatch.await();
+
+                    dest.delete();
+
+                    return false;
+                }
+
+                handler.post(() -> {
+                    if(transformer.get() != null && transformer.get().getProgress(progressHolder) == Transformer.PROGRESS_STATE_AVAILABLE) {
+                        progress.set(progressHolder.progress);
+
+                        if(listener != null) {
+                            setProgress(progressHolder.progress * PROGRESS_MAIN_FILE / 100, listener);
+                        }
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Log.e(TAG, "combineAudioAndVideo2: " + e.getMessage());
+        }
+
+        return success.get();
+    }
+
+    private void setProgress(int progress, Listener listener) {
+        if(progress == PROGRESS) {
+            return;
+        }
+
+        PROGRESS = progress;
+
+        listener.onProgress(this);
+    }
+
+    private boolean has(int flag) {
+        return (FLAGS & flag) != 0;
+    }
+
+    private void toast(Context ctx, int resId) {
+        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(ctx, ctx.getString(resId), Toast.LENGTH_SHORT).show());
+    }
+}
@@ -0,0 +1,218 @@
+package dev.dect.scrnshoot.processing;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dev.dect.scrnshoot.data.Constants;
+import dev.dect.scrnshoot.data.DB;
+import dev.dect.scrnshoot.data.KSharedPreferences;
+import dev.dect.scrnshoot.model.Scrnshoot;
+import dev.dect.scrnshoot.notification.ProcessingNotification;
+import dev.dect.scrnshoot.service.CapturingService;
+import dev.dect.scrnshoot.utils.KEncoders;
+import dev.dect.scrnshoot.utils.ThumbnailLoader;
+
+/**
+ * Processes the recordings in the background, so a new one can start right after the last one stops.
+ * Jobs run on a few worker threads, as many as there are encoder instances to spare (one is kept for recording)
+ * and never more than half the cores. Pending jobs are stored in the app preferences, after every step, and picked up
+ * again the next time the app or the capturing service starts, along with the recordings {@link RecordingJournal} finds
+ * were cut short. Probing the encoders, restoring and storing jobs all happen on a control thread, never on the caller's.
+ */
+@SuppressLint("ApplySharedPref")
+public class ProcessingQueue {
+    private static final String TAG = ProcessingQueue.class.getSimpleName();
+
+    private static final int MAX_WORKERS = 3;
+
+    private static ProcessingQueue INSTANCE;
+
+    private final Context CONTEXT;
+
+    private final ExecutorService CONTROL = Executors.newSingleThreadExecutor();
+
+    // Created by the first task on CONTROL, only used from there.
+    private ExecutorService EXECUTOR;
+
+    private final ProcessingNotification NOTIFICATION;
+
+    private final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    private final ArrayList<ProcessingJob> JOBS = new ArrayList<>();
+
+    private ProcessingQueue(Context ctx) {
+        this.CONTEXT = ctx;
+        this.NOTIFICATION = new ProcessingNotification(ctx);
+    }
+
+    public static synchronized ProcessingQueue getInstance(Context ctx) {
+        if(INSTANCE == null) {
+            INSTANCE = new ProcessingQueue(ctx.getApplicationContext());
+
+            INSTANCE.CONTROL.execute(INSTANCE::restore);
+        }
+
+        return INSTANCE;
+    }
+
+    /** Starts the jobs a previous process left unfinished, if any. */
+    public static void resumePending(Context ctx) {
+        getInstance(ctx);
+    }
+
+    public static boolean hasPendingJobs() {
+        return INSTANCE != null && INSTANCE.getPendingCount() > 0;
+    }
+
+    public int getPendingCount() {
+        synchronized(JOBS) {
+            return JOBS.size();
+        }
+    }
+
+    /** Safe from the main thread, the job is only counted as pending right away. */
+    public void enqueue(ProcessingJob job) {
+        synchronized(JOBS) {
+            JOBS.add(job);
+        }
+
+        CONTROL.execute(() -> {
+            synchronized(JOBS) {
+                save();
+            }
+
+            //only once the job is stored, a crash in between is told apart by the shared id when recovering
+            RecordingJournal.delete(CONTEXT, job);
+
+            start(job);
+        });
+    }
+
+    private void start(ProcessingJob job) {
+        NOTIFICATION.createAndShow(job.getId(), job.getDestination().getName(), -1);
+
+        EXECUTOR.execute(() -> run(job));
+    }
+
+    private void run(ProcessingJob job) {
+        Scrnshoot scrnshoot = null;
+
+        try {
+            scrnshoot = job.process(CONTEXT, new ProcessingJob.Listener() {
+                @Override
+                public void onProgress(ProcessingJob job) {
+                    NOTIFICATION.createAndShow(job.getId(), job.getDestination().getName(), job.getProgress());
+                }
+
+                @Override
+                public void onStep(ProcessingJob job) {
+                    synchronized(JOBS) {
+                        save();
+                    }
+                }
+            });
+
+            if(scrnshoot != null) {
+                scrnshoot.notifyAllMediaScanner();
+
+                new DB(CONTEXT).insertScrnshoot(scrnshoot);
+
+                ThumbnailLoader.save(CONTEXT, scrnshoot, job.getThumbnail());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "run: " + e.getMessage());
+        }
+
+        synchronized(JOBS) {
+            JOBS.remove(job);
+
+            save();
+        }
+
+        job.clean();
+
+        NOTIFICATION.destroy(job.getId());
+
+        final Scrnshoot processed = scrnshoot;
+
+        HANDLER.post(() -> CapturingService.onJobProcessed(CONTEXT, processed));
+    }
+
+    private void restore() {
+        final int workers = Math.min(KEncoders.getMaxInstances(CONTEXT, MediaFormat.MIMETYPE_VIDEO_AVC) - 1, Runtime.getRuntime().availableProcessors() / 2);
+
+        EXECUTOR = Executors.newFixedThreadPool(Math.max(1, Math.min(MAX_WORKERS, workers)));
+
+        final ArrayList<ProcessingJob> restored = new ArrayList<>();
+
+        final HashSet<Long> queuedIds = new HashSet<>();
+
+        final HashSet<File> queuedThumbnails = new HashSet<>();
+
+        try {
+            final JSONArray jobs = new JSONArray(KSharedPreferences.getAppSp(CONTEXT).getString(Constants.Sp.App.PROCESSING_QUEUE, "[]"));
+
+            for(int i = 0; i < jobs.length(); i++) {
+                final ProcessingJob job = ProcessingJob.fromJson(jobs.getJSONObject(i));
+
+                queuedIds.add(job.getId());
+
+                if(job.hasInputs()) {
+                    restored.add(job);
+
+                    if(job.getThumbnail() != null) {
+                        queuedThumbnails.add(job.getThumbnail());
+                    }
+                } else {
+                    Log.w(TAG, "restore: dropping " + job.getDestination().getName() + ", its recording is gone");
+
+                    job.clean();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "restore: " + e.getMessage());
+        }
+
+        restored.addAll(RecordingJournal.recover(CONTEXT, queuedIds, queuedThumbnails));
+
+        synchronized(JOBS) {
+            JOBS.addAll(restored);
+
+            save();
+        }
+
+        for(ProcessingJob job : restored) {
+            start(job);
+        }
+    }
+
+    private void save() {
+        final JSONArray jobs = new JSONArray();
+
+        for(ProcessingJob job : JOBS) {
+            if(!job.isPersistable()) {
+                continue;
+            }
+
+            try {
+                jobs.put(job.toJson());
+            } catch (Exception e) {
+                Log.e(TAG, "save: " + e.getMessage());
+            }
+        }
+
+        KSharedPreferences.getAppSp(CONTEXT).edit().putString(Constants.Sp.App.PROCESSING_QUEUE, jobs.toString()).commit();
+    }
+}
@@ -0,0 +1,162 @@
+package dev.dect.scrnshoot.processing;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import dev.dect.scrnshoot.data.KSettings;
+import dev.dect.scrnshoot.utils.KFile;
+import dev.dect.scrnshoot.utils.ThumbnailLoader;
+
+/**
+ * Write-ahead journal of the recordings in progress: a {@link ProcessingJob} is written when a recording starts (and
+ * again as screenshots are taken) and deleted by {@link ProcessingQueue} once the job, which keeps the same id, is stored.
+ * If the app is killed meanwhile, the entry is found by {@link #recover(Context, Set, Set)} the next time the queue starts and
+ * whatever of the recording can be read is processed and saved as usual. Entries are told apart from those of the
+ * recording in progress by a token drawn once per process, as a restarted process may get the same pid.
+ *
+ * @noinspection ResultOfMethodCallIgnored
+ */
+public class RecordingJournal {
+    private static final String TAG = RecordingJournal.class.getSimpleName();
+
+    private static final String FOLDER = "journal",
+                                EXTENSION = ".json",
+                                KEY_SESSION = "session",
+                                KEY_JOB = "job";
+
+    private static final String SESSION = UUID.randomUUID().toString();
+
+    public static void write(Context ctx, ProcessingJob job) {
+        final File folder = getFolder(ctx),
+                   file = new File(folder, job.getId() + EXTENSION),
+                   temp = new File(folder, job.getId() + EXTENSION + ".tmp");
+
+        try {
+            final JSONObject json = new JSONObject();
+
+            json.put(KEY_SESSION, SESSION);
+            json.put(KEY_JOB, job.toJson());
+
+            Files.write(temp.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            Log.e(TAG, "write: " + e.getMessage());
+        }
+    }
+
+    public static void delete(Context ctx, ProcessingJob job) {
+        new File(getFolder(ctx), job.getId() + EXTENSION).delete();
+    }
+
+    /**
+     * The recordings a previous process left behind that can still be processed, their entries are removed.
+     * Entries of jobs in {@code queuedIds} were already queued when the process died, they are only removed.
+     * Frames captured for recordings that neither a recovered job nor {@code queuedThumbnails} keep are deleted.
+     */
+    public static ArrayList<ProcessingJob> recover(Context ctx, Set<Long> queuedIds, Set<File> queuedThumbnails) {
+        final ArrayList<ProcessingJob> jobs = new ArrayList<>();
+
+        final File[] files = getFolder(ctx).listFiles();
+
+        if(files == null) {
+            sweepCaptures(ctx, jobs, queuedThumbnails);
+
+            return jobs;
+        }
+
+        for(File file : files) {
+            if(!file.getName().endsWith(EXTENSION)) {
+                file.delete();
+
+                continue;
+            }
+
+            try {
+                final JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+
+                if(SESSION.equals(json.optString(KEY_SESSION))) {
+                    continue;
+                }
+
+                final ProcessingJob job = ProcessingJob.fromJson(json.getJSONObject(KEY_JOB));
+
+                if(queuedIds.contains(job.getId())) {
+                    Log.i(TAG, "recover: " + file.getName() + " is already queued");
+                } else {
+                    job.recoverInputs();
+
+                    if(job.hasInputs()) {
+                        job.setDestination(KFile.generateNewEmptyScrnshootFile(ctx, new KSettings(ctx)));
+
+                        jobs.add(job);
+
+                        Log.i(TAG, "recover: " + job.getDestination().getName());
+                    } else {
+                        Log.w(TAG, "recover: nothing readable left of " + file.getName());
+
+                        job.clean();
+                    }
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "recover: " + e.getMessage());
+            }
+
+            file.delete();
+        }
+
+        sweepCaptures(ctx, jobs, queuedThumbnails);
+
+        return jobs;
+    }
+
+    private static void sweepCaptures(Context ctx, ArrayList<ProcessingJob> recovered, Set<File> queuedThumbnails) {
+        final File[] files = ctx.getCacheDir().listFiles();
+
+        if(files == null) {
+            return;
+        }
+
+        final HashSet<File> kept = new HashSet<>(queuedThumbnails);
+
+        for(ProcessingJob job : recovered) {
+            if(job.getThumbnail() != null) {
+                kept.add(job.getThumbnail());
+            }
+        }
+
+        //a recording of this process may be capturing its frame right now
+        final long processStartedAt = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime());
+
+        for(File file : files) {
+            if(ThumbnailLoader.isCaptureFile(file) && !kept.contains(file) && file.lastModified() < processStartedAt) {
+                Log.i(TAG, "sweepCaptures: " + file.getName());
+
+                file.delete();
+            }
+        }
+    }
+
+    private static File getFolder(Context ctx) {
+        final File folder = new File(ctx.getFilesDir(), FOLDER);
+
+        if(!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        return folder;
+    }
+}
@@ -71,7 +71,11 @@ public class QuickTileCapturingService extends TileService {
     public void onClick() {
         super.onClick();
 
-        CapturingService.requestToggleRecording(this);
+        if(CapturingService.isReplayBufferActive()) {
+            CapturingService.requestSaveReplay();
+        } else {
+            CapturingService.requestToggleRecording(this);
+        }
     }
 
     private void updateTile() {
@@ -81,6 +85,10 @@ public class QuickTileCapturingService extends TileService {
         } else if(CapturingService.isInCountdown()) {
             getQsTile().setState(Tile.STATE_UNAVAILABLE);
             getQsTile().setLabel(getString(R.string.quick_settings_tile_stop_recording));
+        } else if(CapturingService.isReplayBufferActive()) {
+            getQsTile().setState(Tile.STATE_ACTIVE);
+            getQsTile().setLabel(getString(R.string.quick_settings_tile_save_replay));
+            getQsTile().setIcon(Icon.createWithResource(this, R.drawable.icon_quick_settings_recording));
         } else if(CapturingService.isRecording()) {
             getQsTile().setState(Tile.STATE_ACTIVE);
             getQsTile().setLabel(getString(R.string.quick_settings_tile_stop_recording));
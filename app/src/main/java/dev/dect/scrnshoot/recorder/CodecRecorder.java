@@ -0,0 +1,694 @@
+package dev.dect.scrnshoot.recorder;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.VirtualDisplay;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioPlaybackCaptureConfiguration;
+import android.media.AudioRecord;
+import android.media.MediaFormat;
+import android.media.MediaRecorder;
+import android.os.Process;
+import android.util.Log;
+import android.view.Surface;
+import android.widget.Toast;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+
+import dev.dect.scrnshoot.R;
+import dev.dect.scrnshoot.data.Constants;
+import dev.dect.scrnshoot.data.KSettings;
+import dev.dect.scrnshoot.model.Scrnshoot;
+import dev.dect.scrnshoot.recorder.gl.FramePipeline;
+import dev.dect.scrnshoot.recorder.gl.Layer;
+import dev.dect.scrnshoot.recorder.utils.AudioEncoder;
+import dev.dect.scrnshoot.recorder.utils.AudioOverrunDetector;
+import dev.dect.scrnshoot.recorder.utils.AudioMixer;
+import dev.dect.scrnshoot.recorder.utils.EncoderGovernor;
+import dev.dect.scrnshoot.recorder.utils.KMuxer;
+import dev.dect.scrnshoot.recorder.utils.RecordingStats;
+import dev.dect.scrnshoot.recorder.utils.ReplayBuffer;
+import dev.dect.scrnshoot.recorder.utils.SampleSink;
+import dev.dect.scrnshoot.recorder.utils.StartLatency;
+import dev.dect.scrnshoot.recorder.utils.VideoEncoder;
+import dev.dect.scrnshoot.service.CapturingService;
+import dev.dect.scrnshoot.utils.KEncoders;
+import dev.dect.scrnshoot.utils.KFile;
+import dev.dect.scrnshoot.utils.KMediaProjection;
+
+/**
+ * Single pass recorder: screen, internal audio and mic are encoded with {@link android.media.MediaCodec}
+ * and written by one {@link KMuxer}, so the final mp4 is ready as soon as the recording stops.
+ * Track layout is fixed: 0 = video, then internal audio (if enabled), then mic (if enabled).
+ * When both audio sources are enabled they are mixed in real time into a single track instead,
+ * with the internal audio capture acting as the clock of the mix.
+ * When recording in segments the output goes to a hidden folder in the saving location as closed
+ * mp4 segments, see {@link #getSegments()}, instead of the temp file.
+ * In replay buffer mode nothing goes to storage while recording: only the last seconds are kept by a
+ * {@link ReplayBuffer} and written out on demand with {@link #saveReplay(File)}.
+ * With adaptive quality an {@link EncoderGovernor} adjusts the video encoder while recording and
+ * every adjustment is kept as a marker, see {@link #getMarkers()}.
+ * With a variable frame rate or layers (overlays drawn into the video) the display goes through a
+ * {@link FramePipeline}, that only hands the encoder the frames that changed and draws the layers on top.
+ *
+ * @noinspection ResultOfMethodCallIgnored
+ */
+@SuppressLint("MissingPermission")
+public class CodecRecorder {
+    private final String TAG = CodecRecorder.class.getSimpleName();
+
+    public static final int TRACK_VIDEO = 0;
+
+    private static final long SEGMENT_DURATION_US = 10000000;
+
+    //mapped as one region, it has to fit the address space left, far smaller on 32 bit
+    private static final int MAX_REPLAY_BUFFER_BYTES = Process.is64Bit() ? 1024 * 1024 * 1024 : 256 * 1024 * 1024,
+                             MIN_REPLAY_BUFFER_BYTES = 16 * 1024 * 1024;
+
+    private static final float INTERNAL_AUDIO_GAIN = 1f,
+                               MIC_GAIN = 1f;
+
+    private final Context CONTEXT;
+
+    private final KSettings KSETTINGS;
+
+    private final ArrayList<AudioCapture> AUDIO_CAPTURES = new ArrayList<>();
+
+    private final ArrayList<Scrnshoot.Marker> MARKERS = new ArrayList<>();
+
+    private SampleSink SINK;
+
+    private KMuxer MUXER;
+
+    private ReplayBuffer REPLAY_BUFFER;
+
+    private VideoEncoder VIDEO_ENCODER;
+
+    private EncoderGovernor GOVERNOR;
+
+    private AudioMixer MIXER;
+
+    private ByteBuffer MIX_BUFFER;
+
+    private VirtualDisplay VIRTUAL_DISPLAY;
+
+    private FramePipeline PIPELINE;
+
+    private ArrayList<Layer> LAYERS;
+
+    private RecordingStats STATS;
+
+    private File TEMP_FILE,
+                 SEGMENTS_DIRECTORY;
+
+    private boolean IS_HANDED_OVER = false;
+
+    public CodecRecorder(Context ctx, KSettings ks) {
+        this.CONTEXT = ctx;
+        this.KSETTINGS = ks;
+
+        createTempFile();
+    }
+
+    public void init() {
+        try {
+            final boolean isToMix = isToMixAudio();
+
+            int trackCount = 1;
+
+            if(KSETTINGS.isToRecordInternalAudio()) {
+                trackCount++;
+            }
+
+            if(KSETTINGS.isToRecordMic() && !isToMix) {
+                trackCount++;
+            }
+
+            if(KSETTINGS.isToUseReplayBuffer()) {
+                REPLAY_BUFFER = buildReplayBuffer(trackCount);
+
+                REPLAY_BUFFER.setStats(STATS);
+
+                SINK = REPLAY_BUFFER;
+            } else {
+                if(KSETTINGS.isToRecordInSegments()) {
+                    createSegmentsDirectory();
+
+                    MUXER = new KMuxer(SEGMENTS_DIRECTORY, SEGMENT_DURATION_US, trackCount);
+                } else {
+                    MUXER = new KMuxer(TEMP_FILE, trackCount);
+                }
+
+                SINK = MUXER;
+            }
+
+            final String mimeType = KEncoders.pickMimeType(CONTEXT, KSETTINGS.getVideoMimeType(), KSETTINGS.getVideoWidth(), KSETTINGS.getVideoHeight());
+
+            try {
+                VIDEO_ENCODER = buildVideoEncoder(mimeType);
+            } catch (Exception e) {
+                if(mimeType.equals(MediaFormat.MIMETYPE_VIDEO_AVC)) {
+                    throw e;
+                }
+
+                Log.e(TAG, "init: " + mimeType + " " + e.getMessage());
+
+                VIDEO_ENCODER = buildVideoEncoder(MediaFormat.MIMETYPE_VIDEO_AVC);
+            }
+
+            if(KSETTINGS.isToUseAdaptiveQuality()) {
+                GOVERNOR = new EncoderGovernor(CONTEXT, KSETTINGS, VIDEO_ENCODER, (timeMs, bitRate, frameRate, reason) -> MARKERS.add(new Scrnshoot.Marker(timeMs, bitRate, frameRate, reason)));
+            }
+
+            int track = TRACK_VIDEO + 1;
+
+            if(isToMix) {
+                initMixedAudio(track);
+            } else {
+                if(KSETTINGS.isToRecordInternalAudio()) {
+                    final AudioRecord audioRecord = buildInternalAudioRecord();
+
+                    AUDIO_CAPTURES.add(new AudioCapture(audioRecord, buildAudioEncoder(audioRecord.getChannelCount(), track++), null));
+                }
+
+                if(KSETTINGS.isToRecordMic()) {
+                    final AudioRecord audioRecord = buildMicAudioRecord(false);
+
+                    AUDIO_CAPTURES.add(new AudioCapture(audioRecord, buildAudioEncoder(audioRecord.getChannelCount(), track), null));
+                }
+            }
+
+            VIDEO_ENCODER.setOnFirstFrame(StartLatency::firstFrame);
+
+            VIDEO_ENCODER.start();
+
+            if(KSETTINGS.isToUseVariableFrameRate() || LAYERS != null) {
+                PIPELINE = new FramePipeline(
+                    VIDEO_ENCODER.getInputSurface(),
+                    KSETTINGS.getVideoWidth(),
+                    KSETTINGS.getVideoHeight(),
+                    VIDEO_ENCODER.getFrameRate(),
+                    KSETTINGS.isToUseVariableFrameRate() ? KSETTINGS.getVariableFrameRateMinFrameRate() : 0,
+                    LAYERS
+                );
+
+                PIPELINE.setStats(STATS);
+            }
+
+            VIRTUAL_DISPLAY = KMediaProjection.get().createVirtualDisplay(
+                CONTEXT.getString(R.string.app_name),
+                KSETTINGS.getVideoWidth(),
+                KSETTINGS.getVideoHeight(),
+                KSETTINGS.getVideoDpi(),
+                DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
+                null,
+                null,
+                null
+            );
+        } catch (Exception e) {
+            Log.e(TAG, "init: " + e.getMessage());
+
+            //the replay buffer is the first thing made, without it nothing else was
+            final boolean isReplayBufferFailed = KSETTINGS.isToUseReplayBuffer() && REPLAY_BUFFER == null;
+
+            Toast.makeText(CONTEXT, CONTEXT.getString(isReplayBufferFailed ? R.string.toast_error_replay_buffer : R.string.toast_error_generic), Toast.LENGTH_SHORT).show();
+
+            CapturingService.requestStopRecording();
+        }
+    }
+
+    /** The encoder is already running and the display mirrored since {@link #init()}, frames only start flowing now. */
+    public void start() {
+        VIRTUAL_DISPLAY.setSurface(PIPELINE == null ? VIDEO_ENCODER.getInputSurface() : PIPELINE.getInputSurface());
+
+        for(AudioCapture audioCapture : AUDIO_CAPTURES) {
+            audioCapture.start();
+        }
+
+        if(GOVERNOR != null) {
+            GOVERNOR.start();
+        }
+    }
+
+    public void pause() {
+        if(GOVERNOR != null) {
+            GOVERNOR.pause();
+        }
+
+        SINK.pause();
+
+        VIDEO_ENCODER.suspend(true);
+    }
+
+    public void resume() {
+        VIDEO_ENCODER.suspend(false);
+        VIDEO_ENCODER.requestSyncFrame();
+
+        SINK.resume();
+
+        if(GOVERNOR != null) {
+            GOVERNOR.resume();
+        }
+    }
+
+    public void stop() {
+        if(GOVERNOR != null) {
+            GOVERNOR.stop();
+        }
+
+        for(AudioCapture audioCapture : AUDIO_CAPTURES) {
+            audioCapture.stop();
+        }
+
+        if(PIPELINE != null) {
+            if(VIRTUAL_DISPLAY != null) {
+                VIRTUAL_DISPLAY.setSurface(null);
+            }
+
+            PIPELINE.release();
+
+            PIPELINE = null;
+        }
+
+        if(VIDEO_ENCODER != null) {
+            VIDEO_ENCODER.stop();
+        }
+
+        if(VIRTUAL_DISPLAY != null) {
+            VIRTUAL_DISPLAY.release();
+        }
+
+        if(SINK != null) {
+            SINK.stop();
+        }
+    }
+
+    /** For a recording that never started (preparing failed or it was cancelled in the countdown), releases whatever {@link #init()} got to prepare. */
+    public void abort() {
+        if(VIRTUAL_DISPLAY != null) {
+            VIRTUAL_DISPLAY.release();
+
+            VIRTUAL_DISPLAY = null;
+        }
+
+        if(VIDEO_ENCODER != null) {
+            VIDEO_ENCODER.stop();
+        }
+
+        if(SINK != null) {
+            SINK.stop();
+        }
+
+        destroy();
+    }
+
+    public void destroy() {
+        for(AudioCapture audioCapture : AUDIO_CAPTURES) {
+            audioCapture.release();
+        }
+
+        AUDIO_CAPTURES.clear();
+
+        if(PIPELINE != null) {
+            PIPELINE.release();
+
+            PIPELINE = null;
+        }
+
+        if(VIDEO_ENCODER != null) {
+            VIDEO_ENCODER.release();
+        }
+
+        if(SEGMENTS_DIRECTORY != null && !IS_HANDED_OVER) {
+            final File[] files = SEGMENTS_DIRECTORY.listFiles();
+
+            if(files != null) {
+                for(File file : files) {
+                    file.delete();
+                }
+            }
+
+            SEGMENTS_DIRECTORY.delete();
+        }
+
+        if(REPLAY_BUFFER != null) {
+            REPLAY_BUFFER.release();
+        }
+
+        VIDEO_ENCODER = null;
+        GOVERNOR = null;
+        SINK = null;
+        MUXER = null;
+        REPLAY_BUFFER = null;
+        MIXER = null;
+
+        if(!IS_HANDED_OVER) {
+            TEMP_FILE.delete();
+        }
+    }
+
+    public File getFile() {
+        return TEMP_FILE;
+    }
+
+    /** Before {@link #init()}. */
+    public void setStats(RecordingStats stats) {
+        this.STATS = stats;
+    }
+
+    /** Before {@link #init()}, drawn on top of the screen, owned by the recorder from now on. */
+    public void setLayers(ArrayList<Layer> layers) {
+        this.LAYERS = layers;
+    }
+
+    /** Null when the display goes straight into the encoder. */
+    public FramePipeline getFramePipeline() {
+        return PIPELINE;
+    }
+
+    /** The files recorded are owned by the processing queue from now on, {@link #destroy()} leaves them alone. */
+    public void handOverFiles() {
+        IS_HANDED_OVER = true;
+    }
+
+    public boolean isSegmented() {
+        return MUXER != null && MUXER.isSegmented();
+    }
+
+    public ArrayList<File> getSegments() {
+        return MUXER.getSegments();
+    }
+
+    public File getSegmentsDirectory() {
+        return SEGMENTS_DIRECTORY;
+    }
+
+    public ArrayList<Scrnshoot.Marker> getMarkers() {
+        return MARKERS;
+    }
+
+    public boolean isReplayBuffer() {
+        return REPLAY_BUFFER != null;
+    }
+
+    public boolean saveReplay(File file) {
+        return REPLAY_BUFFER != null && REPLAY_BUFFER.save(file);
+    }
+
+    public Surface getSurface() {
+        return VIDEO_ENCODER.getInputSurface();
+    }
+
+    private boolean isToMixAudio() {
+        return KSETTINGS.isToRecordInternalAudio() && KSETTINGS.isToRecordMic();
+    }
+
+    private void initMixedAudio(int track) throws Exception {
+        final int sampleRate = KSETTINGS.getAudioSampleRate(),
+                  channels = KSETTINGS.getInternalAudioChannelNumber(),
+                  fifoFrames = sampleRate / 2,
+                  targetFrames = sampleRate / 10;
+
+        final AudioRecord internalAudioRecord = buildInternalAudioRecord(),
+                          micAudioRecord = buildMicAudioRecord(true);
+
+        final AudioMixer.Source internalSource = new AudioMixer.Source(internalAudioRecord.getSampleRate(), internalAudioRecord.getChannelCount(), sampleRate, channels, fifoFrames, targetFrames, INTERNAL_AUDIO_GAIN),
+                                micSource = new AudioMixer.Source(micAudioRecord.getSampleRate(), micAudioRecord.getChannelCount(), sampleRate, channels, fifoFrames, targetFrames, MIC_GAIN);
+
+        MIXER = new AudioMixer(channels, AudioCapture.CHUNK_SIZE, internalSource, micSource);
+
+        MIX_BUFFER = ByteBuffer.allocateDirect(AudioCapture.CHUNK_SIZE * channels * 2);
+
+        AUDIO_CAPTURES.add(new AudioCapture(internalAudioRecord, buildAudioEncoder(channels, track), internalSource));
+        AUDIO_CAPTURES.add(new AudioCapture(micAudioRecord, null, micSource));
+    }
+
+    private VideoEncoder buildVideoEncoder(String mimeType) throws Exception {
+        final VideoEncoder videoEncoder = new VideoEncoder(
+            mimeType,
+            KSETTINGS.getVideoWidth(),
+            KSETTINGS.getVideoHeight(),
+            KSETTINGS.getVideoBitRate(),
+            KEncoders.clampFrameRate(CONTEXT, mimeType, KSETTINGS.getVideoWidth(), KSETTINGS.getVideoHeight(), KSETTINGS.getVideoFrameRate()),
+            KEncoders.pickProfile(CONTEXT, mimeType),
+            SINK,
+            TRACK_VIDEO
+        );
+
+        videoEncoder.setStats(STATS);
+
+        return videoEncoder;
+    }
+
+    private AudioEncoder buildAudioEncoder(int channels, int track) throws Exception {
+        final AudioEncoder audioEncoder = new AudioEncoder(
+            MediaFormat.MIMETYPE_AUDIO_AAC,
+            KSETTINGS.getAudioSampleRate(),
+            channels,
+            KSETTINGS.getAudioBitRate(),
+            SINK,
+            track
+        );
+
+        audioEncoder.setStats(STATS);
+
+        return audioEncoder;
+    }
+
+    /**
+     * Sized for the window plus the sync frame margin, with headroom for encoders going over their bit rate.
+     * If that much can not be mapped the size is halved until it can, the oldest samples are just evicted sooner.
+     */
+    private ReplayBuffer buildReplayBuffer(int trackCount) throws Exception {
+        final int audioTracks = trackCount - 1;
+
+        final double seconds = KSETTINGS.getReplayBufferSeconds() + ReplayBuffer.SYNC_FRAME_MARGIN_US / 1000000d,
+                     bytesPerSecond = (KSETTINGS.getVideoBitRate() + (double) KSETTINGS.getAudioBitRate() * audioTracks) / 8,
+                     samplesPerSecond = KSETTINGS.getVideoFrameRate() + audioTracks * (KSETTINGS.getAudioSampleRate() / 1024d + 1);
+
+        final File backingFile = File.createTempFile(ReplayBuffer.class.getSimpleName() + new Date().getTime(), null, CONTEXT.getCacheDir());
+
+        int dataCapacity = (int) Math.min(bytesPerSecond * seconds * 1.5, MAX_REPLAY_BUFFER_BYTES);
+
+        while(true) {
+            try {
+                return new ReplayBuffer(
+                    backingFile,
+                    trackCount,
+                    KSETTINGS.getReplayBufferSeconds() * 1000000L,
+                    dataCapacity,
+                    (int) (samplesPerSecond * seconds * 1.5)
+                );
+            } catch (IOException e) {
+                Log.e(TAG, "buildReplayBuffer: could not map " + dataCapacity + " bytes " + e.getMessage());
+
+                if(dataCapacity / 2 < MIN_REPLAY_BUFFER_BYTES) {
+                    backingFile.delete();
+
+                    throw new Exception("no room to map the replay buffer", e);
+                }
+
+                dataCapacity /= 2;
+            }
+        }
+    }
+
+    private AudioRecord buildInternalAudioRecord() {
+        final AudioPlaybackCaptureConfiguration config = new AudioPlaybackCaptureConfiguration.Builder(KMediaProjection.get())
+            .addMatchingUsage(AudioAttributes.USAGE_MEDIA)
+            .addMatchingUsage(AudioAttributes.USAGE_GAME)
+            .addMatchingUsage(AudioAttributes.USAGE_UNKNOWN)
+            .build();
+
+        final int channelMask = KSETTINGS.isToRecordInternalAudioInStereo() ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+
+        return new AudioRecord.Builder()
+            .setAudioFormat(buildAudioFormat(channelMask))
+            .setBufferSizeInBytes(getBufferSize(channelMask))
+            .setAudioPlaybackCaptureConfig(config)
+            .build();
+    }
+
+    private AudioRecord buildMicAudioRecord(boolean nativeSampleRate) {
+        final AudioFormat format = nativeSampleRate ? new AudioFormat.Builder()
+            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+            .setChannelMask(AudioFormat.CHANNEL_IN_MONO)
+            .build() : buildAudioFormat(AudioFormat.CHANNEL_IN_MONO);
+
+        return new AudioRecord.Builder()
+            .setAudioSource(MediaRecorder.AudioSource.MIC)
+            .setAudioFormat(format)
+            .setBufferSizeInBytes(getBufferSize(AudioFormat.CHANNEL_IN_MONO))
+            .build();
+    }
+
+    private AudioFormat buildAudioFormat(int channelMask) {
+        return new AudioFormat.Builder()
+            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+            .setSampleRate(KSETTINGS.getAudioSampleRate())
+            .setChannelMask(channelMask)
+            .build();
+    }
+
+    private int getBufferSize(int channelMask) {
+        return Math.max(
+            AudioRecord.getMinBufferSize(KSETTINGS.getAudioSampleRate(), channelMask, AudioFormat.ENCODING_PCM_16BIT) * 2,
+            AudioCapture.CHUNK_SIZE * 4
+        );
+    }
+
+    private void createSegmentsDirectory() throws Exception {
+        SEGMENTS_DIRECTORY = new File(KSETTINGS.getSavingLocationFile(), "." + CodecRecorder.class.getSimpleName() + new Date().getTime());
+
+        if(!SEGMENTS_DIRECTORY.mkdirs()) {
+            throw new Exception("could not create " + SEGMENTS_DIRECTORY.getAbsolutePath());
+        }
+
+        new File(SEGMENTS_DIRECTORY, ".nomedia").createNewFile();
+    }
+
+    private void createTempFile() {
+        try {
+            TEMP_FILE = KFile.createPartialFile(KSETTINGS, CodecRecorder.class.getSimpleName(), Constants.EXT_VIDEO_FORMAT);
+        } catch (Exception e) {
+            Log.e(TAG, "createTempFile: " + e.getMessage());
+        }
+    }
+
+    private class AudioCapture {
+        private static final int CHUNK_SIZE = 4096;
+
+        private final AudioRecord AUDIO_RECORD;
+
+        private final AudioEncoder AUDIO_ENCODER;
+
+        private final AudioMixer.Source MIX_SOURCE;
+
+        private final AudioOverrunDetector OVERRUN_DETECTOR;
+
+        private final ByteBuffer BUFFER = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+        private final int FRAME_SIZE;
+
+        private Thread THREAD;
+
+        private volatile boolean IS_CAPTURING = false;
+
+        /**
+         * With only an encoder the capture is encoded as is. With only a mix source it just feeds the mixer.
+         * With both it feeds the mixer and encodes whatever the mixer has ready, driving the mix.
+         */
+        private AudioCapture(AudioRecord audioRecord, AudioEncoder audioEncoder, AudioMixer.Source mixSource) {
+            this.AUDIO_RECORD = audioRecord;
+            this.AUDIO_ENCODER = audioEncoder;
+            this.MIX_SOURCE = mixSource;
+            this.FRAME_SIZE = audioRecord.getChannelCount() * 2;
+            this.OVERRUN_DETECTOR = new AudioOverrunDetector(audioRecord);
+        }
+
+        private void start() {
+            if(AUDIO_ENCODER != null) {
+                AUDIO_ENCODER.start();
+            }
+
+            AUDIO_RECORD.startRecording();
+
+            IS_CAPTURING = true;
+
+            THREAD = new Thread(this::capture, CONTEXT.getPackageName());
+
+            THREAD.setPriority(Thread.MAX_PRIORITY);
+
+            THREAD.start();
+        }
+
+        private void stop() {
+            IS_CAPTURING = false;
+
+            try {
+                AUDIO_RECORD.stop();
+
+                if(THREAD != null) {
+                    THREAD.join();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "stop: " + e.getMessage());
+            }
+
+            if(AUDIO_ENCODER != null) {
+                AUDIO_ENCODER.stop();
+            }
+        }
+
+        private void release() {
+            AUDIO_RECORD.release();
+
+            if(AUDIO_ENCODER != null) {
+                AUDIO_ENCODER.release();
+            }
+        }
+
+        private void capture() {
+            final int sampleRate = KSETTINGS.getAudioSampleRate(),
+                      mixFrameSize = KSETTINGS.getInternalAudioChannelNumber() * 2;
+
+            long startUs = -1,
+                 framesEncoded = 0;
+
+            while(IS_CAPTURING) {
+                final int read = AUDIO_RECORD.read(BUFFER, CHUNK_SIZE, AudioRecord.READ_BLOCKING);
+
+                if(read <= 0) {
+                    if(read < 0) {
+                        Log.e(TAG, "capture: read returned " + read);
+
+                        return;
+                    }
+
+                    continue;
+                }
+
+                final long lost = OVERRUN_DETECTOR.onRead(read / FRAME_SIZE);
+
+                if(lost > 0 && STATS != null) {
+                    STATS.onAudioLost(lost);
+                }
+
+                if(MIX_SOURCE != null) {
+                    MIX_SOURCE.write(BUFFER, read);
+                }
+
+                if(AUDIO_ENCODER == null) {
+                    continue;
+                }
+
+                if(startUs == -1) {
+                    startUs = System.nanoTime() / 1000 - (read / FRAME_SIZE) * 1000000L / AUDIO_RECORD.getSampleRate();
+                } else if(lost > 0) {
+                    //the lost audio still took its time, the next frames are stamped after it to stay in sync with the video
+                    framesEncoded += lost * sampleRate / AUDIO_RECORD.getSampleRate();
+                }
+
+                final long ptsUs = startUs + framesEncoded * 1000000L / sampleRate;
+
+                if(MIX_SOURCE != null) {
+                    final int size = MIXER.mix(MIX_BUFFER, MIX_SOURCE.getAvailableFrames());
+
+                    AUDIO_ENCODER.encode(MIX_BUFFER, size, ptsUs);
+
+                    framesEncoded += size / mixFrameSize;
+                } else {
+                    AUDIO_ENCODER.encode(BUFFER, read, ptsUs);
+
+                    framesEncoded += read / FRAME_SIZE;
+                }
+            }
+        }
+    }
+}
@@ -6,16 +6,26 @@ import android.media.AudioAttributes;
 import android.media.AudioFormat;
 import android.media.AudioPlaybackCaptureConfiguration;
 import android.media.AudioRecord;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Process;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Date;
+import java.util.concurrent.locks.LockSupport;
 
 import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.KSettings;
-import dev.dect.scrnshoot.utils.KFile;
+import dev.dect.scrnshoot.recorder.utils.AudioEncoder;
+import dev.dect.scrnshoot.recorder.utils.AudioOverrunDetector;
+import dev.dect.scrnshoot.recorder.utils.AudioRingBuffer;
+import dev.dect.scrnshoot.recorder.utils.KMuxer;
+import dev.dect.scrnshoot.recorder.utils.RecordingStats;
+import dev.dect.scrnshoot.recorder.utils.WavWriter;
 import dev.dect.scrnshoot.utils.KMediaProjection;
 
 /** @noinspection ResultOfMethodCallIgnored*/
@@ -23,26 +33,58 @@ import dev.dect.scrnshoot.utils.KMediaProjection;
 public class InternalAudioRecorder {
     private final String TAG = InternalAudioRecorder.class.getSimpleName();
 
+    public static final int ENCODING_WAV = 0,
+                            ENCODING_AAC = 1,
+                            ENCODING_OPUS = 2;
+
+    public static final String EXT_AAC = "m4a",
+                               EXT_OPUS = "ogg";
+
     private final Context CONTEXT;
 
     private final KSettings KSETTINGS;
 
     private final int BUFFER_SIZE = 1024,
-                      BYTES_PER_EL = 2;
+                      BYTES_PER_EL = 2,
+                      RING_BLOCKS = 128;
+
+    private final long WRITER_IDLE_NS = 5000000;
+
+    private final AudioRingBuffer RING = new AudioRingBuffer(RING_BLOCKS, BUFFER_SIZE * BYTES_PER_EL);
+
+    private final ByteBuffer OVERFLOW_BUFFER = ByteBuffer.allocateDirect(BUFFER_SIZE * BYTES_PER_EL),
+                             SILENCE_BUFFER = ByteBuffer.allocateDirect(BUFFER_SIZE * BYTES_PER_EL);
 
     private AudioRecord AUDIO_RECORDER;
 
-    private boolean IS_RECORDING_INTERNAL_AUDIO = false,
-                    HAS_WAV_FILE = false;
+    private AudioOverrunDetector OVERRUN_DETECTOR;
+
+    private RecordingStats STATS;
+
+    private WavWriter WAV_WRITER;
+
+    private KMuxer MUXER;
 
-    private File TEMP_PCM_FILE,
-                 TEMP_WAV_FILE;
+    private AudioEncoder AUDIO_ENCODER;
 
-    private Thread RECORDING_THREAD;
+    private final int ENCODING;
+
+    private volatile boolean IS_RECORDING_INTERNAL_AUDIO = false,
+                             IS_READING = false;
+
+    private File TEMP_FILE;
+
+    private boolean IS_HANDED_OVER = false;
+
+    private Thread READING_THREAD,
+                   WRITING_THREAD;
+
+    private volatile long SHORT_READS = 0;
 
     public InternalAudioRecorder(Context ctx, KSettings rs) {
         this.CONTEXT = ctx;
         this.KSETTINGS = rs;
+        this.ENCODING = resolveEncoding();
 
         createTempFile();
     }
@@ -64,13 +106,29 @@ public class InternalAudioRecorder {
             .setChannelMask(KSETTINGS.isToRecordInternalAudioInStereo() ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO)
             .build();
 
+        final int minBufferSize = AudioRecord.getMinBufferSize(format.getSampleRate(), format.getChannelMask(), AudioFormat.ENCODING_PCM_16BIT);
+
         AUDIO_RECORDER = new AudioRecord.Builder()
             .setAudioFormat(format)
-            .setBufferSizeInBytes(BUFFER_SIZE * BYTES_PER_EL)
+            .setBufferSizeInBytes(Math.max(minBufferSize * 2, BUFFER_SIZE * BYTES_PER_EL * 4))
             .setAudioPlaybackCaptureConfig(config)
             .build();
 
-        createWritingThread();
+        OVERRUN_DETECTOR = new AudioOverrunDetector(AUDIO_RECORDER);
+
+        try {
+            if(ENCODING == ENCODING_WAV) {
+                WAV_WRITER = new WavWriter(TEMP_FILE, format.getSampleRate(), format.getChannelCount());
+            } else {
+                MUXER = new KMuxer(TEMP_FILE, 1, ENCODING == ENCODING_OPUS ? MediaMuxer.OutputFormat.MUXER_OUTPUT_OGG : MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+
+                AUDIO_ENCODER = new AudioEncoder(getMimeType(), format.getSampleRate(), format.getChannelCount(), KSETTINGS.getAudioBitRate(), MUXER, 0);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "init: " + e.getMessage());
+        }
+
+        createThreads();
     }
 
     public void start(){
@@ -78,17 +136,33 @@ public class InternalAudioRecorder {
             return;
         }
 
+        if(AUDIO_ENCODER != null) {
+            AUDIO_ENCODER.start();
+        }
+
         AUDIO_RECORDER.startRecording();
 
         IS_RECORDING_INTERNAL_AUDIO = true;
 
-        RECORDING_THREAD.start();
+        startThreads();
     }
 
     public void pause() {
         IS_RECORDING_INTERNAL_AUDIO = false;
 
-        RECORDING_THREAD = null;
+        joinThreads();
+
+        if(MUXER != null) {
+            MUXER.pause();
+        }
+
+        try {
+            if(WAV_WRITER != null) {
+                WAV_WRITER.updateHeader();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "pause: " + e.getMessage());
+        }
     }
 
     public void resume() {
@@ -98,9 +172,15 @@ public class InternalAudioRecorder {
 
         IS_RECORDING_INTERNAL_AUDIO = true;
 
-        createWritingThread();
+        OVERRUN_DETECTOR.rebase();
+
+        if(MUXER != null) {
+            MUXER.resume();
+        }
+
+        createThreads();
 
-        RECORDING_THREAD.start();
+        startThreads();
     }
 
     public void stop() {
@@ -111,77 +191,285 @@ public class InternalAudioRecorder {
         IS_RECORDING_INTERNAL_AUDIO = false;
 
         AUDIO_RECORDER.stop();
+
+        joinThreads();
+
         AUDIO_RECORDER.release();
+
+        try {
+            if(WAV_WRITER != null) {
+                WAV_WRITER.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "stop: " + e.getMessage());
+        }
+
+        if(AUDIO_ENCODER != null) {
+            AUDIO_ENCODER.stop();
+            AUDIO_ENCODER.release();
+
+            MUXER.stop();
+        }
+
+        Log.i(TAG, "stop: frames " + OVERRUN_DETECTOR.getFramesRead() + ", short reads " + SHORT_READS + ", overruns " + OVERRUN_DETECTOR.getOverrunCount() + " (" + OVERRUN_DETECTOR.getFramesLost() + " frames lost), ring high water " + RING.getHighWaterMark() + "/" + RING.getCapacity() + ", dropped blocks " + RING.getDroppedBlocks());
+    }
+
+    public int getRingHighWaterMark() {
+        return RING.getHighWaterMark();
+    }
+
+    public long getDroppedBlockCount() {
+        return RING.getDroppedBlocks();
+    }
+
+    public long getShortReadCount() {
+        return SHORT_READS;
+    }
+
+    public long getOverrunCount() {
+        return OVERRUN_DETECTOR == null ? 0 : OVERRUN_DETECTOR.getOverrunCount();
+    }
+
+    public void setStats(RecordingStats stats) {
+        this.STATS = stats;
+    }
+
+    /** For a recording that never started, releases whatever {@link #init()} got to prepare. */
+    public void abort() {
+        if(AUDIO_RECORDER != null) {
+            AUDIO_RECORDER.release();
+        }
+
+        try {
+            if(WAV_WRITER != null) {
+                WAV_WRITER.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "abort: " + e.getMessage());
+        }
+
+        if(AUDIO_ENCODER != null) {
+            AUDIO_ENCODER.release();
+        }
+
+        if(MUXER != null) {
+            MUXER.stop();
+        }
+
+        destroy();
     }
 
     public void destroy() {
         AUDIO_RECORDER = null;
-        RECORDING_THREAD = null;
+        READING_THREAD = null;
+        WRITING_THREAD = null;
+        WAV_WRITER = null;
+        AUDIO_ENCODER = null;
+        MUXER = null;
+
+        if(!IS_HANDED_OVER) {
+            TEMP_FILE.delete();
+        }
+    }
+
+    /** The file recorded is owned by the processing queue from now on, {@link #destroy()} leaves it alone. */
+    public void handOverFiles() {
+        IS_HANDED_OVER = true;
+    }
 
-        TEMP_PCM_FILE.delete();
-        TEMP_WAV_FILE.delete();
+    public File getFile() {
+        return TEMP_FILE;
     }
 
-    public File getFile() throws IOException {
-        if(!HAS_WAV_FILE) {
-            try {
-                KFile.pcmToWav(TEMP_PCM_FILE, TEMP_WAV_FILE, KSETTINGS);
+    public String getFileExtension() {
+        switch(ENCODING) {
+            case ENCODING_AAC:
+                return EXT_AAC;
 
-                HAS_WAV_FILE = true;
-            } catch(Exception e) {
-                Log.e(TAG, "getFile: " + e.getMessage());
+            case ENCODING_OPUS:
+                return EXT_OPUS;
 
-                throw e;
-            }
+            default:
+                return Constants.EXT_AUDIO_FORMAT;
         }
+    }
 
-        return TEMP_WAV_FILE;
+    public boolean canBeRemuxed() {
+        return ENCODING == ENCODING_AAC;
     }
 
     private void createTempFile() {
         try {
-            final String name = InternalAudioRecorder.class.getSimpleName() + new Date().getTime();
-
-            TEMP_PCM_FILE = File.createTempFile(name, ".pcm");
-            TEMP_WAV_FILE = File.createTempFile(name, "." + Constants.EXT_AUDIO_FORMAT);
+            TEMP_FILE = File.createTempFile(InternalAudioRecorder.class.getSimpleName() + new Date().getTime(), "." + getFileExtension());
         } catch (Exception e) {
             Log.e(TAG, "createTempFile: " + e.getMessage());
         }
     }
 
-    private void createWritingThread() {
-        RECORDING_THREAD = new Thread(this::writeToRawTempFile, CONTEXT.getPackageName());
+    private int resolveEncoding() {
+        final int encoding = KSETTINGS.getInternalAudioEncoding();
+
+        if(encoding != ENCODING_OPUS) {
+            return encoding;
+        }
+
+        final MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_OPUS, KSETTINGS.getAudioSampleRate(), KSETTINGS.getInternalAudioChannelNumber());
+
+        format.setInteger(MediaFormat.KEY_BIT_RATE, KSETTINGS.getAudioBitRate());
+
+        if(new MediaCodecList(MediaCodecList.REGULAR_CODECS).findEncoderForFormat(format) == null) {
+            Log.w(TAG, "resolveEncoding: no opus encoder for " + KSETTINGS.getAudioSampleRate() + " Hz, using aac");
+
+            return ENCODING_AAC;
+        }
+
+        return ENCODING_OPUS;
+    }
+
+    private String getMimeType() {
+        return ENCODING == ENCODING_OPUS ? MediaFormat.MIMETYPE_AUDIO_OPUS : MediaFormat.MIMETYPE_AUDIO_AAC;
+    }
+
+    private void createThreads() {
+        READING_THREAD = new Thread(this::readToRing, CONTEXT.getPackageName());
+        WRITING_THREAD = new Thread(this::writeFromRing, CONTEXT.getPackageName());
+
+        READING_THREAD.setPriority(Thread.MAX_PRIORITY);
+    }
+
+    private void startThreads() {
+        IS_READING = true;
 
-        RECORDING_THREAD.setPriority(Thread.MAX_PRIORITY);
+        READING_THREAD.start();
+        WRITING_THREAD.start();
     }
 
-    private void writeToRawTempFile() {
+    private void joinThreads() {
         try {
-            final FileOutputStream outputStream = new FileOutputStream(TEMP_PCM_FILE.getAbsolutePath(), true);
+            if(READING_THREAD != null) {
+                READING_THREAD.join();
+            }
+
+            if(WRITING_THREAD != null) {
+                WRITING_THREAD.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        READING_THREAD = null;
+        WRITING_THREAD = null;
+    }
+
+    private void readToRing() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
 
-            final short[] data = new short[BUFFER_SIZE];
+        final int frameSize = KSETTINGS.getInternalAudioChannelNumber() * BYTES_PER_EL,
+                  sampleRate = KSETTINGS.getAudioSampleRate();
 
+        long startUs = -1,
+             framesSinceStart = 0;
+
+        try {
             while(IS_RECORDING_INTERNAL_AUDIO) {
-                AUDIO_RECORDER.read(data, 0, BUFFER_SIZE);
+                final ByteBuffer block = RING.acquireWrite(),
+                                 target = block == null ? OVERFLOW_BUFFER : block;
+
+                target.clear();
+
+                final int read = AUDIO_RECORDER.read(target, target.capacity(), AudioRecord.READ_BLOCKING);
+
+                if(read < 0) {
+                    Log.e(TAG, "readToRing: read returned " + read);
+
+                    break;
+                }
+
+                if(read < target.capacity()) {
+                    SHORT_READS++;
+                }
 
-                final int arraySize = data.length;
+                if(read == 0) {
+                    continue;
+                }
 
-                byte[] bytes = new byte[arraySize * 2];
+                final long lost = OVERRUN_DETECTOR.onRead(read / frameSize);
 
-                for(int i = 0; i < arraySize; i++) {
-                    bytes[i * 2] = (byte) (data[i] & 0x00FF);
+                if(lost > 0 && STATS != null) {
+                    STATS.onAudioLost(lost);
+                }
 
-                    bytes[(i * 2) + 1] = (byte) (data[i] >> 8);
+                if(startUs == -1) {
+                    startUs = System.nanoTime() / 1000 - (read / frameSize) * 1000000L / sampleRate;
+                } else if(lost > 0) {
+                    //the lost audio still took its time, this block and the next ones are stamped after it to stay in sync with the video
+                    framesSinceStart += lost;
+                }
 
-                    data[i] = 0;
+                if(block != null) {
+                    RING.commitWrite(read, startUs + framesSinceStart * 1000000L / sampleRate);
+                } else if(STATS != null) {
+                    STATS.onAudioLost(read / frameSize);
                 }
 
-                outputStream.write(bytes, 0,BUFFER_SIZE * BYTES_PER_EL);
+                framesSinceStart += read / frameSize;
             }
+        } finally {
+            IS_READING = false;
+        }
+    }
+
+    private void writeFromRing() {
+        final int frameSize = KSETTINGS.getInternalAudioChannelNumber() * BYTES_PER_EL,
+                  sampleRate = KSETTINGS.getAudioSampleRate();
+
+        long startUs = -1,
+             framesWritten = 0;
 
-            outputStream.close();
+        try {
+            while(true) {
+                final ByteBuffer block = RING.acquireRead();
+
+                if(block == null) {
+                    if(!IS_READING) {
+                        break;
+                    }
+
+                    LockSupport.parkNanos(WRITER_IDLE_NS);
+
+                    continue;
+                }
+
+                if(AUDIO_ENCODER != null) {
+                    AUDIO_ENCODER.encode(block, RING.getReadSize(), RING.getReadPts());
+                } else if(WAV_WRITER != null) {
+                    //a wav has no timestamps, audio lost to an overrun or a full ring is written as silence so it stays as long as the video
+                    if(startUs == -1) {
+                        startUs = RING.getReadPts();
+                    }
+
+                    long gap = Math.round((RING.getReadPts() - startUs) * sampleRate / 1000000d) - framesWritten;
+
+                    framesWritten += gap > 0 ? gap : 0;
+
+                    while(gap > 0) {
+                        SILENCE_BUFFER.clear();
+                        SILENCE_BUFFER.limit((int) Math.min(SILENCE_BUFFER.capacity(), gap * frameSize));
+
+                        gap -= SILENCE_BUFFER.limit() / frameSize;
+
+                        WAV_WRITER.write(SILENCE_BUFFER);
+                    }
+
+                    framesWritten += RING.getReadSize() / frameSize;
+
+                    WAV_WRITER.write(block);
+                }
+
+                RING.releaseRead();
+            }
         } catch (IOException e) {
-            Log.e(TAG, "writeToRawTempFile: " + e.getMessage());
+            Log.e(TAG, "writeFromRing: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
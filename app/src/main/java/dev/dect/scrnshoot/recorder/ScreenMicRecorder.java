@@ -3,18 +3,21 @@ package dev.dect.scrnshoot.recorder;
 import android.content.Context;
 import android.hardware.display.DisplayManager;
 import android.hardware.display.VirtualDisplay;
+import android.media.MediaFormat;
 import android.media.MediaRecorder;
 import android.util.Log;
 import android.view.Surface;
 import android.widget.Toast;
 
 import java.io.File;
-import java.util.Date;
 
 import dev.dect.scrnshoot.R;
 import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.KSettings;
+import dev.dect.scrnshoot.recorder.utils.StartLatency;
 import dev.dect.scrnshoot.service.CapturingService;
+import dev.dect.scrnshoot.utils.KEncoders;
+import dev.dect.scrnshoot.utils.KFile;
 import dev.dect.scrnshoot.utils.KMediaProjection;
 
 /** @noinspection ResultOfMethodCallIgnored*/
@@ -31,6 +34,8 @@ public class ScreenMicRecorder {
 
     private File TEMP_FILE;
 
+    private boolean IS_HANDED_OVER = false;
+
     public ScreenMicRecorder(Context ctx, KSettings rs) {
         this.CONTEXT = ctx;
         this.KSETTINGS = rs;
@@ -39,6 +44,29 @@ public class ScreenMicRecorder {
     }
 
     public void init() {
+        final String mimeType = KEncoders.pickMimeType(CONTEXT, KSETTINGS.getVideoMimeType(), KSETTINGS.getVideoWidth(), KSETTINGS.getVideoHeight());
+
+        if(prepare(mimeType) || (!mimeType.equals(MediaFormat.MIMETYPE_VIDEO_AVC) && prepare(MediaFormat.MIMETYPE_VIDEO_AVC))) {
+            VIRTUAL_DISPLAY = KMediaProjection.get().createVirtualDisplay(
+                CONTEXT.getString(R.string.app_name),
+                KSETTINGS.getVideoWidth(),
+                KSETTINGS.getVideoHeight(),
+                KSETTINGS.getVideoDpi(),
+                DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
+                null,
+                null,
+                null
+            );
+
+            return;
+        }
+
+        Toast.makeText(CONTEXT, CONTEXT.getString(R.string.toast_error_generic), Toast.LENGTH_SHORT).show();
+
+        CapturingService.requestStopRecording();
+    }
+
+    private boolean prepare(String mimeType) {
         if(MEDIA_RECORDER != null) {
             MEDIA_RECORDER.reset();
         }
@@ -54,7 +82,7 @@ public class ScreenMicRecorder {
 
             MEDIA_RECORDER.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
 
-            MEDIA_RECORDER.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+            MEDIA_RECORDER.setVideoEncoder(KEncoders.toMediaRecorderEncoder(mimeType));
 
             if(KSETTINGS.isToRecordMic()) {
                 MEDIA_RECORDER.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
@@ -63,34 +91,28 @@ public class ScreenMicRecorder {
             }
 
             MEDIA_RECORDER.setVideoEncodingBitRate(KSETTINGS.getVideoBitRate());
-            MEDIA_RECORDER.setVideoFrameRate(KSETTINGS.getVideoFrameRate());
+            MEDIA_RECORDER.setVideoFrameRate(KEncoders.clampFrameRate(CONTEXT, mimeType, KSETTINGS.getVideoWidth(), KSETTINGS.getVideoHeight(), KSETTINGS.getVideoFrameRate()));
             MEDIA_RECORDER.setVideoSize(KSETTINGS.getVideoWidth(), KSETTINGS.getVideoHeight());
 
             MEDIA_RECORDER.setOutputFile(TEMP_FILE.getAbsolutePath());
 
             MEDIA_RECORDER.prepare();
-        } catch (Exception e) {
-            Log.e(TAG, "init: " + e.getMessage());
-
-            Toast.makeText(CONTEXT, CONTEXT.getString(R.string.toast_error_generic), Toast.LENGTH_SHORT).show();
 
-            CapturingService.requestStopRecording();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "prepare: " + mimeType + " " + e.getMessage());
         }
+
+        return false;
     }
 
+    /** The display is mirrored since {@link #init()}, it is only given the recorder surface once the recorder runs. */
     public void start() {
-        VIRTUAL_DISPLAY = KMediaProjection.get().createVirtualDisplay(
-            CONTEXT.getString(R.string.app_name),
-            KSETTINGS.getVideoWidth(),
-            KSETTINGS.getVideoHeight(),
-            KSETTINGS.getVideoDpi(),
-            DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
-            MEDIA_RECORDER.getSurface(),
-            null,
-            null
-        );
-
         MEDIA_RECORDER.start();
+
+        VIRTUAL_DISPLAY.setSurface(MEDIA_RECORDER.getSurface());
+
+        StartLatency.firstFrame();
     }
 
     public void pause() {
@@ -105,22 +127,44 @@ public class ScreenMicRecorder {
         MEDIA_RECORDER.stop();
         MEDIA_RECORDER.reset();
 
-        VIRTUAL_DISPLAY.release();
+        if(VIRTUAL_DISPLAY != null) {
+            VIRTUAL_DISPLAY.release();
+        }
+    }
+
+    /** For a recording that never started, releases whatever {@link #init()} got to prepare. */
+    public void abort() {
+        if(MEDIA_RECORDER != null) {
+            MEDIA_RECORDER.release();
+        }
+
+        if(VIRTUAL_DISPLAY != null) {
+            VIRTUAL_DISPLAY.release();
+        }
+
+        destroy();
     }
 
     public void destroy() {
         MEDIA_RECORDER = null;
 
-        TEMP_FILE.delete();
+        if(!IS_HANDED_OVER) {
+            TEMP_FILE.delete();
+        }
     }
 
     public File getFile() {
         return TEMP_FILE;
     }
 
+    /** The files recorded are owned by the processing queue from now on, {@link #destroy()} leaves them alone. */
+    public void handOverFiles() {
+        IS_HANDED_OVER = true;
+    }
+
     private void createTempFile() {
         try {
-            TEMP_FILE = File.createTempFile(ScreenMicRecorder.class.getSimpleName() + new Date().getTime(), "." + Constants.EXT_VIDEO_FORMAT);
+            TEMP_FILE = KFile.createPartialFile(KSETTINGS, ScreenMicRecorder.class.getSimpleName(), Constants.EXT_VIDEO_FORMAT);
         } catch (Exception e) {
             Log.e(TAG, "createTempFile: " + e.getMessage());
         }
@@ -0,0 +1,47 @@
+package dev.dect.scrnshoot.recorder.gl;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+import android.os.Handler;
+
+/** A still image (text, picture, watermark), uploaded once and scaled into its place. */
+public class BitmapLayer extends Layer {
+    private final float ALPHA;
+
+    private Bitmap BITMAP;
+
+    private int TEXTURE = 0;
+
+    public BitmapLayer(Bitmap bitmap, int left, int top, int width, int height, float alpha) {
+        super(left, top, width, height);
+
+        this.BITMAP = bitmap;
+        this.ALPHA = alpha;
+    }
+
+    @Override
+    public void setUp(Handler handler, Runnable requestRender) {
+        TEXTURE = KGl.createTexture(1, 1, null);
+
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, BITMAP, 0);
+
+        BITMAP.recycle();
+
+        BITMAP = null;
+    }
+
+    @Override
+    public void draw(LayerRenderer renderer) {
+        renderer.drawTexture(TEXTURE, LayerRenderer.FLIP_VERTICAL, LEFT, TOP, WIDTH, HEIGHT, ALPHA, LayerRenderer.SHAPE_RECTANGLE, 0);
+    }
+
+    @Override
+    public void release() {
+        KGl.deleteTexture(TEXTURE);
+
+        if(BITMAP != null) {
+            BITMAP.recycle();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package dev.dect.scrnshoot.recorder.gl;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.Matrix;
+import android.os.Handler;
+import android.view.Surface;
+
+/**
+ * Camera preview, the camera renders into {@link #getSurface()} and the middle of the 4:3 picture fills the layer,
+ * like the floating camera window does. Nothing is drawn until the first picture arrives.
+ */
+public class CameraLayer extends Layer {
+    private static final int BUFFER_WIDTH = 640,
+                             BUFFER_HEIGHT = 480;
+
+    private final float[] TEX_MATRIX = new float[16],
+                          CROP_MATRIX = new float[16],
+                          MATRIX = new float[16];
+
+    private final int SHAPE;
+
+    private final float CORNER_RADIUS;
+
+    private int TEXTURE = 0;
+
+    private SurfaceTexture SURFACE_TEXTURE;
+
+    private volatile Surface SURFACE;
+
+    private boolean HAS_FRAME = false;
+
+    /** @param shape one of the {@code LayerRenderer.SHAPE_*} */
+    public CameraLayer(int left, int top, int width, int height, int shape, float cornerRadius) {
+        super(left, top, width, height);
+
+        this.SHAPE = shape;
+        this.CORNER_RADIUS = cornerRadius;
+
+        //the picture is upright and portrait once the transform is applied, keep the middle square of it
+        final float visible = Math.min(1f, (float) BUFFER_HEIGHT / BUFFER_WIDTH * height / width);
+
+        Matrix.setIdentityM(CROP_MATRIX, 0);
+        Matrix.translateM(CROP_MATRIX, 0, 0f, (1f - visible) / 2f, 0f);
+        Matrix.scaleM(CROP_MATRIX, 0, 1f, visible, 1f);
+    }
+
+    @Override
+    public void setUp(Handler handler, Runnable requestRender) {
+        TEXTURE = KGl.createOesTexture();
+
+        SURFACE_TEXTURE = new SurfaceTexture(TEXTURE);
+
+        SURFACE_TEXTURE.setDefaultBufferSize(BUFFER_WIDTH, BUFFER_HEIGHT);
+        SURFACE_TEXTURE.setOnFrameAvailableListener((st) -> {
+            if(SURFACE_TEXTURE == null) {
+                return;
+            }
+
+            SURFACE_TEXTURE.updateTexImage();
+            SURFACE_TEXTURE.getTransformMatrix(TEX_MATRIX);
+
+            Matrix.multiplyMM(MATRIX, 0, TEX_MATRIX, 0, CROP_MATRIX, 0);
+
+            HAS_FRAME = true;
+
+            requestRender.run();
+        }, handler);
+
+        SURFACE = new Surface(SURFACE_TEXTURE);
+    }
+
+    /** Where the camera should render, null until the pipeline is set up. */
+    public Surface getSurface() {
+        return SURFACE;
+    }
+
+    @Override
+    public void draw(LayerRenderer renderer) {
+        if(HAS_FRAME) {
+            renderer.drawExternalTexture(TEXTURE, MATRIX, LEFT, TOP, WIDTH, HEIGHT, 1f, SHAPE, CORNER_RADIUS);
+        }
+    }
+
+    @Override
+    public void release() {
+        if(SURFACE != null) {
+            SURFACE.release();
+        }
+
+        if(SURFACE_TEXTURE != null) {
+            SURFACE_TEXTURE.release();
+        }
+
+        KGl.deleteTexture(TEXTURE);
+
+        SURFACE = null;
+        SURFACE_TEXTURE = null;
+    }
+}
@@ -0,0 +1,101 @@
+package dev.dect.scrnshoot.recorder.gl;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.view.Surface;
+
+/**
+ * GLES 2 context drawing into a window surface, usually the input surface of a {@link dev.dect.scrnshoot.recorder.utils.VideoEncoder}.
+ * The config is recordable so the encoder accepts the buffers. Only to be used from the thread that created it.
+ */
+public class EglCore {
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+
+    private EGLDisplay DISPLAY;
+
+    private EGLContext CONTEXT;
+
+    private EGLSurface SURFACE;
+
+    public EglCore(Surface surface) throws Exception {
+        DISPLAY = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+
+        if(DISPLAY == EGL14.EGL_NO_DISPLAY) {
+            throw new Exception("no egl display");
+        }
+
+        final int[] version = new int[2];
+
+        if(!EGL14.eglInitialize(DISPLAY, version, 0, version, 1)) {
+            throw new Exception("eglInitialize " + EGL14.eglGetError());
+        }
+
+        final int[] attributes = new int[]{
+            EGL14.EGL_RED_SIZE, 8,
+            EGL14.EGL_GREEN_SIZE, 8,
+            EGL14.EGL_BLUE_SIZE, 8,
+            EGL14.EGL_ALPHA_SIZE, 8,
+            EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+            EGL_RECORDABLE_ANDROID, 1,
+            EGL14.EGL_NONE
+        };
+
+        final EGLConfig[] configs = new EGLConfig[1];
+
+        final int[] configCount = new int[1];
+
+        if(!EGL14.eglChooseConfig(DISPLAY, attributes, 0, configs, 0, 1, configCount, 0) || configCount[0] == 0) {
+            throw new Exception("eglChooseConfig " + EGL14.eglGetError());
+        }
+
+        CONTEXT = EGL14.eglCreateContext(DISPLAY, configs[0], EGL14.EGL_NO_CONTEXT, new int[]{EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE}, 0);
+
+        if(CONTEXT == EGL14.EGL_NO_CONTEXT) {
+            throw new Exception("eglCreateContext " + EGL14.eglGetError());
+        }
+
+        SURFACE = EGL14.eglCreateWindowSurface(DISPLAY, configs[0], surface, new int[]{EGL14.EGL_NONE}, 0);
+
+        if(SURFACE == EGL14.EGL_NO_SURFACE) {
+            throw new Exception("eglCreateWindowSurface " + EGL14.eglGetError());
+        }
+
+        if(!EGL14.eglMakeCurrent(DISPLAY, SURFACE, SURFACE, CONTEXT)) {
+            throw new Exception("eglMakeCurrent " + EGL14.eglGetError());
+        }
+    }
+
+    /** Hands what was drawn to the surface, timestamped in nanoseconds of {@link System#nanoTime()}. */
+    public boolean swapBuffers(long ptsNs) {
+        EGLExt.eglPresentationTimeANDROID(DISPLAY, SURFACE, ptsNs);
+
+        return EGL14.eglSwapBuffers(DISPLAY, SURFACE);
+    }
+
+    public void release() {
+        if(DISPLAY == null || DISPLAY == EGL14.EGL_NO_DISPLAY) {
+            return;
+        }
+
+        EGL14.eglMakeCurrent(DISPLAY, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+
+        if(SURFACE != null) {
+            EGL14.eglDestroySurface(DISPLAY, SURFACE);
+        }
+
+        if(CONTEXT != null) {
+            EGL14.eglDestroyContext(DISPLAY, CONTEXT);
+        }
+
+        EGL14.eglReleaseThread();
+        EGL14.eglTerminate(DISPLAY);
+
+        DISPLAY = null;
+        CONTEXT = null;
+        SURFACE = null;
+    }
+}
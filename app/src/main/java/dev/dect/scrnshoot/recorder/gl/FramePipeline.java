@@ -0,0 +1,487 @@
+package dev.dect.scrnshoot.recorder.gl;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.view.Surface;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import dev.dect.scrnshoot.recorder.utils.RecordingStats;
+
+/**
+ * Sits between the virtual display and the video encoder: the display renders into {@link #getInputSurface()}
+ * and every frame is composed again with GL into the encoder surface, keeping the timestamp the display gave it.
+ * On top of the screen go the {@link Layer}s (camera, text, image, watermark), and the screen can be zoomed
+ * into a part of it with {@link #setZoom(float, float, float)}. Layers changing by themselves (camera) get frames
+ * composed too, at most at the frame rate of the video.
+ * When skipping unchanged frames, frames equal to the last one sent are not sent at all, so a static screen costs
+ * next to nothing to encode and store (variable frame rate). To compare, a cheap pass on the GPU reduces each 16x16
+ * block of the new frame and the last one sent to their largest difference and only that small image is read back.
+ * While the screen stays static the last frame is still sent every {@code 1 / minFrameRate} seconds, players
+ * and seeking behave badly with long gaps and the encoder keeps getting sync frames.
+ * Everything GL runs on its own thread.
+ */
+public class FramePipeline {
+    private final String TAG = FramePipeline.class.getSimpleName();
+
+    private static final int BLOCK_SIZE = 16,
+                             CHANGE_THRESHOLD = 4;
+
+    private static final String VERTEX_SHADER =
+        "attribute vec4 aPosition;\n" +
+        "void main() {\n" +
+        "    gl_Position = vec4(aPosition.xy, 0.0, 1.0);\n" +
+        "}\n";
+
+    //one fragment per block, the samples sit between pixels so the linear filtering takes every pixel of the block into account
+    private static final String FRAGMENT_SHADER_DIFF =
+        "precision highp float;\n" +
+        "uniform sampler2D uCurrent;\n" +
+        "uniform sampler2D uPrevious;\n" +
+        "uniform vec2 uPixel;\n" +
+        "void main() {\n" +
+        "    vec2 origin = floor(gl_FragCoord.xy) * " + BLOCK_SIZE + ".0 * uPixel;\n" +
+        "    float diff = 0.0;\n" +
+        "    for(int y = 0; y < " + (BLOCK_SIZE / 2) + "; y++) {\n" +
+        "        for(int x = 0; x < " + (BLOCK_SIZE / 2) + "; x++) {\n" +
+        "            vec2 c = origin + vec2(float(x * 2 + 1), float(y * 2 + 1)) * uPixel;\n" +
+        "            vec3 d = abs(texture2D(uCurrent, c).rgb - texture2D(uPrevious, c).rgb);\n" +
+        "            diff = max(diff, max(d.r, max(d.g, d.b)));\n" +
+        "        }\n" +
+        "    }\n" +
+        "    gl_FragColor = vec4(diff, 0.0, 0.0, 1.0);\n" +
+        "}\n";
+
+    private final HandlerThread THREAD;
+
+    private final Handler HANDLER;
+
+    private final Runnable KEEP_ALIVE = this::keepAlive,
+                           RENDER = this::renderNow;
+
+    private final FloatBuffer QUAD = KGl.toBuffer(KGl.QUAD);
+
+    private final float[] TEX_MATRIX = new float[16],
+                          ZOOM_MATRIX = new float[16],
+                          SCREEN_MATRIX = new float[16];
+
+    private final ArrayList<Layer> LAYERS;
+
+    private final int WIDTH,
+                      HEIGHT,
+                      BLOCKS_WIDTH,
+                      BLOCKS_HEIGHT;
+
+    private final long FRAME_INTERVAL_NS,
+                       KEEP_ALIVE_MS;
+
+    private final boolean IS_TO_SKIP_UNCHANGED;
+
+    private final ByteBuffer DIFF_PIXELS;
+
+    private EglCore EGL;
+
+    private LayerRenderer RENDERER;
+
+    private RecordingStats STATS;
+
+    private SurfaceTexture SURFACE_TEXTURE;
+
+    private Surface INPUT_SURFACE;
+
+    private int SCREEN_TEXTURE = 0,
+                CURRENT_TEXTURE = 0,
+                CURRENT_FRAMEBUFFER = 0,
+                PREVIOUS_TEXTURE = 0,
+                PREVIOUS_FRAMEBUFFER = 0,
+                DIFF_TEXTURE = 0,
+                DIFF_FRAMEBUFFER = 0,
+                DIFF_PROGRAM = 0;
+
+    private boolean HAS_SCREEN = false,
+                    HAS_PREVIOUS = false,
+                    IS_RENDER_POSTED = false;
+
+    private long LAST_PTS_NS = 0,
+                 LAST_RENDER_NS = 0,
+                 FRAMES = 0,
+                 SKIPPED_FRAMES = 0,
+                 KEPT_ALIVE_FRAMES = 0;
+
+    /**
+     * Blocks until GL is ready, throws if it could not be set up.
+     * @param minFrameRate 0 sends every frame, otherwise unchanged frames are skipped down to this rate
+     */
+    public FramePipeline(Surface encoderSurface, int width, int height, int frameRate, int minFrameRate, ArrayList<Layer> layers) throws Exception {
+        this.WIDTH = width;
+        this.HEIGHT = height;
+        this.BLOCKS_WIDTH = (width + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.BLOCKS_HEIGHT = (height + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        this.FRAME_INTERVAL_NS = 1000000000L / Math.max(1, frameRate);
+        this.IS_TO_SKIP_UNCHANGED = minFrameRate > 0;
+        this.KEEP_ALIVE_MS = 1000 / Math.max(1, minFrameRate);
+        this.LAYERS = layers == null ? new ArrayList<>() : layers;
+        this.DIFF_PIXELS = ByteBuffer.allocateDirect(BLOCKS_WIDTH * BLOCKS_HEIGHT * 4).order(ByteOrder.nativeOrder());
+
+        Matrix.setIdentityM(ZOOM_MATRIX, 0);
+
+        this.THREAD = new HandlerThread(TAG);
+
+        THREAD.start();
+
+        this.HANDLER = new Handler(THREAD.getLooper());
+
+        final Exception[] error = new Exception[1];
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        HANDLER.post(() -> {
+            try {
+                setUp(encoderSurface);
+            } catch (Exception e) {
+                error[0] = e;
+
+                tearDown();
+            }
+
+            latch.countDown();
+        });
+
+        latch.await();
+
+        if(error[0] != null) {
+            THREAD.quitSafely();
+
+            throw error[0];
+        }
+    }
+
+    /** Before the display renders, frames that could not be sent are counted as dropped. */
+    public void setStats(RecordingStats stats) {
+        this.STATS = stats;
+    }
+
+    /** Where the virtual display should render. */
+    public Surface getInputSurface() {
+        return INPUT_SURFACE;
+    }
+
+    /**
+     * Shows only a part of the screen, scaled up to fill the video.
+     * @param zoom 1 shows the whole screen
+     * @param centerX center of the part shown, 0 to 1 from the left of the screen
+     * @param centerY center of the part shown, 0 to 1 from the top of the screen
+     */
+    public void setZoom(float zoom, float centerX, float centerY) {
+        HANDLER.post(() -> {
+            final float scale = 1f / Math.max(1f, zoom),
+                        half = scale / 2f,
+                        x = Math.max(half, Math.min(1f - half, centerX)),
+                        y = Math.max(half, Math.min(1f - half, 1f - centerY));
+
+            Matrix.setIdentityM(ZOOM_MATRIX, 0);
+            Matrix.translateM(ZOOM_MATRIX, 0, x - half, y - half, 0f);
+            Matrix.scaleM(ZOOM_MATRIX, 0, scale, scale, 1f);
+
+            Matrix.multiplyMM(SCREEN_MATRIX, 0, TEX_MATRIX, 0, ZOOM_MATRIX, 0);
+
+            requestRender();
+        });
+    }
+
+    /** Blocks until GL is released, the virtual display should not be rendering into {@link #getInputSurface()} anymore. */
+    public void release() {
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        HANDLER.post(() -> {
+            HANDLER.removeCallbacks(KEEP_ALIVE);
+            HANDLER.removeCallbacks(RENDER);
+
+            Log.i(TAG, "release: " + FRAMES + " frames, " + SKIPPED_FRAMES + " skipped, " + KEPT_ALIVE_FRAMES + " kept alive");
+
+            tearDown();
+
+            latch.countDown();
+        });
+
+        try {
+            latch.await();
+        } catch (Exception e) {
+            Log.e(TAG, "release: " + e.getMessage());
+        }
+
+        THREAD.quitSafely();
+    }
+
+    private void setUp(Surface encoderSurface) throws Exception {
+        EGL = new EglCore(encoderSurface);
+
+        RENDERER = new LayerRenderer(WIDTH, HEIGHT);
+
+        SCREEN_TEXTURE = KGl.createOesTexture();
+
+        if(IS_TO_SKIP_UNCHANGED) {
+            DIFF_PROGRAM = KGl.createProgram(VERTEX_SHADER, FRAGMENT_SHADER_DIFF);
+
+            CURRENT_TEXTURE = KGl.createTexture(WIDTH, HEIGHT, null);
+            CURRENT_FRAMEBUFFER = KGl.createFramebuffer(CURRENT_TEXTURE);
+
+            PREVIOUS_TEXTURE = KGl.createTexture(WIDTH, HEIGHT, null);
+            PREVIOUS_FRAMEBUFFER = KGl.createFramebuffer(PREVIOUS_TEXTURE);
+
+            DIFF_TEXTURE = KGl.createTexture(BLOCKS_WIDTH, BLOCKS_HEIGHT, null);
+            DIFF_FRAMEBUFFER = KGl.createFramebuffer(DIFF_TEXTURE);
+        }
+
+        for(Layer layer : LAYERS) {
+            layer.setUp(HANDLER, this::requestRender);
+        }
+
+        SURFACE_TEXTURE = new SurfaceTexture(SCREEN_TEXTURE);
+
+        SURFACE_TEXTURE.setDefaultBufferSize(WIDTH, HEIGHT);
+        SURFACE_TEXTURE.setOnFrameAvailableListener((st) -> onScreenFrame(), HANDLER);
+
+        INPUT_SURFACE = new Surface(SURFACE_TEXTURE);
+    }
+
+    private void tearDown() {
+        if(INPUT_SURFACE != null) {
+            INPUT_SURFACE.release();
+        }
+
+        if(SURFACE_TEXTURE != null) {
+            SURFACE_TEXTURE.release();
+        }
+
+        for(Layer layer : LAYERS) {
+            layer.release();
+        }
+
+        KGl.deleteFramebuffer(DIFF_FRAMEBUFFER);
+        KGl.deleteTexture(DIFF_TEXTURE);
+        KGl.deleteFramebuffer(PREVIOUS_FRAMEBUFFER);
+        KGl.deleteTexture(PREVIOUS_TEXTURE);
+        KGl.deleteFramebuffer(CURRENT_FRAMEBUFFER);
+        KGl.deleteTexture(CURRENT_TEXTURE);
+        KGl.deleteTexture(SCREEN_TEXTURE);
+        KGl.deleteProgram(DIFF_PROGRAM);
+
+        if(RENDERER != null) {
+            RENDERER.release();
+        }
+
+        if(EGL != null) {
+            EGL.release();
+        }
+
+        INPUT_SURFACE = null;
+        SURFACE_TEXTURE = null;
+        RENDERER = null;
+        EGL = null;
+    }
+
+    private void onScreenFrame() {
+        if(SURFACE_TEXTURE == null) {
+            return;
+        }
+
+        SURFACE_TEXTURE.updateTexImage();
+        SURFACE_TEXTURE.getTransformMatrix(TEX_MATRIX);
+
+        Matrix.multiplyMM(SCREEN_MATRIX, 0, TEX_MATRIX, 0, ZOOM_MATRIX, 0);
+
+        HAS_SCREEN = true;
+
+        HANDLER.removeCallbacks(RENDER);
+
+        IS_RENDER_POSTED = false;
+
+        render(SURFACE_TEXTURE.getTimestamp());
+    }
+
+    /** For changes not coming from the screen, a frame now or as soon as the frame rate allows it. */
+    private void requestRender() {
+        if(IS_RENDER_POSTED) {
+            return;
+        }
+
+        final long wait = LAST_RENDER_NS + FRAME_INTERVAL_NS - System.nanoTime();
+
+        if(wait <= 0) {
+            renderNow();
+        } else {
+            IS_RENDER_POSTED = true;
+
+            HANDLER.postDelayed(RENDER, wait / 1000000 + 1);
+        }
+    }
+
+    private void renderNow() {
+        IS_RENDER_POSTED = false;
+
+        render(System.nanoTime());
+    }
+
+    private void render(long ptsNs) {
+        if(EGL == null || !HAS_SCREEN) {
+            return;
+        }
+
+        try {
+            FRAMES++;
+
+            LAST_RENDER_NS = System.nanoTime();
+
+            if(!IS_TO_SKIP_UNCHANGED) {
+                compose(0);
+
+                present(ptsNs);
+
+                return;
+            }
+
+            compose(CURRENT_FRAMEBUFFER);
+
+            if(HAS_PREVIOUS && !hasChanged()) {
+                SKIPPED_FRAMES++;
+
+                return;
+            }
+
+            swapCurrentAndPrevious();
+
+            HAS_PREVIOUS = true;
+
+            drawPrevious();
+
+            present(ptsNs);
+        } catch (Exception e) {
+            Log.e(TAG, "render: " + e.getMessage());
+
+            onFrameDropped();
+        }
+    }
+
+    private void compose(int framebuffer) {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        GLES20.glViewport(0, 0, WIDTH, HEIGHT);
+
+        RENDERER.setBlending(false);
+        RENDERER.drawExternalTexture(SCREEN_TEXTURE, SCREEN_MATRIX, 0, 0, WIDTH, HEIGHT, 1f, LayerRenderer.SHAPE_RECTANGLE, 0);
+
+        if(LAYERS.isEmpty()) {
+            return;
+        }
+
+        RENDERER.setBlending(true);
+
+        for(Layer layer : LAYERS) {
+            if(layer.isVisible()) {
+                layer.draw(RENDERER);
+            }
+        }
+
+        RENDERER.setBlending(false);
+    }
+
+    /** The last frame sent again, now. */
+    private void keepAlive() {
+        if(EGL == null || !HAS_PREVIOUS) {
+            return;
+        }
+
+        KEPT_ALIVE_FRAMES++;
+
+        drawPrevious();
+
+        present(System.nanoTime());
+    }
+
+    private void drawPrevious() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        GLES20.glViewport(0, 0, WIDTH, HEIGHT);
+
+        RENDERER.drawTexture(PREVIOUS_TEXTURE, LayerRenderer.IDENTITY, 0, 0, WIDTH, HEIGHT, 1f, LayerRenderer.SHAPE_RECTANGLE, 0);
+    }
+
+    private void present(long ptsNs) {
+        LAST_PTS_NS = Math.max(ptsNs, LAST_PTS_NS + 1000);
+
+        if(!EGL.swapBuffers(LAST_PTS_NS)) {
+            Log.e(TAG, "present: swap failed");
+
+            onFrameDropped();
+        }
+
+        if(IS_TO_SKIP_UNCHANGED) {
+            HANDLER.removeCallbacks(KEEP_ALIVE);
+            HANDLER.postDelayed(KEEP_ALIVE, KEEP_ALIVE_MS);
+        }
+    }
+
+    private void onFrameDropped() {
+        if(STATS != null) {
+            STATS.onVideoFrameDropped();
+        }
+    }
+
+    private void swapCurrentAndPrevious() {
+        final int texture = CURRENT_TEXTURE,
+                  framebuffer = CURRENT_FRAMEBUFFER;
+
+        CURRENT_TEXTURE = PREVIOUS_TEXTURE;
+        CURRENT_FRAMEBUFFER = PREVIOUS_FRAMEBUFFER;
+
+        PREVIOUS_TEXTURE = texture;
+        PREVIOUS_FRAMEBUFFER = framebuffer;
+    }
+
+    private boolean hasChanged() {
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, DIFF_FRAMEBUFFER);
+        GLES20.glViewport(0, 0, BLOCKS_WIDTH, BLOCKS_HEIGHT);
+        GLES20.glUseProgram(DIFF_PROGRAM);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, CURRENT_TEXTURE);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(DIFF_PROGRAM, "uCurrent"), 0);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, PREVIOUS_TEXTURE);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(DIFF_PROGRAM, "uPrevious"), 1);
+
+        GLES20.glUniform2f(GLES20.glGetUniformLocation(DIFF_PROGRAM, "uPixel"), 1f / WIDTH, 1f / HEIGHT);
+
+        final int position = GLES20.glGetAttribLocation(DIFF_PROGRAM, "aPosition");
+
+        QUAD.position(0);
+        GLES20.glVertexAttribPointer(position, 2, GLES20.GL_FLOAT, false, 16, QUAD);
+        GLES20.glEnableVertexAttribArray(position);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        GLES20.glDisableVertexAttribArray(position);
+
+        DIFF_PIXELS.position(0);
+
+        GLES20.glReadPixels(0, 0, BLOCKS_WIDTH, BLOCKS_HEIGHT, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, DIFF_PIXELS);
+
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+
+        for(int i = 0; i < DIFF_PIXELS.capacity(); i += 4) {
+            if((DIFF_PIXELS.get(i) & 0xFF) > CHANGE_THRESHOLD) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
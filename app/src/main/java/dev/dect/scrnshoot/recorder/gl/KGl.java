@@ -0,0 +1,139 @@
+package dev.dect.scrnshoot.recorder.gl;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+public class KGl {
+    /** Full screen quad as a triangle strip, x y of the position then s t of the texture. */
+    public static final float[] QUAD = new float[]{
+        -1f, -1f, 0f, 0f,
+         1f, -1f, 1f, 0f,
+        -1f,  1f, 0f, 1f,
+         1f,  1f, 1f, 1f
+    };
+
+    public static FloatBuffer toBuffer(float[] values) {
+        final FloatBuffer buffer = ByteBuffer.allocateDirect(values.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+
+        buffer.put(values).position(0);
+
+        return buffer;
+    }
+
+    public static int createProgram(String vertexSource, String fragmentSource) throws Exception {
+        final int vertex = compileShader(GLES20.GL_VERTEX_SHADER, vertexSource),
+                  fragment = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource),
+                  program = GLES20.glCreateProgram();
+
+        GLES20.glAttachShader(program, vertex);
+        GLES20.glAttachShader(program, fragment);
+        GLES20.glLinkProgram(program);
+
+        GLES20.glDeleteShader(vertex);
+        GLES20.glDeleteShader(fragment);
+
+        final int[] status = new int[1];
+
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+
+        if(status[0] != GLES20.GL_TRUE) {
+            final String log = GLES20.glGetProgramInfoLog(program);
+
+            GLES20.glDeleteProgram(program);
+
+            throw new Exception("link " + log);
+        }
+
+        return program;
+    }
+
+    public static int createOesTexture() {
+        final int[] texture = new int[1];
+
+        GLES20.glGenTextures(1, texture, 0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, texture[0]);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        return texture[0];
+    }
+
+    /** Empty RGBA texture, or with the pixels of {@code pixels} when not null. */
+    public static int createTexture(int width, int height, ByteBuffer pixels) {
+        final int[] texture = new int[1];
+
+        GLES20.glGenTextures(1, texture, 0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+
+        return texture[0];
+    }
+
+    /** Framebuffer drawing into {@code texture}. */
+    public static int createFramebuffer(int texture) throws Exception {
+        final int[] framebuffer = new int[1];
+
+        GLES20.glGenFramebuffers(1, framebuffer, 0);
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer[0]);
+        GLES20.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture, 0);
+
+        final int status = GLES20.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+
+        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+
+        if(status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            throw new Exception("framebuffer " + status);
+        }
+
+        return framebuffer[0];
+    }
+
+    public static void deleteTexture(int texture) {
+        if(texture != 0) {
+            GLES20.glDeleteTextures(1, new int[]{texture}, 0);
+        }
+    }
+
+    public static void deleteFramebuffer(int framebuffer) {
+        if(framebuffer != 0) {
+            GLES20.glDeleteFramebuffers(1, new int[]{framebuffer}, 0);
+        }
+    }
+
+    public static void deleteProgram(int program) {
+        if(program != 0) {
+            GLES20.glDeleteProgram(program);
+        }
+    }
+
+    private static int compileShader(int type, String source) throws Exception {
+        final int shader = GLES20.glCreateShader(type);
+
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        final int[] status = new int[1];
+
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+
+        if(status[0] != GLES20.GL_TRUE) {
+            final String log = GLES20.glGetShaderInfoLog(shader);
+
+            GLES20.glDeleteShader(shader);
+
+            throw new Exception("compile " + log);
+        }
+
+        return shader;
+    }
+}
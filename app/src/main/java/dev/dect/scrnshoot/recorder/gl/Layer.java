@@ -0,0 +1,38 @@
+package dev.dect.scrnshoot.recorder.gl;
+
+import android.os.Handler;
+
+/**
+ * Something drawn by a {@link FramePipeline} on top of the screen, at a fixed place of the video
+ * (pixels of the video, from its top left corner). Everything but {@link #setVisible(boolean)} runs on the GL thread.
+ */
+public abstract class Layer {
+    protected final int LEFT,
+                        TOP,
+                        WIDTH,
+                        HEIGHT;
+
+    private volatile boolean IS_VISIBLE = true;
+
+    public Layer(int left, int top, int width, int height) {
+        this.LEFT = left;
+        this.TOP = top;
+        this.WIDTH = width;
+        this.HEIGHT = height;
+    }
+
+    /** GL is current, {@code requestRender} asks the pipeline for a new frame when the layer changes by itself. */
+    public abstract void setUp(Handler handler, Runnable requestRender) throws Exception;
+
+    public abstract void draw(LayerRenderer renderer);
+
+    public abstract void release();
+
+    public void setVisible(boolean visible) {
+        this.IS_VISIBLE = visible;
+    }
+
+    public boolean isVisible() {
+        return IS_VISIBLE;
+    }
+}
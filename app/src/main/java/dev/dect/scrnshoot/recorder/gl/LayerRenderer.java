@@ -0,0 +1,150 @@
+package dev.dect.scrnshoot.recorder.gl;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Draws a texture into a rectangle of the frame being composed, optionally cut to an oval or a rounded rectangle.
+ * Colors are premultiplied, like bitmaps uploaded with {@link android.opengl.GLUtils}.
+ */
+public class LayerRenderer {
+    public static final int SHAPE_RECTANGLE = 0,
+                            SHAPE_OVAL = 1,
+                            SHAPE_ROUNDED_RECTANGLE = 2;
+
+    public static final float[] IDENTITY = new float[]{
+        1f, 0f, 0f, 0f,
+        0f, 1f, 0f, 0f,
+        0f, 0f, 1f, 0f,
+        0f, 0f, 0f, 1f
+    };
+
+    /** Bitmaps are uploaded top row first, GL reads textures from the bottom. */
+    public static final float[] FLIP_VERTICAL = new float[]{
+        1f, 0f, 0f, 0f,
+        0f, -1f, 0f, 0f,
+        0f, 0f, 1f, 0f,
+        0f, 1f, 0f, 1f
+    };
+
+    private static final String VERTEX_SHADER =
+        "attribute vec4 aTexCoord;\n" +
+        "uniform mat4 uTexMatrix;\n" +
+        "uniform vec4 uRect;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "varying vec2 vPosition;\n" +
+        "void main() {\n" +
+        "    gl_Position = vec4(uRect.xy + aTexCoord.xy * uRect.zw, 0.0, 1.0);\n" +
+        "    vTexCoord = (uTexMatrix * aTexCoord).xy;\n" +
+        "    vPosition = aTexCoord.xy;\n" +
+        "}\n";
+
+    private static final String FRAGMENT_SHADER_BODY =
+        "uniform float uAlpha;\n" +
+        "uniform int uShape;\n" +
+        "uniform vec2 uSize;\n" +
+        "uniform float uRadius;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "varying vec2 vPosition;\n" +
+        "void main() {\n" +
+        "    float mask = 1.0;\n" +
+        "    if(uShape == " + SHAPE_OVAL + ") {\n" +
+        "        float edge = 2.0 / min(uSize.x, uSize.y);\n" +
+        "        mask = 1.0 - smoothstep(1.0 - edge, 1.0, length((vPosition - 0.5) * 2.0));\n" +
+        "    } else if(uShape == " + SHAPE_ROUNDED_RECTANGLE + ") {\n" +
+        "        vec2 corner = abs(vPosition - 0.5) * uSize - (uSize * 0.5 - uRadius);\n" +
+        "        mask = 1.0 - smoothstep(uRadius - 1.0, uRadius, length(max(corner, 0.0)));\n" +
+        "    }\n" +
+        "    gl_FragColor = texture2D(uTexture, vTexCoord) * (uAlpha * mask);\n" +
+        "}\n";
+
+    private static final String FRAGMENT_SHADER_2D =
+        "precision mediump float;\n" +
+        "uniform sampler2D uTexture;\n" +
+        FRAGMENT_SHADER_BODY;
+
+    private static final String FRAGMENT_SHADER_OES =
+        "#extension GL_OES_EGL_image_external : require\n" +
+        "precision mediump float;\n" +
+        "uniform samplerExternalOES uTexture;\n" +
+        FRAGMENT_SHADER_BODY;
+
+    private final FloatBuffer QUAD = KGl.toBuffer(KGl.QUAD);
+
+    private final int WIDTH,
+                      HEIGHT,
+                      PROGRAM_2D,
+                      PROGRAM_OES;
+
+    /** GL has to be current, the frames composed are {@code width} x {@code height}. */
+    public LayerRenderer(int width, int height) throws Exception {
+        this.WIDTH = width;
+        this.HEIGHT = height;
+
+        this.PROGRAM_2D = KGl.createProgram(VERTEX_SHADER, FRAGMENT_SHADER_2D);
+        this.PROGRAM_OES = KGl.createProgram(VERTEX_SHADER, FRAGMENT_SHADER_OES);
+    }
+
+    /** Off for what covers the whole frame, on for what goes on top of it. */
+    public void setBlending(boolean blending) {
+        if(blending) {
+            GLES20.glEnable(GLES20.GL_BLEND);
+            GLES20.glBlendFunc(GLES20.GL_ONE, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        } else {
+            GLES20.glDisable(GLES20.GL_BLEND);
+        }
+    }
+
+    public void drawTexture(int texture, float[] texMatrix, int left, int top, int width, int height, float alpha, int shape, float cornerRadius) {
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+
+        draw(PROGRAM_2D, texMatrix, left, top, width, height, alpha, shape, cornerRadius);
+    }
+
+    /** For textures of a {@link android.graphics.SurfaceTexture}. */
+    public void drawExternalTexture(int texture, float[] texMatrix, int left, int top, int width, int height, float alpha, int shape, float cornerRadius) {
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, texture);
+
+        draw(PROGRAM_OES, texMatrix, left, top, width, height, alpha, shape, cornerRadius);
+    }
+
+    public void release() {
+        KGl.deleteProgram(PROGRAM_2D);
+        KGl.deleteProgram(PROGRAM_OES);
+    }
+
+    private void draw(int program, float[] texMatrix, int left, int top, int width, int height, float alpha, int shape, float cornerRadius) {
+        GLES20.glUseProgram(program);
+
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "uTexture"), 0);
+        GLES20.glUniformMatrix4fv(GLES20.glGetUniformLocation(program, "uTexMatrix"), 1, false, texMatrix, 0);
+
+        //from pixels of the frame, top left origin, to clip space
+        GLES20.glUniform4f(
+            GLES20.glGetUniformLocation(program, "uRect"),
+            left * 2f / WIDTH - 1f,
+            1f - (top + height) * 2f / HEIGHT,
+            width * 2f / WIDTH,
+            height * 2f / HEIGHT
+        );
+
+        GLES20.glUniform1f(GLES20.glGetUniformLocation(program, "uAlpha"), alpha);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "uShape"), shape);
+        GLES20.glUniform2f(GLES20.glGetUniformLocation(program, "uSize"), width, height);
+        GLES20.glUniform1f(GLES20.glGetUniformLocation(program, "uRadius"), cornerRadius);
+
+        final int texCoord = GLES20.glGetAttribLocation(program, "aTexCoord");
+
+        QUAD.position(2);
+        GLES20.glVertexAttribPointer(texCoord, 2, GLES20.GL_FLOAT, false, 16, QUAD);
+        GLES20.glEnableVertexAttribArray(texCoord);
+
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        GLES20.glDisableVertexAttribArray(texCoord);
+    }
+}
@@ -0,0 +1,169 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes 16 bit PCM into a compressed audio track of a {@link SampleSink} (usually a {@link KMuxer}).
+ * PCM is pushed from the capturing thread with {@link #encode(ByteBuffer, int, long)},
+ * which also drains whatever the codec has ready, so no extra thread is needed.
+ */
+public class AudioEncoder {
+    private final String TAG = AudioEncoder.class.getSimpleName();
+
+    private static final long TIMEOUT_US = 10000;
+
+    private static final int BYTES_PER_SAMPLE = 2,
+                             MAX_EOS_TRIES = 100;
+
+    private final MediaCodec CODEC;
+
+    private final SampleSink MUXER;
+
+    private final MediaCodec.BufferInfo BUFFER_INFO = new MediaCodec.BufferInfo();
+
+    private final int TRACK,
+                      SAMPLE_RATE,
+                      FRAME_SIZE;
+
+    private long LAST_PTS_US = 0;
+
+    private RecordingStats STATS;
+
+    public AudioEncoder(String mime, int sampleRate, int channels, int bitRate, SampleSink muxer, int track) throws IOException {
+        this.MUXER = muxer;
+        this.TRACK = track;
+        this.SAMPLE_RATE = sampleRate;
+        this.FRAME_SIZE = channels * BYTES_PER_SAMPLE;
+
+        final MediaFormat format = MediaFormat.createAudioFormat(mime, sampleRate, channels);
+
+        if(mime.equals(MediaFormat.MIMETYPE_AUDIO_AAC)) {
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        }
+
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_PCM_ENCODING, AudioFormat.ENCODING_PCM_16BIT);
+
+        this.CODEC = MediaCodec.createEncoderByType(mime);
+
+        CODEC.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+    }
+
+    public void setStats(RecordingStats stats) {
+        this.STATS = stats;
+    }
+
+    public void start() {
+        CODEC.start();
+    }
+
+    public void encode(ByteBuffer pcm, int size, long ptsUs) {
+        int offset = 0;
+
+        while(offset < size) {
+            final int index = CODEC.dequeueInputBuffer(TIMEOUT_US);
+
+            if(index < 0) {
+                drain(false);
+
+                continue;
+            }
+
+            final ByteBuffer input = CODEC.getInputBuffer(index);
+
+            if(input == null) {
+                //handed back empty so the codec does not lose the slot, the rest of the chunk has nowhere to go
+                CODEC.queueInputBuffer(index, 0, 0, LAST_PTS_US, 0);
+
+                Log.e(TAG, "encode: no input buffer for " + index + ", " + (size - offset) + " bytes dropped");
+
+                break;
+            }
+
+            input.clear();
+
+            final int length = Math.min(input.remaining(), size - offset);
+
+            pcm.limit(offset + length);
+            pcm.position(offset);
+
+            input.put(pcm);
+
+            LAST_PTS_US = ptsUs + (offset / FRAME_SIZE) * 1000000L / SAMPLE_RATE;
+
+            CODEC.queueInputBuffer(index, 0, length, LAST_PTS_US, 0);
+
+            offset += length;
+        }
+
+        pcm.clear();
+
+        drain(false);
+    }
+
+    public void stop() {
+        try {
+            final int index = CODEC.dequeueInputBuffer(TIMEOUT_US * 10);
+
+            if(index >= 0) {
+                CODEC.queueInputBuffer(index, 0, 0, LAST_PTS_US, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            }
+
+            drain(true);
+
+            CODEC.stop();
+        } catch (Exception e) {
+            Log.e(TAG, "stop: " + e.getMessage());
+        }
+    }
+
+    public void release() {
+        CODEC.release();
+    }
+
+    private void drain(boolean endOfStream) {
+        int tries = 0;
+
+        while(true) {
+            final int index = CODEC.dequeueOutputBuffer(BUFFER_INFO, endOfStream ? TIMEOUT_US : 0);
+
+            if(index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if(!endOfStream || ++tries > MAX_EOS_TRIES) {
+                    return;
+                }
+            } else if(index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MUXER.setTrackFormat(TRACK, CODEC.getOutputFormat());
+            } else if(index >= 0) {
+                final ByteBuffer output = CODEC.getOutputBuffer(index);
+
+                if((BUFFER_INFO.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    BUFFER_INFO.size = 0;
+                }
+
+                if(BUFFER_INFO.size > 0 && output != null) {
+                    output.position(BUFFER_INFO.offset);
+                    output.limit(BUFFER_INFO.offset + BUFFER_INFO.size);
+
+                    MUXER.writeSampleData(TRACK, output, BUFFER_INFO);
+
+                    if(STATS != null) {
+                        STATS.onBytesWritten(BUFFER_INFO.size);
+                    }
+                }
+
+                CODEC.releaseOutputBuffer(index, false);
+
+                if((BUFFER_INFO.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Real time mixer for 16 bit PCM streams captured by different threads.
+ * Every {@link Source} converts its input to the output rate and channel layout as it is written
+ * (linear interpolation, mono/stereo mapping, gain) and keeps it in its own bounded fifo.
+ * {@link #mix(ByteBuffer, int)} pulls the same amount of frames from every source, sums them and soft clips the result.
+ * A source whose clock runs ahead of the one driving the mix piles up in its fifo, past twice its target latency
+ * the oldest frames are dropped back down to the target; one that runs behind is filled with silence.
+ * Everything is pre-allocated, nothing here touches Android, so it can be exercised on a plain JVM.
+ */
+public class AudioMixer {
+    private static final float SOFT_CLIP_THRESHOLD = 0.8f;
+
+    private final Source[] SOURCES;
+
+    private final float[] MIX;
+
+    private final int CHANNELS,
+                      MAX_FRAMES;
+
+    public AudioMixer(int outputChannels, int maxFrames, Source... sources) {
+        this.CHANNELS = outputChannels;
+        this.MAX_FRAMES = maxFrames;
+        this.SOURCES = sources;
+
+        this.MIX = new float[maxFrames * outputChannels];
+    }
+
+    public int getMaxFrames() {
+        return MAX_FRAMES;
+    }
+
+    /** Mixes up to {@code frames} frames into {@code out} as little endian PCM16 and returns the amount of bytes written. */
+    public int mix(ByteBuffer out, int frames) {
+        frames = Math.min(frames, Math.min(MAX_FRAMES, out.capacity() / (CHANNELS * 2)));
+
+        final int samples = frames * CHANNELS;
+
+        for(int i = 0; i < samples; i++) {
+            MIX[i] = 0;
+        }
+
+        for(Source source : SOURCES) {
+            source.readAndAdd(MIX, frames);
+        }
+
+        out.clear();
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        for(int i = 0; i < samples; i++) {
+            out.putShort((short) Math.round(softClip(MIX[i]) * Short.MAX_VALUE));
+        }
+
+        out.flip();
+
+        return samples * 2;
+    }
+
+    public static float softClip(float x) {
+        final float abs = Math.abs(x);
+
+        if(abs <= SOFT_CLIP_THRESHOLD) {
+            return x;
+        }
+
+        final float headroom = 1f - SOFT_CLIP_THRESHOLD,
+                    clipped = SOFT_CLIP_THRESHOLD + headroom * (float) Math.tanh((abs - SOFT_CLIP_THRESHOLD) / headroom);
+
+        return x < 0 ? -clipped : clipped;
+    }
+
+    public static class Source {
+        private final float[] FIFO,
+                              LAST_FRAME;
+
+        private final int INPUT_CHANNELS,
+                          OUTPUT_CHANNELS,
+                          CAPACITY_FRAMES,
+                          TARGET_FRAMES;
+
+        private final double STEP;
+
+        private double PHASE = 0;
+
+        private int READ_FRAME = 0,
+                    AVAILABLE_FRAMES = 0;
+
+        private float GAIN;
+
+        private long OVERFLOW_FRAMES = 0,
+                     UNDERFLOW_FRAMES = 0,
+                     TRIMMED_FRAMES = 0;
+
+        public Source(int inputRate, int inputChannels, int outputRate, int outputChannels, int capacityFrames, float gain) {
+            this(inputRate, inputChannels, outputRate, outputChannels, capacityFrames, capacityFrames, gain);
+        }
+
+        /** {@code targetFrames} is the latency the fifo is trimmed back to, at most half of {@code capacityFrames} to have any effect. */
+        public Source(int inputRate, int inputChannels, int outputRate, int outputChannels, int capacityFrames, int targetFrames, float gain) {
+            this.INPUT_CHANNELS = inputChannels;
+            this.OUTPUT_CHANNELS = outputChannels;
+            this.CAPACITY_FRAMES = capacityFrames;
+            this.TARGET_FRAMES = targetFrames;
+            this.STEP = (double) inputRate / outputRate;
+            this.GAIN = gain;
+
+            this.FIFO = new float[capacityFrames * outputChannels];
+            this.LAST_FRAME = new float[outputChannels];
+        }
+
+        public synchronized void setGain(float gain) {
+            this.GAIN = gain;
+        }
+
+        /** Converts {@code size} bytes of little endian PCM16 from {@code in} (starting at 0) and queues them. */
+        public synchronized void write(ByteBuffer in, int size) {
+            in.order(ByteOrder.LITTLE_ENDIAN);
+
+            final int frames = size / (INPUT_CHANNELS * 2);
+
+            if(frames == 0) {
+                return;
+            }
+
+            while(PHASE < frames - 1) {
+                final int index = (int) Math.floor(PHASE);
+
+                final float fraction = (float) (PHASE - index);
+
+                final int writeFrame = (READ_FRAME + AVAILABLE_FRAMES) % CAPACITY_FRAMES;
+
+                for(int c = 0; c < OUTPUT_CHANNELS; c++) {
+                    final float s0 = index < 0 ? LAST_FRAME[c] : sample(in, index, c),
+                                s1 = sample(in, index + 1, c);
+
+                    FIFO[writeFrame * OUTPUT_CHANNELS + c] = (s0 + (s1 - s0) * fraction) * GAIN;
+                }
+
+                if(AVAILABLE_FRAMES == CAPACITY_FRAMES) {
+                    READ_FRAME = (READ_FRAME + 1) % CAPACITY_FRAMES;
+
+                    OVERFLOW_FRAMES++;
+                } else {
+                    AVAILABLE_FRAMES++;
+                }
+
+                PHASE += STEP;
+            }
+
+            PHASE -= frames;
+
+            for(int c = 0; c < OUTPUT_CHANNELS; c++) {
+                LAST_FRAME[c] = sample(in, frames - 1, c);
+            }
+
+            if(AVAILABLE_FRAMES > TARGET_FRAMES * 2) {
+                final int excess = AVAILABLE_FRAMES - TARGET_FRAMES;
+
+                READ_FRAME = (READ_FRAME + excess) % CAPACITY_FRAMES;
+                AVAILABLE_FRAMES = TARGET_FRAMES;
+
+                TRIMMED_FRAMES += excess;
+            }
+        }
+
+        public synchronized int getAvailableFrames() {
+            return AVAILABLE_FRAMES;
+        }
+
+        public synchronized long getOverflowFrames() {
+            return OVERFLOW_FRAMES;
+        }
+
+        public synchronized long getUnderflowFrames() {
+            return UNDERFLOW_FRAMES;
+        }
+
+        public synchronized long getTrimmedFrames() {
+            return TRIMMED_FRAMES;
+        }
+
+        private synchronized void readAndAdd(float[] mix, int frames) {
+            final int toRead = Math.min(frames, AVAILABLE_FRAMES);
+
+            for(int f = 0; f < toRead; f++) {
+                final int base = ((READ_FRAME + f) % CAPACITY_FRAMES) * OUTPUT_CHANNELS;
+
+                for(int c = 0; c < OUTPUT_CHANNELS; c++) {
+                    mix[f * OUTPUT_CHANNELS + c] += FIFO[base + c];
+                }
+            }
+
+            READ_FRAME = (READ_FRAME + toRead) % CAPACITY_FRAMES;
+            AVAILABLE_FRAMES -= toRead;
+
+            UNDERFLOW_FRAMES += frames - toRead;
+        }
+
+        private float sample(ByteBuffer in, int frame, int outputChannel) {
+            final int offset = frame * INPUT_CHANNELS * 2;
+
+            if(INPUT_CHANNELS == OUTPUT_CHANNELS) {
+                return in.getShort(offset + outputChannel * 2) / 32768f;
+            }
+
+            if(INPUT_CHANNELS == 1) {
+                return in.getShort(offset) / 32768f;
+            }
+
+            float sum = 0;
+
+            for(int c = 0; c < INPUT_CHANNELS; c++) {
+                sum += in.getShort(offset + c * 2);
+            }
+
+            return sum / INPUT_CHANNELS / 32768f;
+        }
+    }
+}
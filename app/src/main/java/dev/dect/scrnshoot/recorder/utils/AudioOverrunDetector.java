@@ -0,0 +1,82 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.media.AudioRecord;
+import android.media.AudioTimestamp;
+
+/**
+ * Finds the audio an {@link AudioRecord} lost because it was not read in time: every few reads the position the
+ * record has captured up to is compared with the frames read, whatever is beyond what its buffer holds was overwritten.
+ * Only to be used from the thread reading the record.
+ */
+public class AudioOverrunDetector {
+    private static final int CHECK_INTERVAL = 32;
+
+    private final AudioRecord AUDIO_RECORD;
+
+    private final AudioTimestamp AUDIO_TIMESTAMP = new AudioTimestamp();
+
+    private final int BUFFER_FRAMES;
+
+    private int READS = 0;
+
+    private long FRAMES_READ = 0,
+                 FRAMES_OFFSET = 0,
+                 FRAMES_LOST = 0,
+                 OVERRUNS = 0;
+
+    private boolean IS_TO_REBASE = true;
+
+    public AudioOverrunDetector(AudioRecord audioRecord) {
+        this.AUDIO_RECORD = audioRecord;
+        this.BUFFER_FRAMES = audioRecord.getBufferSizeInFrames();
+    }
+
+    /** @return the frames found lost since the last check, 0 most of the time */
+    public long onRead(int frames) {
+        FRAMES_READ += frames;
+
+        if(++READS % CHECK_INTERVAL != 0 || AUDIO_RECORD.getTimestamp(AUDIO_TIMESTAMP, AudioTimestamp.TIMEBASE_MONOTONIC) != AudioRecord.SUCCESS) {
+            return 0;
+        }
+
+        if(IS_TO_REBASE) {
+            FRAMES_OFFSET = AUDIO_TIMESTAMP.framePosition - FRAMES_READ;
+
+            IS_TO_REBASE = false;
+
+            return 0;
+        }
+
+        final long pending = AUDIO_TIMESTAMP.framePosition - FRAMES_READ - FRAMES_OFFSET;
+
+        if(pending <= BUFFER_FRAMES) {
+            return 0;
+        }
+
+        final long lost = pending - BUFFER_FRAMES;
+
+        OVERRUNS++;
+
+        FRAMES_LOST += lost;
+        FRAMES_OFFSET += lost;
+
+        return lost;
+    }
+
+    /** The record kept capturing while nobody read it (paused), what it captured meanwhile is not lost. */
+    public void rebase() {
+        IS_TO_REBASE = true;
+    }
+
+    public long getFramesRead() {
+        return FRAMES_READ;
+    }
+
+    public long getFramesLost() {
+        return FRAMES_LOST;
+    }
+
+    public long getOverrunCount() {
+        return OVERRUNS;
+    }
+}
@@ -0,0 +1,121 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock free single producer / single consumer ring of pre-allocated audio blocks.
+ * The capturing thread fills blocks with {@link #acquireWrite()} / {@link #commitWrite(int, long)} and never
+ * waits for storage: when the ring is full the block is dropped and counted instead.
+ * The writing thread drains them with {@link #acquireRead()} / {@link #releaseRead()}.
+ */
+public class AudioRingBuffer {
+    private final ByteBuffer[] BLOCKS;
+
+    private final int[] SIZES;
+
+    private final long[] PTS;
+
+    private final int CAPACITY;
+
+    private final AtomicLong HEAD = new AtomicLong(0),
+                             TAIL = new AtomicLong(0);
+
+    private volatile int HIGH_WATER_MARK = 0;
+
+    private volatile long DROPPED_BLOCKS = 0;
+
+    public AudioRingBuffer(int blocks, int blockSize) {
+        this.CAPACITY = blocks;
+
+        this.BLOCKS = new ByteBuffer[blocks];
+        this.SIZES = new int[blocks];
+        this.PTS = new long[blocks];
+
+        for(int i = 0; i < blocks; i++) {
+            BLOCKS[i] = ByteBuffer.allocateDirect(blockSize);
+        }
+    }
+
+    /** Producer side. Returns a cleared block to fill, or null (and counts a drop) if the ring is full. */
+    public ByteBuffer acquireWrite() {
+        final long tail = TAIL.get();
+
+        if(tail - HEAD.get() >= CAPACITY) {
+            DROPPED_BLOCKS++;
+
+            return null;
+        }
+
+        final ByteBuffer block = BLOCKS[(int) (tail % CAPACITY)];
+
+        block.clear();
+
+        return block;
+    }
+
+    /** Producer side. Publishes the block returned by the last {@link #acquireWrite()}. */
+    public void commitWrite(int size, long ptsUs) {
+        final long tail = TAIL.get();
+
+        final int index = (int) (tail % CAPACITY);
+
+        SIZES[index] = size;
+        PTS[index] = ptsUs;
+
+        TAIL.lazySet(tail + 1);
+
+        final int used = (int) (tail + 1 - HEAD.get());
+
+        if(used > HIGH_WATER_MARK) {
+            HIGH_WATER_MARK = used;
+        }
+    }
+
+    /** Consumer side. Returns the oldest block positioned over its data, or null if the ring is empty. */
+    public ByteBuffer acquireRead() {
+        final long head = HEAD.get();
+
+        if(head == TAIL.get()) {
+            return null;
+        }
+
+        final int index = (int) (head % CAPACITY);
+
+        final ByteBuffer block = BLOCKS[index];
+
+        block.limit(SIZES[index]);
+        block.position(0);
+
+        return block;
+    }
+
+    public int getReadSize() {
+        return SIZES[(int) (HEAD.get() % CAPACITY)];
+    }
+
+    public long getReadPts() {
+        return PTS[(int) (HEAD.get() % CAPACITY)];
+    }
+
+    /** Consumer side. Hands the block returned by the last {@link #acquireRead()} back to the producer. */
+    public void releaseRead() {
+        HEAD.lazySet(HEAD.get() + 1);
+    }
+
+    public boolean isEmpty() {
+        return HEAD.get() == TAIL.get();
+    }
+
+    public int getCapacity() {
+        return CAPACITY;
+    }
+
+    public int getHighWaterMark() {
+        return HIGH_WATER_MARK;
+    }
+
+    public long getDroppedBlocks() {
+        return DROPPED_BLOCKS;
+    }
+}
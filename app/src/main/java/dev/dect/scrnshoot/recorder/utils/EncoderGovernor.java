@@ -0,0 +1,152 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import dev.dect.scrnshoot.data.KSettings;
+
+/**
+ * Steps the bit rate and frame rate of a running {@link VideoEncoder} down when the device heats up, the battery
+ * runs low or the encoder falls behind, and back up once things settle, always between the profile minimums and
+ * the values the recording started with. Every change is reported through {@link OnAdjustment}.
+ */
+public class EncoderGovernor {
+    private final String TAG = EncoderGovernor.class.getSimpleName();
+
+    public static final String REASON_THERMAL = "thermal",
+                               REASON_BATTERY = "battery",
+                               REASON_BACKLOG = "backlog",
+                               REASON_RECOVERED = "recovered";
+
+    private static final long TICK_MS = 2000,
+                              STEP_DOWN_AFTER_MS = 6000,
+                              STEP_UP_AFTER_MS = 20000,
+                              HIGH_LATENCY_US = 250000,
+                              LOW_LATENCY_US = 80000;
+
+    private static final int STEPS = 4,
+                             LOW_BATTERY_LEVEL = 15;
+
+    private final VideoEncoder VIDEO_ENCODER;
+
+    private final OnAdjustment LISTENER;
+
+    private final PowerManager POWER_MANAGER;
+
+    private final BatteryManager BATTERY_MANAGER;
+
+    private final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    private final Runnable TICK = this::tick;
+
+    private final int MAX_BIT_RATE,
+                      MIN_BIT_RATE,
+                      MAX_FRAME_RATE,
+                      MIN_FRAME_RATE;
+
+    private int STEP = 0;
+
+    private long START_MS = 0,
+                 LAST_CHANGE_MS = 0,
+                 PAUSED_AT_MS = 0,
+                 TOTAL_PAUSED_MS = 0;
+
+    public interface OnAdjustment {
+        void onAdjustment(long timeMs, int bitRate, int frameRate, String reason);
+    }
+
+    public EncoderGovernor(Context ctx, KSettings ks, VideoEncoder videoEncoder, OnAdjustment onAdjustment) {
+        this.VIDEO_ENCODER = videoEncoder;
+        this.LISTENER = onAdjustment;
+
+        this.POWER_MANAGER = ctx.getSystemService(PowerManager.class);
+        this.BATTERY_MANAGER = ctx.getSystemService(BatteryManager.class);
+
+        this.MAX_BIT_RATE = videoEncoder.getBitRate();
+        this.MAX_FRAME_RATE = videoEncoder.getFrameRate();
+        this.MIN_BIT_RATE = Math.min(ks.getAdaptiveMinVideoBitRate(), MAX_BIT_RATE);
+        this.MIN_FRAME_RATE = Math.min(ks.getAdaptiveMinVideoFrameRate(), MAX_FRAME_RATE);
+    }
+
+    public void start() {
+        START_MS = SystemClock.elapsedRealtime();
+        LAST_CHANGE_MS = START_MS;
+
+        HANDLER.postDelayed(TICK, TICK_MS);
+    }
+
+    public void pause() {
+        HANDLER.removeCallbacks(TICK);
+
+        PAUSED_AT_MS = SystemClock.elapsedRealtime();
+    }
+
+    public void resume() {
+        TOTAL_PAUSED_MS += SystemClock.elapsedRealtime() - PAUSED_AT_MS;
+
+        HANDLER.postDelayed(TICK, TICK_MS);
+    }
+
+    public void stop() {
+        HANDLER.removeCallbacks(TICK);
+    }
+
+    private void tick() {
+        final long now = SystemClock.elapsedRealtime();
+
+        final String pressure = getPressure();
+
+        if(pressure != null) {
+            if(STEP < STEPS && now - LAST_CHANGE_MS >= STEP_DOWN_AFTER_MS) {
+                STEP++;
+
+                apply(now, pressure);
+            }
+        } else if(STEP > 0 && now - LAST_CHANGE_MS >= STEP_UP_AFTER_MS && VIDEO_ENCODER.getOutputLatencyUs() < LOW_LATENCY_US) {
+            STEP--;
+
+            apply(now, REASON_RECOVERED);
+        }
+
+        HANDLER.postDelayed(TICK, TICK_MS);
+    }
+
+    private String getPressure() {
+        try {
+            if(POWER_MANAGER.getCurrentThermalStatus() >= PowerManager.THERMAL_STATUS_MODERATE) {
+                return REASON_THERMAL;
+            }
+
+            if(!BATTERY_MANAGER.isCharging() && BATTERY_MANAGER.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) <= LOW_BATTERY_LEVEL) {
+                return REASON_BATTERY;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "getPressure: " + e.getMessage());
+        }
+
+        if(VIDEO_ENCODER.getOutputLatencyUs() > HIGH_LATENCY_US) {
+            return REASON_BACKLOG;
+        }
+
+        return null;
+    }
+
+    private void apply(long now, String reason) {
+        final int bitRate = MAX_BIT_RATE - (MAX_BIT_RATE - MIN_BIT_RATE) * STEP / STEPS,
+                  frameRate = MAX_FRAME_RATE - (MAX_FRAME_RATE - MIN_FRAME_RATE) * STEP / STEPS;
+
+        VIDEO_ENCODER.setBitRate(bitRate);
+        VIDEO_ENCODER.setFrameRate(frameRate);
+
+        LAST_CHANGE_MS = now;
+
+        Log.i(TAG, "apply: " + reason + " " + bitRate + " bps " + frameRate + " fps");
+
+        LISTENER.onAdjustment(now - START_MS - TOTAL_PAUSED_MS, bitRate, frameRate, reason);
+    }
+}
@@ -0,0 +1,340 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Thread safe wrapper around {@link MediaMuxer} shared by all the encoders of a recording.
+ * Tracks are reserved by slot up front so the final file always has the same layout
+ * (0 = video, then audio tracks in the order the recorder reserved them), and the muxer
+ * only starts once every slot has received its output format. Samples written before that are copied into a bounded
+ * queue instead of blocking the encoders, and written once it starts.
+ * In segmented mode the output is split into complete mp4 files that are rotated on the first
+ * video sync frame after each segment duration, so an interrupted recording loses at most one segment.
+ */
+public class KMuxer implements SampleSink {
+    private final String TAG = KMuxer.class.getSimpleName();
+
+    /** How much media (by timestamp) or memory is held while waiting on the formats, before starting without the missing tracks. */
+    private static final long START_TIMEOUT_US = 3000000;
+
+    private static final int MAX_PENDING_BYTES = 16 * 1024 * 1024;
+
+    private MediaMuxer MEDIA_MUXER;
+
+    private final int OUTPUT_FORMAT;
+
+    private final File SEGMENTS_DIRECTORY;
+
+    private final long SEGMENT_DURATION_US;
+
+    private final ArrayList<File> SEGMENTS = new ArrayList<>();
+
+    private long SEGMENT_START_US = -1;
+
+    private final MediaFormat[] FORMATS;
+
+    private final int[] TRACKS;
+
+    private final long[] LAST_PTS;
+
+    private final ArrayList<PendingSample> PENDING = new ArrayList<>();
+
+    private int PENDING_BYTES = 0;
+
+    private static class PendingSample {
+        private final int SLOT;
+
+        private final ByteBuffer BUFFER;
+
+        private final MediaCodec.BufferInfo INFO = new MediaCodec.BufferInfo();
+
+        private PendingSample(int slot, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+            this.SLOT = slot;
+
+            this.BUFFER = ByteBuffer.allocate(info.size);
+
+            final ByteBuffer source = buffer.duplicate();
+
+            source.limit(info.offset + info.size);
+            source.position(info.offset);
+
+            BUFFER.put(source);
+            BUFFER.flip();
+
+            INFO.set(0, info.size, info.presentationTimeUs, info.flags);
+        }
+    }
+
+    private boolean IS_STARTED = false,
+                    IS_RELEASED = false,
+                    IS_PAUSED = false;
+
+    private long PAUSED_AT_US = 0,
+                 RESUMED_AT_US = 0,
+                 TOTAL_PAUSED_US = 0;
+
+    public KMuxer(File file, int trackCount) throws IOException {
+        this(file, trackCount, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+    }
+
+    public KMuxer(File file, int trackCount, int outputFormat) throws IOException {
+        this(file, null, 0, trackCount, outputFormat);
+    }
+
+    public KMuxer(File segmentsDirectory, long segmentDurationUs, int trackCount) throws IOException {
+        this(null, segmentsDirectory, segmentDurationUs, trackCount, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+    }
+
+    private KMuxer(File file, File segmentsDirectory, long segmentDurationUs, int trackCount, int outputFormat) throws IOException {
+        this.OUTPUT_FORMAT = outputFormat;
+        this.SEGMENTS_DIRECTORY = segmentsDirectory;
+        this.SEGMENT_DURATION_US = segmentDurationUs;
+
+        this.MEDIA_MUXER = new MediaMuxer((file == null ? nextSegmentFile() : file).getAbsolutePath(), outputFormat);
+
+        this.FORMATS = new MediaFormat[trackCount];
+        this.TRACKS = new int[trackCount];
+        this.LAST_PTS = new long[trackCount];
+
+        for(int i = 0; i < trackCount; i++) {
+            TRACKS[i] = -1;
+        }
+    }
+
+    @Override
+    public synchronized void setTrackFormat(int slot, MediaFormat format) {
+        if(IS_RELEASED) {
+            return;
+        }
+
+        if(IS_STARTED) {
+            Log.e(TAG, "setTrackFormat: track " + slot + " reported its format after the muxer started, it is dropped");
+
+            return;
+        }
+
+        FORMATS[slot] = format;
+
+        for(MediaFormat f : FORMATS) {
+            if(f == null) {
+                return;
+            }
+        }
+
+        startMuxer();
+    }
+
+    @Override
+    public synchronized void writeSampleData(int slot, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        if(IS_RELEASED || IS_PAUSED || info.presentationTimeUs < RESUMED_AT_US) {
+            return;
+        }
+
+        info.presentationTimeUs -= TOTAL_PAUSED_US;
+
+        if(IS_STARTED) {
+            write(slot, buffer, info);
+
+            return;
+        }
+
+        final PendingSample sample = new PendingSample(slot, buffer, info);
+
+        PENDING.add(sample);
+
+        PENDING_BYTES += sample.INFO.size;
+
+        if(PENDING_BYTES > MAX_PENDING_BYTES || sample.INFO.presentationTimeUs - PENDING.get(0).INFO.presentationTimeUs > START_TIMEOUT_US) {
+            for(int i = 0; i < FORMATS.length; i++) {
+                if(FORMATS[i] == null) {
+                    Log.e(TAG, "writeSampleData: track " + i + " never reported its format, starting without it");
+                }
+            }
+
+            startMuxer();
+        }
+    }
+
+    @Override
+    public synchronized void pause() {
+        IS_PAUSED = true;
+
+        PAUSED_AT_US = System.nanoTime() / 1000;
+    }
+
+    @Override
+    public synchronized void resume() {
+        if(!IS_PAUSED) {
+            return;
+        }
+
+        RESUMED_AT_US = System.nanoTime() / 1000;
+
+        TOTAL_PAUSED_US += RESUMED_AT_US - PAUSED_AT_US;
+
+        IS_PAUSED = false;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if(IS_RELEASED) {
+            return;
+        }
+
+        if(!IS_STARTED && !PENDING.isEmpty()) {
+            Log.e(TAG, "stop: not every track reported its format, writing the available ones");
+
+            startMuxer();
+
+            if(IS_RELEASED) {
+                return;
+            }
+        }
+
+        IS_RELEASED = true;
+
+        try {
+            if(IS_STARTED) {
+                MEDIA_MUXER.stop();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "stop: " + e.getMessage());
+        }
+
+        MEDIA_MUXER.release();
+    }
+
+    public synchronized boolean isStarted() {
+        return IS_STARTED;
+    }
+
+    public boolean isSegmented() {
+        return SEGMENTS_DIRECTORY != null;
+    }
+
+    public synchronized ArrayList<File> getSegments() {
+        return new ArrayList<>(SEGMENTS);
+    }
+
+    private File nextSegmentFile() {
+        final File file = new File(SEGMENTS_DIRECTORY, String.format(Locale.US, "segment_%05d.mp4", SEGMENTS.size()));
+
+        SEGMENTS.add(file);
+
+        return file;
+    }
+
+    private void rotateSegment() {
+        try {
+            MEDIA_MUXER.stop();
+        } catch (Exception e) {
+            Log.e(TAG, "rotateSegment: " + e.getMessage());
+        }
+
+        MEDIA_MUXER.release();
+
+        final File file = nextSegmentFile();
+
+        MediaMuxer mediaMuxer = null;
+
+        try {
+            mediaMuxer = new MediaMuxer(file.getAbsolutePath(), OUTPUT_FORMAT);
+
+            for(int i = 0; i < FORMATS.length; i++) {
+                if(FORMATS[i] != null) {
+                    TRACKS[i] = mediaMuxer.addTrack(FORMATS[i]);
+                }
+            }
+
+            mediaMuxer.start();
+
+            MEDIA_MUXER = mediaMuxer;
+        } catch (Exception e) {
+            Log.e(TAG, "rotateSegment: " + e.getMessage());
+
+            //the segments written so far are complete, only the one that failed to open is left out
+            if(mediaMuxer != null) {
+                mediaMuxer.release();
+            }
+
+            SEGMENTS.remove(file);
+
+            file.delete();
+
+            IS_RELEASED = true;
+        }
+    }
+
+    private void write(int slot, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        if(TRACKS[slot] == -1) {
+            return;
+        }
+
+        if(info.presentationTimeUs < LAST_PTS[slot]) {
+            info.presentationTimeUs = LAST_PTS[slot];
+        }
+
+        LAST_PTS[slot] = info.presentationTimeUs;
+
+        if(SEGMENTS_DIRECTORY != null && slot == 0 && (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0) {
+            if(SEGMENT_START_US == -1) {
+                SEGMENT_START_US = info.presentationTimeUs;
+            } else if(info.presentationTimeUs - SEGMENT_START_US >= SEGMENT_DURATION_US) {
+                rotateSegment();
+
+                SEGMENT_START_US = info.presentationTimeUs;
+            }
+        }
+
+        if(IS_RELEASED) {
+            return;
+        }
+
+        try {
+            MEDIA_MUXER.writeSampleData(TRACKS[slot], buffer, info);
+        } catch (Exception e) {
+            Log.e(TAG, "writeSampleData: " + e.getMessage());
+        }
+    }
+
+    private void startMuxer() {
+        try {
+            for(int i = 0; i < FORMATS.length; i++) {
+                if(FORMATS[i] != null) {
+                    TRACKS[i] = MEDIA_MUXER.addTrack(FORMATS[i]);
+                }
+            }
+
+            MEDIA_MUXER.start();
+        } catch (Exception e) {
+            Log.e(TAG, "startMuxer: " + e.getMessage());
+
+            PENDING.clear();
+
+            IS_RELEASED = true;
+
+            MEDIA_MUXER.release();
+
+            return;
+        }
+
+        IS_STARTED = true;
+
+        for(PendingSample sample : PENDING) {
+            write(sample.SLOT, sample.BUFFER, sample.INFO);
+        }
+
+        PENDING.clear();
+
+        PENDING_BYTES = 0;
+    }
+}
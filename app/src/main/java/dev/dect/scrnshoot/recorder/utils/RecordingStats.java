@@ -0,0 +1,234 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dev.dect.scrnshoot.model.Scrnshoot;
+
+/**
+ * Live numbers of a recording. The threads of the pipeline only bump lock free counters, once a second they are
+ * sampled on the main thread into rates and handed to an {@link OnSample} (notification, menu overlay), and when
+ * the recording stops they are summed up into a {@link Scrnshoot.Stats}.
+ * Frames are only known to the codec recorder, for {@code MediaRecorder} the rates come from the size of its files.
+ * Only frames known to be lost are counted as dropped (not presented by the frame pipeline, not kept by the sink),
+ * gaps between frames are not: the display only sends a frame when the screen changes.
+ */
+public class RecordingStats {
+    private static final long SAMPLE_INTERVAL_MS = 1000;
+
+    private final AtomicLong VIDEO_FRAMES = new AtomicLong(0),
+                             VIDEO_BYTES = new AtomicLong(0),
+                             DROPPED_FRAMES = new AtomicLong(0),
+                             WRITTEN_BYTES = new AtomicLong(0),
+                             AUDIO_LOSSES = new AtomicLong(0),
+                             AUDIO_FRAMES_LOST = new AtomicLong(0);
+
+    private final ArrayList<File> WATCHED_FILES = new ArrayList<>();
+
+    private final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    private final Runnable TICK = this::tick;
+
+    private final boolean HAS_AUDIO;
+
+    private OnSample LISTENER;
+
+    private volatile boolean HAS_FRAMES = false;
+
+    private boolean IS_PAUSED = false;
+
+    private long START_MS = 0,
+                 STOPPED_AT_MS = 0,
+                 PAUSED_AT_MS = 0,
+                 TOTAL_PAUSED_MS = 0,
+                 LAST_SAMPLE_MS = 0,
+                 LAST_FRAMES = 0,
+                 LAST_VIDEO_BYTES = 0,
+                 LAST_WRITTEN_BYTES = 0;
+
+    private float FRAME_RATE = -1;
+
+    private int BIT_RATE = -1;
+
+    private long WRITE_RATE = 0;
+
+    public interface OnSample {
+        void onSample(RecordingStats stats);
+    }
+
+    public RecordingStats(boolean hasAudio) {
+        this.HAS_AUDIO = hasAudio;
+    }
+
+    public void setOnSample(OnSample onSample) {
+        this.LISTENER = onSample;
+    }
+
+    /** For recorders that write without telling, the bytes written are the size of these files. */
+    public void watchFile(File file) {
+        if(file != null) {
+            WATCHED_FILES.add(file);
+        }
+    }
+
+    /** Encoder thread, once per encoded frame. */
+    public void onVideoFrame(int size) {
+        VIDEO_FRAMES.incrementAndGet();
+        VIDEO_BYTES.addAndGet(size);
+        WRITTEN_BYTES.addAndGet(size);
+
+        HAS_FRAMES = true;
+    }
+
+    /** Any thread, for a frame that was made but will not be in the recording. */
+    public void onVideoFrameDropped() {
+        DROPPED_FRAMES.incrementAndGet();
+    }
+
+    /** Encoder thread, for every other sample written. */
+    public void onBytesWritten(int size) {
+        WRITTEN_BYTES.addAndGet(size);
+    }
+
+    /** Capturing thread, when audio was overwritten before it was read or had to be thrown away. */
+    public void onAudioLost(long frames) {
+        AUDIO_LOSSES.incrementAndGet();
+        AUDIO_FRAMES_LOST.addAndGet(frames);
+    }
+
+    public void start() {
+        START_MS = SystemClock.elapsedRealtime();
+        LAST_SAMPLE_MS = START_MS;
+
+        HANDLER.postDelayed(TICK, SAMPLE_INTERVAL_MS);
+    }
+
+    public void pause() {
+        HANDLER.removeCallbacks(TICK);
+
+        PAUSED_AT_MS = SystemClock.elapsedRealtime();
+
+        IS_PAUSED = true;
+    }
+
+    public void resume() {
+        final long now = SystemClock.elapsedRealtime();
+
+        TOTAL_PAUSED_MS += now - PAUSED_AT_MS;
+
+        IS_PAUSED = false;
+
+        LAST_SAMPLE_MS = now;
+        LAST_FRAMES = VIDEO_FRAMES.get();
+        LAST_VIDEO_BYTES = VIDEO_BYTES.get();
+        LAST_WRITTEN_BYTES = getWrittenBytes();
+
+        HANDLER.postDelayed(TICK, SAMPLE_INTERVAL_MS);
+    }
+
+    public void stop() {
+        HANDLER.removeCallbacks(TICK);
+
+        STOPPED_AT_MS = SystemClock.elapsedRealtime();
+
+        if(IS_PAUSED) {
+            TOTAL_PAUSED_MS += STOPPED_AT_MS - PAUSED_AT_MS;
+
+            IS_PAUSED = false;
+        }
+
+        LISTENER = null;
+    }
+
+    /** Frames per second over the last second, -1 when frames are not known. */
+    public float getFrameRate() {
+        return FRAME_RATE;
+    }
+
+    /** Video bits per second over the last second, -1 when frames are not known. */
+    public int getBitRate() {
+        return BIT_RATE;
+    }
+
+    /** Bytes per second written over the last second, all tracks. */
+    public long getWriteRate() {
+        return WRITE_RATE;
+    }
+
+    public long getDroppedFrames() {
+        return DROPPED_FRAMES.get();
+    }
+
+    public long getAudioLosses() {
+        return AUDIO_LOSSES.get();
+    }
+
+    public boolean hasFrames() {
+        return HAS_FRAMES;
+    }
+
+    public boolean hasAudio() {
+        return HAS_AUDIO;
+    }
+
+    /** After {@link #stop()}. */
+    public Scrnshoot.Stats summarize() {
+        final long duration = START_MS == 0 ? 0 : Math.max(0, STOPPED_AT_MS - START_MS - TOTAL_PAUSED_MS),
+                   seconds = Math.max(1, duration / 1000);
+
+        return new Scrnshoot.Stats(
+            duration,
+            HAS_FRAMES ? VIDEO_FRAMES.get() * 1000f / Math.max(1, duration) : -1,
+            HAS_FRAMES ? DROPPED_FRAMES.get() : -1,
+            HAS_FRAMES ? (int) (VIDEO_BYTES.get() * 8 / seconds) : -1,
+            getWrittenBytes() / seconds,
+            AUDIO_LOSSES.get(),
+            AUDIO_FRAMES_LOST.get()
+        );
+    }
+
+    private long getWrittenBytes() {
+        if(WATCHED_FILES.isEmpty()) {
+            return WRITTEN_BYTES.get();
+        }
+
+        long bytes = 0;
+
+        for(File file : WATCHED_FILES) {
+            bytes += file.length();
+        }
+
+        return bytes;
+    }
+
+    private void tick() {
+        final long now = SystemClock.elapsedRealtime(),
+                   elapsed = Math.max(1, now - LAST_SAMPLE_MS),
+                   frames = VIDEO_FRAMES.get(),
+                   videoBytes = VIDEO_BYTES.get(),
+                   writtenBytes = getWrittenBytes();
+
+        if(HAS_FRAMES) {
+            FRAME_RATE = (frames - LAST_FRAMES) * 1000f / elapsed;
+            BIT_RATE = (int) ((videoBytes - LAST_VIDEO_BYTES) * 8000 / elapsed);
+        }
+
+        WRITE_RATE = Math.max(0, writtenBytes - LAST_WRITTEN_BYTES) * 1000 / elapsed;
+
+        LAST_SAMPLE_MS = now;
+        LAST_FRAMES = frames;
+        LAST_VIDEO_BYTES = videoBytes;
+        LAST_WRITTEN_BYTES = writtenBytes;
+
+        if(LISTENER != null) {
+            LISTENER.onSample(this);
+        }
+
+        HANDLER.postDelayed(TICK, SAMPLE_INTERVAL_MS);
+    }
+}
@@ -0,0 +1,414 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Keeps only the last seconds of a recording as encoded samples, so they can be saved at any moment
+ * without stopping the encoders.
+ * Sample data lives in a memory mapped file with a fixed size decided up front and the sample table
+ * in pre-allocated arrays, so nothing is allocated per frame. Samples that fall out of the window, or that
+ * are in the way once either is full, are evicted oldest first.
+ * {@link #save(File)} always starts on a video sync frame and runs while the encoders keep going:
+ * samples not yet saved are pinned and, if the ring runs out of room meanwhile, new ones are dropped instead.
+ *
+ * @noinspection ResultOfMethodCallIgnored
+ */
+public class ReplayBuffer implements SampleSink {
+    private final String TAG = ReplayBuffer.class.getSimpleName();
+
+    public static final long SYNC_FRAME_MARGIN_US = 2000000;
+
+    private final File BACKING_FILE;
+
+    private final RandomAccessFile BACKING;
+
+    private final MappedByteBuffer DATA;
+
+    private final int DATA_CAPACITY,
+                      SAMPLE_CAPACITY;
+
+    private final long WINDOW_US;
+
+    private final int[] OFFSETS,
+                        SIZES,
+                        FLAGS,
+                        SLOTS;
+
+    private final long[] PTS,
+                         LAST_PTS;
+
+    private final MediaFormat[] FORMATS;
+
+    private final Object SAVE_LOCK = new Object();
+
+    private RecordingStats STATS;
+
+    private long FIRST_SEQ = 0,
+                 NEXT_SEQ = 0,
+                 PINNED_SEQ = -1;
+
+    private int WRITE_OFFSET = 0;
+
+    private boolean IS_RELEASED = false,
+                    IS_PAUSED = false,
+                    IS_WAITING_FOR_SYNC_FRAME = false;
+
+    private long PAUSED_AT_US = 0,
+                 RESUMED_AT_US = 0,
+                 TOTAL_PAUSED_US = 0,
+                 DROPPED_SAMPLES = 0;
+
+    public ReplayBuffer(File backingFile, int trackCount, long windowUs, int dataCapacity, int sampleCapacity) throws IOException {
+        this.BACKING_FILE = backingFile;
+        this.WINDOW_US = windowUs;
+        this.DATA_CAPACITY = dataCapacity;
+        this.SAMPLE_CAPACITY = sampleCapacity;
+
+        this.BACKING = new RandomAccessFile(backingFile, "rw");
+
+        try {
+            BACKING.setLength(dataCapacity);
+
+            this.DATA = BACKING.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, dataCapacity);
+        } catch (IOException e) {
+            BACKING.close();
+
+            throw e;
+        }
+
+        this.OFFSETS = new int[sampleCapacity];
+        this.SIZES = new int[sampleCapacity];
+        this.FLAGS = new int[sampleCapacity];
+        this.SLOTS = new int[sampleCapacity];
+        this.PTS = new long[sampleCapacity];
+
+        this.FORMATS = new MediaFormat[trackCount];
+        this.LAST_PTS = new long[trackCount];
+    }
+
+    /** Video samples dropped for lack of room (or a sync frame to restart from) are counted as dropped frames. */
+    public void setStats(RecordingStats stats) {
+        this.STATS = stats;
+    }
+
+    @Override
+    public synchronized void setTrackFormat(int slot, MediaFormat format) {
+        if(FORMATS[slot] == null) {
+            FORMATS[slot] = format;
+        }
+    }
+
+    @Override
+    public synchronized void writeSampleData(int slot, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+        if(IS_RELEASED || IS_PAUSED || info.presentationTimeUs < RESUMED_AT_US || info.size <= 0 || FORMATS[slot] == null) {
+            return;
+        }
+
+        final boolean isSyncFrame = slot == 0 && (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+
+        if(slot == 0 && IS_WAITING_FOR_SYNC_FRAME) {
+            if(!isSyncFrame) {
+                onDropped(slot);
+
+                return;
+            }
+
+            IS_WAITING_FOR_SYNC_FRAME = false;
+        }
+
+        long ptsUs = info.presentationTimeUs - TOTAL_PAUSED_US;
+
+        if(ptsUs < LAST_PTS[slot]) {
+            ptsUs = LAST_PTS[slot];
+        }
+
+        LAST_PTS[slot] = ptsUs;
+
+        evictOlderThan(ptsUs - WINDOW_US - SYNC_FRAME_MARGIN_US);
+
+        final int offset = reserve(info.size);
+
+        if(offset == -1) {
+            onDropped(slot);
+
+            if(slot == 0) {
+                IS_WAITING_FOR_SYNC_FRAME = true;
+            }
+
+            return;
+        }
+
+        buffer.limit(info.offset + info.size);
+        buffer.position(info.offset);
+
+        DATA.limit(offset + info.size);
+        DATA.position(offset);
+        DATA.put(buffer);
+
+        final int index = index(NEXT_SEQ);
+
+        OFFSETS[index] = offset;
+        SIZES[index] = info.size;
+        FLAGS[index] = isSyncFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0;
+        SLOTS[index] = slot;
+        PTS[index] = ptsUs;
+
+        WRITE_OFFSET = offset + info.size;
+
+        NEXT_SEQ++;
+    }
+
+    @Override
+    public synchronized void pause() {
+        IS_PAUSED = true;
+
+        PAUSED_AT_US = System.nanoTime() / 1000;
+    }
+
+    @Override
+    public synchronized void resume() {
+        if(!IS_PAUSED) {
+            return;
+        }
+
+        RESUMED_AT_US = System.nanoTime() / 1000;
+
+        TOTAL_PAUSED_US += RESUMED_AT_US - PAUSED_AT_US;
+
+        IS_PAUSED = false;
+
+        IS_WAITING_FOR_SYNC_FRAME = true;
+    }
+
+    /** Stops accepting samples. What is buffered can still be saved until {@link #release()}. */
+    @Override
+    public synchronized void stop() {
+        IS_RELEASED = true;
+    }
+
+    public void release() {
+        stop();
+
+        try {
+            BACKING.close();
+        } catch (Exception e) {
+            Log.e(TAG, "release: " + e.getMessage());
+        }
+
+        BACKING_FILE.delete();
+    }
+
+    public synchronized long getDroppedSamples() {
+        return DROPPED_SAMPLES;
+    }
+
+    /** Writes the buffered window into a new mp4. Saves requested meanwhile wait for the running one. */
+    public boolean save(File file) {
+        synchronized(SAVE_LOCK) {
+            return saveLocked(file);
+        }
+    }
+
+    private void onDropped(int slot) {
+        DROPPED_SAMPLES++;
+
+        if(slot == 0 && STATS != null) {
+            STATS.onVideoFrameDropped();
+        }
+    }
+
+    private boolean saveLocked(File file) {
+        final long startSeq,
+                   endSeq;
+
+        final MediaFormat[] formats;
+
+        synchronized(this) {
+            startSeq = findStartSeq();
+
+            if(startSeq == -1) {
+                return false;
+            }
+
+            endSeq = NEXT_SEQ;
+
+            PINNED_SEQ = startSeq;
+
+            formats = FORMATS.clone();
+        }
+
+        final ByteBuffer view = DATA.duplicate();
+
+        final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        final int[] tracks = new int[formats.length];
+
+        MediaMuxer muxer = null;
+
+        boolean success = false;
+
+        try {
+            muxer = new MediaMuxer(file.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+
+            for(int i = 0; i < formats.length; i++) {
+                tracks[i] = formats[i] == null ? -1 : muxer.addTrack(formats[i]);
+            }
+
+            muxer.start();
+
+            long startPtsUs = -1;
+
+            for(long seq = startSeq; seq < endSeq; seq++) {
+                final int slot,
+                          offset,
+                          size,
+                          flags;
+
+                final long ptsUs;
+
+                synchronized(this) {
+                    PINNED_SEQ = seq;
+
+                    final int index = index(seq);
+
+                    slot = SLOTS[index];
+                    offset = OFFSETS[index];
+                    size = SIZES[index];
+                    flags = FLAGS[index];
+                    ptsUs = PTS[index];
+                }
+
+                if(startPtsUs == -1) {
+                    startPtsUs = ptsUs;
+                }
+
+                if(tracks[slot] == -1 || ptsUs < startPtsUs) {
+                    continue;
+                }
+
+                view.limit(offset + size);
+                view.position(offset);
+
+                info.set(offset, size, ptsUs - startPtsUs, flags);
+
+                muxer.writeSampleData(tracks[slot], view, info);
+            }
+
+            muxer.stop();
+
+            success = true;
+        } catch (Exception e) {
+            Log.e(TAG, "save: " + e.getMessage());
+        } finally {
+            if(muxer != null) {
+                muxer.release();
+            }
+
+            synchronized(this) {
+                PINNED_SEQ = -1;
+            }
+        }
+
+        if(!success) {
+            file.delete();
+        }
+
+        return success;
+    }
+
+    /** The last sync frame at or before the start of the window, or the first one buffered. */
+    private long findStartSeq() {
+        if(FORMATS[0] == null) {
+            return -1;
+        }
+
+        final long windowStartUs = LAST_PTS[0] - WINDOW_US;
+
+        long startSeq = -1;
+
+        for(long seq = FIRST_SEQ; seq < NEXT_SEQ; seq++) {
+            final int index = index(seq);
+
+            if(SLOTS[index] != 0 || FLAGS[index] == 0) {
+                continue;
+            }
+
+            if(startSeq != -1 && PTS[index] > windowStartUs) {
+                break;
+            }
+
+            startSeq = seq;
+        }
+
+        return startSeq;
+    }
+
+    private int reserve(int size) {
+        if(size > DATA_CAPACITY) {
+            return -1;
+        }
+
+        while(true) {
+            final int offset = findRoom(size);
+
+            if(offset != -1 && NEXT_SEQ - FIRST_SEQ < SAMPLE_CAPACITY) {
+                return offset;
+            }
+
+            if(!evictOldest()) {
+                return -1;
+            }
+        }
+    }
+
+    /** Samples are contiguous, so the free space is either after the newest one or, once wrapped, up to the oldest one. */
+    private int findRoom(int size) {
+        if(FIRST_SEQ == NEXT_SEQ) {
+            return 0;
+        }
+
+        final int head = OFFSETS[index(FIRST_SEQ)];
+
+        if(WRITE_OFFSET > head) {
+            if(WRITE_OFFSET + size <= DATA_CAPACITY) {
+                return WRITE_OFFSET;
+            }
+
+            return size < head ? 0 : -1;
+        }
+
+        return WRITE_OFFSET + size < head ? WRITE_OFFSET : -1;
+    }
+
+    private void evictOlderThan(long ptsUs) {
+        while(FIRST_SEQ != NEXT_SEQ && PTS[index(FIRST_SEQ)] < ptsUs) {
+            if(!evictOldest()) {
+                return;
+            }
+        }
+    }
+
+    private boolean evictOldest() {
+        if(FIRST_SEQ == NEXT_SEQ || (PINNED_SEQ != -1 && FIRST_SEQ >= PINNED_SEQ)) {
+            return false;
+        }
+
+        FIRST_SEQ++;
+
+        return true;
+    }
+
+    private int index(long seq) {
+        return (int) (seq % SAMPLE_CAPACITY);
+    }
+}
@@ -0,0 +1,19 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+
+/** Destination of the encoded samples produced by {@link VideoEncoder} and {@link AudioEncoder}. */
+public interface SampleSink {
+    void setTrackFormat(int slot, MediaFormat format);
+
+    void writeSampleData(int slot, ByteBuffer buffer, MediaCodec.BufferInfo info);
+
+    void pause();
+
+    void resume();
+
+    void stop();
+}
@@ -0,0 +1,53 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * How long the last recording took to start, from the user asking for it to the first encoded frame, split into
+ * preparing the recorders, the countdown and what is left after the countdown ends (which should be close to nothing).
+ * For the screen/mic recorder the first frame is when {@code MediaRecorder.start()} returns, it has no per frame callback.
+ */
+public class StartLatency {
+    private static final String TAG = StartLatency.class.getSimpleName();
+
+    private static long REQUESTED_AT_MS = 0,
+                        PREPARED_AT_MS = 0,
+                        GO_AT_MS = 0,
+                        FIRST_FRAME_AT_MS = 0;
+
+    public static synchronized void requested() {
+        REQUESTED_AT_MS = SystemClock.elapsedRealtime();
+        PREPARED_AT_MS = 0;
+        GO_AT_MS = 0;
+        FIRST_FRAME_AT_MS = 0;
+    }
+
+    public static synchronized void prepared() {
+        PREPARED_AT_MS = SystemClock.elapsedRealtime();
+    }
+
+    public static synchronized void go() {
+        GO_AT_MS = SystemClock.elapsedRealtime();
+    }
+
+    public static synchronized void firstFrame() {
+        if(FIRST_FRAME_AT_MS != 0 || GO_AT_MS == 0) {
+            return;
+        }
+
+        FIRST_FRAME_AT_MS = SystemClock.elapsedRealtime();
+
+        Log.i(TAG, "prepare " + (PREPARED_AT_MS - REQUESTED_AT_MS) + " ms, countdown " + (GO_AT_MS - PREPARED_AT_MS) + " ms, go to first frame " + getGoToFirstFrameMs() + " ms, total " + getRequestToFirstFrameMs() + " ms");
+    }
+
+    /** -1 until the first frame. */
+    public static synchronized long getRequestToFirstFrameMs() {
+        return FIRST_FRAME_AT_MS == 0 ? -1 : FIRST_FRAME_AT_MS - REQUESTED_AT_MS;
+    }
+
+    /** -1 until the first frame. */
+    public static synchronized long getGoToFirstFrameMs() {
+        return FIRST_FRAME_AT_MS == 0 ? -1 : FIRST_FRAME_AT_MS - GO_AT_MS;
+    }
+}
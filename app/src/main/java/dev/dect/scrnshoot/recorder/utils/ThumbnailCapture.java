@@ -0,0 +1,123 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.PixelCopy;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import dev.dect.scrnshoot.utils.ThumbnailLoader;
+
+/**
+ * Copies one frame of the recorder surface a moment after the recording starts, past the first frames that are
+ * often still the app that started it, to be the thumbnail of the recording.
+ *
+ * @noinspection ResultOfMethodCallIgnored
+ */
+public class ThumbnailCapture {
+    private final String TAG = ThumbnailCapture.class.getSimpleName();
+
+    public interface OnThumbnailCaptureListener {
+        void onCaptured(File file);
+    }
+
+    private static final long DELAY_MS = 2000;
+
+    private final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    private final File FILE;
+
+    private final OnThumbnailCaptureListener LISTENER;
+
+    private volatile boolean IS_CAPTURED = false,
+                             IS_STOPPED = false;
+
+    /** The listener is called on the main thread once the frame is written, never after {@link #stop()}. */
+    public ThumbnailCapture(Context ctx, OnThumbnailCaptureListener listener) {
+        this.FILE = ThumbnailLoader.createCaptureFile(ctx);
+        this.LISTENER = listener;
+    }
+
+    public void start(Surface surface, int videoWidth, int videoHeight) {
+        if(surface == null || videoWidth <= 0 || videoHeight <= 0) {
+            return;
+        }
+
+        HANDLER.postDelayed(() -> capture(surface, videoWidth, videoHeight), DELAY_MS);
+    }
+
+    public void stop() {
+        IS_STOPPED = true;
+
+        HANDLER.removeCallbacksAndMessages(null);
+    }
+
+    /** Null if nothing was captured, for recordings shorter than the delay or if the copy failed. */
+    public File getFile() {
+        return IS_CAPTURED ? FILE : null;
+    }
+
+    private void capture(Surface surface, int videoWidth, int videoHeight) {
+        if(!surface.isValid()) {
+            return;
+        }
+
+        final int width = Math.min(videoWidth, ThumbnailLoader.getCaptureWidth()),
+                  height = Math.max(1, Math.round((float) width * videoHeight / videoWidth));
+
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+        final HandlerThread handlerThread = new HandlerThread("ThumbnailCapture");
+
+        handlerThread.start();
+
+        try {
+            PixelCopy.request(
+                surface,
+                bitmap,
+                (result) -> {
+                    if(result == PixelCopy.SUCCESS) {
+                        try {
+                            final FileOutputStream out = new FileOutputStream(FILE);
+
+                            bitmap.compress(Bitmap.CompressFormat.WEBP_LOSSY, 80, out);
+
+                            out.flush();
+                            out.close();
+
+                            HANDLER.post(() -> {
+                                //a copy that finished after the recording stopped is no one's thumbnail
+                                if(IS_STOPPED) {
+                                    FILE.delete();
+
+                                    return;
+                                }
+
+                                IS_CAPTURED = true;
+
+                                LISTENER.onCaptured(FILE);
+                            });
+                        } catch (Exception e) {
+                            Log.e(TAG, "capture: " + e.getMessage());
+                        }
+                    }
+
+                    bitmap.recycle();
+
+                    handlerThread.quitSafely();
+                },
+                new Handler(handlerThread.getLooper())
+            );
+        } catch (Exception e) {
+            Log.e(TAG, "capture: " + e.getMessage());
+
+            handlerThread.quitSafely();
+        }
+    }
+}
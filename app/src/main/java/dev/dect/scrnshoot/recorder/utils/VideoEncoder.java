@@ -0,0 +1,236 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Surface input video encoder feeding a track of a {@link SampleSink} (usually a {@link KMuxer}).
+ * Frames are pushed by whatever renders into {@link #getInputSurface()} (usually a virtual display)
+ * and the encoded output is drained on its own thread straight into the muxer.
+ */
+public class VideoEncoder {
+    private final String TAG = VideoEncoder.class.getSimpleName();
+
+    private static final long TIMEOUT_US = 10000;
+
+    private static final int I_FRAME_INTERVAL_SECONDS = 1;
+
+    private final MediaCodec CODEC;
+
+    private final SampleSink MUXER;
+
+    private final Surface INPUT_SURFACE;
+
+    private final int TRACK,
+                      BIT_RATE,
+                      FRAME_RATE;
+
+    private Thread DRAIN_THREAD;
+
+    private volatile boolean IS_DRAINING = false;
+
+    private volatile long OUTPUT_LATENCY_US = 0;
+
+    private Runnable ON_FIRST_FRAME;
+
+    private RecordingStats STATS;
+
+    /** @param profile -1 for the encoder's default */
+    public VideoEncoder(String mime, int width, int height, int bitRate, int frameRate, int profile, SampleSink muxer, int track) throws IOException {
+        this.MUXER = muxer;
+        this.TRACK = track;
+        this.BIT_RATE = bitRate;
+        this.FRAME_RATE = frameRate;
+
+        final MediaFormat format = MediaFormat.createVideoFormat(mime, width, height);
+
+        format.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, frameRate);
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS);
+
+        if(profile != -1) {
+            format.setInteger(MediaFormat.KEY_PROFILE, profile);
+        }
+
+        this.CODEC = MediaCodec.createEncoderByType(mime);
+
+        CODEC.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+
+        this.INPUT_SURFACE = CODEC.createInputSurface();
+    }
+
+    /** Called from the drain thread when the first frame is encoded. */
+    public void setOnFirstFrame(Runnable onFirstFrame) {
+        this.ON_FIRST_FRAME = onFirstFrame;
+    }
+
+    public void setStats(RecordingStats stats) {
+        this.STATS = stats;
+    }
+
+    public Surface getInputSurface() {
+        return INPUT_SURFACE;
+    }
+
+    public int getBitRate() {
+        return BIT_RATE;
+    }
+
+    public int getFrameRate() {
+        return FRAME_RATE;
+    }
+
+    public void start() {
+        CODEC.start();
+
+        IS_DRAINING = true;
+
+        DRAIN_THREAD = new Thread(this::drain, TAG);
+
+        DRAIN_THREAD.setPriority(Thread.MAX_PRIORITY);
+
+        DRAIN_THREAD.start();
+    }
+
+    public void suspend(boolean suspend) {
+        final Bundle bundle = new Bundle();
+
+        bundle.putInt(MediaCodec.PARAMETER_KEY_SUSPEND, suspend ? 1 : 0);
+
+        setParameters(bundle);
+    }
+
+    public void requestSyncFrame() {
+        final Bundle bundle = new Bundle();
+
+        bundle.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+
+        setParameters(bundle);
+    }
+
+    public void setBitRate(int bitRate) {
+        final Bundle bundle = new Bundle();
+
+        bundle.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitRate);
+
+        setParameters(bundle);
+    }
+
+    /** Best effort, surface input encoders that ignore it keep encoding every frame the display renders. */
+    public void setFrameRate(int frameRate) {
+        final Bundle bundle = new Bundle();
+
+        bundle.putFloat(MediaFormat.KEY_MAX_FPS_TO_ENCODER, frameRate);
+        bundle.putInt(MediaFormat.KEY_FRAME_RATE, frameRate);
+
+        setParameters(bundle);
+    }
+
+    /** Smoothed time between a frame being rendered and its encoded output coming out, grows when the encoder falls behind. */
+    public long getOutputLatencyUs() {
+        return OUTPUT_LATENCY_US;
+    }
+
+    public void stop() {
+        try {
+            CODEC.signalEndOfInputStream();
+        } catch (Exception e) {
+            Log.e(TAG, "stop: " + e.getMessage());
+
+            IS_DRAINING = false;
+        }
+
+        try {
+            if(DRAIN_THREAD != null) {
+                DRAIN_THREAD.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        IS_DRAINING = false;
+
+        try {
+            CODEC.stop();
+        } catch (Exception e) {
+            Log.e(TAG, "stop: " + e.getMessage());
+        }
+    }
+
+    public void release() {
+        INPUT_SURFACE.release();
+
+        CODEC.release();
+    }
+
+    private void setParameters(Bundle bundle) {
+        try {
+            CODEC.setParameters(bundle);
+        } catch (Exception e) {
+            Log.e(TAG, "setParameters: " + e.getMessage());
+        }
+    }
+
+    private void drain() {
+        final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+        boolean isFirstFrame = true;
+
+        while(IS_DRAINING) {
+            final int index;
+
+            try {
+                index = CODEC.dequeueOutputBuffer(info, TIMEOUT_US);
+            } catch (Exception e) {
+                Log.e(TAG, "drain: " + e.getMessage());
+
+                return;
+            }
+
+            if(index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MUXER.setTrackFormat(TRACK, CODEC.getOutputFormat());
+            } else if(index >= 0) {
+                final ByteBuffer output = CODEC.getOutputBuffer(index);
+
+                if((info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    info.size = 0;
+                }
+
+                if(info.size > 0 && output != null) {
+                    OUTPUT_LATENCY_US = (OUTPUT_LATENCY_US * 7 + Math.max(0, System.nanoTime() / 1000 - info.presentationTimeUs)) / 8;
+
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+
+                    MUXER.writeSampleData(TRACK, output, info);
+
+                    if(STATS != null) {
+                        STATS.onVideoFrame(info.size);
+                    }
+
+                    if(isFirstFrame) {
+                        isFirstFrame = false;
+
+                        if(ON_FIRST_FRAME != null) {
+                            ON_FIRST_FRAME.run();
+                        }
+                    }
+                }
+
+                CODEC.releaseOutputBuffer(index, false);
+
+                if((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams 16 bit PCM straight into a WAV file.
+ * A placeholder header is written up front and the sizes are patched in place with {@link #updateHeader()},
+ * so the file is always playable and never has to be copied. The header reserves a JUNK chunk that is turned
+ * into a ds64 chunk (RF64) once the data goes past what a 32 bit RIFF size can describe.
+ */
+public class WavWriter {
+    private static final int BITS_PER_SAMPLE = 16,
+                             DS64_SIZE = 28,
+                             HEADER_SIZE = 12 + (8 + DS64_SIZE) + (8 + 16) + 8;
+
+    private static final long MAX_RIFF_SIZE = 0xFFFFFFFFL;
+
+    private final RandomAccessFile FILE;
+
+    private final FileChannel CHANNEL;
+
+    private final ByteBuffer HEADER = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    private final int SAMPLE_RATE,
+                      CHANNELS;
+
+    private long DATA_SIZE = 0;
+
+    public WavWriter(File file, int sampleRate, int channels) throws IOException {
+        this.SAMPLE_RATE = sampleRate;
+        this.CHANNELS = channels;
+
+        this.FILE = new RandomAccessFile(file, "rw");
+        this.CHANNEL = FILE.getChannel();
+
+        CHANNEL.truncate(0);
+
+        writeHeader();
+    }
+
+    public void write(ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            DATA_SIZE += CHANNEL.write(buffer);
+        }
+    }
+
+    public void updateHeader() throws IOException {
+        writeHeader();
+
+        CHANNEL.position(HEADER_SIZE + DATA_SIZE);
+    }
+
+    public void close() throws IOException {
+        updateHeader();
+
+        CHANNEL.force(false);
+
+        FILE.close();
+    }
+
+    public long getDataSize() {
+        return DATA_SIZE;
+    }
+
+    private void writeHeader() throws IOException {
+        final long riffSize = HEADER_SIZE - 8 + DATA_SIZE;
+
+        final boolean isRf64 = riffSize > MAX_RIFF_SIZE;
+
+        final int blockAlign = CHANNELS * BITS_PER_SAMPLE / 8;
+
+        HEADER.clear();
+
+        HEADER.put(isRf64 ? new byte[]{'R', 'F', '6', '4'} : new byte[]{'R', 'I', 'F', 'F'});
+        HEADER.putInt(isRf64 ? -1 : (int) riffSize);
+        HEADER.put(new byte[]{'W', 'A', 'V', 'E'});
+
+        HEADER.put(isRf64 ? new byte[]{'d', 's', '6', '4'} : new byte[]{'J', 'U', 'N', 'K'});
+        HEADER.putInt(DS64_SIZE);
+        HEADER.putLong(isRf64 ? riffSize : 0);
+        HEADER.putLong(isRf64 ? DATA_SIZE : 0);
+        HEADER.putLong(isRf64 ? DATA_SIZE / blockAlign : 0);
+        HEADER.putInt(0);
+
+        HEADER.put(new byte[]{'f', 'm', 't', ' '});
+        HEADER.putInt(16);
+        HEADER.putShort((short) 1);
+        HEADER.putShort((short) CHANNELS);
+        HEADER.putInt(SAMPLE_RATE);
+        HEADER.putInt(SAMPLE_RATE * blockAlign);
+        HEADER.putShort((short) blockAlign);
+        HEADER.putShort((short) BITS_PER_SAMPLE);
+
+        HEADER.put(new byte[]{'d', 'a', 't', 'a'});
+        HEADER.putInt(isRf64 ? -1 : (int) DATA_SIZE);
+
+        HEADER.flip();
+
+        CHANNEL.position(0);
+
+        while(HEADER.hasRemaining()) {
+            CHANNEL.write(HEADER);
+        }
+    }
+}
@@ -5,23 +5,27 @@ import android.content.Context;
 import android.os.Handler;
 import android.os.Looper;
 import android.provider.Settings;
-import android.util.Log;
 import android.view.accessibility.AccessibilityEvent;
 import android.widget.Toast;
 
 import java.io.File;
-import java.util.Objects;
 
 import dev.dect.scrnshoot.R;
 import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.DB;
 import dev.dect.scrnshoot.model.Scrnshoot;
 import dev.dect.scrnshoot.notification.CapturedNotification;
-import dev.dect.scrnshoot.notification.ProcessingNotification;
 import dev.dect.scrnshoot.overlay.CountdownOverlay;
+import dev.dect.scrnshoot.processing.ProcessingJob;
+import dev.dect.scrnshoot.processing.ProcessingQueue;
+import dev.dect.scrnshoot.processing.RecordingJournal;
+import dev.dect.scrnshoot.recorder.CodecRecorder;
 import dev.dect.scrnshoot.recorder.ScreenMicRecorder;
 import dev.dect.scrnshoot.recorder.utils.BeforeStartOption;
+import dev.dect.scrnshoot.recorder.utils.RecordingStats;
+import dev.dect.scrnshoot.recorder.utils.StartLatency;
 import dev.dect.scrnshoot.recorder.utils.StopOption;
+import dev.dect.scrnshoot.recorder.utils.ThumbnailCapture;
 import dev.dect.scrnshoot.quicktile.QuickTileCapturingService;
 import dev.dect.scrnshoot.utils.KFile;
 import dev.dect.scrnshoot.notification.CapturingNotification;
@@ -32,8 +36,8 @@ import dev.dect.scrnshoot.recorder.InternalAudioRecorder;
 import dev.dect.scrnshoot.overlay.Overlay;
 import dev.dect.scrnshoot.utils.KMediaProjection;
 import dev.dect.scrnshoot.utils.KProfile;
+import dev.dect.scrnshoot.utils.ThumbnailLoader;
 import dev.dect.scrnshoot.utils.Utils;
-import dev.dect.scrnshoot.utils.WatermarkProcessor;
 
 /** @noinspection resource*/
 public class CapturingService extends AccessibilityService {
@@ -49,12 +53,14 @@ public class CapturingService extends AccessibilityService {
 
     private CapturingNotification NOTIFICATION_CAPTURING;
 
-    private ProcessingNotification NOTIFICATION_PROCESSING;
-
     private ScreenMicRecorder SCREEN_MIC_RECORDER;
 
     private InternalAudioRecorder INTERNAL_AUDIO_RECORDER;
 
+    private CodecRecorder CODEC_RECORDER;
+
+    private RecordingStats STATS;
+
     private Overlay OVERLAY_UI;
 
     private KSettings KSETTINGS;
@@ -65,6 +71,10 @@ public class CapturingService extends AccessibilityService {
 
     private Scrnshoot KAPTURE;
 
+    private ProcessingJob JOURNAL_JOB;
+
+    private ThumbnailCapture THUMBNAIL_CAPTURE;
+
     @Override
     public void onAccessibilityEvent(AccessibilityEvent event) {}
 
@@ -85,6 +95,8 @@ public class CapturingService extends AccessibilityService {
 
         CAPTURING_SERVICE = this;
 
+        ProcessingQueue.resumePending(this);
+
         if(Utils.hasWriteSecureSettings(this)) {
             startRecording();
         }
@@ -109,6 +121,12 @@ public class CapturingService extends AccessibilityService {
         if(CAPTURING_SERVICE.KAPTURE != null) {
             CAPTURING_SERVICE.KAPTURE.addScreenshot(screenshot);
         }
+
+        if(CAPTURING_SERVICE.JOURNAL_JOB != null) {
+            CAPTURING_SERVICE.JOURNAL_JOB.addScreenshot(screenshot.getLocation());
+
+            RecordingJournal.write(CAPTURING_SERVICE, CAPTURING_SERVICE.JOURNAL_JOB);
+        }
     }
 
     public static void requestStartRecording(Context ctx) {
@@ -127,7 +145,11 @@ public class CapturingService extends AccessibilityService {
 
     public static void requestStopRecording() {
         if(IS_SERVICE_RUNNING && !IS_PROCESSING) {
-            CAPTURING_SERVICE.stopRecording();
+            if(IS_IN_COUNTDOWN && !IS_RECORDING) {
+                CAPTURING_SERVICE.abortRecording();
+            } else {
+                CAPTURING_SERVICE.stopRecording();
+            }
         }
     }
 
@@ -159,6 +181,16 @@ public class CapturingService extends AccessibilityService {
         }
     }
 
+    public static void requestSaveReplay() {
+        if(isReplayBufferActive() && !IS_PROCESSING) {
+            CAPTURING_SERVICE.saveReplay();
+        }
+    }
+
+    public static boolean isReplayBufferActive() {
+        return IS_RECORDING && CAPTURING_SERVICE != null && CAPTURING_SERVICE.CODEC_RECORDER != null && CAPTURING_SERVICE.CODEC_RECORDER.isReplayBuffer();
+    }
+
     public static boolean isRecording() {
         return IS_RECORDING;
     }
@@ -183,31 +215,76 @@ public class CapturingService extends AccessibilityService {
 
             IS_IN_COUNTDOWN = true;
 
-            requestUIsUpdate(null);
+            requestUIsUpdate(this, null);
+
+            StartLatency.requested();
+
+            initRecorders();
+
+            if(!IS_IN_COUNTDOWN) {
+                return;
+            }
+
+            StartLatency.prepared();
 
             new CountdownOverlay(
                 this,
                 KSETTINGS,
                 () -> {
+                    if(!IS_IN_COUNTDOWN) {
+                        return;
+                    }
+
                     OVERLAY_UI.render();
 
-                    initRecorders();
+                    StartLatency.go();
 
-                    SCREEN_MIC_RECORDER.start();
+                    if(KSETTINGS.isToUseCodecRecorder()) {
+                        CODEC_RECORDER.start();
 
-                    INTERNAL_AUDIO_RECORDER.start();
+                        OVERLAY_UI.setMediaRecorderSurface(CODEC_RECORDER.getSurface());
+                    } else {
+                        SCREEN_MIC_RECORDER.start();
+
+                        INTERNAL_AUDIO_RECORDER.start();
 
-                    OVERLAY_UI.setMediaRecorderSurface(SCREEN_MIC_RECORDER.getSurface());
+                        OVERLAY_UI.setMediaRecorderSurface(SCREEN_MIC_RECORDER.getSurface());
+                    }
+
+                    THUMBNAIL_CAPTURE = new ThumbnailCapture(this, (file) -> {
+                        //the entry was written before the frame existed, a recovered recording keeps it too
+                        if(JOURNAL_JOB != null && !(KSETTINGS.isToUseCodecRecorder() && CODEC_RECORDER.isReplayBuffer())) {
+                            JOURNAL_JOB.setThumbnail(file);
+
+                            RecordingJournal.write(this, JOURNAL_JOB);
+                        }
+                    });
+
+                    THUMBNAIL_CAPTURE.start(
+                        KSETTINGS.isToUseCodecRecorder() ? CODEC_RECORDER.getSurface() : SCREEN_MIC_RECORDER.getSurface(),
+                        KSETTINGS.getVideoWidth(),
+                        KSETTINGS.getVideoHeight()
+                    );
 
                     STOP_OPTION.start();
 
+                    STATS.start();
+
+                    JOURNAL_JOB = buildProcessingJob(null);
+
+                    if(JOURNAL_JOB.isPersistable()) {
+                        RecordingJournal.write(this, JOURNAL_JOB);
+                    } else {
+                        JOURNAL_JOB = null;
+                    }
+
                     IS_RECORDING = true;
                     IS_PAUSED = false;
                     IS_PROCESSING = false;
 
                     IS_IN_COUNTDOWN = false;
 
-                    requestUIsUpdate(null);
+                    requestUIsUpdate(this, null);
                 }
             ).renderAndStart();
         } else {
@@ -222,6 +299,12 @@ public class CapturingService extends AccessibilityService {
 
         STOP_OPTION.destroy();
 
+        STATS.stop();
+
+        if(THUMBNAIL_CAPTURE != null) {
+            THUMBNAIL_CAPTURE.stop();
+        }
+
         NOTIFICATION_CAPTURING.destroy();
 
         new Handler(Looper.getMainLooper()).post(() -> OVERLAY_UI.destroy());
@@ -233,323 +316,309 @@ public class CapturingService extends AccessibilityService {
         IS_RECORDING = false;
         IS_PAUSED = false;
         IS_PROCESSING = true;
+        IS_IN_COUNTDOWN = false;
 
         requestUIsProcessing();
 
-        SCREEN_MIC_RECORDER.stop();
+        if(KSETTINGS.isToUseCodecRecorder()) {
+            CODEC_RECORDER.stop();
+        } else {
+            SCREEN_MIC_RECORDER.stop();
 
-        INTERNAL_AUDIO_RECORDER.stop();
+            INTERNAL_AUDIO_RECORDER.stop();
+        }
 
         KMediaProjection.destroy();
 
-        processAndSave(() -> {
-            SCREEN_MIC_RECORDER.destroy();
-
-            INTERNAL_AUDIO_RECORDER.destroy();
-
-            NOTIFICATION_PROCESSING.destroy();
+        //the queue deletes the journal entry once the job is stored
+        ProcessingQueue.getInstance(this).enqueue(createProcessingJob());
 
-            new CapturedNotification(this).createAndShow(KAPTURE);
+        JOURNAL_JOB = null;
 
-            IS_PROCESSING = false;
-
-            requestUIsUpdate(KAPTURE);
+        IS_PROCESSING = false;
 
-            if(Utils.hasWriteSecureSettings(this)) {
-                disableSelf();
-            }
-        });
+        requestUIsUpdate(this, null);
     }
 
-    private void pauseRecording() {
-        IS_PAUSED = true;
+    /** The recording never started, nothing was rendered or recorded: only what was prepared is released and nothing is queued. */
+    private void abortRecording() {
+        if(!TokenActivity.isToRecycle(this)) {
+            TokenActivity.clearToken();
+        }
 
-        SCREEN_MIC_RECORDER.pause();
-        INTERNAL_AUDIO_RECORDER.pause();
+        BEFORE_START_OPTION.destroy();
 
-        NOTIFICATION_CAPTURING.refreshRecordingState();
+        NOTIFICATION_CAPTURING.destroy();
 
-        OVERLAY_UI.refreshRecordingState();
+        stopForeground(STOP_FOREGROUND_REMOVE);
 
-        requestUIsStateChange();
-    }
+        if(KSETTINGS.isToUseCodecRecorder()) {
+            CODEC_RECORDER.abort();
+        } else {
+            SCREEN_MIC_RECORDER.abort();
 
-    private void resumeRecording() {
-        IS_PAUSED = false;
+            INTERNAL_AUDIO_RECORDER.abort();
+        }
 
-        SCREEN_MIC_RECORDER.resume();
-        INTERNAL_AUDIO_RECORDER.resume();
+        KMediaProjection.destroy();
 
-        NOTIFICATION_CAPTURING.refreshRecordingState();
+        JOURNAL_JOB = null;
 
-        OVERLAY_UI.refreshRecordingState();
+        IS_RECORDING = false;
+        IS_PAUSED = false;
+        IS_PROCESSING = false;
+        IS_IN_COUNTDOWN = false;
 
-        requestUIsStateChange();
+        requestUIsUpdate(this, null);
     }
 
-    private void initVariables() {
-        NOTIFICATION_CAPTURING = new CapturingNotification(this);
+    /** Hands the recorded files over to a job, the recorders are done with once it is queued. */
+    private ProcessingJob createProcessingJob() {
+        if(!KSETTINGS.isToUseCodecRecorder() || !CODEC_RECORDER.isReplayBuffer()) {
+            KAPTURE.setStats(STATS.summarize());
+        }
 
-        NOTIFICATION_PROCESSING = new ProcessingNotification(this);
+        if(KSETTINGS.isToUseCodecRecorder() && !CODEC_RECORDER.isReplayBuffer()) {
+            for(Scrnshoot.Marker marker : CODEC_RECORDER.getMarkers()) {
+                KAPTURE.addMarker(marker);
+            }
+        }
 
-        KSETTINGS = new KSettings(this);
+        final ProcessingJob job = buildProcessingJob(KFile.generateNewEmptyScrnshootFile(this, KSETTINGS));
 
-        SCREEN_MIC_RECORDER = new ScreenMicRecorder(this, KSETTINGS);
+        if(KSETTINGS.isToUseCodecRecorder()) {
+            if(CODEC_RECORDER.isReplayBuffer()) {
+                return job;
+            }
 
-        INTERNAL_AUDIO_RECORDER = new InternalAudioRecorder(this, KSETTINGS);
+            CODEC_RECORDER.handOverFiles();
 
-        OVERLAY_UI = new Overlay(this, KSETTINGS);
+            CODEC_RECORDER.destroy();
+        } else {
+            SCREEN_MIC_RECORDER.handOverFiles();
 
-        STOP_OPTION = new StopOption(this, KSETTINGS, this::stopRecording);
+            if(KSETTINGS.isToRecordInternalAudio()) {
+                INTERNAL_AUDIO_RECORDER.handOverFiles();
+            }
 
-        BEFORE_START_OPTION = new BeforeStartOption(this, KSETTINGS);
+            SCREEN_MIC_RECORDER.destroy();
 
-        KAPTURE = new Scrnshoot(this);
-        KAPTURE.setFrom(Scrnshoot.FROM_PHONE);
+            INTERNAL_AUDIO_RECORDER.destroy();
+        }
 
-        KAPTURE.setProfileId(KProfile.getActiveProfileName(this));
+        return job;
     }
 
-    private void initRecorders() {
-        startForeground(Constants.Notification.Id.CAPTURING, NOTIFICATION_CAPTURING.create());
-
-        KMediaProjection.generate(this);
-
-        SCREEN_MIC_RECORDER.init();
+    /** Without a destination while still recording, for the journal. */
+    private ProcessingJob buildProcessingJob(File destination) {
+        final ProcessingJob job = JOURNAL_JOB == null ? new ProcessingJob(KSETTINGS, KAPTURE, destination) : new ProcessingJob(KSETTINGS, KAPTURE, destination, JOURNAL_JOB.getId());
 
-        INTERNAL_AUDIO_RECORDER.init();
-    }
-
-    private void requestUIsProcessing() {
-        if(MainActivity.getInstance() != null) {
-            MainActivity.getInstance().getScrnshootFragment().requestFloatingButtonUpdate();
+        //a replay only keeps the last seconds, the captured frame is likely not in it
+        if(THUMBNAIL_CAPTURE != null && !(KSETTINGS.isToUseCodecRecorder() && CODEC_RECORDER.isReplayBuffer())) {
+            job.setThumbnail(THUMBNAIL_CAPTURE.getFile());
         }
 
-        Toast.makeText(this, getString(R.string.notification_processing_message), Toast.LENGTH_SHORT).show();
+        if(KSETTINGS.isToUseCodecRecorder()) {
+            if(CODEC_RECORDER.isReplayBuffer()) {
+                job.setReplaySource(CODEC_RECORDER);
+            } else if(CODEC_RECORDER.isSegmented()) {
+                job.setSegments(CODEC_RECORDER.getSegments(), CODEC_RECORDER.getSegmentsDirectory());
+            } else {
+                job.setVideo(CODEC_RECORDER.getFile());
+            }
+        } else {
+            job.setVideo(SCREEN_MIC_RECORDER.getFile());
 
-        NOTIFICATION_PROCESSING.createAndShow();
+            if(KSETTINGS.isToRecordInternalAudio()) {
+                job.setInternalAudio(INTERNAL_AUDIO_RECORDER.getFile(), INTERNAL_AUDIO_RECORDER.canBeRemuxed());
+            }
+        }
 
-        QuickTileCapturingService.requestUiUpdate(this);
+        return job;
     }
 
-    private void requestUIsStateChange() {
-        if(MainActivity.getInstance() != null) {
-            MainActivity.getInstance().getScrnshootFragment().requestFloatingButtonUpdate();
+    /** Called by {@link ProcessingQueue}, on the main thread, every time a job is done. */
+    public static void onJobProcessed(Context ctx, Scrnshoot scrnshoot) {
+        if(scrnshoot != null) {
+            new CapturedNotification(ctx).createAndShow(scrnshoot);
         }
 
-        Utils.Widget.updateWidgetsCapturingBtns(this);
-    }
-
-    private void requestUIsUpdate(Scrnshoot scrnshoot) {
-        QuickTileCapturingService.requestUiUpdate(this);
+        requestUIsUpdate(ctx, scrnshoot);
 
-        if(MainActivity.getInstance() != null) {
-            MainActivity.getInstance().requestUiUpdate(scrnshoot);
+        if(IS_SERVICE_RUNNING && !IS_RECORDING && !IS_IN_COUNTDOWN && !ProcessingQueue.hasPendingJobs() && Utils.hasWriteSecureSettings(ctx)) {
+            CAPTURING_SERVICE.disableSelf();
         }
+    }
 
-        Utils.Widget.updateWidgetsCapturingBtns(this);
+    private void saveReplay() {
+        final Scrnshoot scrnshoot = new Scrnshoot(this);
+        scrnshoot.setFrom(Scrnshoot.FROM_PHONE);
 
-        ShortcutOverlayService.requestUiUpdate(this);
-    }
+        scrnshoot.setProfileId(KProfile.getActiveProfileName(this));
 
-    private void processAndSave(Runnable onComplete) {
         final File scrnshootFile = KFile.generateNewEmptyScrnshootFile(this, KSETTINGS);
 
-        KAPTURE.setFile(scrnshootFile);
-
-        if(KSETTINGS.isToRecordInternalAudio()) {
-            if(KSETTINGS.isToMergeInternalAudio()) {
-                try {
-                    KFile.combineAudioAndVideo(
-                        this,
-                        INTERNAL_AUDIO_RECORDER.getFile(),
-                        SCREEN_MIC_RECORDER.getFile(),
-                        scrnshootFile,
-                        () -> processAndSaveHelper(scrnshootFile, onComplete),
-                        () -> {
-                            IS_PROCESSING = false;
-                        }
-                    );
-                } catch (Exception e) {
-                    Log.e(TAG, "processAndSave: " + e.getMessage());
+        scrnshoot.setFile(scrnshootFile);
 
-                    KFile.copyFile(SCREEN_MIC_RECORDER.getFile(), scrnshootFile);
+        final CodecRecorder codecRecorder = CODEC_RECORDER;
 
-                    if(!KSETTINGS.isToGenerateAudio_OnlyInternal()) {
-                        final File helper = new File(KSETTINGS.getSavingLocationFile(), scrnshootFile.getName().replaceAll("." + Constants.EXT_VIDEO_FORMAT, "") + "." + Constants.EXT_AUDIO_FORMAT);
+        new Thread(() -> {
+            final boolean saved = codecRecorder.saveReplay(scrnshootFile);
 
-                        try {
-                            KFile.copyFile(INTERNAL_AUDIO_RECORDER.getFile(), helper);
+            if(saved) {
+                scrnshoot.notifyAllMediaScanner();
 
-                            KAPTURE.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY, helper));
+                new DB(this).insertScrnshoot(scrnshoot);
 
-                            new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(this, getString(R.string.toast_error_merging_2), Toast.LENGTH_SHORT).show());
-                        } catch (Exception e2) {
-                            Log.e(TAG, "processAndSave2: " + e.getMessage());
+                ThumbnailLoader.save(this, scrnshoot, null);
+            }
 
-                            new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(this, getString(R.string.toast_error_merging_1), Toast.LENGTH_SHORT).show());
-                        }
-                    } else {
-                        new Handler(Looper.getMainLooper()).post(() -> Toast.makeText(this, getString(R.string.toast_error_merging_1), Toast.LENGTH_SHORT).show());
-                    }
+            new Handler(Looper.getMainLooper()).post(() -> {
+                Toast.makeText(this, getString(saved ? R.string.toast_success_replay_saved : R.string.toast_error_generic), Toast.LENGTH_SHORT).show();
 
-                    processAndSaveHelper(scrnshootFile, onComplete);
-                }
-            } else {
-                if (WatermarkProcessor.addDefaultWatermark(SCREEN_MIC_RECORDER.getFile().getAbsolutePath(), scrnshootFile.getAbsolutePath(), KSETTINGS, this)) {
-                    // Watermark added successfully
-                } else {
-                    KFile.copyFile(SCREEN_MIC_RECORDER.getFile(), scrnshootFile);
+                if(saved) {
+                    requestUIsUpdate(this, scrnshoot);
                 }
+            });
+        }).start();
+    }
 
-                try {
-                    final String scrnshootFileName = KFile.getDefaultScrnshootFileName(this),
-                                 audioFileName = scrnshootFile.getName().replaceAll(Constants.EXT_VIDEO_FORMAT, Constants.EXT_AUDIO_FORMAT);
-
-                    final File f = new File(
-                        KSETTINGS.getSavingLocationFile(),
-                        audioFileName.replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(this, Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY)))
-                    );
-
-                    KFile.copyFile(INTERNAL_AUDIO_RECORDER.getFile(), f);
+    private void pauseRecording() {
+        IS_PAUSED = true;
 
-                    KAPTURE.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY, f));
-                } catch (Exception e) {
-                    Log.e(TAG, "processAndSave3: " + e.getMessage());
-                }
+        STATS.pause();
 
-                processAndSaveHelper(scrnshootFile, onComplete);
-            }
+        if(KSETTINGS.isToUseCodecRecorder()) {
+            CODEC_RECORDER.pause();
         } else {
-            if (WatermarkProcessor.addDefaultWatermark(SCREEN_MIC_RECORDER.getFile().getAbsolutePath(), scrnshootFile.getAbsolutePath(), KSETTINGS, this)) {
-                processAndSaveHelper(scrnshootFile, onComplete);
-            } else {
-                KFile.copyFile(SCREEN_MIC_RECORDER.getFile(), scrnshootFile);
-                processAndSaveHelper(scrnshootFile, onComplete);
-            }
+            SCREEN_MIC_RECORDER.pause();
+            INTERNAL_AUDIO_RECORDER.pause();
         }
+
+        NOTIFICATION_CAPTURING.refreshRecordingState();
+
+        OVERLAY_UI.refreshRecordingState();
+
+        requestUIsStateChange();
     }
 
-    private void processAndSaveHelper(File scrnshootFile, Runnable onComplete) {
-        processExtras(scrnshootFile);
+    private void resumeRecording() {
+        IS_PAUSED = false;
+
+        STATS.resume();
 
-        KAPTURE.notifyAllMediaScanner();
+        if(KSETTINGS.isToUseCodecRecorder()) {
+            CODEC_RECORDER.resume();
+        } else {
+            SCREEN_MIC_RECORDER.resume();
+            INTERNAL_AUDIO_RECORDER.resume();
+        }
+
+        NOTIFICATION_CAPTURING.refreshRecordingState();
 
-        new DB(this).insertScrnshoot(KAPTURE);
+        OVERLAY_UI.refreshRecordingState();
 
-        onComplete.run();
+        requestUIsStateChange();
     }
 
-    private void processExtras(File scrnshootFile) {
-        final String scrnshootFileName = KFile.getDefaultScrnshootFileName(this),
-                     audioFileName = scrnshootFile.getName().replaceAll(Constants.EXT_VIDEO_FORMAT, Constants.EXT_AUDIO_FORMAT);
+    private void initVariables() {
+        NOTIFICATION_CAPTURING = new CapturingNotification(this);
 
-        if(KSETTINGS.isToGenerateAudio_Audio()) {
-            final File f = new File(
-                KSETTINGS.getSavingLocationFile(),
-                audioFileName.replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(this, Scrnshoot.Extra.EXTRA_AUDIO_AUDIO)))
-            );
+        KSETTINGS = new KSettings(this);
 
-            boolean noError = true;
+        if(KSETTINGS.isToUseCodecRecorder()) {
+            STATS = new RecordingStats(KSETTINGS.isToRecordInternalAudio() || KSETTINGS.isToRecordMic());
 
-            if(KSETTINGS.isToRecordMic()) {
-                KFile.extractAudioFromVideo(scrnshootFile, f);
-            } else if(KSETTINGS.isToRecordInternalAudio()) {
-                try {
-                    KFile.copyFile(INTERNAL_AUDIO_RECORDER.getFile(), f);
-                } catch (Exception e) {
-                    Log.e(TAG, "processExtras - mic: " + e.getMessage());
+            CODEC_RECORDER = new CodecRecorder(this, KSETTINGS);
 
-                    noError = false;
-                }
-            }
+            CODEC_RECORDER.setStats(STATS);
+        } else {
+            STATS = new RecordingStats(KSETTINGS.isToRecordInternalAudio());
 
-            if(noError && (KSETTINGS.isToRecordMic() || KSETTINGS.isToRecordInternalAudio())) {
-                KAPTURE.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_AUDIO, f));
-            }
-        }
+            SCREEN_MIC_RECORDER = new ScreenMicRecorder(this, KSETTINGS);
+
+            INTERNAL_AUDIO_RECORDER = new InternalAudioRecorder(this, KSETTINGS);
 
-        if(KSETTINGS.isToGenerateAudio_OnlyInternal() && KSETTINGS.isToRecordInternalAudio() && KSETTINGS.isToMergeInternalAudio()) {
-            final File f = new File(
-                KSETTINGS.getSavingLocationFile(),
-                audioFileName.replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(this, Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY)))
-            );
+            INTERNAL_AUDIO_RECORDER.setStats(STATS);
 
-            try {
-                KFile.copyFile(INTERNAL_AUDIO_RECORDER.getFile(), f);
+            STATS.watchFile(SCREEN_MIC_RECORDER.getFile());
 
-                KAPTURE.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_INTERNAL_ONLY, f));
-            } catch (Exception e) {
-                Log.e(TAG, "processExtras - int: " + e.getMessage());
+            if(KSETTINGS.isToRecordInternalAudio()) {
+                STATS.watchFile(INTERNAL_AUDIO_RECORDER.getFile());
             }
         }
 
-        if(KSETTINGS.isToGenerateAudio_OnlyMic() && KSETTINGS.isToRecordMic()) {
-            final File f = new File(
-                KSETTINGS.getSavingLocationFile(),
-                audioFileName.replaceAll(scrnshootFileName, Objects.requireNonNull(Scrnshoot.Extra.getFileNameComplementByType(this, Scrnshoot.Extra.EXTRA_AUDIO_MIC_ONLY)))
-            );
+        OVERLAY_UI = new Overlay(this, KSETTINGS);
 
-            KFile.extractAudioFromVideo(SCREEN_MIC_RECORDER.getFile(), f);
+        STATS.setOnSample((stats) -> {
+            NOTIFICATION_CAPTURING.refreshStats(stats);
 
-            KAPTURE.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_AUDIO_MIC_ONLY, f));
-        }
+            OVERLAY_UI.refreshStats(stats);
+        });
 
-        if(KSETTINGS.isToGenerateVideo_NoAudio()) {
-            final File f = new File(
-                KSETTINGS.getSavingLocationFile(),
-                scrnshootFile.getName().replaceAll(scrnshootFileName, scrnshootFileName + KFile.FILE_SEPARATOR + Scrnshoot.Extra.getFileNameComplementByType(this, Scrnshoot.Extra.EXTRA_VIDEO_NO_AUDIO))
-            );
+        STOP_OPTION = new StopOption(this, KSETTINGS, this::stopRecording);
 
-            if(KSETTINGS.isToRecordMic()) {
-                KFile.removeAudioFromVideo(SCREEN_MIC_RECORDER.getFile(), f);
-            } else if(KSETTINGS.isToRecordInternalAudio()){
-                KFile.copyFile(SCREEN_MIC_RECORDER.getFile(), f);
-            }
+        BEFORE_START_OPTION = new BeforeStartOption(this, KSETTINGS);
 
-            KAPTURE.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_VIDEO_NO_AUDIO, f));
-        }
+        KAPTURE = new Scrnshoot(this);
+        KAPTURE.setFrom(Scrnshoot.FROM_PHONE);
+
+        KAPTURE.setProfileId(KProfile.getActiveProfileName(this));
+    }
 
-        if(KSETTINGS.isToRecordMic() && KSETTINGS.isToRecordInternalAudio()) {
-            if(KSETTINGS.isToGenerateVideo_OnlyMicAudio()) {
-                final File f = new File(
-                    KSETTINGS.getSavingLocationFile(),
-                    scrnshootFile.getName().replaceAll(scrnshootFileName, scrnshootFileName + KFile.FILE_SEPARATOR + Scrnshoot.Extra.getFileNameComplementByType(this, Scrnshoot.Extra.EXTRA_VIDEO_MIC_ONLY))
-                );
+    /** Runs before the countdown, so by the time it ends the encoders, audio capture and display are all ready. */
+    private void initRecorders() {
+        startForeground(Constants.Notification.Id.CAPTURING, NOTIFICATION_CAPTURING.create());
 
-                KFile.copyFile(SCREEN_MIC_RECORDER.getFile(), f);
+        KMediaProjection.generate(this);
 
-                KAPTURE.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_VIDEO_MIC_ONLY, f));
+        if(KSETTINGS.isToUseCodecRecorder()) {
+            if(KSETTINGS.isToCompositeOverlays()) {
+                CODEC_RECORDER.setLayers(OVERLAY_UI.createLayers(KSETTINGS.getVideoWidth(), KSETTINGS.getVideoHeight()));
             }
 
-            if(KSETTINGS.isToGenerateVideo_OnlyInternalAudio()) {
-                final File f = new File(
-                    KSETTINGS.getSavingLocationFile(),
-                    scrnshootFile.getName().replaceAll(scrnshootFileName, scrnshootFileName + KFile.FILE_SEPARATOR +Scrnshoot.Extra.getFileNameComplementByType(this, Scrnshoot.Extra.EXTRA_VIDEO_INTERNAL_ONLY))
-                );
-
-                KFile.removeAudioFromVideo(SCREEN_MIC_RECORDER.getFile(), f);
+            CODEC_RECORDER.init();
 
-                try {
-                    KFile.combineAudioAndVideo(this, INTERNAL_AUDIO_RECORDER.getFile(), f, f, null, null);
+            if(IS_IN_COUNTDOWN) {
+                OVERLAY_UI.setFramePipeline(CODEC_RECORDER.getFramePipeline());
+            }
+        } else {
+            SCREEN_MIC_RECORDER.init();
 
-                    KAPTURE.addExtra(new Scrnshoot.Extra(Scrnshoot.Extra.EXTRA_VIDEO_INTERNAL_ONLY, f));
-                } catch (Exception e) {
-                    Log.e(TAG, "processExtras - int2: " + e.getMessage());
-                }
+            //aborted if the screen recorder could not be prepared
+            if(IS_IN_COUNTDOWN) {
+                INTERNAL_AUDIO_RECORDER.init();
             }
         }
     }
-}
-
-
-
 
+    private void requestUIsProcessing() {
+        if(MainActivity.getInstance() != null) {
+            MainActivity.getInstance().getScrnshootFragment().requestFloatingButtonUpdate();
+        }
 
+        Toast.makeText(this, getString(R.string.notification_processing_message), Toast.LENGTH_SHORT).show();
 
+        QuickTileCapturingService.requestUiUpdate(this);
+    }
 
+    private void requestUIsStateChange() {
+        if(MainActivity.getInstance() != null) {
+            MainActivity.getInstance().getScrnshootFragment().requestFloatingButtonUpdate();
+        }
 
+        Utils.Widget.updateWidgetsCapturingBtns(this);
+    }
 
+    private static void requestUIsUpdate(Context ctx, Scrnshoot scrnshoot) {
+        QuickTileCapturingService.requestUiUpdate(ctx);
 
+        if(MainActivity.getInstance() != null) {
+            MainActivity.getInstance().requestUiUpdate(scrnshoot);
+        }
 
+        Utils.Widget.updateWidgetsCapturingBtns(ctx);
 
+        ShortcutOverlayService.requestUiUpdate(ctx);
+    }
+}
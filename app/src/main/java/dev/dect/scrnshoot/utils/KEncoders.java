@@ -0,0 +1,292 @@
+package dev.dect.scrnshoot.utils;
+
+import android.content.Context;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.media.MediaFormat;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Locale;
+
+import dev.dect.scrnshoot.data.Constants;
+import dev.dect.scrnshoot.data.KSharedPreferences;
+
+/**
+ * Video encoders available on the device.
+ * {@link MediaCodecList} is probed once (per system build) and the result is cached in the app preferences:
+ * the encoder picked for each mime type (hardware first), whether it is hardware accelerated, its profiles,
+ * maximum size and how many instances it can run at once.
+ * The maximum frame rate of every size asked for is added to the cache as it is first needed.
+ * The profiles decide the one asked for with {@link #pickProfile(Context, String)}.
+ */
+public class KEncoders {
+    private static final String TAG = KEncoders.class.getSimpleName();
+
+    public static final String[] MIME_TYPES = new String[]{MediaFormat.MIMETYPE_VIDEO_AVC, MediaFormat.MIMETYPE_VIDEO_HEVC, MediaFormat.MIMETYPE_VIDEO_AV1};
+
+    private static final String KEY_FINGERPRINT = "fingerprint",
+                                KEY_ENCODERS = "encoders",
+                                KEY_NAME = "name",
+                                KEY_HARDWARE = "hardware",
+                                KEY_PROFILES = "profiles",
+                                KEY_MAX_WIDTH = "maxWidth",
+                                KEY_MAX_HEIGHT = "maxHeight",
+                                KEY_FRAME_RATES = "frameRates",
+                                KEY_MAX_INSTANCES = "maxInstances";
+
+    /** Bumped whenever something is added to the probe, so older caches are probed again. */
+    private static final int PROBE_VERSION = 2;
+
+    private static JSONObject CAPABILITIES;
+
+    public static void probeInBackground(Context ctx) {
+        final Context appCtx = ctx.getApplicationContext();
+
+        new Thread(() -> getCapabilities(appCtx)).start();
+    }
+
+    public static boolean isSupported(Context ctx, String mimeType) {
+        return getEncoder(ctx, mimeType) != null;
+    }
+
+    public static boolean isHardwareAccelerated(Context ctx, String mimeType) {
+        final JSONObject encoder = getEncoder(ctx, mimeType);
+
+        return encoder != null && encoder.optBoolean(KEY_HARDWARE, false);
+    }
+
+    public static String getEncoderName(Context ctx, String mimeType) {
+        final JSONObject encoder = getEncoder(ctx, mimeType);
+
+        return encoder == null ? null : encoder.optString(KEY_NAME, null);
+    }
+
+    /** How many instances of the encoder can run at the same time, at least 1. */
+    public static int getMaxInstances(Context ctx, String mimeType) {
+        final JSONObject encoder = getEncoder(ctx, mimeType);
+
+        return encoder == null ? 1 : Math.max(1, encoder.optInt(KEY_MAX_INSTANCES, 1));
+    }
+
+    /** 0 if the encoder cannot take this size at all. */
+    public static synchronized int getMaxFrameRate(Context ctx, String mimeType, int width, int height) {
+        final JSONObject encoder = getEncoder(ctx, mimeType);
+
+        if(encoder == null) {
+            return 0;
+        }
+
+        final String size = String.format(Locale.US, "%dx%d", width, height);
+
+        try {
+            final JSONObject frameRates = encoder.getJSONObject(KEY_FRAME_RATES);
+
+            if(!frameRates.has(size)) {
+                frameRates.put(size, probeMaxFrameRate(encoder.getString(KEY_NAME), mimeType, width, height));
+
+                save(ctx);
+            }
+
+            return frameRates.getInt(size);
+        } catch (Exception e) {
+            Log.e(TAG, "getMaxFrameRate: " + e.getMessage());
+        }
+
+        return 0;
+    }
+
+    /** The requested mime type if its encoder takes this size, otherwise H.264. */
+    public static String pickMimeType(Context ctx, String mimeType, int width, int height) {
+        if(!MediaFormat.MIMETYPE_VIDEO_AVC.equals(mimeType) && getMaxFrameRate(ctx, mimeType, width, height) <= 0) {
+            Log.w(TAG, "pickMimeType: " + mimeType + " cannot encode " + width + "x" + height + ", using H.264");
+
+            return MediaFormat.MIMETYPE_VIDEO_AVC;
+        }
+
+        return mimeType;
+    }
+
+    public static int clampFrameRate(Context ctx, String mimeType, int width, int height, int frameRate) {
+        final int max = getMaxFrameRate(ctx, mimeType, width, height);
+
+        return max > 0 ? Math.min(frameRate, max) : frameRate;
+    }
+
+    /**
+     * 8 bit main for HEVC and AV1 when the encoder lists it, screen content is never HDR and some encoders default
+     * to a 10 bit profile fewer players can decode. -1 leaves the profile to the encoder.
+     */
+    public static int pickProfile(Context ctx, String mimeType) {
+        final int wanted;
+
+        switch(mimeType) {
+            case MediaFormat.MIMETYPE_VIDEO_HEVC:
+                wanted = MediaCodecInfo.CodecProfileLevel.HEVCProfileMain;
+                break;
+
+            case MediaFormat.MIMETYPE_VIDEO_AV1:
+                wanted = MediaCodecInfo.CodecProfileLevel.AV1ProfileMain8;
+                break;
+
+            default:
+                return -1;
+        }
+
+        final JSONObject encoder = getEncoder(ctx, mimeType);
+
+        final JSONArray profiles = encoder == null ? null : encoder.optJSONArray(KEY_PROFILES);
+
+        if(profiles != null) {
+            for(int i = 0; i < profiles.length(); i++) {
+                if(profiles.optInt(i, -1) == wanted) {
+                    return wanted;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    public static int toMediaRecorderEncoder(String mimeType) {
+        switch(mimeType) {
+            case MediaFormat.MIMETYPE_VIDEO_HEVC:
+                return MediaRecorder.VideoEncoder.HEVC;
+
+            case MediaFormat.MIMETYPE_VIDEO_AV1:
+                return MediaRecorder.VideoEncoder.AV1;
+
+            default:
+                return MediaRecorder.VideoEncoder.H264;
+        }
+    }
+
+    private static JSONObject getEncoder(Context ctx, String mimeType) {
+        final JSONObject encoders = getCapabilities(ctx).optJSONObject(KEY_ENCODERS);
+
+        return encoders == null ? null : encoders.optJSONObject(mimeType);
+    }
+
+    private static synchronized JSONObject getCapabilities(Context ctx) {
+        if(CAPABILITIES != null) {
+            return CAPABILITIES;
+        }
+
+        try {
+            final String cached = KSharedPreferences.getAppSp(ctx).getString(Constants.Sp.App.ENCODER_CAPABILITIES, null);
+
+            if(cached != null) {
+                final JSONObject json = new JSONObject(cached);
+
+                if(getFingerprint().equals(json.optString(KEY_FINGERPRINT))) {
+                    CAPABILITIES = json;
+
+                    return CAPABILITIES;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "getCapabilities: " + e.getMessage());
+        }
+
+        CAPABILITIES = probe();
+
+        save(ctx);
+
+        return CAPABILITIES;
+    }
+
+    private static JSONObject probe() {
+        final JSONObject json = new JSONObject(),
+                         encoders = new JSONObject();
+
+        try {
+            json.put(KEY_FINGERPRINT, getFingerprint());
+
+            final MediaCodecInfo[] codecInfos = new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos();
+
+            for(String mimeType : MIME_TYPES) {
+                MediaCodecInfo picked = null;
+
+                for(MediaCodecInfo codecInfo : codecInfos) {
+                    if(!codecInfo.isEncoder() || !supportsType(codecInfo, mimeType)) {
+                        continue;
+                    }
+
+                    if(picked == null || (codecInfo.isHardwareAccelerated() && !picked.isHardwareAccelerated())) {
+                        picked = codecInfo;
+                    }
+                }
+
+                if(picked == null) {
+                    continue;
+                }
+
+                final MediaCodecInfo.CodecCapabilities capabilities = picked.getCapabilitiesForType(mimeType);
+
+                final JSONArray profiles = new JSONArray();
+
+                for(MediaCodecInfo.CodecProfileLevel profileLevel : capabilities.profileLevels) {
+                    profiles.put(profileLevel.profile);
+                }
+
+                final JSONObject encoder = new JSONObject();
+
+                encoder.put(KEY_NAME, picked.getName());
+                encoder.put(KEY_HARDWARE, picked.isHardwareAccelerated());
+                encoder.put(KEY_PROFILES, profiles);
+                encoder.put(KEY_MAX_WIDTH, capabilities.getVideoCapabilities().getSupportedWidths().getUpper());
+                encoder.put(KEY_MAX_HEIGHT, capabilities.getVideoCapabilities().getSupportedHeights().getUpper());
+                encoder.put(KEY_FRAME_RATES, new JSONObject());
+                encoder.put(KEY_MAX_INSTANCES, capabilities.getMaxSupportedInstances());
+
+                encoders.put(mimeType, encoder);
+            }
+
+            json.put(KEY_ENCODERS, encoders);
+        } catch (Exception e) {
+            Log.e(TAG, "probe: " + e.getMessage());
+        }
+
+        return json;
+    }
+
+    private static int probeMaxFrameRate(String name, String mimeType, int width, int height) {
+        for(MediaCodecInfo codecInfo : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+            if(!codecInfo.getName().equals(name)) {
+                continue;
+            }
+
+            final MediaCodecInfo.VideoCapabilities capabilities = codecInfo.getCapabilitiesForType(mimeType).getVideoCapabilities();
+
+            if(!capabilities.isSizeSupported(width, height)) {
+                return 0;
+            }
+
+            return (int) Math.floor(capabilities.getSupportedFrameRatesFor(width, height).getUpper());
+        }
+
+        return 0;
+    }
+
+    private static String getFingerprint() {
+        return Build.FINGERPRINT + "#" + PROBE_VERSION;
+    }
+
+    private static boolean supportsType(MediaCodecInfo codecInfo, String mimeType) {
+        for(String type : codecInfo.getSupportedTypes()) {
+            if(type.equalsIgnoreCase(mimeType)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void save(Context ctx) {
+        KSharedPreferences.getAppSp(ctx).edit().putString(Constants.Sp.App.ENCODER_CAPABILITIES, CAPABILITIES.toString()).apply();
+    }
+}
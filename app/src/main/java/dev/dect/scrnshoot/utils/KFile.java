@@ -11,6 +11,7 @@ import android.media.MediaMuxer;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.Environment;
+import android.system.Os;
 import android.util.Log;
 import android.webkit.MimeTypeMap;
 import android.widget.Toast;
@@ -31,8 +32,6 @@ import androidx.media3.transformer.Transformer;
 import com.google.common.collect.ImmutableList;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
@@ -40,6 +39,7 @@ import java.text.DecimalFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Objects;
@@ -279,6 +279,49 @@ public class KFile {
         }
     }
 
+    /** Renames when both are on the same volume, so it costs no I/O, otherwise copies and deletes the source. */
+    public static boolean moveFile(File from, File to) {
+        try {
+            if(isSameVolume(from, to.getParentFile())) {
+                Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+                return true;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "moveFile: " + e.getMessage());
+        }
+
+        try {
+            Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            from.delete();
+
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "moveFile2: " + e.getMessage());
+        }
+
+        return false;
+    }
+
+    /**
+     * A hidden file in the saving location to record into, so finishing the recording is just a rename.
+     * Falls back to the cache folder if the saving location is not writable.
+     */
+    public static File createPartialFile(KSettings ks, String prefix, String extension) throws Exception {
+        final File folder = ks.getSavingLocationFile();
+
+        if(folder.canWrite()) {
+            final File file = new File(folder, "." + prefix + new Date().getTime() + "." + extension + ".partial");
+
+            if(file.createNewFile()) {
+                return file;
+            }
+        }
+
+        return File.createTempFile(prefix + new Date().getTime(), "." + extension);
+    }
+
     public static File renameIfNecessary(File file) {
         if(file.exists()) {
             return generateFileIncrementalName(file);
@@ -295,6 +338,16 @@ public class KFile {
         return formatStringResource(ctx, R.string.file_name_screenshot);
     }
 
+    private static boolean isSameVolume(File a, File b) {
+        try {
+            return b != null && Os.stat(a.getAbsolutePath()).st_dev == Os.stat(b.getAbsolutePath()).st_dev;
+        } catch (Exception e) {
+            Log.e(TAG, "isSameVolume: " + e.getMessage());
+        }
+
+        return false;
+    }
+
     private static File generateFileIncrementalName(File file) {
         final File parent = file.getParentFile();
 
@@ -443,96 +496,28 @@ public class KFile {
         return directory.delete();
     }
 
-    public static void pcmToWav(File pcm, File wav, KSettings ks) throws IOException {
-        copyFile(pcm, wav);
-
-        final int size = ((int) wav.length()) - 44,
-                  sizeHelper = size + 36,
-                  bitsPerSample = 16,
-                  byteRate = ks.getAudioSampleRate() * ks.getInternalAudioChannelNumber() * bitsPerSample / 8;
-
-        final RandomAccessFile randomAccessFile = new RandomAccessFile(wav, "rw");
-
-        randomAccessFile.seek(0);
-
-        final byte[] header = new byte[44];
-
-        header[0] = 'R';
-        header[1] = 'I';
-        header[2] = 'F';
-        header[3] = 'F';
-
-        header[4] = (byte) (sizeHelper & 0xff);
-        header[5] = (byte) ((sizeHelper >> 8) & 0xff);
-        header[6] = (byte) ((sizeHelper >> 16) & 0xff);
-        header[7] = (byte) ((sizeHelper >> 24) & 0xff);
-
-        header[8] = 'W';
-        header[9] = 'A';
-        header[10] = 'V';
-        header[11] = 'E';
-
-        header[12] = 'f';
-        header[13] = 'm';
-        header[14] = 't';
-        header[15] = ' ';
-
-        header[16] = 16;
-        header[17] = 0;
-        header[18] = 0;
-        header[19] = 0;
-
-        header[20] = 1;
-        header[21] = 0;
-
-        header[22] = (byte) ks.getInternalAudioChannelNumber();
-        header[23] = 0;
-
-        header[24] = (byte) (ks.getAudioSampleRate() & 0xff);
-        header[25] = (byte) ((ks.getAudioSampleRate() >> 8) & 0xff);
-        header[26] = (byte) ((ks.getAudioSampleRate() >> 16) & 0xff);
-        header[27] = (byte) ((ks.getAudioSampleRate() >> 24) & 0xff);
-
-        header[28] = (byte) (byteRate & 0xff);
-        header[29] = (byte) ((byteRate >> 8) & 0xff);
-        header[30] = (byte) ((byteRate >> 16) & 0xff);
-        header[31] = (byte) ((byteRate >> 24) & 0xff);
-
-        header[32] = (byte) (ks.getInternalAudioChannelNumber() * (bitsPerSample / 8));
-        header[33] = 0;
-
-        header[34] = bitsPerSample;
-        header[35] = 0;
-
-        header[36] = 'd';
-        header[37] = 'a';
-        header[38] = 't';
-        header[39] = 'a';
-
-        header[40] = (byte) (size & 0xff);
-        header[41] = (byte) ((size >> 8) & 0xff);
-        header[42] = (byte) ((size >> 16) & 0xff);
-        header[43] = (byte) ((size >> 24) & 0xff);
-
-        randomAccessFile.write(header);
-
-        randomAccessFile.close();
+    public static Transformer combineAudioAndVideo(Context ctx, File audioM4a, File video, File dest, @Nullable Runnable onComplete, @Nullable Runnable onError) throws Exception {
+        return combineAudioAndVideo(ctx, audioM4a, video, dest, false, onComplete, onError);
     }
 
+    /**
+     * Adds the audio to the video, mixed with the audio the video has unless {@code isToReplaceAudio}.
+     * The video samples are copied as they are, only the audio is encoded.
+     * When the audio can be muxed as it is, {@link #muxAudioAndVideo(File, File, File)} does not even encode that.
+     */
     @OptIn(markerClass = UnstableApi.class) @SuppressLint("WrongConstant")
-    public static void combineAudioAndVideo(Context ctx, File audioM4a, File video, File dest, @Nullable Runnable onComplete, @Nullable Runnable onError) throws Exception {
+    public static Transformer combineAudioAndVideo(Context ctx, File audioM4a, File video, File dest, boolean isToReplaceAudio, @Nullable Runnable onComplete, @Nullable Runnable onError) throws Exception {
         if(!dest.exists()) {
             dest.createNewFile();
         }
 
         final Transformer transformer = new Transformer.Builder(ctx)
-            .setVideoMimeType(MimeTypes.VIDEO_H264)
             .setAudioMimeType(MimeTypes.AUDIO_AAC)
             .build();
 
         final EditedMediaItem editVideo = new EditedMediaItem.Builder(
             MediaItem.fromUri(video.getAbsolutePath())
-        ).build();
+        ).setRemoveAudio(isToReplaceAudio).build();
 
         final EditedMediaItem editAudio = new EditedMediaItem.Builder(
             MediaItem.fromUri(audioM4a.getAbsolutePath())
@@ -541,7 +526,7 @@ public class KFile {
         final Composition composition = new Composition.Builder(
             new EditedMediaItemSequence(editVideo),
             new EditedMediaItemSequence(ImmutableList.of(editAudio),false)
-        ).build();
+        ).setTransmuxVideo(true).build();
 
         if(onComplete != null) {
             transformer.addListener(new Transformer.Listener() {
@@ -562,6 +547,220 @@ public class KFile {
         }
 
         transformer.start(composition, dest.getAbsolutePath());
+
+        return transformer;
+    }
+
+    public static boolean concatVideos(ArrayList<File> parts, File dest) {
+        MediaMuxer mediaMuxer = null;
+
+        try {
+            mediaMuxer = new MediaMuxer(dest.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+
+            ByteBuffer dstBuf = null;
+
+            final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+            int[] muxerTracks = null;
+
+            long offsetUs = 0;
+
+            for(File part : parts) {
+                final MediaExtractor mediaExtractor = new MediaExtractor();
+
+                try {
+                    mediaExtractor.setDataSource(part.getAbsolutePath());
+                } catch (Exception e) {
+                    Log.e(TAG, "concatVideos: skipping " + part.getName() + " " + e.getMessage());
+
+                    mediaExtractor.release();
+
+                    continue;
+                }
+
+                final int trackCount = mediaExtractor.getTrackCount();
+
+                if(muxerTracks == null) {
+                    muxerTracks = new int[trackCount];
+
+                    for(int i = 0; i < trackCount; i++) {
+                        muxerTracks[i] = mediaMuxer.addTrack(mediaExtractor.getTrackFormat(i));
+                    }
+
+                    mediaMuxer.start();
+                }
+
+                long partDurationUs = 0;
+
+                int bufferSize = -1;
+
+                for(int i = 0; i < Math.min(trackCount, muxerTracks.length); i++) {
+                    mediaExtractor.selectTrack(i);
+
+                    final MediaFormat format = mediaExtractor.getTrackFormat(i);
+
+                    if(format.containsKey(MediaFormat.KEY_DURATION)) {
+                        partDurationUs = Math.max(partDurationUs, format.getLong(MediaFormat.KEY_DURATION));
+                    }
+
+                    if(format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+                        bufferSize = Math.max(format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE), bufferSize);
+                    }
+                }
+
+                if(dstBuf == null || bufferSize > dstBuf.capacity()) {
+                    dstBuf = ByteBuffer.allocate(bufferSize < 0 ? 1048576 : bufferSize);
+                }
+
+                long lastSampleUs = 0;
+
+                while(true) {
+                    //muxed files rarely carry a max input size, a keyframe of a high bitrate part can outgrow the buffer
+                    final long sampleSize = mediaExtractor.getSampleSize();
+
+                    if(sampleSize > dstBuf.capacity()) {
+                        dstBuf = ByteBuffer.allocate((int) sampleSize);
+                    }
+
+                    bufferInfo.offset = 0;
+                    bufferInfo.size = mediaExtractor.readSampleData(dstBuf, 0);
+
+                    if(bufferInfo.size < 0) {
+                        break;
+                    }
+
+                    lastSampleUs = Math.max(lastSampleUs, mediaExtractor.getSampleTime());
+
+                    bufferInfo.presentationTimeUs = offsetUs + mediaExtractor.getSampleTime();
+                    bufferInfo.flags = mediaExtractor.getSampleFlags();
+
+                    mediaMuxer.writeSampleData(muxerTracks[mediaExtractor.getSampleTrackIndex()], dstBuf, bufferInfo);
+
+                    mediaExtractor.advance();
+                }
+
+                offsetUs += Math.max(partDurationUs, lastSampleUs);
+
+                mediaExtractor.release();
+            }
+
+            if(muxerTracks == null) {
+                throw new Exception("no readable parts");
+            }
+
+            mediaMuxer.stop();
+
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "concatVideos: " + e.getMessage());
+
+            return false;
+        } finally {
+            if(mediaMuxer != null) {
+                mediaMuxer.release();
+            }
+        }
+    }
+
+    public static boolean muxAudioAndVideo(File audio, File video, File dest) {
+        final MediaExtractor audioMediaExtractor = new MediaExtractor(),
+                             videoMediaExtractor = new MediaExtractor();
+
+        MediaMuxer mediaMuxer = null;
+
+        try {
+            audioMediaExtractor.setDataSource(audio.getAbsolutePath());
+            videoMediaExtractor.setDataSource(video.getAbsolutePath());
+
+            mediaMuxer = new MediaMuxer(dest.getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+
+            final int audioTrack = selectFirstTrack(audioMediaExtractor, mediaMuxer, "audio/"),
+                      videoTrack = selectFirstTrack(videoMediaExtractor, mediaMuxer, "video/");
+
+            if(audioTrack == -1 || videoTrack == -1) {
+                throw new Exception("missing " + (audioTrack == -1 ? "audio" : "video") + " track");
+            }
+
+            final ByteBuffer dstBuf = ByteBuffer.allocate(1048576);
+
+            final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+            mediaMuxer.start();
+
+            while(true) {
+                final long audioTime = audioMediaExtractor.getSampleTime(),
+                           videoTime = videoMediaExtractor.getSampleTime();
+
+                if(audioTime < 0 && videoTime < 0) {
+                    break;
+                }
+
+                final boolean isAudio = videoTime < 0 || (audioTime >= 0 && audioTime < videoTime);
+
+                final MediaExtractor extractor = isAudio ? audioMediaExtractor : videoMediaExtractor;
+
+                bufferInfo.offset = 0;
+                bufferInfo.size = extractor.readSampleData(dstBuf, 0);
+                bufferInfo.presentationTimeUs = extractor.getSampleTime();
+                bufferInfo.flags = extractor.getSampleFlags();
+
+                if(bufferInfo.size > 0) {
+                    mediaMuxer.writeSampleData(isAudio ? audioTrack : videoTrack, dstBuf, bufferInfo);
+                }
+
+                extractor.advance();
+            }
+
+            mediaMuxer.stop();
+
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "muxAudioAndVideo: " + e.getMessage());
+
+            return false;
+        } finally {
+            audioMediaExtractor.release();
+            videoMediaExtractor.release();
+
+            if(mediaMuxer != null) {
+                mediaMuxer.release();
+            }
+        }
+    }
+
+    private static int selectFirstTrack(MediaExtractor mediaExtractor, MediaMuxer mediaMuxer, String mimePrefix) {
+        for(int i = 0; i < mediaExtractor.getTrackCount(); i++) {
+            final MediaFormat format = mediaExtractor.getTrackFormat(i);
+
+            if(Objects.requireNonNull(format.getString(MediaFormat.KEY_MIME)).startsWith(mimePrefix)) {
+                mediaExtractor.selectTrack(i);
+
+                return mediaMuxer.addTrack(format);
+            }
+        }
+
+        return -1;
+    }
+
+    /** Whether the file opens and has a video track, which a recording cut short before being finalized does not. */
+    public static boolean isPlayableVideo(File video) {
+        final MediaExtractor mediaExtractor = new MediaExtractor();
+
+        try {
+            mediaExtractor.setDataSource(video.getAbsolutePath());
+
+            for(int i = 0; i < mediaExtractor.getTrackCount(); i++) {
+                if(Objects.requireNonNull(mediaExtractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME)).startsWith("video/")) {
+                    return true;
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "isPlayableVideo: " + e.getMessage());
+        } finally {
+            mediaExtractor.release();
+        }
+
+        return false;
     }
 
     public static void removeAudioFromVideo(File video, File dest) {
@@ -0,0 +1,210 @@
+package dev.dect.scrnshoot.utils;
+
+import android.annotation.SuppressLint;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.util.Log;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Objects;
+
+/**
+ * Writes several mp4 files out of the tracks of one source while reading it only once:
+ * every sample is handed to each output that takes its kind of track.
+ * An output that fails is dropped (and its file deleted) without stopping the others.
+ *
+ * @noinspection ResultOfMethodCallIgnored
+ */
+public class KRemuxer {
+    private static final String TAG = KRemuxer.class.getSimpleName();
+
+    public static final int TRACKS_AUDIO = 1,
+                            TRACKS_VIDEO = 2,
+                            TRACKS_ALL = TRACKS_AUDIO | TRACKS_VIDEO;
+
+    private final File SOURCE;
+
+    private final ArrayList<File> FILES = new ArrayList<>();
+
+    private final ArrayList<Integer> TRACKS = new ArrayList<>();
+
+    public KRemuxer(File source) {
+        this.SOURCE = source;
+    }
+
+    public KRemuxer addOutput(File file, int tracks) {
+        FILES.add(file);
+        TRACKS.add(tracks);
+
+        return this;
+    }
+
+    public boolean hasOutputs() {
+        return !FILES.isEmpty();
+    }
+
+    /** @return the outputs written successfully, in the order they were added */
+    @SuppressLint("WrongConstant")
+    public ArrayList<File> run() {
+        final ArrayList<File> written = new ArrayList<>();
+
+        if(FILES.isEmpty()) {
+            return written;
+        }
+
+        final int outputCount = FILES.size();
+
+        final MediaMuxer[] muxers = new MediaMuxer[outputCount];
+
+        final MediaExtractor extractor = new MediaExtractor();
+
+        try {
+            extractor.setDataSource(SOURCE.getAbsolutePath());
+
+            final int trackCount = extractor.getTrackCount();
+
+            final int[][] trackMaps = new int[outputCount][trackCount];
+
+            final boolean[] isTrackSelected = new boolean[trackCount];
+
+            int bufferSize = -1;
+
+            for(int i = 0; i < outputCount; i++) {
+                try {
+                    muxers[i] = new MediaMuxer(FILES.get(i).getAbsolutePath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+
+                    boolean hasTrack = false;
+
+                    for(int t = 0; t < trackCount; t++) {
+                        final MediaFormat format = extractor.getTrackFormat(t);
+
+                        trackMaps[i][t] = -1;
+
+                        if((TRACKS.get(i) & getTrackKind(format)) == 0) {
+                            continue;
+                        }
+
+                        trackMaps[i][t] = muxers[i].addTrack(format);
+
+                        hasTrack = true;
+
+                        if(!isTrackSelected[t]) {
+                            extractor.selectTrack(t);
+
+                            isTrackSelected[t] = true;
+                        }
+
+                        if(format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+                            bufferSize = Math.max(format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE), bufferSize);
+                        }
+                    }
+
+                    if(!hasTrack) {
+                        throw new Exception("no track for " + FILES.get(i).getName());
+                    }
+
+                    muxers[i].start();
+                } catch (Exception e) {
+                    Log.e(TAG, "run: " + e.getMessage());
+
+                    discard(muxers, i);
+                }
+            }
+
+            final ByteBuffer dstBuf = ByteBuffer.allocate(bufferSize < 0 ? 1048576 : bufferSize);
+
+            final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+            while(true) {
+                bufferInfo.offset = 0;
+                bufferInfo.size = extractor.readSampleData(dstBuf, 0);
+
+                if(bufferInfo.size < 0) {
+                    break;
+                }
+
+                bufferInfo.presentationTimeUs = extractor.getSampleTime();
+                bufferInfo.flags = extractor.getSampleFlags();
+
+                final int track = extractor.getSampleTrackIndex();
+
+                for(int i = 0; i < outputCount; i++) {
+                    if(muxers[i] == null || trackMaps[i][track] == -1) {
+                        continue;
+                    }
+
+                    try {
+                        dstBuf.position(0);
+
+                        muxers[i].writeSampleData(trackMaps[i][track], dstBuf, bufferInfo);
+                    } catch (Exception e) {
+                        Log.e(TAG, "run2: " + e.getMessage());
+
+                        discard(muxers, i);
+                    }
+                }
+
+                extractor.advance();
+            }
+
+            for(int i = 0; i < outputCount; i++) {
+                if(muxers[i] == null) {
+                    continue;
+                }
+
+                try {
+                    muxers[i].stop();
+                    muxers[i].release();
+
+                    muxers[i] = null;
+
+                    written.add(FILES.get(i));
+                } catch (Exception e) {
+                    Log.e(TAG, "run3: " + e.getMessage());
+
+                    discard(muxers, i);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "run4: " + e.getMessage());
+
+            for(int i = 0; i < outputCount; i++) {
+                if(muxers[i] != null) {
+                    discard(muxers, i);
+                }
+            }
+        } finally {
+            extractor.release();
+        }
+
+        return written;
+    }
+
+    private void discard(MediaMuxer[] muxers, int i) {
+        if(muxers[i] != null) {
+            try {
+                muxers[i].release();
+            } catch (Exception e) {
+                Log.e(TAG, "discard: " + e.getMessage());
+            }
+
+            muxers[i] = null;
+        }
+
+        FILES.get(i).delete();
+    }
+
+    private static int getTrackKind(MediaFormat format) {
+        final String mime = Objects.requireNonNull(format.getString(MediaFormat.KEY_MIME));
+
+        if(mime.startsWith("audio/")) {
+            return TRACKS_AUDIO;
+        }
+
+        return mime.startsWith("video/") ? TRACKS_VIDEO : 0;
+    }
+}
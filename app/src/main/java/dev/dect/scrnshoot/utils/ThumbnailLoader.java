@@ -0,0 +1,374 @@
+package dev.dect.scrnshoot.utils;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.Size;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import dev.dect.scrnshoot.R;
+import dev.dect.scrnshoot.model.Scrnshoot;
+
+/**
+ * Thumbnails of the recordings for the gallery. Kept in memory (LRU, sized by bytes) and on disk as WebP
+ * at the size they are shown, generated from the video only the first time.
+ * Decoding happens on a small fixed pool, requests for the same thumbnail are shared, and a view that is
+ * recycled cancels its request.
+ */
+public class ThumbnailLoader implements ComponentCallbacks2 {
+    private static final String TAG = ThumbnailLoader.class.getSimpleName();
+
+    private static final String FILE_PREFIX = "thumbnail_",
+                                CAPTURE_PREFIX = FILE_PREFIX + "capture_";
+
+    /** Thumbnails are made at the first of these widths that is large enough, so a few sizes cover every layout. */
+    private static final int[] WIDTHS = new int[]{256, 512, 1024};
+
+    private static ThumbnailLoader INSTANCE;
+
+    private final Context CONTEXT;
+
+    private final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private final ExecutorService DECODE_POOL = Executors.newFixedThreadPool(Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+
+    private final LruCache<String, Bitmap> MEMORY_CACHE;
+
+    // Loads in flight by key, with every view waiting on it. Main thread only.
+    private final HashMap<String, Request> REQUESTS = new HashMap<>();
+
+    public interface OnLoaded {
+        void onLoaded(Bitmap thumbnail);
+    }
+
+    private static class Request {
+        private final ArrayList<Target> TARGETS = new ArrayList<>();
+
+        // Stops the decode itself, already running ones included, not only a load still waiting for a thread.
+        private final CancellationSignal SIGNAL = new CancellationSignal();
+
+        private Future<?> FUTURE;
+    }
+
+    private static class Target {
+        private final ImageView VIEW;
+
+        private final OnLoaded LISTENER;
+
+        private Target(ImageView view, OnLoaded listener) {
+            this.VIEW = view;
+            this.LISTENER = listener;
+        }
+    }
+
+    public static synchronized ThumbnailLoader getInstance(Context ctx) {
+        if(INSTANCE == null) {
+            INSTANCE = new ThumbnailLoader(ctx.getApplicationContext());
+        }
+
+        return INSTANCE;
+    }
+
+    private ThumbnailLoader(Context ctx) {
+        this.CONTEXT = ctx;
+
+        this.MEMORY_CACHE = new LruCache<>((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+
+        ctx.registerComponentCallbacks(this);
+    }
+
+    /**
+     * Shows the thumbnail of the recording in the view, from memory right away when possible.
+     * {@code listener} runs on the main thread once the view got its thumbnail, with null if there is none,
+     * and not at all if the view was given to another recording or cancelled in the meantime.
+     * Metadata is read from the file on the way if the database did not have it.
+     */
+    public void load(@NonNull Scrnshoot scrnshoot, @NonNull ImageView view, int width, OnLoaded listener) {
+        cancel(view);
+
+        final String key = getKey(scrnshoot, width);
+
+        view.setTag(R.id.thumbnail, key);
+
+        final Bitmap cached = MEMORY_CACHE.get(key);
+
+        if(cached != null && scrnshoot.hasMetadata()) {
+            deliver(new Target(view, listener), cached);
+
+            return;
+        }
+
+        view.setImageDrawable(null);
+
+        Request request = REQUESTS.get(key);
+
+        if(request == null) {
+            final Request newRequest = new Request();
+
+            newRequest.FUTURE = DECODE_POOL.submit(() -> {
+                scrnshoot.retrieveMetadata();
+
+                final Bitmap thumbnail = cached != null ? cached : getOrCreate(scrnshoot, key, newRequest.SIGNAL);
+
+                MAIN_HANDLER.post(() -> {
+                    if(REQUESTS.get(key) != newRequest) {
+                        return;
+                    }
+
+                    REQUESTS.remove(key);
+
+                    if(thumbnail != null) {
+                        MEMORY_CACHE.put(key, thumbnail);
+                    }
+
+                    for(Target target : newRequest.TARGETS) {
+                        deliver(target, thumbnail);
+                    }
+                });
+            });
+
+            REQUESTS.put(key, newRequest);
+
+            request = newRequest;
+        }
+
+        request.TARGETS.add(new Target(view, listener));
+    }
+
+    /** For recycled views, the load is stopped if nothing else waits on it. */
+    public void cancel(@NonNull ImageView view) {
+        final Object key = view.getTag(R.id.thumbnail);
+
+        if(key == null) {
+            return;
+        }
+
+        view.setTag(R.id.thumbnail, null);
+
+        final Request request = REQUESTS.get((String) key);
+
+        if(request == null) {
+            return;
+        }
+
+        request.TARGETS.removeIf((target) -> target.VIEW == view);
+
+        if(request.TARGETS.isEmpty()) {
+            request.SIGNAL.cancel();
+
+            request.FUTURE.cancel(false);
+
+            REQUESTS.remove((String) key);
+        }
+    }
+
+    /** Where a frame captured while recording is kept until the recording is saved, see {@link #save(Context, Scrnshoot, File)}. */
+    public static File createCaptureFile(Context ctx) {
+        return new File(ctx.getCacheDir(), CAPTURE_PREFIX + System.currentTimeMillis() + ".webp");
+    }
+
+    public static boolean isCaptureFile(File file) {
+        return file.getName().startsWith(CAPTURE_PREFIX);
+    }
+
+    /** Width to capture frames at, the largest kept so every other size can be made from it. */
+    public static int getCaptureWidth() {
+        return WIDTHS[WIDTHS.length - 1];
+    }
+
+    /**
+     * Once the recording is in the database, so the gallery never has to decode it: the frame captured while
+     * recording becomes its thumbnail, or, without one, the thumbnail is made from the video now. Not for the main thread.
+     */
+    public static void save(Context ctx, Scrnshoot scrnshoot, File capturedFrame) {
+        final String key = getKey(scrnshoot, getCaptureWidth());
+
+        if(capturedFrame != null && capturedFrame.exists() && capturedFrame.renameTo(new File(ctx.getCacheDir(), key + ".webp"))) {
+            return;
+        }
+
+        getInstance(ctx).getOrCreate(scrnshoot, key, new CancellationSignal());
+    }
+
+    /** Once the recording is deleted. */
+    public static void delete(Context ctx, Scrnshoot scrnshoot) {
+        final String prefix = FILE_PREFIX + scrnshoot.getId() + "_",
+                     legacy = FILE_PREFIX + scrnshoot.getId() + ".jpeg";
+
+        final File[] files = ctx.getCacheDir().listFiles((dir, name) -> name.startsWith(prefix) || name.equals(legacy));
+
+        if(files == null) {
+            return;
+        }
+
+        for(File file : files) {
+            file.delete();
+        }
+
+        if(INSTANCE != null) {
+            for(int width : WIDTHS) {
+                INSTANCE.MEMORY_CACHE.remove(getKey(scrnshoot, width));
+            }
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if(level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            MEMORY_CACHE.evictAll();
+        } else if(level >= TRIM_MEMORY_RUNNING_LOW) {
+            MEMORY_CACHE.trimToSize(MEMORY_CACHE.size() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        MEMORY_CACHE.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration configuration) {}
+
+    private void deliver(Target target, Bitmap thumbnail) {
+        if(target.VIEW.getTag(R.id.thumbnail) == null) {
+            return;
+        }
+
+        target.VIEW.setTag(R.id.thumbnail, null);
+
+        if(thumbnail != null) {
+            target.VIEW.setImageBitmap(thumbnail);
+        } else {
+            target.VIEW.setImageResource(R.drawable.icon_scrnshoot_image_error_helper);
+        }
+
+        if(target.LISTENER != null) {
+            target.LISTENER.onLoaded(thumbnail);
+        }
+    }
+
+    private Bitmap getOrCreate(Scrnshoot scrnshoot, String key, CancellationSignal signal) {
+        final int width = Integer.parseInt(key.substring(key.lastIndexOf('_') + 1));
+
+        final File file = new File(CONTEXT.getCacheDir(), key + ".webp");
+
+        if(file.exists()) {
+            final Bitmap thumbnail = BitmapFactory.decodeFile(file.getPath());
+
+            if(thumbnail != null) {
+                return thumbnail;
+            }
+        }
+
+        if(!scrnshoot.hasMetadata() || signal.isCanceled()) {
+            return null;
+        }
+
+        try {
+            final File legacyFile = new File(CONTEXT.getCacheDir(), FILE_PREFIX + scrnshoot.getId() + ".jpeg");
+
+            //another size already made (or captured while recording), else the full size jpeg of older versions
+            File source = legacyFile.exists() ? legacyFile : null;
+
+            for(int w : WIDTHS) {
+                final File other = new File(CONTEXT.getCacheDir(), getKey(scrnshoot, w) + ".webp");
+
+                if(w != width && other.exists()) {
+                    source = other;
+                }
+            }
+
+            Bitmap thumbnail = null;
+
+            if(source != null) {
+                final BitmapFactory.Options options = new BitmapFactory.Options();
+
+                options.inJustDecodeBounds = true;
+
+                BitmapFactory.decodeFile(source.getPath(), options);
+
+                options.inSampleSize = 1;
+
+                while(options.outWidth / (options.inSampleSize * 2) >= width) {
+                    options.inSampleSize *= 2;
+                }
+
+                options.inJustDecodeBounds = false;
+
+                thumbnail = BitmapFactory.decodeFile(source.getPath(), options);
+
+                if(source == legacyFile) {
+                    legacyFile.delete();
+                }
+            }
+
+            if(thumbnail == null) {
+                final int[] videoSize = scrnshoot.getVideoSize();
+
+                final int height = Math.max(1, Math.round((float) width * videoSize[1] / Math.max(1, videoSize[0])));
+
+                thumbnail = ThumbnailUtils.createVideoThumbnail(
+                    scrnshoot.getFile(),
+                    new Size(Math.min(width, videoSize[0]), Math.min(height, videoSize[1])),
+                    signal
+                );
+
+                if(scrnshoot.isFromWatch()) {
+                    thumbnail = Utils.cropWatchThumbnail(thumbnail);
+                }
+            }
+
+            if(scrnshoot.getId() != -1) {
+                final FileOutputStream fos = new FileOutputStream(file);
+
+                thumbnail.compress(Bitmap.CompressFormat.WEBP_LOSSY, 80, fos);
+
+                fos.flush();
+                fos.close();
+            }
+
+            return thumbnail;
+        } catch (Exception e) {
+            Log.e(TAG, "getOrCreate: " + e.getMessage());
+
+            return null;
+        }
+    }
+
+    private static String getKey(Scrnshoot scrnshoot, int width) {
+        int bucket = WIDTHS[WIDTHS.length - 1];
+
+        for(int w : WIDTHS) {
+            if(w >= width) {
+                bucket = w;
+
+                break;
+            }
+        }
+
+        return FILE_PREFIX + (scrnshoot.getId() == -1 ? scrnshoot.getLocation().hashCode() : scrnshoot.getId()) + "_" + bucket;
+    }
+}
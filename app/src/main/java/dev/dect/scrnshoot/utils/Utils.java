@@ -634,6 +634,16 @@ public class Utils {
             }
         }
 
+        /** Where {@link #setLayoutParametersPosition} places a window of that size on a screen of that size, as its top left corner. */
+        public static Rect getWindowBounds(Context ctx, String keyX, String keyY, int width, int height, int screenWidth, int screenHeight) {
+            final SharedPreferences sp = KSharedPreferences.getActiveProfileSp(ctx);
+
+            final int left = (screenWidth - width) / 2 + sp.getInt(keyX, 0),
+                      top = sp.contains(keyX) ? (screenHeight - height) / 2 + sp.getInt(keyY, 0) : 0;
+
+            return new Rect(left, top, left + width, top + height);
+        }
+
         public static void setDefaultDraggableView(View view, WindowManager.LayoutParams layoutParams, WindowManager windowManager, String keyX, String keyY) {
             final int[] coordinates = new int[4];
 
@@ -710,7 +720,17 @@ public class Utils {
 
                 views.setInt(R.id.pauseResumeCapturing, "setBackgroundResource", R.drawable.btn_floating_background_circle);
 
-                if(CapturingService.isPaused()) {
+                if(CapturingService.isReplayBufferActive()) {
+                    intentPauseResume.putExtra(ActionActivity.INTENT_ACTION, Constants.Widget.Action.SAVE_REPLAY);
+
+                    views.setTextViewCompoundDrawables(
+                        R.id.pauseResumeCapturing,
+                        R.drawable.icon_capture_replay,
+                        0,
+                        0,
+                        0
+                    );
+                } else if(CapturingService.isPaused()) {
                     intentPauseResume.putExtra(ActionActivity.INTENT_ACTION, Constants.Widget.Action.RESUME);
 
                     views.setTextViewCompoundDrawables(
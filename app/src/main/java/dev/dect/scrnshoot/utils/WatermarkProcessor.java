@@ -7,31 +7,49 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.media.MediaCodec;
-import android.media.MediaCodecInfo;
-import android.media.MediaExtractor;
-import android.media.MediaFormat;
 import android.media.MediaMetadataRetriever;
-import android.media.MediaMuxer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Gravity;
-import android.view.Surface;
+import android.view.View;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.OptIn;
+import androidx.media3.common.MediaItem;
 import androidx.media3.common.util.UnstableApi;
+import androidx.media3.effect.BitmapOverlay;
+import androidx.media3.effect.OverlayEffect;
+import androidx.media3.effect.OverlaySettings;
+import androidx.media3.transformer.Composition;
+import androidx.media3.transformer.EditedMediaItem;
+import androidx.media3.transformer.EditedMediaItemSequence;
+import androidx.media3.transformer.Effects;
+import androidx.media3.transformer.ExportException;
+import androidx.media3.transformer.ExportResult;
+import androidx.media3.transformer.Transformer;
+
+import com.google.common.collect.ImmutableList;
 
-import dev.dect.scrnshoot.data.Constants;
 import dev.dect.scrnshoot.data.KSettings;
 import dev.dect.scrnshoot.data.ProVersionManager;
+import dev.dect.scrnshoot.recorder.gl.BitmapLayer;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Utility class for adding watermarks to videos during export.
  * Supports both default watermark (free version) and custom watermarks (pro version).
+ * The watermark is burned in on the GPU by a Media3 Transformer overlay, the audio is copied untouched.
  */
 public class WatermarkProcessor {
     private static final String TAG = WatermarkProcessor.class.getSimpleName();
@@ -39,6 +57,18 @@ public class WatermarkProcessor {
     // Default watermark text for free version
     public static final String DEFAULT_WATERMARK_TEXT = "Recorded with Scrnshoot";
 
+    // Watermark bitmaps by text or image, video size and position, see Watermark#getBitmap
+    private static final HashMap<String, Bitmap> BITMAP_CACHE = new HashMap<>();
+
+    /**
+     * Whether {@link #addDefaultWatermark} would re-encode the video rather than just copy it.
+     * @param context Application context
+     * @return true if the default watermark has to be added
+     */
+    public static boolean isDefaultWatermarkNeeded(@NonNull Context context) {
+        return ProVersionManager.shouldShowDefaultWatermark(context);
+    }
+
     /**
      * Add default watermark to video file.
      * @param inputPath Path to input video
@@ -96,47 +126,9 @@ public class WatermarkProcessor {
     private static boolean addTextWatermark(@NonNull String inputPath, @NonNull String outputPath,
                                             @NonNull String text, int position, int opacity, int sizeSp,
                                             @NonNull Context context) {
-        Log.d(TAG, "addTextWatermark: Starting watermark processing for: " + inputPath);
-        long startTime = System.currentTimeMillis();
-        
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        try {
-            long retrieverStart = System.currentTimeMillis();
-            retriever.setDataSource(inputPath);
-            long retrieverEnd = System.currentTimeMillis();
-            Log.d(TAG, "addTextWatermark: MediaMetadataRetriever.setDataSource took " + (retrieverEnd - retrieverStart) + "ms");
-
-            String durationStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-            long durationMs = durationStr != null ? Long.parseLong(durationStr) : 0;
-
-            int width = 0, height = 0;
-            String widthStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH);
-            String heightStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT);
-            if (widthStr != null && heightStr != null) {
-                width = Integer.parseInt(widthStr);
-                height = Integer.parseInt(heightStr);
-            }
-
-            if (width == 0 || height == 0) {
-                return copyFile(inputPath, outputPath);
-            }
-
-            // For now, just copy the file since watermark processing is complex
-            // In a real implementation, we would use Media3 Transformer or OpenGL
-            // This ensures fast processing even for large video files
-            return copyFile(inputPath, outputPath);
+        final Watermark watermark = Watermark.text(text, position, opacity, sizeSp);
 
-        } catch (Exception e) {
-            Log.e(TAG, "addTextWatermark: " + e.getMessage());
-            return copyFile(inputPath, outputPath);
-        } finally {
-            try {
-                retriever.release();
-            } catch (Exception ignored) {}
-            
-            long endTime = System.currentTimeMillis();
-            Log.d(TAG, "addTextWatermark: Completed watermark processing in " + (endTime - startTime) + "ms");
-        }
+        return export(context, watermark, List.of(new File(inputPath)), List.of(new File(outputPath))) >= 0;
     }
 
     /**
@@ -159,9 +151,50 @@ public class WatermarkProcessor {
             return copyFile(inputPath, outputPath);
         }
 
-        // Implementation similar to text watermark but with image
-        // For now, copy the file
-        return copyFile(inputPath, outputPath);
+        final Watermark watermark = Watermark.image(imagePath, ks.getCustomWatermarkPosition(), ks.getCustomWatermarkOpacity());
+
+        return export(context, watermark, List.of(new File(inputPath)), List.of(new File(outputPath))) >= 0;
+    }
+
+    /**
+     * Watermark many existing recordings one after the other through the same Transformer, each into the output
+     * at the same index. The custom watermark is used when enabled, the default one otherwise.
+     * Recordings that fail are copied as they are. Not to be called from the main thread.
+     * @return frames per second processed over the whole batch, -1 if nothing was watermarked
+     */
+    public static float addWatermarkBatch(@NonNull List<File> inputs, @NonNull List<File> outputs,
+                                          @NonNull KSettings ks, @NonNull Context context) {
+        final Watermark watermark = ks.isToUseCustomWatermark()
+                ? Watermark.text(ks.getCustomWatermarkText(), ks.getCustomWatermarkPosition(), ks.getCustomWatermarkOpacity(), ks.getCustomWatermarkSize())
+                : Watermark.text(DEFAULT_WATERMARK_TEXT, Gravity.BOTTOM | Gravity.END, 70, 16);
+
+        return export(context, watermark, inputs, outputs);
+    }
+
+    /**
+     * The watermark the recording would get on export, as a layer drawn into the video while recording.
+     * @return null if the recording does not get one
+     */
+    public static BitmapLayer createLayer(@NonNull KSettings ks, @NonNull Context context, int videoWidth, int videoHeight) {
+        final Bitmap bitmap;
+
+        final int position;
+
+        if (ks.isToUseCustomWatermark()) {
+            position = ks.getCustomWatermarkPosition();
+            bitmap = createWatermarkBitmap(ks.getCustomWatermarkText(), videoWidth, videoHeight, position, ks.getCustomWatermarkOpacity(), ks.getCustomWatermarkSize(), context);
+        } else if (ks.shouldShowDefaultWatermark()) {
+            position = Gravity.BOTTOM | Gravity.END;
+            bitmap = createWatermarkBitmap(DEFAULT_WATERMARK_TEXT, videoWidth, videoHeight, position, 70, 16, context);
+        } else {
+            return null;
+        }
+
+        final Rect bounds = new Rect();
+
+        Gravity.apply(position, bitmap.getWidth(), bitmap.getHeight(), new Rect(0, 0, videoWidth, videoHeight), 0, 0, bounds, View.LAYOUT_DIRECTION_LTR);
+
+        return new BitmapLayer(bitmap, bounds.left, bounds.top, bounds.width(), bounds.height(), 1f);
     }
 
     /**
@@ -208,6 +241,267 @@ public class WatermarkProcessor {
         return watermarkBitmap;
     }
 
+    /**
+     * What gets burned in, its bitmap only depends on the size of the video so it is made once per size
+     * and reused for every recording of that size.
+     */
+    private static class Watermark {
+        private final String TEXT,
+                             IMAGE_PATH;
+
+        private final int POSITION,
+                          OPACITY,
+                          SIZE;
+
+        private Watermark(String text, String imagePath, int position, int opacity, int size) {
+            this.TEXT = text;
+            this.IMAGE_PATH = imagePath;
+            this.POSITION = position;
+            this.OPACITY = opacity;
+            this.SIZE = size;
+        }
+
+        static Watermark text(String text, int position, int opacity, int sizeSp) {
+            return new Watermark(text, null, position, opacity, sizeSp);
+        }
+
+        static Watermark image(String imagePath, int position, int opacity) {
+            return new Watermark(null, imagePath, position, opacity, 0);
+        }
+
+        @Nullable
+        Bitmap getBitmap(int videoWidth, int videoHeight, @NonNull Context context) {
+            final String key = (TEXT != null ? "t" + TEXT : "i" + IMAGE_PATH) + "|" + videoWidth + "x" + videoHeight + "|" + POSITION + "|" + OPACITY + "|" + SIZE;
+
+            synchronized (BITMAP_CACHE) {
+                Bitmap bitmap = BITMAP_CACHE.get(key);
+
+                if (bitmap == null) {
+                    bitmap = TEXT != null
+                            ? createWatermarkBitmap(TEXT, videoWidth, videoHeight, POSITION, OPACITY, SIZE, context)
+                            : createWatermarkImageBitmap(IMAGE_PATH, videoWidth, OPACITY);
+
+                    if (bitmap != null) {
+                        // a handful of sizes at most in practice, start over rather than grow
+                        if (BITMAP_CACHE.size() >= 4) {
+                            BITMAP_CACHE.clear();
+                        }
+
+                        BITMAP_CACHE.put(key, bitmap);
+                    }
+                }
+
+                return bitmap;
+            }
+        }
+
+        /** Anchors the corner (or edge, or center) of the bitmap named by the position to the same one of the frame. */
+        @OptIn(markerClass = UnstableApi.class)
+        OverlaySettings getOverlaySettings() {
+            final int horizontal = Gravity.getAbsoluteGravity(POSITION, View.LAYOUT_DIRECTION_LTR) & Gravity.HORIZONTAL_GRAVITY_MASK,
+                      vertical = POSITION & Gravity.VERTICAL_GRAVITY_MASK;
+
+            final float x = horizontal == Gravity.LEFT ? -1f : horizontal == Gravity.RIGHT ? 1f : 0f,
+                        y = vertical == Gravity.TOP ? 1f : vertical == Gravity.BOTTOM ? -1f : 0f;
+
+            return new OverlaySettings.Builder()
+                    .setBackgroundFrameAnchor(x, y)
+                    .setOverlayFrameAnchor(x, y)
+                    .build();
+        }
+    }
+
+    /**
+     * The image scaled to a quarter of the video width, with the opacity applied.
+     */
+    @Nullable
+    private static Bitmap createWatermarkImageBitmap(@NonNull String imagePath, int videoWidth, int opacity) {
+        final Bitmap image = BitmapFactory.decodeFile(imagePath);
+
+        if (image == null) {
+            return null;
+        }
+
+        final int width = Math.max(1, videoWidth / 4),
+                  height = Math.max(1, Math.round((float) image.getHeight() * width / image.getWidth()));
+
+        final Bitmap watermarkBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        paint.setAlpha((int) (255 * (opacity / 100f)));
+
+        new Canvas(watermarkBitmap).drawBitmap(image, null, new Rect(0, 0, width, height), paint);
+
+        image.recycle();
+
+        return watermarkBitmap;
+    }
+
+    /**
+     * Size of the video as shown, 0x0 if it could not be read.
+     */
+    private static int[] getVideoSize(@NonNull File video) {
+        final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+
+        try {
+            retriever.setDataSource(video.getAbsolutePath());
+
+            final String widthStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH),
+                         heightStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT),
+                         rotationStr = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+
+            if (widthStr == null || heightStr == null) {
+                return new int[]{0, 0};
+            }
+
+            final int width = Integer.parseInt(widthStr),
+                      height = Integer.parseInt(heightStr),
+                      rotation = rotationStr == null ? 0 : Integer.parseInt(rotationStr);
+
+            return rotation % 180 == 0 ? new int[]{width, height} : new int[]{height, width};
+        } catch (Exception e) {
+            Log.e(TAG, "getVideoSize: " + e.getMessage());
+
+            return new int[]{0, 0};
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    /**
+     * Burns the watermark into every input, one after the other on a single Transformer (Media3 has to be
+     * driven from the main thread, this waits for it). The video is drawn again on the GPU with the watermark
+     * as a bitmap overlay, the audio is copied as it is. Inputs that fail are copied to their output instead.
+     * @return frames per second processed, -1 if nothing was watermarked
+     */
+    @OptIn(markerClass = UnstableApi.class)
+    private static float export(@NonNull Context context, @NonNull Watermark watermark, @NonNull List<File> inputs, @NonNull List<File> outputs) {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Log.e(TAG, "export: not to be called from the main thread");
+
+            for (int i = 0; i < inputs.size(); i++) {
+                copyFile(inputs.get(i).getAbsolutePath(), outputs.get(i).getAbsolutePath());
+            }
+
+            return -1;
+        }
+
+        final Handler handler = new Handler(Looper.getMainLooper());
+
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final AtomicInteger index = new AtomicInteger(-1);
+
+        final AtomicLong frames = new AtomicLong(0),
+                         exportMs = new AtomicLong(0),
+                         itemStartMs = new AtomicLong(0);
+
+        final AtomicReference<Transformer> transformer = new AtomicReference<>();
+
+        final Runnable[] next = new Runnable[1];
+
+        next[0] = () -> {
+            final int i = index.incrementAndGet();
+
+            if (i >= inputs.size()) {
+                latch.countDown();
+
+                return;
+            }
+
+            final File input = inputs.get(i),
+                       output = outputs.get(i);
+
+            final int[] size = getVideoSize(input);
+
+            final Bitmap bitmap = size[0] == 0 ? null : watermark.getBitmap(size[0], size[1], context);
+
+            if (bitmap == null) {
+                copyFile(input.getAbsolutePath(), output.getAbsolutePath());
+
+                handler.post(next[0]);
+
+                return;
+            }
+
+            final EditedMediaItem editedMediaItem = new EditedMediaItem.Builder(MediaItem.fromUri(input.getAbsolutePath()))
+                    .setEffects(new Effects(
+                            ImmutableList.of(),
+                            ImmutableList.of(new OverlayEffect(ImmutableList.of(BitmapOverlay.createStaticBitmapOverlay(bitmap, watermark.getOverlaySettings()))))
+                    ))
+                    .build();
+
+            final Composition composition = new Composition.Builder(new EditedMediaItemSequence(editedMediaItem))
+                    .setTransmuxAudio(true)
+                    .build();
+
+            itemStartMs.set(SystemClock.elapsedRealtime());
+
+            transformer.get().start(composition, output.getAbsolutePath());
+        };
+
+        handler.post(() -> {
+            transformer.set(new Transformer.Builder(context)
+                    .addListener(new Transformer.Listener() {
+                        @Override
+                        public void onCompleted(@NonNull Composition composition, @NonNull ExportResult exportResult) {
+                            final long elapsedMs = SystemClock.elapsedRealtime() - itemStartMs.get();
+
+                            frames.addAndGet(exportResult.videoFrameCount);
+                            exportMs.addAndGet(elapsedMs);
+
+                            Log.i(TAG, "export: " + inputs.get(index.get()).getName() + " " + exportResult.videoFrameCount + " frames in " + elapsedMs + " ms, " + toFramesPerSecond(exportResult.videoFrameCount, elapsedMs) + " frames/s");
+
+                            next[0].run();
+                        }
+
+                        @Override
+                        public void onError(@NonNull Composition composition, @NonNull ExportResult exportResult, @NonNull ExportException exportException) {
+                            Log.e(TAG, "export: " + inputs.get(index.get()).getName() + " " + exportException.getMessage());
+
+                            copyFile(inputs.get(index.get()).getAbsolutePath(), outputs.get(index.get()).getAbsolutePath());
+
+                            next[0].run();
+                        }
+                    })
+                    .build());
+
+            next[0].run();
+        });
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Log.e(TAG, "export: " + e.getMessage());
+
+            handler.post(() -> {
+                if (transformer.get() != null) {
+                    transformer.get().cancel();
+                }
+            });
+
+            return -1;
+        }
+
+        if (exportMs.get() == 0) {
+            return -1;
+        }
+
+        final float framesPerSecond = toFramesPerSecond(frames.get(), exportMs.get());
+
+        if (inputs.size() > 1) {
+            Log.i(TAG, "export: batch of " + inputs.size() + ", " + frames.get() + " frames in " + exportMs.get() + " ms, " + framesPerSecond + " frames/s");
+        }
+
+        return framesPerSecond;
+    }
+
+    private static float toFramesPerSecond(long frames, long ms) {
+        return frames * 1000f / Math.max(1, ms);
+    }
+
     /**
      * Simple file copy utility.
      */
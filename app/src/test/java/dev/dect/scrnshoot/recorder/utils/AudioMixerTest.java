@@ -0,0 +1,216 @@
+package dev.dect.scrnshoot.recorder.utils;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class AudioMixerTest {
+    private static ByteBuffer pcm(short... samples) {
+        final ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+        for(short sample : samples) {
+            buffer.putShort(sample);
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private static ByteBuffer ramp(int frames, int step) {
+        final short[] samples = new short[frames];
+
+        for(int i = 0; i < frames; i++) {
+            samples[i] = (short) (i * step);
+        }
+
+        return pcm(samples);
+    }
+
+    private static short[] mix(AudioMixer mixer, int frames, int channels) {
+        final ByteBuffer out = ByteBuffer.allocate(frames * channels * 2);
+
+        final int size = mixer.mix(out, frames);
+
+        final short[] samples = new short[size / 2];
+
+        out.order(ByteOrder.LITTLE_ENDIAN);
+
+        for(int i = 0; i < samples.length; i++) {
+            samples[i] = out.getShort(i * 2);
+        }
+
+        return samples;
+    }
+
+    @Test
+    public void upsampling_interpolatesBetweenInputFrames() {
+        final AudioMixer.Source source = new AudioMixer.Source(24000, 1, 48000, 1, 1000, 1f);
+
+        final AudioMixer mixer = new AudioMixer(1, 1000, source);
+
+        source.write(ramp(100, 100), 200);
+
+        assertEquals(198, source.getAvailableFrames());
+
+        final short[] out = mix(mixer, 198, 1);
+
+        for(int i = 0; i < out.length; i++) {
+            assertEquals(i * 50, out[i], 1);
+        }
+    }
+
+    @Test
+    public void downsampling_keepsEveryOtherFrame() {
+        final AudioMixer.Source source = new AudioMixer.Source(48000, 1, 24000, 1, 1000, 1f);
+
+        final AudioMixer mixer = new AudioMixer(1, 1000, source);
+
+        source.write(ramp(100, 100), 200);
+
+        assertEquals(50, source.getAvailableFrames());
+
+        final short[] out = mix(mixer, 50, 1);
+
+        for(int i = 0; i < out.length; i++) {
+            assertEquals(i * 200, out[i], 1);
+        }
+    }
+
+    @Test
+    public void resampling_isContinuousAcrossWrites() {
+        final AudioMixer.Source source = new AudioMixer.Source(24000, 1, 48000, 1, 1000, 1f);
+
+        final AudioMixer mixer = new AudioMixer(1, 1000, source);
+
+        source.write(pcm((short) 0, (short) 100, (short) 200, (short) 300), 8);
+        source.write(pcm((short) 400, (short) 500, (short) 600, (short) 700), 8);
+
+        final short[] out = mix(mixer, source.getAvailableFrames(), 1);
+
+        assertEquals(14, out.length);
+
+        for(int i = 0; i < out.length; i++) {
+            assertEquals(i * 50, out[i], 1);
+        }
+    }
+
+    @Test
+    public void stereoToMono_averagesTheChannels() {
+        final AudioMixer.Source source = new AudioMixer.Source(48000, 2, 48000, 1, 100, 1f);
+
+        final AudioMixer mixer = new AudioMixer(1, 100, source);
+
+        source.write(pcm((short) 1000, (short) 3000, (short) 1000, (short) 3000, (short) 1000, (short) 3000), 12);
+
+        final short[] out = mix(mixer, 2, 1);
+
+        assertEquals(2, out.length);
+        assertEquals(2000, out[0], 1);
+        assertEquals(2000, out[1], 1);
+    }
+
+    @Test
+    public void softClip_isIdentityBelowTheThreshold() {
+        assertEquals(0.5f, AudioMixer.softClip(0.5f), 0f);
+        assertEquals(-0.8f, AudioMixer.softClip(-0.8f), 0f);
+    }
+
+    @Test
+    public void softClip_staysWithinFullScale() {
+        float last = 0.8f;
+
+        for(float x = 0.81f; x < 4f; x += 0.1f) {
+            final float clipped = AudioMixer.softClip(x);
+
+            assertTrue(clipped >= last);
+            assertTrue(clipped <= 1f);
+            assertEquals(-clipped, AudioMixer.softClip(-x), 0f);
+
+            last = clipped;
+        }
+
+        assertTrue(AudioMixer.softClip(1.2f) < 1f);
+    }
+
+    @Test
+    public void mix_sumsSourcesWithoutWrappingAround() {
+        final AudioMixer.Source a = new AudioMixer.Source(48000, 1, 48000, 1, 100, 1f),
+                                b = new AudioMixer.Source(48000, 1, 48000, 1, 100, 1f);
+
+        final AudioMixer mixer = new AudioMixer(1, 100, a, b);
+
+        a.write(pcm((short) 30000, (short) 30000, (short) -30000, (short) -30000), 8);
+        b.write(pcm((short) 30000, (short) 30000, (short) -30000, (short) -30000), 8);
+
+        final short[] out = mix(mixer, 3, 1);
+
+        assertTrue(out[0] > 0.8f * Short.MAX_VALUE);
+        assertTrue(out[2] < -0.8f * Short.MAX_VALUE);
+    }
+
+    @Test
+    public void underflow_isFilledWithSilenceAndCounted() {
+        final AudioMixer.Source source = new AudioMixer.Source(48000, 1, 48000, 1, 100, 1f);
+
+        final AudioMixer mixer = new AudioMixer(1, 100, source);
+
+        source.write(pcm((short) 1000, (short) 1000, (short) 1000, (short) 1000), 8);
+
+        final short[] out = mix(mixer, 10, 1);
+
+        assertEquals(10, out.length);
+
+        for(int i = 0; i < 3; i++) {
+            assertEquals(1000, out[i], 1);
+        }
+
+        for(int i = 3; i < out.length; i++) {
+            assertEquals(0, out[i]);
+        }
+
+        assertEquals(7, source.getUnderflowFrames());
+        assertEquals(0, source.getAvailableFrames());
+    }
+
+    @Test
+    public void overflow_dropsTheOldestFrames() {
+        final AudioMixer.Source source = new AudioMixer.Source(48000, 1, 48000, 1, 4, 1f);
+
+        final AudioMixer mixer = new AudioMixer(1, 100, source);
+
+        source.write(ramp(8, 100), 16);
+
+        assertEquals(4, source.getAvailableFrames());
+        assertEquals(3, source.getOverflowFrames());
+
+        final short[] out = mix(mixer, 4, 1);
+
+        assertEquals(300, out[0], 1);
+        assertEquals(600, out[3], 1);
+    }
+
+    @Test
+    public void fifoPastTwiceTheTarget_isTrimmedToTheNewestFrames() {
+        final AudioMixer.Source source = new AudioMixer.Source(48000, 1, 48000, 1, 100, 10, 1f);
+
+        final AudioMixer mixer = new AudioMixer(1, 100, source);
+
+        source.write(ramp(20, 100), 40);
+
+        assertEquals(19, source.getAvailableFrames());
+        assertEquals(0, source.getTrimmedFrames());
+
+        source.write(ramp(3, 100), 6);
+
+        assertEquals(10, source.getAvailableFrames());
+        assertEquals(12, source.getTrimmedFrames());
+
+        final short[] out = mix(mixer, 10, 1);
+
+        assertEquals(100, out[out.length - 1], 1);
+    }
+}